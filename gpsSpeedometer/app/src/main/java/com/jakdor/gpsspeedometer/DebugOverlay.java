@@ -0,0 +1,102 @@
+package com.jakdor.gpsspeedometer;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.os.SystemClock;
+
+import com.jakdor.gpsspeedometer.core.Fix;
+import com.jakdor.gpsspeedometer.core.LatencyHistogram;
+import com.jakdor.gpsspeedometer.core.Metrics;
+import com.jakdor.gpsspeedometer.core.TripSnapshot;
+
+/**
+ * Debug text drawn over speedometer HUD: fix latency, stage times, fix counts, sensor rate and gc.
+ * Records fix age at first frame showing it, text is refreshed once per second
+ * into reused StringBuilders - no allocation per frame
+ */
+class DebugOverlay {
+
+    private static final long REFRESH_INTERVAL = 1000000000L; // ns
+    private static final int LINES = 5;
+
+    private final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final StringBuilder[] lines = new StringBuilder[LINES];
+
+    private Fix shownFix;
+    private long lastRefreshNanos = 0;
+    private long lastSensorEvents = 0;
+
+    DebugOverlay(){
+        paint.setColor(Color.YELLOW);
+        paint.setTypeface(Typeface.MONOSPACE);
+        for(int i = 0; i < LINES; ++i){
+            lines[i] = new StringBuilder(64);
+        }
+    }
+
+    void setTextSize(float size){
+        paint.setTextSize(size);
+    }
+
+    /**
+     * Called every frame with snapshot being displayed
+     * @return true if overlay text changed
+     */
+    boolean update(TripSnapshot snapshot, Metrics metrics, long frameTimeNanos){
+        Fix fix = snapshot.getFix();
+        if(fix != null && fix != shownFix && !snapshot.isProvisional()){ //restored fix age is no latency
+            shownFix = fix;
+            metrics.histogram(Metrics.FIX_AGE_DISPLAYED)
+                    .record(SystemClock.elapsedRealtimeNanos() - fix.getElapsedRealtimeNanos());
+        }
+
+        long interval = frameTimeNanos - lastRefreshNanos;
+        if(lastRefreshNanos != 0 && interval < REFRESH_INTERVAL){
+            return false;
+        }
+        long sensorEvents = metrics.counter(Metrics.SENSOR_EVENTS).get();
+        long sensorRate = lastRefreshNanos == 0 ? 0 : (sensorEvents - lastSensorEvents) * 1000000000L / interval;
+        lastSensorEvents = sensorEvents;
+        lastRefreshNanos = frameTimeNanos;
+
+        LatencyHistogram displayed = metrics.histogram(Metrics.FIX_AGE_DISPLAYED);
+        StringBuilder line = lines[0];
+        line.setLength(0);
+        line.append("fix age p50 ").append(displayed.getValueAtPercentile(50) / 1000000L)
+                .append(" p99 ").append(displayed.getValueAtPercentile(99) / 1000000L).append(" ms");
+
+        line = lines[1];
+        line.setLength(0);
+        line.append("trip ").append(metrics.histogram(Metrics.STAGE_TRIP).getValueAtPercentile(99) / 1000L)
+                .append(" sched ").append(metrics.histogram(Metrics.STAGE_SCHEDULER).getValueAtPercentile(99) / 1000L)
+                .append(" rec ").append(metrics.histogram(Metrics.STAGE_RECORD).getValueAtPercentile(99) / 1000L)
+                .append(" us p99");
+
+        line = lines[2];
+        line.setLength(0);
+        line.append("fixes ").append(metrics.getGauge(Metrics.FIXES_ACCEPTED))
+                .append(" rej ").append(metrics.getGauge(Metrics.FIXES_REJECTED))
+                .append(" drop ").append(metrics.getGauge(Metrics.FIXES_DROPPED));
+
+        line = lines[3];
+        line.setLength(0);
+        line.append("sensor ").append(sensorRate).append(" Hz ttff ")
+                .append(metrics.getGauge(Metrics.TIME_TO_FIRST_FIX)).append(" ms");
+
+        line = lines[4];
+        line.setLength(0);
+        line.append("gc ").append(metrics.getGauge(Metrics.GC_COUNT))
+                .append(" / ").append(metrics.getGauge(Metrics.GC_TIME)).append(" ms alloc ")
+                .append(metrics.getGauge(Metrics.ALLOCATED_BYTES) / 1024).append(" KB");
+        return true;
+    }
+
+    void draw(Canvas canvas, float x, float y){
+        float lineHeight = paint.getTextSize() * 1.2f;
+        for(int i = 0; i < LINES; ++i){
+            canvas.drawText(lines[i], 0, lines[i].length(), x, y + i * lineHeight, paint);
+        }
+    }
+}
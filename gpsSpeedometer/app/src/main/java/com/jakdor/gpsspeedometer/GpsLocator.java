@@ -2,27 +2,48 @@ package com.jakdor.gpsspeedometer;
 
 import android.content.Context;
 import android.location.Criteria;
+import android.location.GpsStatus;
 import android.location.Location;
 import android.location.LocationListener;
 import android.location.LocationManager;
+import android.location.OnNmeaMessageListener;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
+import com.jakdor.gpsspeedometer.core.Fix;
+import com.jakdor.gpsspeedometer.core.FixListener;
+import com.jakdor.gpsspeedometer.core.NmeaListener;
+import com.jakdor.gpsspeedometer.core.NmeaParser;
+import com.jakdor.gpsspeedometer.core.PowerPolicy;
+
 import static android.content.Context.LOCATION_SERVICE;
 
 /**
- * Class providing access to gps module
+ * Class providing access to gps module,
+ * every location is handed over as immutable Fix, current position is read from TripSnapshot
  */
 class GpsLocator {
 
-    private final long LOCATION_REFRESH_TIME = 0;
+    private final long LOCATION_REFRESH_TIME = 1000; // initial full rate, then set by DutyCycleScheduler
     private final float LOCATION_REFRESH_DISTANCE = 0;
 
     private Context context;
     private LocationManager locationManager;
     private Criteria criteria;
     private String bestProvider;
-    static private Location location;
+    private volatile FixListener fixListener;
+
+    private final NmeaParser nmeaParser = new NmeaParser(new NmeaState());
+    private Object nmeaListener; // OnNmeaMessageListener or GpsStatus.NmeaListener, by API level
+    private volatile float nmeaSpeed = Float.NaN;
+    private volatile float hdop = Float.NaN;
+    private volatile int satellitesUsed = 0;
+    private volatile int satellitesInView = 0;
+    private final long startNanos = SystemClock.elapsedRealtimeNanos();
+    private volatile long timeToFirstFix = -1; // ms
 
     /**
      * provides access to gps location manager
@@ -37,58 +58,174 @@ class GpsLocator {
             locationManager.requestLocationUpdates(LocationManager.GPS_PROVIDER, LOCATION_REFRESH_TIME,
                     LOCATION_REFRESH_DISTANCE, mLocationListener);
             //location = locationManager.getLastKnownLocation(bestProvider);
+            registerNmeaListener();
         }
         catch (SecurityException e){
             Log.e("Exception", "GPS permission problem: " + e.toString());
         }
     }
 
-    double getLatitude(){
-        double output = 0;
-        try {
-            output = location.getLatitude();
+    /**
+     * Raw receiver sentences, OnNmeaMessageListener on API 24+, deprecated GpsStatus listener below
+     */
+    @SuppressWarnings("deprecation")
+    private void registerNmeaListener(){
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.N){
+            OnNmeaMessageListener listener = new OnNmeaMessageListener() {
+                @Override
+                public void onNmeaMessage(String message, long timestamp) {
+                    nmeaParser.parse(message);
+                }
+            };
+            locationManager.addNmeaListener(listener);
+            nmeaListener = listener;
         }
-        catch (NullPointerException e){
-            Log.e("Exception", "Problem with getting gps pos: " + e.toString());
+        else {
+            GpsStatus.NmeaListener listener = new GpsStatus.NmeaListener() {
+                @Override
+                public void onNmeaReceived(long timestamp, String nmea) {
+                    nmeaParser.parse(nmea);
+                }
+            };
+            locationManager.addNmeaListener(listener);
+            nmeaListener = listener;
         }
-
-        return output;
     }
 
-    double getLongitude(){
-        double output = 0;
+    /**
+     * Re-requests location updates with policy interval and min distance, callable from any thread
+     */
+    void applyPolicy(PowerPolicy policy){
         try {
-            output = location.getLongitude();
+            locationManager.requestLocationUpdates(LocationManager.GPS_PROVIDER, policy.getGpsInterval(),
+                    policy.getGpsMinDistance(), mLocationListener, Looper.getMainLooper());
         }
-        catch (NullPointerException e){
-            Log.e("Exception", "Problem with getting gps pos: " + e.toString());
+        catch (SecurityException e){
+            Log.e("Exception", "GPS permission problem: " + e.toString());
         }
+    }
 
-        return output;
+    /**
+     * Stops all gps updates, locator can't be reused afterwards
+     */
+    @SuppressWarnings("deprecation")
+    void close(){
+        fixListener = null;
+        locationManager.removeUpdates(mLocationListener);
+        if(nmeaListener == null){
+            return;
+        }
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.N){
+            locationManager.removeNmeaListener((OnNmeaMessageListener) nmeaListener);
+        }
+        else {
+            locationManager.removeNmeaListener((GpsStatus.NmeaListener) nmeaListener);
+        }
+        nmeaListener = null;
     }
 
-    double getAltitude(){
-        double output = 0;
-        try {
-            output = location.getAltitude();
+    /**
+     * Sets receiver of immutable fix records, one per location update
+     */
+    void setFixListener(FixListener fixListener){
+        this.fixListener = fixListener;
+    }
+
+    /**
+     * Receiver doppler speed over ground from RMC/VTG in m/s, NaN if not reported
+     */
+    float getNmeaSpeed(){
+        return nmeaSpeed;
+    }
+
+    float getHdop(){
+        return hdop;
+    }
+
+    int getSatellitesUsed(){
+        return satellitesUsed;
+    }
+
+    int getSatellitesInView(){
+        return satellitesInView;
+    }
+
+    /**
+     * Time from locator start to first location in ms, -1 before it
+     */
+    long getTimeToFirstFix(){
+        return timeToFirstFix;
+    }
+
+    /**
+     * Receiver speed of location, raw NMEA speed if provider stripped it, NaN if none
+     */
+    private float getDopplerSpeed(Location location){
+        if(location.hasSpeed()){
+            return location.getSpeed();
         }
-        catch (NullPointerException e){
-            Log.e("Exception", "Problem with getting gps pos: " + e.toString());
+        return nmeaSpeed;
+    }
+
+    /**
+     * Reported speed accuracy, API 26+ only, 0 if unknown
+     */
+    private float getSpeedAccuracy(Location location){
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && location.hasSpeedAccuracy()){
+            return location.getSpeedAccuracyMetersPerSecond();
         }
+        return 0;
+    }
 
-        return output;
+    /**
+     * Satellites used in fix, provider extras or raw NMEA, -1 if unknown
+     */
+    private int getSatellites(Location location){
+        Bundle extras = location.getExtras();
+        if(extras != null && extras.containsKey("satellites")){
+            return extras.getInt("satellites");
+        }
+        return satellitesUsed > 0 ? satellitesUsed : -1;
     }
 
-    double getAccuracy(){
-        double output = 0;
-        try {
-            output = location.getAccuracy();
+    /**
+     * Keeps latest raw receiver values, called on main thread with every sentence
+     */
+    private class NmeaState implements NmeaListener {
+        @Override
+        public void onGga(long timeOfDay, double latitude, double longitude, int quality, int satellites,
+                          float hdop, double altitude) {
+            if(quality == 0){
+                nmeaSpeed = Float.NaN;
+            }
+            if(satellites >= 0) {
+                satellitesUsed = satellites;
+            }
+            GpsLocator.this.hdop = hdop;
         }
-        catch (NullPointerException e){
-            Log.e("Exception", "Problem with getting gps accuracy: " + e.toString());
+
+        @Override
+        public void onRmc(long timeOfDay, boolean valid, double latitude, double longitude, float speed,
+                          float course, long date) {
+            nmeaSpeed = valid ? speed : Float.NaN;
         }
 
-        return output;
+        @Override
+        public void onVtg(float course, float speed) {
+            if(!Float.isNaN(speed)) {
+                nmeaSpeed = speed;
+            }
+        }
+
+        @Override
+        public void onGsa(int fixType, int satellitesUsed, float pdop, float hdop, float vdop) {
+            GpsLocator.this.hdop = hdop;
+        }
+
+        @Override
+        public void onGsv(int satellitesInView, int maxSnr) {
+            GpsLocator.this.satellitesInView = satellitesInView;
+        }
     }
 
     /**
@@ -97,11 +234,15 @@ class GpsLocator {
     private final LocationListener mLocationListener = new LocationListener(){
         @Override
         public void onLocationChanged(final Location location) {
-            try {
-                GpsLocator.location = locationManager.getLastKnownLocation(bestProvider);
+            if(timeToFirstFix < 0){
+                timeToFirstFix = (SystemClock.elapsedRealtimeNanos() - startNanos) / 1000000L;
             }
-            catch (SecurityException e){
-                Log.e("Exception", "GPS permission problem: " + e.toString());
+            FixListener listener = fixListener;
+            if(listener != null){
+                listener.onFix(new Fix(location.getElapsedRealtimeNanos(), location.getTime(),
+                        location.getLatitude(), location.getLongitude(),
+                        location.getAltitude(), location.getAccuracy(),
+                        getDopplerSpeed(location), getSpeedAccuracy(location), getSatellites(location)));
             }
         }
 
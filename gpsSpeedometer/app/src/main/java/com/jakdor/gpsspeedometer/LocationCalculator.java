@@ -5,272 +5,591 @@ import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
-
-import java.util.Locale;
-import java.util.Timer;
-import java.util.TimerTask;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+
+import com.jakdor.gpsspeedometer.core.CompactTrackRecorder;
+import com.jakdor.gpsspeedometer.core.DutyCycleScheduler;
+import com.jakdor.gpsspeedometer.core.Fix;
+import com.jakdor.gpsspeedometer.core.FixListener;
+import com.jakdor.gpsspeedometer.core.FixPipeline;
+import com.jakdor.gpsspeedometer.core.HttpTelemetryTransport;
+import com.jakdor.gpsspeedometer.core.LatencyHistogram;
+import com.jakdor.gpsspeedometer.core.MapMatcher;
+import com.jakdor.gpsspeedometer.core.MetricCounter;
+import com.jakdor.gpsspeedometer.core.Metrics;
+import com.jakdor.gpsspeedometer.core.MotionState;
+import com.jakdor.gpsspeedometer.core.PerformanceResult;
+import com.jakdor.gpsspeedometer.core.PerformanceTimer;
+import com.jakdor.gpsspeedometer.core.PowerPolicy;
+import com.jakdor.gpsspeedometer.core.RoadGraph;
+import com.jakdor.gpsspeedometer.core.SpeedSource;
+import com.jakdor.gpsspeedometer.core.TelemetryUplink;
+import com.jakdor.gpsspeedometer.core.TrackSimplifier;
+import com.jakdor.gpsspeedometer.core.TrackSink;
+import com.jakdor.gpsspeedometer.core.TripCalculator;
+import com.jakdor.gpsspeedometer.core.TripIndex;
+import com.jakdor.gpsspeedometer.core.TripSnapshot;
+import com.jakdor.gpsspeedometer.core.TripSummary;
+import com.jakdor.gpsspeedometer.core.WarmStart;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
 
 /**
- * Class for processing raw gps data
+ * Class for processing raw gps data,
+ * connects device gps and sensors to TripCalculator, records the track and adds it to trip history;
+ * distances are snapped to roads when offline road extract is provided,
+ * accepted fixes are queued for live telemetry uplink when upload url is set.
+ * Performance mode: PerformanceTimer fed straight from fix and sensor threads, gps and accelerometer
+ * at maximum rate regardless of motion state.
+ * Startup: last trip state (WarmStart) is restored synchronously, so the first frame has provisional reading,
+ * sensor registration runs later on sensor thread - off the launch critical path;
+ * trip interrupted by process death (WarmStart.canResume) continues in its own track file and history entry
  */
-class LocationCalculator implements SensorEventListener {
+class LocationCalculator implements SensorEventListener, FixListener {
+
+    static final String ROADS_FILE_NAME = "roads.osm";
+    private static final long WARM_START_INTERVAL = 10000000000L; // ns of fix time between state saves
+
+    private final TripCalculator tripCalculator = new TripCalculator();
+
+    private TrackSink trackRecorder;
+    private File tracksDir;
+    private long trackStartTime;
+    private long resumedTrackStartTime = 0; // interrupted trip continued after warm start, 0 for new trip
+    private final SensorManager sensorManager;
+    private final Sensor accelerometerSensor;
+    private final Sensor gyroscopeSensor;
+    private final Sensor magnetometerSensor;
+    private final Sensor pressureSensor;
+    private final HandlerThread sensorThread = new HandlerThread("Sensors");
+    private final Handler sensorHandler;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final File warmStartFile;
+    private long warmStartSavedNanos = Long.MIN_VALUE;
+    private final File telemetryDir;
+    private String telemetryUrl = "";
+    private volatile TelemetryUplink telemetryUplink;
+    private volatile PerformanceTimer performanceTimer;
+    private final DutyCycleScheduler dutyCycleScheduler = new DutyCycleScheduler();
+    private final FixPipeline fixPipeline;
+    private final GpsLocator gpsLocator;
+
+    private final Metrics metrics;
+    private final LatencyHistogram fixAge;
+    private final LatencyHistogram tripStage;
+    private final LatencyHistogram schedulerStage;
+    private final LatencyHistogram recordStage;
+    private final MetricCounter sensorEvents;
 
-    private final int UPDATE_TIME = 1000;
+    /**
+     * Subscribes to GpsLocator fixes through FixPipeline, every fix is processed once on pipeline thread;
+     * fix age, stage times and sensor events are recorded into metrics while they are enabled
+     */
+    LocationCalculator(final GpsLocator gpsLocator, Context context, Metrics metrics){
+        this.gpsLocator = gpsLocator;
+        this.metrics = metrics;
+        fixAge = metrics.histogram(Metrics.FIX_AGE_PROCESSED);
+        tripStage = metrics.histogram(Metrics.STAGE_TRIP);
+        schedulerStage = metrics.histogram(Metrics.STAGE_SCHEDULER);
+        recordStage = metrics.histogram(Metrics.STAGE_RECORD);
+        sensorEvents = metrics.counter(Metrics.SENSOR_EVENTS);
+
+        warmStartFile = new File(context.getFilesDir(), WarmStart.FILE_NAME);
+        telemetryDir = new File(context.getFilesDir(), "telemetry");
+        restoreWarmStart();
+
+        //initialize accelerometer, gyroscope and magnetometer (dead reckoning), barometer (altitude), null if missing
+        sensorManager = (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
+        accelerometerSensor = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
+        gyroscopeSensor = sensorManager.getDefaultSensor(Sensor.TYPE_GYROSCOPE);
+        magnetometerSensor = sensorManager.getDefaultSensor(Sensor.TYPE_MAGNETIC_FIELD);
+        pressureSensor = sensorManager.getDefaultSensor(Sensor.TYPE_PRESSURE);
+        sensorThread.start();
+        sensorHandler = new Handler(sensorThread.getLooper());
+        sensorHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                registerSensors(SensorManager.SENSOR_DELAY_GAME);
+            }
+        });
 
-    private double lastLatitude = 0;
-    private double lastLongitude = 0;
+        //called on fix or sensor thread, policy applied on main thread only (current state, not the posted one)
+        dutyCycleScheduler.setListener(new DutyCycleScheduler.Listener() {
+            @Override
+            public void onPolicyChanged(MotionState state, PowerPolicy policy) {
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if(performanceTimer == null){
+                            applyPolicy(dutyCycleScheduler.getPolicy());
+                        }
+                    }
+                });
+            }
+        });
 
-    private int altitudeCounter = 0;
-    private double altitudeSum = 0;
-    private double avrAltitude = 0;
-    private double lastAvrAltitude = 0;
+        openTrackRecorder(context);
+        loadRoadGraph(context);
 
-    private int speedCounter = 0;
-    private double speedSum = 0;
-    private double avrCurrentSpeed = 0;
-    private int speedStopCounter = 0;
+        fixPipeline = new FixPipeline(this);
+        fixPipeline.start();
+        gpsLocator.setFixListener(fixPipeline);
 
-    private double distance;
-    private double distanceSum = 0;
+        metrics.gauge(Metrics.FIXES_ACCEPTED, new Metrics.Gauge() {
+            @Override
+            public long get() {
+                return tripCalculator.getAcceptedFixCount();
+            }
+        });
+        metrics.gauge(Metrics.FIXES_REJECTED, new Metrics.Gauge() {
+            @Override
+            public long get() {
+                return tripCalculator.getRejectedFixCount();
+            }
+        });
+        metrics.gauge(Metrics.FIXES_DROPPED, new Metrics.Gauge() {
+            @Override
+            public long get() {
+                return fixPipeline.getDroppedCount();
+            }
+        });
+        metrics.gauge(Metrics.TELEMETRY_SENT_BYTES, new Metrics.Gauge() {
+            @Override
+            public long get() {
+                TelemetryUplink uplink = telemetryUplink;
+                return uplink != null ? uplink.getSentBytes() : -1;
+            }
+        });
+        metrics.gauge(Metrics.TELEMETRY_BATCH, new Metrics.Gauge() {
+            @Override
+            public long get() {
+                TelemetryUplink uplink = telemetryUplink;
+                return uplink != null ? uplink.getBatchSize() : -1;
+            }
+        });
+        metrics.gauge(Metrics.TELEMETRY_QUEUED, new Metrics.Gauge() {
+            @Override
+            public long get() {
+                TelemetryUplink uplink = telemetryUplink;
+                return uplink != null ? uplink.getQueued() : -1;
+            }
+        });
+        metrics.gauge(Metrics.TELEMETRY_DROPPED, new Metrics.Gauge() {
+            @Override
+            public long get() {
+                TelemetryUplink uplink = telemetryUplink;
+                return uplink != null ? uplink.getDroppedCount() : -1;
+            }
+        });
+        metrics.gauge(Metrics.TELEMETRY_REJECTED, new Metrics.Gauge() {
+            @Override
+            public long get() {
+                TelemetryUplink uplink = telemetryUplink;
+                return uplink != null ? uplink.getRejectedBatches() : -1;
+            }
+        });
+    }
 
-    private long timer = 0;
+    /**
+     * Unregisters sensors, stops fix processing and telemetry, saves warm start state;
+     * track file is closed and the trip indexed on background thread (track scan and index fsync
+     * stay off main thread), trip left unindexed by process death is picked up by indexMissingTrips()
+     */
+    void close(){
+        dutyCycleScheduler.setListener(null);
+        mainHandler.removeCallbacksAndMessages(null);
+        gpsLocator.setFixListener(null);
+        fixPipeline.stop();
+        stopTelemetry();
+        sensorHandler.removeCallbacksAndMessages(null);
+        sensorHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                sensorManager.unregisterListener(LocationCalculator.this);
+            }
+        });
+        sensorThread.quitSafely();
+        saveWarmStart(true);
+
+        final TrackSink recorder = trackRecorder;
+        if(recorder != null){
+            trackRecorder = null;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        recorder.close();
+                    }
+                    catch (IOException e){
+                        Log.e("Exception", "Track closing problem: " + e.toString());
+                    }
+                    indexTrip();
+                }
+            }, "TripIndex").start();
+        }
+    }
 
-    private boolean stopLock = false;
+    @Override
+    public void onFix(Fix fix) {
+        long start = metrics.startTime();
+        if(start != 0){
+            fixAge.record(SystemClock.elapsedRealtimeNanos() - fix.getElapsedRealtimeNanos());
+        }
+
+        long rejectedCount = tripCalculator.getRejectedFixCount();
+        tripCalculator.onFix(fix);
+        boolean rejected = tripCalculator.getRejectedFixCount() != rejectedCount;
+        tripStage.recordSince(start);
+
+        TelemetryUplink uplink = telemetryUplink;
+        if(uplink != null && tripCalculator.getSnapshot().getFix() == fix){ //accepted
+            uplink.onFix(fix, tripCalculator.getSpeed());
+        }
+
+        PerformanceTimer timer = performanceTimer;
+        if(timer != null){
+            timer.onFix(fix, tripCalculator.getSpeed());
+        }
+
+        start = metrics.startTime();
+        dutyCycleScheduler.onFix(fix.getElapsedRealtimeNanos(), tripCalculator.getSnapshot());
+        schedulerStage.recordSince(start);
+
+        if(!rejected){ //outliers stay out of track, trip extent and indexed distance
+            start = metrics.startTime();
+            recordFix(fix);
+            recordStage.recordSince(start);
+        }
+
+        if(fix.getElapsedRealtimeNanos() - warmStartSavedNanos >= WARM_START_INTERVAL){
+            warmStartSavedNanos = fix.getElapsedRealtimeNanos();
+            saveWarmStart(false);
+        }
+    }
 
     /**
-     * Uses GpsLocator class to get raw data, lunches update method on set rate
+     * Publishes saved trip state as provisional snapshot, before fix processing starts;
+     * 80 byte read, done on caller (main) thread so the first frame already has it;
+     * resumed trip counters come with its track, which openTrackRecorder() then appends to
      */
-    LocationCalculator(final GpsLocator gpsLocator, Context context){
+    private void restoreWarmStart(){
+        Trace.beginSection("WarmStart.restore");
+        try {
+            WarmStart warmStart = WarmStart.read(warmStartFile);
+            if(warmStart != null){
+                long time = System.currentTimeMillis();
+                tripCalculator.restore(warmStart, time, SystemClock.elapsedRealtimeNanos());
+                if(warmStart.canResume(time)){
+                    resumedTrackStartTime = warmStart.getTrackStartTime();
+                }
+            }
+        }
+        catch (IOException e){
+            Log.e("Exception", "Warm start state problem: " + e.toString());
+        }
+        finally {
+            Trace.endSection();
+        }
+    }
 
-        //initialize accelerometer
-        SensorManager sensorManager = (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
-        Sensor accelerometerSensor = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
-        sensorManager.registerListener(this, accelerometerSensor, SensorManager.SENSOR_DELAY_NORMAL);
+    /**
+     * Saves current trip state for next launch, provisional (restored, no fresh fix) state is not saved again
+     * @param finished clean shutdown, trip is closed and next launch starts new one
+     */
+    private void saveWarmStart(boolean finished){
+        TripSnapshot snapshot = tripCalculator.getSnapshot();
+        if(snapshot.getFix() == null || snapshot.isProvisional()){
+            return;
+        }
+        try {
+            new WarmStart(System.currentTimeMillis(), snapshot, trackStartTime, finished).write(warmStartFile);
+        }
+        catch (IOException e){
+            Log.e("Exception", "Warm start state saving problem: " + e.toString());
+        }
+    }
 
-        Timer timer = new Timer();
-        timer.scheduleAtFixedRate(new TimerTask() {
+    /**
+     * Re-registers gps and sensors at rates of new motion state, main thread;
+     * sensor re-registration is queued on sensor thread after initial registration
+     */
+    private void applyPolicy(final PowerPolicy policy){
+        gpsLocator.applyPolicy(policy);
+        sensorHandler.post(new Runnable() {
             @Override
             public void run() {
-                update(gpsLocator.getLatitude(),
-                        gpsLocator.getLongitude(),
-                        gpsLocator.getAltitude());
+                sensorManager.unregisterListener(LocationCalculator.this);
+                registerSensors(policy.getSensorDelay());
             }
-        }, UPDATE_TIME, UPDATE_TIME);
+        });
     }
 
     /**
-     * Main update loop;
-     * - lunches distance calculation method
-     * - lunches speed calculation method
-     * - discards random gps input jitter
-     * - starts and stops timers
+     * All sensors delivered on same (sensor) thread - TripCalculator sensor thread contract, called on it
      */
-    private void update(double latitude, double longitude, double altitude){
-        if(lastLatitude == 0 && lastLongitude == 0){
-            lastLatitude = latitude;
-            lastLongitude = longitude;
-            return;
+    private void registerSensors(int delay){
+        Trace.beginSection("LocationCalculator.registerSensors");
+        sensorManager.registerListener(this, accelerometerSensor, delay, sensorHandler);
+        if(gyroscopeSensor != null){
+            sensorManager.registerListener(this, gyroscopeSensor, delay, sensorHandler);
+        }
+        if(magnetometerSensor != null){
+            sensorManager.registerListener(this, magnetometerSensor, delay, sensorHandler);
         }
+        if(pressureSensor != null){
+            sensorManager.registerListener(this, pressureSensor, delay, sensorHandler);
+        }
+        Trace.endSection();
+    }
 
-        if(latitude != lastLatitude && longitude != lastLongitude) { //todo take gps accuracy into account
-            //calculateDistanceSimple(latitude, longitude);
-            calculateDistanceAdvance(latitude, longitude);
-            calculateSpeed();
+    /**
+     * Starts new track file for this trip in app files dir, or reopens track of resumed trip for appending
+     * (its torn tail dropped); fixes are simplified within TrackSimplifier.DEFAULT_TOLERANCE and stored delta encoded
+     */
+    private void openTrackRecorder(Context context){
+        tracksDir = getTracksDir(context);
+        if(!tracksDir.isDirectory() && !tracksDir.mkdirs()){
+            Log.e("Exception", "Unable to create tracks dir: " + tracksDir);
+            return;
+        }
 
-            if(stopLock && accelerating){ //take accelerometer into account
-                stopLock = false;
-            }
+        trackStartTime = resumedTrackStartTime != 0 ? resumedTrackStartTime : System.currentTimeMillis();
+        try {
+            File trackFile = TripIndex.getTrackFile(tracksDir, trackStartTime);
+            trackRecorder = new TrackSimplifier(
+                    CompactTrackRecorder.open(trackFile, trackStartTime, TrackSimplifier.DEFAULT_TOLERANCE));
+        }
+        catch (IOException e){
+            Log.e("Exception", "Unable to open track file: " + e.toString());
+            return;
+        }
 
-            if(distance > 0.4 && !stopLock) { //discard random jitter
-                distanceSum += distance;
-                calculateTime();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                indexMissingTrips();
             }
+        }, "TripIndex").start();
+    }
 
-            lastLatitude = latitude;
-            lastLongitude = longitude;
+    /**
+     * Enables map matching when offline road extract (OSM XML) is present in app external files dir,
+     * graph is built on background thread, fixes before it's ready use straight distances
+     */
+    private void loadRoadGraph(Context context){
+        File externalDir = context.getExternalFilesDir(null);
+        if(externalDir == null){
+            return;
+        }
+        final File roadsFile = new File(externalDir, ROADS_FILE_NAME);
+        if(!roadsFile.isFile()){
+            return;
+        }
 
-            if (altitudeCounter < 4) { //experimental
-                altitudeSum += altitude;
-            } else {
-                lastAvrAltitude = avrAltitude;
-                avrAltitude = altitudeSum / altitudeCounter;
-                altitudeCounter = 0;
-                altitudeSum = 0;
-            }
-            ++altitudeCounter;
-        }
-        else{
-            ++speedStopCounter;
-            if(speedStopCounter == 4){ //full stop
-                avrCurrentSpeed = 0;
-                speedStopCounter = 0;
-                stopLock = true;
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    tripCalculator.setMapMatcher(new MapMatcher(RoadGraph.loadOsm(roadsFile)));
+                }
+                catch (IOException e){
+                    Log.e("Exception", "Road graph loading problem: " + e.toString());
+                }
             }
-        }
+        }, "RoadGraph").start();
     }
 
     /**
-     * Simple approximate distance calculation methode
-     * <Currently replaced by calculateDistanceAdvance()>
+     * Track files and trip history index location
      */
-    private void calculateDistanceSimple(double latitude, double longitude){
-        double earthRadius = 6371000;
-        double dLat = Math.toRadians(latitude - lastLatitude);
-        double dLng = Math.toRadians(longitude - lastLongitude);
-        double a = Math.sin(dLat/2) * Math.sin(dLat/2) +
-                Math.cos(Math.toRadians(lastLatitude)) * Math.cos(Math.toRadians(latitude)) *
-                        Math.sin(dLng/2) * Math.sin(dLng/2);
-        double b = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1-a));
-        distance = earthRadius * b;
-
-        double altitudeDifference = Math.abs(lastAvrAltitude - avrAltitude); //experimental
-        if(avrAltitude != 0 && lastAvrAltitude != 0 && altitudeDifference > 10){
-            distance = Math.sqrt(Math.pow(altitudeDifference, 2.0) + Math.pow(distance, 2.0));
+    static File getTracksDir(Context context){
+        return new File(context.getFilesDir(), "tracks");
+    }
+
+    /**
+     * Adds tracks of trips that weren't closed properly (process killed) to history,
+     * every track but the current one is finished at this point
+     */
+    private void indexMissingTrips(){
+        try {
+            TripIndex tripIndex = TripIndex.open(new File(tracksDir, TripIndex.FILE_NAME));
+            tripIndex.indexMissing(tracksDir, trackStartTime);
+        }
+        catch (IOException e){
+            Log.e("Exception", "Trip history recovery problem: " + e.toString());
         }
     }
 
     /**
-     * Advance distance calculation method based on WGS-84 ellipsoid modeling
+     * Adds finished trip to history: track extent from file, statistics as collected live
+     * (resumed trip: from track records, live statistics miss part before restart),
+     * called after fix processing stopped
      */
-    private void calculateDistanceAdvance(double latitude, double longitude){
-        double a = 6378137, b = 6356752.314245, f = 1 / 298.257223563; // WGS-84 ellipsoid params
-        double L = Math.toRadians(longitude - lastLongitude);
-        double U1 = Math.atan((1 - f) * Math.tan(Math.toRadians(lastLatitude)));
-        double U2 = Math.atan((1 - f) * Math.tan(Math.toRadians(latitude)));
-        double sinU1 = Math.sin(U1), cosU1 = Math.cos(U1);
-        double sinU2 = Math.sin(U2), cosU2 = Math.cos(U2);
-
-        double sinLambda, cosLambda, sinSigma, cosSigma, sigma, sinAlpha, cosSqAlpha, cos2SigmaM;
-        double lambda = L, lambdaP, interLimit = 100;
-
-        do {
-            sinLambda = Math.sin(lambda);
-            cosLambda = Math.cos(lambda);
-            sinSigma = Math.sqrt((cosU2 * sinLambda) * (cosU2 * sinLambda)
-                    + (cosU1 * sinU2 - sinU1 * cosU2 * cosLambda) * (cosU1 * sinU2 - sinU1 * cosU2 * cosLambda));
-            if (sinSigma == 0) {
-                return; // co-incident points
+    private void indexTrip(){
+        File trackFile = TripIndex.getTrackFile(tracksDir, trackStartTime);
+        try {
+            TripSummary summary = TripSummary.scan(trackFile,
+                    resumedTrackStartTime != 0 ? null : tripCalculator.getStatistics().getTotal());
+            if(summary.getRecordCount() == 0){ //no fix, no trip
+                if(!trackFile.delete()){
+                    Log.e("Exception", "Unable to delete empty track: " + trackFile);
+                }
+                return;
             }
+            TripIndex.open(new File(tracksDir, TripIndex.FILE_NAME)).put(summary);
+        }
+        catch (IOException e){
+            Log.e("Exception", "Trip indexing problem: " + e.toString());
+        }
+    }
 
-            cosSigma = sinU1 * sinU2 + cosU1 * cosU2 * cosLambda;
-            sigma = Math.atan2(sinSigma, cosSigma);
-            sinAlpha = cosU1 * cosU2 * sinLambda / sinSigma;
-            cosSqAlpha = 1 - sinAlpha * sinAlpha;
-            cos2SigmaM = cosSigma - 2 * sinU1 * sinU2 / cosSqAlpha;
+    /**
+     * Appends processed fix with current speed to trip track, recording stops on first write error
+     */
+    private void recordFix(Fix fix){
+        if(trackRecorder == null){
+            return;
+        }
 
-            if (Double.isNaN(cos2SigmaM)) {
-                cos2SigmaM = 0; // equatorial line: cosSqAlpha=0 (§6)
+        try {
+            trackRecorder.append(fix, (float) tripCalculator.getSpeed());
+        }
+        catch (IOException e){
+            Log.e("Exception", "Track recording problem: " + e.toString());
+            try {
+                trackRecorder.close();
             }
-
-            double C = f / 16 * cosSqAlpha * (4 + f * (4 - 3 * cosSqAlpha));
-            lambdaP = lambda;
-            lambda = L + (1 - C) * f * sinAlpha
-                    * (sigma + C * sinSigma * (cos2SigmaM + C * cosSigma * (-1 + 2 * cos2SigmaM * cos2SigmaM)));
-        } while (Math.abs(lambda - lambdaP) > 1e-12 && --interLimit > 0);
-
-        if (interLimit == 0) {
-            distance = Double.NaN;
-            return; // formula failed to converge
-        }
-
-        double uSq = cosSqAlpha * (a * a - b * b) / (b * b);
-        double A = 1 + uSq / 16384 * (4096 + uSq * (-768 + uSq * (320 - 175 * uSq)));
-        double B = uSq / 1024 * (256 + uSq * (-128 + uSq * (74 - 47 * uSq)));
-        double deltaSigma = B
-                * sinSigma
-                * (cos2SigmaM + B
-                / 4
-                * (cosSigma * (-1 + 2 * cos2SigmaM * cos2SigmaM) - B / 6 * cos2SigmaM
-                * (-3 + 4 * sinSigma * sinSigma) * (-3 + 4 * cos2SigmaM * cos2SigmaM)));
-        distance = b * A * (sigma - deltaSigma);
+            catch (IOException ignored){
+            }
+            trackRecorder = null;
+        }
     }
 
     /**
-     * Simple speed calculation method based on distance and update timer
-     * - averages speed output for smooth reads
-     * - discards averages speed under 1km/h due to random gps jitter
+     * Starts, replaces or (empty url) stops live telemetry uplink, main thread;
+     * batches left over by stopped uplink are sent by next one started, which waits (on its own thread)
+     * until old one finished spooling
      */
-    private void calculateSpeed(){
-        double speed = distance / (UPDATE_TIME / 1000);
-        if(speedCounter < 2){
-            speedSum += speed;
+    void setTelemetryUrl(String url){
+        if(url == null){
+            url = "";
         }
-        else {
-            speedSum += speed;
-            avrCurrentSpeed = speedSum / speedCounter;
-            speedCounter = 0;
-            speedSum = 0;
+        if(url.equals(telemetryUrl)){
+            return;
+        }
+        telemetryUrl = url;
+        TelemetryUplink previous = stopTelemetry();
+        if(url.isEmpty()){
+            return;
         }
-        ++speedCounter;
 
-        if(avrCurrentSpeed < 1.0){ //discard random jitter
-            avrCurrentSpeed = 0.0;
+        try {
+            TelemetryUplink uplink = new TelemetryUplink(new HttpTelemetryTransport(new URL(url)), telemetryDir);
+            uplink.start(previous);
+            telemetryUplink = uplink;
+        }
+        catch (MalformedURLException e){
+            Log.e("Exception", "Invalid telemetry url: " + e.toString());
         }
     }
 
-    private void calculateTime(){
-        timer += UPDATE_TIME / 1000;
+    /**
+     * Uplink thread finishes send in progress and spools queued fixes on its own, caller doesn't wait
+     * @return stopped uplink, null if none was running
+     */
+    private TelemetryUplink stopTelemetry(){
+        TelemetryUplink uplink = telemetryUplink;
+        if(uplink != null){
+            telemetryUplink = null;
+            uplink.stop();
+        }
+        return uplink;
     }
 
-    double getSpeed(boolean retardedSystem){
-        if(retardedSystem){ //imperial unit system conversion
-            return avrCurrentSpeed * 2.2369362912;
+    /**
+     * Starts (fresh timer, maximum rate policy) or stops performance timing, main thread;
+     * stopping restores policy of current motion state
+     */
+    void setPerformanceMode(boolean enabled){
+        if(enabled == (performanceTimer != null)){
+            return;
+        }
+        if(enabled){
+            performanceTimer = new PerformanceTimer();
+            applyPolicy(PowerPolicy.PERFORMANCE);
+        }
+        else {
+            performanceTimer = null;
+            applyPolicy(dutyCycleScheduler.getPolicy());
         }
-        return avrCurrentSpeed * 3.6;
     }
 
-    double getDistanceSum(boolean retardedSystem){
-        if(retardedSystem){ //imperial unit system conversion
-            return distanceSum * 0.0032808399;
-        }
-        return distanceSum;
+    /**
+     * Latest performance timer result, null when performance mode is off; safe to call from any thread
+     */
+    PerformanceResult getPerformanceResult(){
+        PerformanceTimer timer = performanceTimer;
+        return timer != null ? timer.getResult() : null;
     }
 
-    long getTimer(){
-        return timer;
+    /**
+     * Places lap gate across the road at next fix, first one is start / finish
+     */
+    void requestLapGate(){
+        PerformanceTimer timer = performanceTimer;
+        if(timer != null){
+            timer.requestGate();
+        }
     }
 
-    String getAccelerometerData(){
-        return String.format(Locale.ENGLISH, "x: %f\ny: %f\nz: %f \n acc: %b",
-                accValues[0], accValues[1], accValues[2], accelerating);
+    /**
+     * Speed measurement mode: doppler, position derived or automatic by reported accuracies
+     */
+    void setSpeedSource(SpeedSource speedSource){
+        tripCalculator.setSpeedSource(speedSource);
     }
 
     /**
-     * Detect acceleration
+     * Trip state as of last processed fix, safe to call from any thread
      */
-    private boolean accelerating = false;
-    private float accValues[] = { 0.0f, 0.0f, 0.0f };
-    private float lastAccValues[] = { 0.0f, 0.0f, 0.0f };
-    private long lastUpdate = 0;
+    TripSnapshot getSnapshot(){
+        return tripCalculator.getSnapshot();
+    }
 
     @Override
     public void onSensorChanged(SensorEvent sensorEvent) {
-        final long ACCELERATION_THRESHOLD = 20;
-
         Sensor sensor = sensorEvent.sensor;
+        sensorEvents.increment();
 
         if(sensor.getType() == Sensor.TYPE_ACCELEROMETER){
-            accValues[0] = sensorEvent.values[0];
-            accValues[1] = sensorEvent.values[1];
-            accValues[2] = sensorEvent.values[2];
-
-            long curTime = System.currentTimeMillis();
-
-            if ((curTime - lastUpdate) > 100) {
-                long diffTime = (curTime - lastUpdate);
-                lastUpdate = curTime;
-
-                float speed = Math.abs(accValues[0] + accValues[1] + accValues[2] -
-                        lastAccValues[0] - lastAccValues[1] - lastAccValues[2])/ diffTime * 10000;
-
-
-                accelerating = speed > ACCELERATION_THRESHOLD;
-
-                lastAccValues[0] = accValues[0];
-                lastAccValues[1] = accValues[1];
-                lastAccValues[2] = accValues[2];
+            tripCalculator.onAccelerometer(sensorEvent.timestamp,
+                    sensorEvent.values[0], sensorEvent.values[1], sensorEvent.values[2]);
+            dutyCycleScheduler.onAccelerometer(tripCalculator.isAccelerating()); //wake-up
+            PerformanceTimer timer = performanceTimer;
+            if(timer != null){
+                timer.onAccelerometer(sensorEvent.timestamp,
+                        sensorEvent.values[0], sensorEvent.values[1], sensorEvent.values[2]);
             }
         }
+        else if(sensor.getType() == Sensor.TYPE_GYROSCOPE){
+            tripCalculator.onGyroscope(sensorEvent.timestamp,
+                    sensorEvent.values[0], sensorEvent.values[1], sensorEvent.values[2]);
+        }
+        else if(sensor.getType() == Sensor.TYPE_MAGNETIC_FIELD){
+            tripCalculator.onMagnetometer(sensorEvent.timestamp,
+                    sensorEvent.values[0], sensorEvent.values[1], sensorEvent.values[2]);
+        }
+        else if(sensor.getType() == Sensor.TYPE_PRESSURE){
+            tripCalculator.onPressure(sensorEvent.timestamp, sensorEvent.values[0]);
+        }
     }
 
     @Override
@@ -1,18 +1,26 @@
 package com.jakdor.gpsspeedometer;
 
 import android.annotation.SuppressLint;
+import android.content.ComponentName;
+import android.content.Context;
 import android.content.Intent;
+import android.content.ServiceConnection;
 import android.content.SharedPreferences;
 import android.preference.PreferenceManager;
 import android.support.v7.app.ActionBar;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.IBinder;
 import android.view.MotionEvent;
+import android.util.Log;
 import android.view.View;
-import android.widget.TextView;
+import android.widget.Toast;
 
-import java.util.Locale;
+import com.jakdor.gpsspeedometer.core.SpeedSource;
+
+import java.io.File;
+import java.io.IOException;
 
 /**
  * Class defining MainActivity(main screen) behaviour
@@ -23,7 +31,7 @@ public class MainActivity extends AppCompatActivity {
     private static final int AUTO_HIDE_DELAY_MILLIS = 3000;
     private static final int UI_ANIMATION_DELAY = 300;
     private final Handler mHideHandler = new Handler();
-    private View mContentView;
+    private SpeedometerView mContentView;
 
     private final Runnable mHidePart2Runnable = new Runnable() {
         @SuppressLint("InlinedApi")
@@ -74,19 +82,27 @@ public class MainActivity extends AppCompatActivity {
         return false;
     };
 
-    private GpsLocator gpsLocator;
-    private LocationCalculator locationCalculator;
+    private TrackingService trackingService;
     private SharedPreferences preferences;
 
     /**
-     * GUI updates scheduled every 1000ms
+     * Binding to tracking service, activity only reads its snapshots
      */
-    Handler timerHandler = new Handler();
-    Runnable timerRunnable = new Runnable() {
+    private final ServiceConnection trackingConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            trackingService = ((TrackingService.LocalBinder) service).getService();
+            trackingService.setSpeedSource(SpeedSource.values()[prefSpeedSource]);
+            trackingService.setMetricsEnabled(prefDebugOverlay);
+            trackingService.setTelemetryUrl(prefTelemetryUrl);
+            trackingService.setPerformanceMode(prefPerformanceMode);
+            mContentView.setTrackingService(trackingService);
+        }
+
         @Override
-        public void run() { //main GUI update loop
-            updateGUI();
-            timerHandler.postDelayed(this, 1000);
+        public void onServiceDisconnected(ComponentName name) {
+            trackingService = null;
+            mContentView.setTrackingService(null);
         }
     };
 
@@ -94,23 +110,66 @@ public class MainActivity extends AppCompatActivity {
      * Loads saved user settings
      */
     int prefUnitSystem;
+    int prefSpeedSource;
+    boolean prefDebugOverlay;
+    String prefTelemetryUrl;
+    boolean prefPerformanceMode;
 
     private void updatePreferences(){
         prefUnitSystem = Integer.valueOf(preferences.getString("unit_system", "0"));
+        prefSpeedSource = Integer.valueOf(preferences.getString("speed_source", "0"));
+        prefDebugOverlay = preferences.getBoolean("debug_overlay", false);
+        prefTelemetryUrl = preferences.getString("telemetry_url", "");
+        prefPerformanceMode = preferences.getBoolean("performance_mode", false);
+        if(trackingService != null){
+            trackingService.setSpeedSource(SpeedSource.values()[prefSpeedSource]);
+            trackingService.setMetricsEnabled(prefDebugOverlay);
+            trackingService.setTelemetryUrl(prefTelemetryUrl);
+            trackingService.setPerformanceMode(prefPerformanceMode);
+        }
+
+        mContentView.setPreferences(preferences.getBoolean("reflection_mode", false), prefUnitSystem == 1,
+                preferences.getBoolean("display_trip_distance", true),
+                preferences.getBoolean("display_trip_time", true), prefDebugOverlay);
     }
 
     /**
-     * Updates GUI with current info
+     * Long press with debug overlay on writes metrics snapshot file, off main thread
      */
-    private void updateGUI(){
-        ((TextView)mContentView).setText(String.format(Locale.ENGLISH, "%f\n%f\n%f\n\n%f\n%f\n%d\n\n%s",
-                gpsLocator.getLatitude(),
-                gpsLocator.getLongitude(),
-                gpsLocator.getAltitude(),
-                locationCalculator.getSpeed(prefUnitSystem == 1),
-                locationCalculator.getDistanceSum(false),
-                locationCalculator.getTimer(),
-                locationCalculator.getAccelerometerData()));
+    private boolean dumpMetrics(){
+        final TrackingService service = trackingService;
+        if(!prefDebugOverlay || service == null){
+            return false;
+        }
+
+        new Thread(() -> {
+            String message;
+            try {
+                File file = service.dumpMetrics();
+                message = getString(R.string.metrics_dump_done, file.getAbsolutePath());
+            }
+            catch (IOException e){
+                Log.e("Exception", "Metrics dump problem: " + e.toString());
+                message = getString(R.string.metrics_dump_failed);
+            }
+            final String text = message;
+            runOnUiThread(() -> Toast.makeText(this, text, Toast.LENGTH_LONG).show());
+        }, "MetricsDump").start();
+        return true;
+    }
+
+    /**
+     * Long press in performance mode places lap gate across the road at next fix
+     */
+    private boolean requestLapGate(){
+        final TrackingService service = trackingService;
+        if(!prefPerformanceMode || service == null){
+            return false;
+        }
+
+        service.requestLapGate();
+        Toast.makeText(this, R.string.lap_gate_set, Toast.LENGTH_SHORT).show();
+        return true;
     }
 
     @Override
@@ -121,20 +180,45 @@ public class MainActivity extends AppCompatActivity {
 
         mVisible = true;
         mControlsView = findViewById(R.id.fullscreen_content_controls);
-        mContentView = findViewById(R.id.fullscreen_content);
+        mContentView = (SpeedometerView) findViewById(R.id.fullscreen_content);
 
         // Set up the user interaction to manually show or hide the system UI.
         mContentView.setOnClickListener((View view) -> toggle());
+        mContentView.setOnLongClickListener((View view) -> dumpMetrics() || requestLapGate());
 
         findViewById(R.id.dummy_button).setOnTouchListener(mDelayHideTouchListener);
+        findViewById(R.id.history_button).setOnClickListener((View view) ->
+                startActivity(new Intent(MainActivity.this, TripHistoryActivity.class)));
 
-        gpsLocator = new GpsLocator(this);
-        locationCalculator = new LocationCalculator(gpsLocator, this);
         preferences = PreferenceManager.getDefaultSharedPreferences(this);
+        updatePreferences();
 
-        timerHandler.postDelayed(timerRunnable, 0);
+        startService(new Intent(this, TrackingService.class));
+    }
 
-        updatePreferences();
+    @Override
+    protected void onStart() {
+        super.onStart();
+        bindService(new Intent(this, TrackingService.class), trackingConnection, Context.BIND_AUTO_CREATE);
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        unbindService(trackingConnection);
+        trackingService = null;
+        mContentView.setTrackingService(null);
+    }
+
+    /**
+     * Closing the app ends the trip, screen off / switching apps keeps tracking
+     */
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if(isFinishing()){
+            stopService(new Intent(this, TrackingService.class));
+        }
     }
 
     /**
@@ -191,13 +275,13 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onPause() {
         super.onPause();
-        timerHandler.removeCallbacks(timerRunnable);
+        mContentView.stop();
     }
 
     @Override
     protected void onResume() {
         super.onResume();
-        timerHandler.postDelayed(timerRunnable, 0);
         updatePreferences();
+        mContentView.start();
     }
 }
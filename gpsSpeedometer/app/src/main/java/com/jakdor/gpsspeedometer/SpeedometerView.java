@@ -0,0 +1,381 @@
+package com.jakdor.gpsspeedometer;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.util.AttributeSet;
+import android.view.Choreographer;
+import android.view.View;
+
+import com.jakdor.gpsspeedometer.core.FixedPointFormat;
+import com.jakdor.gpsspeedometer.core.PerformanceResult;
+import com.jakdor.gpsspeedometer.core.PerformanceTimer;
+import com.jakdor.gpsspeedometer.core.TripSnapshot;
+
+/**
+ * Speedometer HUD view, redrawn from vsync (Choreographer) at up to TARGET_FPS
+ * - digits formatted into preallocated char[] buffers, zero allocation per frame
+ * - invalidates only when displayed text changes
+ * - mirrored drawing in reflection mode, for projecting onto windshield
+ * - provisional (restored on launch, no fresh fix yet) reading dimmed, speed prefixed with '~'
+ * - performance timer results in top right corner, reformatted only when timer publishes new result
+ * - optional DebugOverlay with runtime metrics, never mirrored
+ */
+public class SpeedometerView extends View implements Choreographer.FrameCallback {
+
+    private static final int TARGET_FPS = 60;
+    private static final long FRAME_INTERVAL = 1000000000L / TARGET_FPS;
+    private static final double SPEED_EASING = 0.15; // s, time constant of displayed speed easing
+    private static final int PROVISIONAL_ALPHA = 0x60;
+
+    private static final char[] UNIT_KMH = "km/h".toCharArray();
+    private static final char[] UNIT_MPH = "mph".toCharArray();
+    private static final char[] UNIT_KM = " km".toCharArray();
+    private static final char[] UNIT_MI = " mi".toCharArray();
+    private static final int PERFORMANCE_LINES = 8;
+
+    private final Paint speedPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint unitPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint infoPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+    private final char[] speedChars = new char[16];
+    private int speedLength = 0;
+    private final char[] distanceChars = new char[32];
+    private int distanceLength = 0;
+    private final char[] timeChars = new char[32];
+    private int timeLength = 0;
+    private final char[][] performanceChars = new char[PERFORMANCE_LINES][48];
+    private final int[] performanceLengths = new int[PERFORMANCE_LINES];
+    private int performanceLineCount = 0;
+    private PerformanceResult shownResult = null;
+
+    private TrackingService trackingService;
+    private boolean running = false;
+    private long lastFrameNanos = 0;
+
+    private double displayedSpeed = 0;
+    private long shownSpeed = -1;
+    private long shownDistance = -1;
+    private long shownTime = -1;
+    private boolean shownProvisional = false;
+    private boolean firstDisplayReported = false;
+
+    private boolean reflectionMode = false;
+    private boolean retardedSystem = false;
+    private boolean displayTripDistance = true;
+    private boolean displayTripTime = true;
+    private DebugOverlay debugOverlay;
+
+    public SpeedometerView(Context context) {
+        super(context);
+        init();
+    }
+
+    public SpeedometerView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        init();
+    }
+
+    public SpeedometerView(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        init();
+    }
+
+    private void init(){
+        speedPaint.setColor(Color.WHITE);
+        speedPaint.setTextAlign(Paint.Align.CENTER);
+        speedPaint.setTypeface(Typeface.create(Typeface.MONOSPACE, Typeface.BOLD));
+
+        unitPaint.setColor(Color.WHITE);
+        unitPaint.setTextAlign(Paint.Align.CENTER);
+
+        infoPaint.setColor(Color.WHITE);
+        infoPaint.setTypeface(Typeface.MONOSPACE);
+    }
+
+    /**
+     * Source of trip snapshots, null while service is unbound
+     */
+    void setTrackingService(TrackingService trackingService){
+        this.trackingService = trackingService;
+    }
+
+    /**
+     * Applies user settings, forces text refresh
+     */
+    void setPreferences(boolean reflectionMode, boolean retardedSystem,
+                        boolean displayTripDistance, boolean displayTripTime, boolean debugOverlay){
+        this.reflectionMode = reflectionMode;
+        this.retardedSystem = retardedSystem;
+        this.displayTripDistance = displayTripDistance;
+        this.displayTripTime = displayTripTime;
+        if(debugOverlay != (this.debugOverlay != null)){
+            this.debugOverlay = debugOverlay ? new DebugOverlay() : null;
+            updateOverlayTextSize(getWidth(), getHeight());
+        }
+        shownSpeed = shownDistance = shownTime = -1;
+        shownResult = null;
+        performanceLineCount = 0;
+        invalidate();
+    }
+
+    /**
+     * Starts frame loop, call from onResume
+     */
+    void start(){
+        if(!running){
+            running = true;
+            lastFrameNanos = 0;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    /**
+     * Stops frame loop, call from onPause
+     */
+    void stop(){
+        running = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        stop();
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if(!running){
+            return;
+        }
+        Choreographer.getInstance().postFrameCallback(this);
+
+        long delta = frameTimeNanos - lastFrameNanos;
+        if(lastFrameNanos != 0 && delta < FRAME_INTERVAL - FRAME_INTERVAL / 4){
+            return;
+        }
+        double deltaTime = lastFrameNanos == 0 ? 0 : delta / 1e9;
+        lastFrameNanos = frameTimeNanos;
+
+        TrackingService service = trackingService;
+        if(service == null){
+            return;
+        }
+        TripSnapshot snapshot = service.getSnapshot();
+        boolean changed = updateText(snapshot, deltaTime);
+        if(!firstDisplayReported){
+            firstDisplayReported = true;
+            service.onFirstDisplay();
+        }
+        if(updatePerformance(service.getPerformanceResult())){
+            changed = true;
+        }
+        DebugOverlay overlay = debugOverlay;
+        if(overlay != null && overlay.update(snapshot, service.getMetrics(), frameTimeNanos)){
+            changed = true;
+        }
+        if(changed){
+            invalidate();
+        }
+    }
+
+    /**
+     * Formats current values into char buffers
+     * @return true if any displayed text changed
+     */
+    private boolean updateText(TripSnapshot snapshot, double deltaTime){
+        boolean changed = false;
+
+        boolean provisional = snapshot.isProvisional();
+        if(provisional != shownProvisional){
+            shownProvisional = provisional;
+            int alpha = provisional ? PROVISIONAL_ALPHA : 0xff;
+            speedPaint.setAlpha(alpha);
+            unitPaint.setAlpha(alpha);
+            infoPaint.setAlpha(alpha);
+            shownSpeed = shownDistance = shownTime = -1;
+            changed = true;
+        }
+
+        double speed = snapshot.getSpeed(retardedSystem);
+        displayedSpeed += (speed - displayedSpeed) * (1 - Math.exp(-deltaTime / SPEED_EASING));
+        if(Math.abs(speed - displayedSpeed) < 0.05){
+            displayedSpeed = speed;
+        }
+        long roundedSpeed = Math.round(displayedSpeed);
+        if(roundedSpeed != shownSpeed){
+            shownSpeed = roundedSpeed;
+            int start = 0;
+            if(provisional){
+                speedChars[start++] = '~';
+            }
+            speedLength = start + FixedPointFormat.formatLong(roundedSpeed, speedChars, start);
+            changed = true;
+        }
+
+        double distance = snapshot.getDistanceSum() / (retardedSystem ? 1609.344 : 1000);
+        long roundedDistance = Math.round(distance * 100);
+        if(roundedDistance != shownDistance){
+            shownDistance = roundedDistance;
+            distanceLength = FixedPointFormat.format(roundedDistance / 100.0, 2, distanceChars, 0);
+            char[] unit = retardedSystem ? UNIT_MI : UNIT_KM;
+            System.arraycopy(unit, 0, distanceChars, distanceLength, unit.length);
+            distanceLength += unit.length;
+            changed = true;
+        }
+
+        long time = snapshot.getTimer();
+        if(time != shownTime){
+            shownTime = time;
+            timeLength = FixedPointFormat.formatDuration(time, timeChars, 0);
+            changed = true;
+        }
+
+        return changed;
+    }
+
+    /**
+     * Formats performance timer lines: ready mark while armed, speed and distance targets
+     * (time s, trap speed), last and best lap
+     * @return true if result changed
+     */
+    private boolean updatePerformance(PerformanceResult result){
+        if(result == shownResult){
+            return false;
+        }
+        shownResult = result;
+        performanceLineCount = 0;
+        if(result == null){
+            return true;
+        }
+
+        if(result.getState() == PerformanceTimer.State.ARMED){
+            char[] line = nextPerformanceLine();
+            performanceLengths[performanceLineCount++] = put("ready", line, 0);
+        }
+        for(int i = 0; i < result.getSpeedTargetCount() && performanceLineCount < PERFORMANCE_LINES; ++i){
+            char[] line = nextPerformanceLine();
+            int length = put("0-", line, 0);
+            length += FixedPointFormat.formatLong(Math.round(result.getSpeedTarget(i) * 3.6), line, length);
+            line[length++] = ' ';
+            length += putTime(result.getSpeedTime(i), line, length);
+            performanceLengths[performanceLineCount++] = length;
+        }
+        for(int i = 0; i < result.getDistanceTargetCount() && performanceLineCount < PERFORMANCE_LINES; ++i){
+            char[] line = nextPerformanceLine();
+            int length;
+            if(result.getDistanceTarget(i) == PerformanceTimer.QUARTER_MILE){
+                length = put("1/4 mi", line, 0);
+            }
+            else {
+                length = FixedPointFormat.formatLong(Math.round(result.getDistanceTarget(i)), line, 0);
+                length += put(" m", line, length);
+            }
+            line[length++] = ' ';
+            length += putTime(result.getDistanceTime(i), line, length);
+            if(result.getDistanceTime(i) != PerformanceResult.NONE){
+                line[length++] = ' ';
+                line[length++] = '@';
+                double trapSpeed = result.getTrapSpeed(i) * (retardedSystem ? 2.2369363 : 3.6);
+                length += FixedPointFormat.formatLong(Math.round(trapSpeed), line, length);
+            }
+            performanceLengths[performanceLineCount++] = length;
+        }
+        int laps = result.getLapCount();
+        if(laps > 0 && performanceLineCount < PERFORMANCE_LINES){
+            char[] line = nextPerformanceLine();
+            int length = put("lap ", line, 0);
+            length += FixedPointFormat.formatLong(laps, line, length);
+            line[length++] = ' ';
+            length += putTime(result.getLap(laps - 1), line, length);
+            length += put(" best ", line, length);
+            length += putTime(result.getBestLap(), line, length);
+            performanceLengths[performanceLineCount++] = length;
+        }
+        return true;
+    }
+
+    private char[] nextPerformanceLine(){
+        return performanceChars[performanceLineCount];
+    }
+
+    private static int put(String text, char[] buffer, int offset){
+        text.getChars(0, text.length(), buffer, offset);
+        return text.length();
+    }
+
+    /**
+     * Duration in s with 2 decimals (10 ms result resolution), "--" if not reached
+     */
+    private static int putTime(long nanos, char[] buffer, int offset){
+        if(nanos == PerformanceResult.NONE){
+            return put("--", buffer, offset);
+        }
+        return FixedPointFormat.format(nanos / 1e9, 2, buffer, offset);
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        float size = Math.min(w, h);
+        speedPaint.setTextSize(size * 0.5f);
+        unitPaint.setTextSize(size * 0.08f);
+        infoPaint.setTextSize(size * 0.07f);
+        updateOverlayTextSize(w, h);
+    }
+
+    private void updateOverlayTextSize(int w, int h){
+        if(debugOverlay != null){
+            debugOverlay.setTextSize(Math.min(w, h) * 0.035f);
+        }
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        int width = getWidth();
+        int height = getHeight();
+
+        if(reflectionMode){
+            canvas.save();
+            canvas.scale(-1, 1, width / 2f, height / 2f);
+        }
+
+        float speedBaseline = height * 0.55f;
+        canvas.drawText(speedChars, 0, speedLength, width / 2f, speedBaseline, speedPaint);
+        char[] unit = retardedSystem ? UNIT_MPH : UNIT_KMH;
+        canvas.drawText(unit, 0, unit.length, width / 2f,
+                speedBaseline - unitPaint.ascent() * 1.5f, unitPaint);
+
+        float infoBaseline = height * 0.9f;
+        float margin = width * 0.05f;
+        if(displayTripDistance){
+            infoPaint.setTextAlign(Paint.Align.LEFT);
+            canvas.drawText(distanceChars, 0, distanceLength, margin, infoBaseline, infoPaint);
+        }
+        if(displayTripTime){
+            infoPaint.setTextAlign(Paint.Align.RIGHT);
+            canvas.drawText(timeChars, 0, timeLength, width - margin, infoBaseline, infoPaint);
+        }
+        if(performanceLineCount > 0){
+            infoPaint.setTextAlign(Paint.Align.RIGHT);
+            float lineHeight = infoPaint.getTextSize() * 1.2f;
+            for(int i = 0; i < performanceLineCount; ++i){
+                canvas.drawText(performanceChars[i], 0, performanceLengths[i], width - margin,
+                        height * 0.05f + lineHeight * (i + 1), infoPaint);
+            }
+        }
+
+        if(reflectionMode){
+            canvas.restore();
+        }
+
+        DebugOverlay overlay = debugOverlay;
+        if(overlay != null){
+            overlay.draw(canvas, margin, height * 0.08f);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.jakdor.gpsspeedometer;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Binder;
+import android.os.Build;
+import android.os.Debug;
+import android.os.IBinder;
+import android.os.Process;
+import android.os.SystemClock;
+import android.support.v4.app.NotificationCompat;
+
+import com.jakdor.gpsspeedometer.core.IsoTime;
+import com.jakdor.gpsspeedometer.core.Metrics;
+import com.jakdor.gpsspeedometer.core.PerformanceResult;
+import com.jakdor.gpsspeedometer.core.SpeedSource;
+import com.jakdor.gpsspeedometer.core.TripSnapshot;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Foreground service owning tracking pipeline (GpsLocator, LocationCalculator),
+ * keeps measuring with screen off; activities bind and poll TripSnapshot.
+ * Lifecycle: started by MainActivity, stopped when user closes the app or from notification
+ */
+public class TrackingService extends Service {
+
+    static final String ACTION_STOP = "com.jakdor.gpsspeedometer.action.STOP_TRACKING";
+
+    private static final int NOTIFICATION_ID = 1;
+    private static final String CHANNEL_ID = "tracking";
+
+    private final IBinder binder = new LocalBinder();
+    private final Metrics metrics = new Metrics();
+
+    private GpsLocator gpsLocator;
+    private LocationCalculator locationCalculator;
+    private long startElapsedRealtime; // ms, process start (API 24+) or service creation
+    private volatile long timeToFirstDisplay = -1; // ms
+
+    /**
+     * Same process binder, hands out service instance
+     */
+    class LocalBinder extends Binder {
+        TrackingService getService(){
+            return TrackingService.this;
+        }
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        startElapsedRealtime = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N
+                ? Process.getStartElapsedRealtime() : SystemClock.elapsedRealtime();
+        gpsLocator = new GpsLocator(this);
+        locationCalculator = new LocationCalculator(gpsLocator, this, metrics);
+        metrics.gauge(Metrics.TIME_TO_FIRST_FIX, gpsLocator::getTimeToFirstFix);
+        metrics.gauge(Metrics.TIME_TO_FIRST_DISPLAY, () -> timeToFirstDisplay);
+        metrics.gauge(Metrics.GC_COUNT, () -> getRuntimeStat("art.gc.gc-count"));
+        metrics.gauge(Metrics.GC_TIME, () -> getRuntimeStat("art.gc.gc-time"));
+        metrics.gauge(Metrics.ALLOCATED_BYTES, () -> getRuntimeStat("art.gc.bytes-allocated"));
+        startForeground(NOTIFICATION_ID, buildNotification());
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        if(intent != null && ACTION_STOP.equals(intent.getAction())){
+            stopForeground(true);
+            stopSelf();
+        }
+        return START_NOT_STICKY;
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return binder;
+    }
+
+    @Override
+    public void onDestroy() {
+        locationCalculator.close();
+        gpsLocator.close();
+        super.onDestroy();
+    }
+
+    /**
+     * Trip state as of last processed fix
+     */
+    TripSnapshot getSnapshot(){
+        return locationCalculator.getSnapshot();
+    }
+
+    /**
+     * Startup trace end point, first frame showing trip state (restored or measured), main thread
+     */
+    void onFirstDisplay(){
+        if(timeToFirstDisplay < 0){
+            timeToFirstDisplay = SystemClock.elapsedRealtime() - startElapsedRealtime;
+        }
+    }
+
+    void setSpeedSource(SpeedSource speedSource){
+        locationCalculator.setSpeedSource(speedSource);
+    }
+
+    /**
+     * Live telemetry upload target, empty disables
+     */
+    void setTelemetryUrl(String url){
+        locationCalculator.setTelemetryUrl(url);
+    }
+
+    /**
+     * Performance timer switch, maximum gps and accelerometer rate while on
+     */
+    void setPerformanceMode(boolean enabled){
+        locationCalculator.setPerformanceMode(enabled);
+    }
+
+    /**
+     * Latest performance timer result, null when performance mode is off
+     */
+    PerformanceResult getPerformanceResult(){
+        return locationCalculator.getPerformanceResult();
+    }
+
+    void requestLapGate(){
+        locationCalculator.requestLapGate();
+    }
+
+    Metrics getMetrics(){
+        return metrics;
+    }
+
+    /**
+     * Debug instrumentation switch, counts collected so far are kept
+     */
+    void setMetricsEnabled(boolean enabled){
+        metrics.setEnabled(enabled);
+    }
+
+    /**
+     * Writes metrics snapshot into app external files dir, call off main thread
+     * @return written file
+     */
+    File dumpMetrics() throws IOException {
+        StringBuilder name = new StringBuilder("metrics-");
+        IsoTime.format(System.currentTimeMillis(), name);
+        name.setLength(8 + 19); //drop millis and zone
+        for(int i = 8; i < name.length(); ++i){
+            if(name.charAt(i) == ':'){
+                name.setCharAt(i, '-');
+            }
+        }
+
+        File dir = getExternalFilesDir(null);
+        File file = new File(dir != null ? dir : getFilesDir(), name.append(".txt").toString());
+        metrics.writeSnapshot(file);
+        return file;
+    }
+
+    /**
+     * ART runtime statistic (API 23+), -1 if not available
+     */
+    private static long getRuntimeStat(String key){
+        if(Build.VERSION.SDK_INT < Build.VERSION_CODES.M){
+            return -1;
+        }
+        String value = Debug.getRuntimeStat(key);
+        try {
+            return value != null ? Long.parseLong(value) : -1;
+        }
+        catch (NumberFormatException e){
+            return -1;
+        }
+    }
+
+    /**
+     * Ongoing notification, opens speedometer, stop action ends tracking
+     */
+    private Notification buildNotification(){
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.O){
+            NotificationManager notificationManager =
+                    (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+            notificationManager.createNotificationChannel(new NotificationChannel(CHANNEL_ID,
+                    getString(R.string.notification_channel_tracking), NotificationManager.IMPORTANCE_LOW));
+        }
+
+        PendingIntent openIntent = PendingIntent.getActivity(this, 0,
+                new Intent(this, MainActivity.class), 0);
+        PendingIntent stopIntent = PendingIntent.getService(this, 0,
+                new Intent(this, TrackingService.class).setAction(ACTION_STOP), 0);
+
+        return new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setContentTitle(getString(R.string.app_name))
+                .setContentText(getString(R.string.notification_tracking))
+                .setContentIntent(openIntent)
+                .addAction(0, getString(R.string.notification_stop), stopIntent)
+                .setOngoing(true)
+                .setOnlyAlertOnce(true)
+                .setPriority(NotificationCompat.PRIORITY_LOW)
+                .build();
+    }
+}
@@ -0,0 +1,467 @@
+package com.jakdor.gpsspeedometer;
+
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.os.Bundle;
+import android.preference.PreferenceManager;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
+import android.widget.BaseAdapter;
+import android.widget.ListView;
+import android.widget.Spinner;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import com.jakdor.gpsspeedometer.core.ExportFormat;
+import com.jakdor.gpsspeedometer.core.TrackCursor;
+import com.jakdor.gpsspeedometer.core.TrackExporter;
+import com.jakdor.gpsspeedometer.core.TrackImporter;
+import com.jakdor.gpsspeedometer.core.TrackReader;
+import com.jakdor.gpsspeedometer.core.TripFilter;
+import com.jakdor.gpsspeedometer.core.TripIndex;
+import com.jakdor.gpsspeedometer.core.TripSnapshot;
+import com.jakdor.gpsspeedometer.core.Tracks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.DateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Class defining TripHistoryActivity(trip history screen) behaviour
+ * - lists trips straight from TripIndex entries, no track file opened
+ * - selected trip points are read lazily, one page at a time
+ * - listed trips are exported as zip of GPX/KML/CSV files, tracks imported from single files or zips
+ */
+public class TripHistoryActivity extends AppCompatActivity {
+
+    private static final long DAY = 24 * 3600 * 1000L;
+    private static final long[] PERIODS = {0, 7 * DAY, 30 * DAY, 365 * DAY}; //pref_history_period, 0 = all
+    private static final int REQUEST_EXPORT = 1;
+    private static final int REQUEST_IMPORT = 2;
+
+    private File tracksDir;
+    private TripIndex tripIndex;
+    private boolean retardedSystem;
+
+    private ListView listView;
+    private TextView emptyView;
+    private Spinner periodSpinner;
+    private Spinner formatSpinner;
+    private View actionsView;
+    private TripAdapter tripAdapter;
+    private PointAdapter pointAdapter;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_trip_history);
+
+        tracksDir = LocationCalculator.getTracksDir(this);
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(this);
+        retardedSystem = Integer.valueOf(preferences.getString("unit_system", "0")) == 1;
+
+        listView = (ListView) findViewById(R.id.trip_list);
+        emptyView = (TextView) findViewById(R.id.trip_list_empty);
+        listView.setEmptyView(emptyView);
+        tripAdapter = new TripAdapter();
+        listView.setAdapter(tripAdapter);
+        listView.setOnItemClickListener((AdapterView<?> parent, View view, int position, long id) -> {
+            if(pointAdapter == null){
+                openTrip(tripAdapter.getStartTime(position));
+            }
+        });
+
+        periodSpinner = (Spinner) findViewById(R.id.trip_period);
+        ArrayAdapter<CharSequence> periodAdapter = ArrayAdapter.createFromResource(this,
+                R.array.pref_history_period, android.R.layout.simple_spinner_item);
+        periodAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        periodSpinner.setAdapter(periodAdapter);
+        periodSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                applyFilter();
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+            }
+        });
+
+        actionsView = findViewById(R.id.trip_actions);
+        formatSpinner = (Spinner) findViewById(R.id.trip_export_format);
+        ArrayAdapter<CharSequence> formatAdapter = ArrayAdapter.createFromResource(this,
+                R.array.trip_export_format, android.R.layout.simple_spinner_item);
+        formatAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        formatSpinner.setAdapter(formatAdapter);
+
+        findViewById(R.id.trip_export).setOnClickListener(view -> {
+            if(tripIndex == null){
+                return;
+            }
+            Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT)
+                    .addCategory(Intent.CATEGORY_OPENABLE)
+                    .setType("application/zip")
+                    .putExtra(Intent.EXTRA_TITLE, "trips.zip");
+            startActivityForResult(intent, REQUEST_EXPORT);
+        });
+        findViewById(R.id.trip_import).setOnClickListener(view -> {
+            Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT)
+                    .addCategory(Intent.CATEGORY_OPENABLE)
+                    .setType("*/*");
+            startActivityForResult(intent, REQUEST_IMPORT);
+        });
+
+        loadIndex();
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if(resultCode != RESULT_OK || data == null || data.getData() == null){
+            return;
+        }
+
+        if(requestCode == REQUEST_EXPORT){
+            exportTrips(data.getData());
+        }
+        else if(requestCode == REQUEST_IMPORT){
+            importTrips(data.getData());
+        }
+    }
+
+    /**
+     * Streams listed trips into zip document off main thread, format as selected
+     */
+    private void exportTrips(Uri uri){
+        final long[] startTimes = new long[tripAdapter.getCount()];
+        for(int i = 0; i < startTimes.length; ++i){
+            startTimes[i] = tripAdapter.getStartTime(i);
+        }
+        final TrackExporter exporter = new TrackExporter(ExportFormat.values()[formatSpinner.getSelectedItemPosition()]);
+
+        new Thread(() -> {
+            String message;
+            try {
+                OutputStream output = getContentResolver().openOutputStream(uri);
+                try {
+                    message = getString(R.string.trip_export_done, exporter.exportZip(tracksDir, startTimes, output));
+                }
+                finally {
+                    output.close();
+                }
+            }
+            catch (IOException e){
+                Log.e("Exception", "Trip export problem: " + e.toString());
+                message = getString(R.string.trip_export_failed);
+            }
+            showMessage(message);
+        }, "TripExport").start();
+    }
+
+    /**
+     * Imports trips from single track file or zip off main thread, reloads list afterwards
+     */
+    private void importTrips(Uri uri){
+        final File indexFile = new File(tracksDir, TripIndex.FILE_NAME);
+        new Thread(() -> {
+            String message;
+            try {
+                if(!tracksDir.isDirectory() && !tracksDir.mkdirs()){
+                    throw new IOException("Unable to create tracks dir: " + tracksDir);
+                }
+                TrackImporter importer = new TrackImporter(tracksDir, TripIndex.open(indexFile));
+                InputStream input = getContentResolver().openInputStream(uri);
+                try {
+                    message = getString(R.string.trip_import_done, importer.importStream(input));
+                }
+                finally {
+                    input.close();
+                }
+            }
+            catch (IOException e){
+                Log.e("Exception", "Trip import problem: " + e.toString());
+                message = getString(R.string.trip_import_failed);
+            }
+            showMessage(message);
+            runOnUiThread(() -> {
+                if(!isFinishing()){
+                    loadIndex();
+                }
+            });
+        }, "TripImport").start();
+    }
+
+    private void showMessage(final String message){
+        runOnUiThread(() -> Toast.makeText(this, message, Toast.LENGTH_SHORT).show());
+    }
+
+    /**
+     * Loads index file off main thread, single read of packed entries;
+     * unreadable index (killed during rewrite) is rebuilt from track files first
+     */
+    private void loadIndex(){
+        emptyView.setText(R.string.trip_history_loading);
+        final File indexFile = new File(tracksDir, TripIndex.FILE_NAME);
+        new Thread(() -> {
+            TripIndex loaded;
+            try {
+                loaded = TripIndex.open(indexFile);
+                if(loaded.isUnreadable()){
+                    loaded.indexMissing(tracksDir, Long.MIN_VALUE);
+                }
+            }
+            catch (IOException e){
+                Log.e("Exception", "Trip history loading problem: " + e.toString());
+                runOnUiThread(() -> emptyView.setText(R.string.trip_history_failed));
+                return;
+            }
+            runOnUiThread(() -> {
+                if(!isFinishing()) {
+                    tripIndex = loaded;
+                    emptyView.setText(R.string.trip_history_empty);
+                    applyFilter();
+                }
+            });
+        }, "TripHistory").start();
+    }
+
+    /**
+     * Lists trips started within selected period
+     */
+    private void applyFilter(){
+        if(tripIndex == null){
+            return;
+        }
+
+        TripFilter filter = new TripFilter();
+        long period = PERIODS[periodSpinner.getSelectedItemPosition()];
+        if(period > 0){
+            filter.setTimeRange(System.currentTimeMillis() - period, Long.MAX_VALUE);
+        }
+        tripAdapter.setEntries(tripIndex.query(filter));
+    }
+
+    /**
+     * Swaps trip list for points of selected trip
+     */
+    private void openTrip(long startTime){
+        try {
+            pointAdapter = new PointAdapter(Tracks.open(TripIndex.getTrackFile(tracksDir, startTime)));
+        }
+        catch (IOException e){
+            Log.e("Exception", "Track opening problem: " + e.toString());
+            return;
+        }
+        periodSpinner.setVisibility(View.GONE);
+        actionsView.setVisibility(View.GONE);
+        listView.setAdapter(pointAdapter);
+    }
+
+    private void closeTrip(){
+        pointAdapter.close();
+        pointAdapter = null;
+        periodSpinner.setVisibility(View.VISIBLE);
+        actionsView.setVisibility(View.VISIBLE);
+        listView.setAdapter(tripAdapter);
+    }
+
+    @Override
+    public void onBackPressed() {
+        if(pointAdapter != null){
+            closeTrip();
+            return;
+        }
+        super.onBackPressed();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if(pointAdapter != null){
+            pointAdapter.close();
+            pointAdapter = null;
+        }
+    }
+
+    private View twoLineView(View convertView, ViewGroup parent){
+        if(convertView != null){
+            return convertView;
+        }
+        return LayoutInflater.from(this).inflate(android.R.layout.simple_list_item_2, parent, false);
+    }
+
+    /**
+     * Trip rows bound directly from index entries, newest first
+     */
+    private class TripAdapter extends BaseAdapter {
+
+        private final DateFormat dateFormat = DateFormat.getDateTimeInstance(DateFormat.MEDIUM, DateFormat.SHORT);
+        private final Date date = new Date();
+        private int[] entries = new int[0];
+
+        void setEntries(int[] entries){
+            this.entries = entries;
+            notifyDataSetChanged();
+        }
+
+        long getStartTime(int position){
+            return tripIndex.getStartTime(entries[position]);
+        }
+
+        @Override
+        public int getCount() {
+            return entries.length;
+        }
+
+        @Override
+        public Object getItem(int position) {
+            return getStartTime(position);
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return getStartTime(position);
+        }
+
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            View view = twoLineView(convertView, parent);
+            int entry = entries[position];
+
+            date.setTime(tripIndex.getStartTime(entry));
+            ((TextView) view.findViewById(android.R.id.text1)).setText(dateFormat.format(date));
+
+            long movingTime = tripIndex.getMovingTime(entry) / 1000;
+            String duration = String.format(Locale.ENGLISH, "%d:%02d:%02d",
+                    movingTime / 3600, movingTime / 60 % 60, movingTime % 60);
+            String summary;
+            if(retardedSystem){
+                summary = getString(R.string.trip_summary_imperial,
+                        tripIndex.getDistance(entry) / 1609.344, duration,
+                        tripIndex.getMaxSpeed(entry) * TripSnapshot.MS_TO_MPH,
+                        tripIndex.getElevationGain(entry) * TripSnapshot.M_TO_KFT * 1000);
+            }
+            else {
+                summary = getString(R.string.trip_summary_metric,
+                        tripIndex.getDistance(entry) / 1000, duration,
+                        tripIndex.getMaxSpeed(entry) * TripSnapshot.MS_TO_KMH,
+                        tripIndex.getElevationGain(entry));
+            }
+            ((TextView) view.findViewById(android.R.id.text2)).setText(summary);
+            return view;
+        }
+    }
+
+    /**
+     * Track points of single trip, records read on demand in pages of TrackReader.PAGE_RECORDS,
+     * only current page held in memory
+     */
+    private class PointAdapter extends BaseAdapter {
+
+        private final TrackCursor reader;
+        private final DateFormat timeFormat = DateFormat.getTimeInstance(DateFormat.MEDIUM);
+        private final Date date = new Date();
+
+        private final long[] times = new long[TrackReader.PAGE_RECORDS];
+        private final double[] latitudes = new double[TrackReader.PAGE_RECORDS];
+        private final double[] longitudes = new double[TrackReader.PAGE_RECORDS];
+        private final float[] speeds = new float[TrackReader.PAGE_RECORDS];
+        private final boolean[] valid = new boolean[TrackReader.PAGE_RECORDS];
+        private long pageStart = -1;
+
+        PointAdapter(TrackCursor reader){
+            this.reader = reader;
+        }
+
+        /**
+         * Reads page holding given record, corrupted records stay invalid
+         */
+        private void loadPage(long index) throws IOException {
+            long start = index - index % TrackReader.PAGE_RECORDS;
+            if(start == pageStart){
+                return;
+            }
+
+            pageStart = -1;
+            Arrays.fill(valid, false);
+            reader.seek(start);
+            while (reader.next()){
+                int slot = (int) (reader.getIndex() - start);
+                if(slot >= TrackReader.PAGE_RECORDS){
+                    break;
+                }
+                times[slot] = reader.getTime();
+                latitudes[slot] = reader.getLatitude();
+                longitudes[slot] = reader.getLongitude();
+                speeds[slot] = reader.getSpeed();
+                valid[slot] = true;
+                if(slot == TrackReader.PAGE_RECORDS - 1){
+                    break;
+                }
+            }
+            pageStart = start;
+        }
+
+        void close(){
+            try {
+                reader.close();
+            }
+            catch (IOException e){
+                Log.e("Exception", "Track closing problem: " + e.toString());
+            }
+        }
+
+        @Override
+        public int getCount() {
+            return (int) reader.getRecordCount();
+        }
+
+        @Override
+        public Object getItem(int position) {
+            return position;
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return position;
+        }
+
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            View view = twoLineView(convertView, parent);
+            TextView title = (TextView) view.findViewById(android.R.id.text1);
+            TextView details = (TextView) view.findViewById(android.R.id.text2);
+
+            int slot = position % TrackReader.PAGE_RECORDS;
+            try {
+                loadPage(position);
+            }
+            catch (IOException e){
+                Log.e("Exception", "Track reading problem: " + e.toString());
+            }
+            if(pageStart < 0 || !valid[slot]){
+                title.setText(R.string.trip_point_corrupted);
+                details.setText("");
+                return view;
+            }
+
+            date.setTime(times[slot]);
+            title.setText(timeFormat.format(date));
+            double speed = retardedSystem ? speeds[slot] * TripSnapshot.MS_TO_MPH : speeds[slot] * TripSnapshot.MS_TO_KMH;
+            details.setText(String.format(Locale.ENGLISH, "%.6f, %.6f  %.0f %s",
+                    latitudes[slot], longitudes[slot], speed, retardedSystem ? "mph" : "km/h"));
+            return view;
+        }
+    }
+}
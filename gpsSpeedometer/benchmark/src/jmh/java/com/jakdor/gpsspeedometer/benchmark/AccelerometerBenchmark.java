@@ -0,0 +1,45 @@
+package com.jakdor.gpsspeedometer.benchmark;
+
+import com.jakdor.gpsspeedometer.core.AccelerationDetector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Accelerometer math from LocationCalculator.onSensorChanged(), one op = one sensor event
+ * (ring buffer insert, window statistics update, motion decision)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AccelerometerBenchmark {
+
+    @Param({"walking", "urban", "motorway"})
+    public String dataset;
+
+    private TrackDataset track;
+    private AccelerationDetector accelerationDetector;
+    private int index;
+    private long time;
+
+    @Setup
+    public void setup(){
+        track = TrackDataset.forName(dataset);
+        accelerationDetector = new AccelerationDetector();
+    }
+
+    @Benchmark
+    public boolean onSensorChanged(){
+        int i = index = TrackDataset.nextSample(index);
+        time += 1000000000L / TrackDataset.ACC_RATE; // monotonic across dataset wrap-around
+        return accelerationDetector.update(time, track.accX[i], track.accY[i], track.accZ[i]);
+    }
+}
@@ -0,0 +1,88 @@
+package com.jakdor.gpsspeedometer.benchmark;
+
+import com.jakdor.gpsspeedometer.core.AltitudeAverager;
+import com.jakdor.gpsspeedometer.core.AltitudeFilter;
+import com.jakdor.gpsspeedometer.core.SpeedAverager;
+import com.jakdor.gpsspeedometer.core.SpeedKalmanFilter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per fix smoothing done in LocationCalculator, one op = one fix
+ * - calculateSpeed: speed bucket averaging (baseline)
+ * - calculateSpeedKalman: SpeedKalmanFilter correction, with 50 accelerometer rate predictions per fix
+ * - updateAltitudeAveraging: altitude bucket averaging from update()
+ * - updateAltitudeFusion: AltitudeFilter with 25 barometer samples and gps altitude per fix
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AveragingBenchmark {
+
+    private static final int PRESSURE_RATE = 25; // Hz
+
+    @Param({"walking", "urban", "motorway"})
+    public String dataset;
+
+    private TrackDataset track;
+    private SpeedAverager speedAverager;
+    private SpeedKalmanFilter speedFilter;
+    private AltitudeAverager altitudeAverager;
+    private AltitudeFilter altitudeFilter;
+    private int index;
+    private long time;
+
+    @Setup
+    public void setup(){
+        track = TrackDataset.forName(dataset);
+        speedAverager = new SpeedAverager();
+        speedFilter = new SpeedKalmanFilter();
+        altitudeAverager = new AltitudeAverager();
+        altitudeFilter = new AltitudeFilter();
+    }
+
+    @Benchmark
+    public double calculateSpeed(){
+        int i = index = (index + 1) & TrackDataset.MASK;
+        return speedAverager.add(track.hopDistance[i]);
+    }
+
+    @Benchmark
+    public double calculateSpeedKalman(){
+        int i = index = (index + 1) & TrackDataset.MASK;
+        long fixTime = time += 1000000000L;
+        for(int j = TrackDataset.ACC_RATE - 1; j >= 0; --j){
+            speedFilter.predict(fixTime - j * (1000000000L / TrackDataset.ACC_RATE),
+                    SpeedKalmanFilter.DEFAULT_PROCESS_NOISE);
+        }
+        speedFilter.correct(fixTime, track.hopDistance[i], SpeedKalmanFilter.positionSpeedVariance(5, 1));
+        return speedFilter.getSpeed();
+    }
+
+    @Benchmark
+    public double updateAltitudeAveraging(){
+        int i = index = (index + 1) & TrackDataset.MASK;
+        altitudeAverager.add(track.altitude[i]);
+        return altitudeAverager.getAverage();
+    }
+
+    @Benchmark
+    public double updateAltitudeFusion(){
+        int i = index = (index + 1) & TrackDataset.MASK;
+        long fixTime = time += 1000000000L;
+        float pressure = 1000f - (float) (track.altitude[i] - 120) * 0.12f; // about 0.12 hPa per m
+        for(int j = PRESSURE_RATE - 1; j >= 0; --j){
+            altitudeFilter.onPressure(fixTime - j * (1000000000L / PRESSURE_RATE), pressure);
+        }
+        return altitudeFilter.onGpsAltitude(fixTime, track.altitude[i], 5);
+    }
+}
@@ -0,0 +1,79 @@
+package com.jakdor.gpsspeedometer.benchmark;
+
+import com.jakdor.gpsspeedometer.core.DeadReckoning;
+import com.jakdor.gpsspeedometer.core.Fix;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DeadReckoning sensor thread loop, one op = accelerometer, gyroscope and magnetometer sample
+ * - gps: fix handed over every second, gravity filter and learning
+ * - outage: fix every 60 s, speed and position integration in between
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DeadReckoningBenchmark {
+
+    private static final int RATE = 50; // Hz
+    private static final long STEP = 1000000000L / RATE;
+
+    @Param({"gps", "outage"})
+    public String state;
+
+    private TrackDataset track;
+    private DeadReckoning deadReckoning;
+    private int fixInterval; // ops
+    private int index;
+    private int sinceFix;
+    private long time;
+    private double north;
+
+    /**
+     * 20 s of 1 m/s^2 acceleration north with fixes, forward axis learned
+     */
+    @Setup
+    public void setup(){
+        track = TrackDataset.forName("urban");
+        deadReckoning = new DeadReckoning();
+        fixInterval = "outage".equals(state) ? 60 * RATE : RATE;
+        for(int second = 0; second <= 20; ++second){
+            north = second * second / 2.0;
+            fix(second);
+            for(int j = 0; j < RATE; ++j){
+                time += STEP;
+                deadReckoning.onAccelerometer(time, 1.0f, 0, 9.81f);
+                deadReckoning.onGyroscope(time, 0, 0, 0);
+                deadReckoning.onMagnetometer(time, 0, 20, -40);
+            }
+        }
+    }
+
+    private void fix(double speed){
+        deadReckoning.onGpsFix(new Fix(time, 0, 51.1 + north / 111250.0, 17.03, 0, 3), speed);
+    }
+
+    @Benchmark
+    public double onSensorChanged(){
+        int i = index = TrackDataset.nextSample(index);
+        time += STEP;
+        if(++sinceFix == fixInterval){
+            sinceFix = 0;
+            north += 20.0 * fixInterval / RATE;
+            fix(20);
+        }
+        deadReckoning.onAccelerometer(time, track.accX[i], track.accY[i], track.accZ[i]);
+        deadReckoning.onGyroscope(time, 0.01f, -0.02f, 0.03f);
+        deadReckoning.onMagnetometer(time, 0, 20, -40);
+        return deadReckoning.getSpeed();
+    }
+}
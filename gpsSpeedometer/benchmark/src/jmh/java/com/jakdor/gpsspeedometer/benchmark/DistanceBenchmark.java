@@ -0,0 +1,58 @@
+package com.jakdor.gpsspeedometer.benchmark;
+
+import com.jakdor.gpsspeedometer.core.Geodesy;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per fix distance kernels used by LocationCalculator, one op = one pair of consecutive fixes
+ * - calculateDistanceAdvance: adaptive Geodesy.distance() (current)
+ * - calculateDistanceVincenty: full Vincenty loop on every pair (baseline before fast path)
+ * - calculateDistanceSimple: haversine
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DistanceBenchmark {
+
+    @Param({"walking", "urban", "motorway"})
+    public String dataset;
+
+    private TrackDataset track;
+    private int index;
+
+    @Setup
+    public void setup(){
+        track = TrackDataset.forName(dataset);
+    }
+
+    @Benchmark
+    public double calculateDistanceAdvance(){
+        int i = index = (index + 1) & TrackDataset.MASK;
+        return Geodesy.distance(track.latitude[i], track.longitude[i],
+                track.latitude[i + 1], track.longitude[i + 1]);
+    }
+
+    @Benchmark
+    public double calculateDistanceVincenty(){
+        int i = index = (index + 1) & TrackDataset.MASK;
+        return Geodesy.distanceVincenty(track.latitude[i], track.longitude[i],
+                track.latitude[i + 1], track.longitude[i + 1]);
+    }
+
+    @Benchmark
+    public double calculateDistanceSimple(){
+        int i = index = (index + 1) & TrackDataset.MASK;
+        return Geodesy.distanceHaversine(track.latitude[i], track.longitude[i],
+                track.latitude[i + 1], track.longitude[i + 1]);
+    }
+}
@@ -0,0 +1,45 @@
+package com.jakdor.gpsspeedometer.benchmark;
+
+import com.jakdor.gpsspeedometer.core.FixedPointFormat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per frame HUD text cost, one op = speed, distance and trip time of one frame;
+ * run with gc profiler, fixedPoint should report 0 B/op
+ * - stringFormat: String.format as in old MainActivity.updateGUI()
+ * - fixedPoint: FixedPointFormat into preallocated buffers (SpeedometerView)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HudFormatBenchmark {
+
+    private final char[] buffer = new char[64];
+    private double speed = 87.3;
+    private double distance = 12345.6;
+    private long timer = 3600;
+
+    @Benchmark
+    public String stringFormat(){
+        speed += 0.01;
+        return String.format(Locale.ENGLISH, "%f\n%f\n%d", speed, distance / 1000, ++timer);
+    }
+
+    @Benchmark
+    public int fixedPoint(){
+        speed += 0.01;
+        int length = FixedPointFormat.formatLong(Math.round(speed), buffer, 0);
+        length += FixedPointFormat.format(distance / 1000, 2, buffer, length);
+        length += FixedPointFormat.formatDuration(++timer, buffer, length);
+        return length + buffer[0];
+    }
+}
@@ -0,0 +1,111 @@
+package com.jakdor.gpsspeedometer.benchmark;
+
+import com.jakdor.gpsspeedometer.core.Fix;
+import com.jakdor.gpsspeedometer.core.Geodesy;
+import com.jakdor.gpsspeedometer.core.MapMatcher;
+import com.jakdor.gpsspeedometer.core.RoadGraph;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Map matching latency, one op = one fix matched (candidate lookup, Viterbi column, path distance);
+ * street grid of size x size crossings 100 m apart, fixes loop around inner block ring at 10 m/s
+ * with 5 m gps noise, so every 10th fix is next to crossing
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MapMatcherBenchmark {
+
+    private static final double LATITUDE = 51.1079;
+    private static final double LONGITUDE = 17.0385;
+    private static final double BLOCK = 100; // m
+    private static final double STEP = 10; // m per fix
+
+    @Param({"11", "101"})
+    public int size;
+
+    private MapMatcher matcher;
+    private Fix[] fixes;
+    private int index;
+
+    @Setup
+    public void setup() throws IOException {
+        double latitudeMeter = 1 / Geodesy.metersPerDegreeLatitude(LATITUDE);
+        double longitudeMeter = 1 / Geodesy.metersPerDegreeLongitude(LATITUDE);
+
+        StringBuilder osm = new StringBuilder("<osm version=\"0.6\">\n");
+        for(int row = 0; row < size; ++row){
+            for(int column = 0; column < size; ++column){
+                osm.append("<node id=\"").append(row * size + column + 1)
+                        .append("\" lat=\"").append(LATITUDE + row * BLOCK * latitudeMeter)
+                        .append("\" lon=\"").append(LONGITUDE + column * BLOCK * longitudeMeter).append("\"/>\n");
+            }
+        }
+        for(int i = 0; i < size; ++i){
+            osm.append("<way id=\"").append(2 * i + 1).append("\">");
+            for(int j = 0; j < size; ++j){
+                osm.append("<nd ref=\"").append(i * size + j + 1).append("\"/>");
+            }
+            osm.append("<tag k=\"highway\" v=\"residential\"/></way>\n<way id=\"").append(2 * i + 2).append("\">");
+            for(int j = 0; j < size; ++j){
+                osm.append("<nd ref=\"").append(j * size + i + 1).append("\"/>");
+            }
+            osm.append("<tag k=\"highway\" v=\"residential\"/></way>\n");
+        }
+        matcher = new MapMatcher(RoadGraph.loadOsm(new StringReader(osm.append("</osm>\n").toString())));
+
+        //closed ring one block inside grid edge, whole number of steps so looping is seamless
+        double side = (size - 3) * BLOCK;
+        int perSide = (int) (side / STEP);
+        fixes = new Fix[4 * perSide];
+        Random random = new Random(1);
+        for(int i = 0; i < fixes.length; ++i){
+            double along = (i % perSide) * STEP;
+            double north, east;
+            switch (i / perSide){
+                case 0:
+                    north = 0;
+                    east = along;
+                    break;
+                case 1:
+                    north = along;
+                    east = side;
+                    break;
+                case 2:
+                    north = side;
+                    east = side - along;
+                    break;
+                default:
+                    north = side - along;
+                    east = 0;
+                    break;
+            }
+            north += BLOCK + random.nextGaussian() * 5;
+            east += BLOCK + random.nextGaussian() * 5;
+            fixes[i] = new Fix(0, 0, LATITUDE + north * latitudeMeter, LONGITUDE + east * longitudeMeter, 120, 5);
+        }
+    }
+
+    @Benchmark
+    public double match(){
+        Fix ring = fixes[index % fixes.length];
+        Fix fix = new Fix(index * 1000000000L, 1500000000000L + index * 1000L,
+                ring.getLatitude(), ring.getLongitude(), ring.getAltitude(), ring.getAccuracy());
+        ++index;
+        matcher.match(fix);
+        return matcher.getPathDistance();
+    }
+}
@@ -0,0 +1,107 @@
+package com.jakdor.gpsspeedometer.benchmark;
+
+import com.jakdor.gpsspeedometer.core.NmeaListener;
+import com.jakdor.gpsspeedometer.core.NmeaParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * NMEA parsing cost, one op = one receiver epoch (GGA, GSA, 3x GSV, RMC, VTG)
+ * - parseSentences: NmeaParser.parse() per String sentence, as delivered by OnNmeaMessageListener
+ * - feedBytes: NmeaParser.feed() over raw byte stream, as from file / socket
+ * - splitBaseline: String.split + Double.parseDouble per field
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class NmeaBenchmark {
+
+    private static final String[] EPOCH = {
+            "$GPGGA,123519.00,4807.0381,N,01131.0002,E,1,08,0.9,545.4,M,46.9,M,,*6A",
+            "$GPGSA,A,3,04,05,,09,12,,,24,,,,,2.5,1.3,2.1*39",
+            "$GPGSV,3,1,11,03,03,111,00,04,15,270,00,06,01,010,00,13,06,292,00*74",
+            "$GPGSV,3,2,11,14,25,170,00,16,57,208,39,18,67,296,40,19,40,246,00*74",
+            "$GPGSV,3,3,11,22,42,067,42,24,14,311,43,27,05,244,00,,,,*4D",
+            "$GPRMC,123519.00,A,4807.0381,N,01131.0002,E,022.4,084.4,230394,003.1,W*47",
+            "$GPVTG,054.7,T,034.4,M,005.5,N,010.2,K*48"
+    };
+
+    private NmeaParser parser;
+    private ByteBuffer bytes;
+    private Blackhole blackhole;
+
+    @Setup
+    public void setup(final Blackhole blackhole){
+        this.blackhole = blackhole;
+        parser = new NmeaParser(new NmeaListener() {
+            @Override
+            public void onGga(long timeOfDay, double latitude, double longitude, int quality, int satellites,
+                              float hdop, double altitude) {
+                blackhole.consume(latitude);
+            }
+
+            @Override
+            public void onRmc(long timeOfDay, boolean valid, double latitude, double longitude, float speed,
+                              float course, long date) {
+                blackhole.consume(speed);
+            }
+
+            @Override
+            public void onVtg(float course, float speed) {
+                blackhole.consume(speed);
+            }
+
+            @Override
+            public void onGsa(int fixType, int satellitesUsed, float pdop, float hdop, float vdop) {
+                blackhole.consume(hdop);
+            }
+
+            @Override
+            public void onGsv(int satellitesInView, int maxSnr) {
+                blackhole.consume(satellitesInView);
+            }
+        });
+
+        StringBuilder stream = new StringBuilder();
+        for(String sentence : EPOCH){
+            stream.append(sentence).append("\r\n");
+        }
+        bytes = ByteBuffer.wrap(stream.toString().getBytes(Charset.forName("US-ASCII")));
+    }
+
+    @Benchmark
+    public void parseSentences(){
+        for(String sentence : EPOCH){
+            parser.parse(sentence);
+        }
+    }
+
+    @Benchmark
+    public void feedBytes(){
+        bytes.rewind();
+        parser.feed(bytes);
+    }
+
+    @Benchmark
+    public void splitBaseline(){
+        for(String sentence : EPOCH){
+            String[] fields = sentence.substring(1, sentence.indexOf('*')).split(",", -1);
+            for(String field : fields){
+                if(!field.isEmpty() && Character.isDigit(field.charAt(0))){
+                    blackhole.consume(Double.parseDouble(field));
+                }
+            }
+        }
+    }
+}
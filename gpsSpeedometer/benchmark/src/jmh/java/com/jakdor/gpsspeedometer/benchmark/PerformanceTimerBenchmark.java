@@ -0,0 +1,72 @@
+package com.jakdor.gpsspeedometer.benchmark;
+
+import com.jakdor.gpsspeedometer.core.Fix;
+import com.jakdor.gpsspeedometer.core.PerformanceTimer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Performance mode hot paths on recorded track
+ * - onFix: fix thread, one op = fix through gate crossing tests and run state (publishes on change only)
+ * - onAccelerometer: sensor thread, one op = launch detection sample
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PerformanceTimerBenchmark {
+
+    @Param({"0", "8"})
+    public int gates;
+
+    private TrackDataset track;
+    private Fix[] fixes;
+    private PerformanceTimer timer;
+    private int index;
+    private int sample;
+    private long time;
+    private long sampleTime;
+
+    @Setup
+    public void setup(){
+        track = TrackDataset.forName("urban");
+        fixes = new Fix[TrackDataset.MASK + 1];
+        for(int i = 0; i < fixes.length; ++i){
+            fixes[i] = new Fix(0, 1500000000000L + i * 1000L, track.latitude[i], track.longitude[i],
+                    track.altitude[i], 4, (float) track.hopDistance[i], 0.3f);
+        }
+
+        timer = new PerformanceTimer();
+        for(int g = 0; g < gates; ++g){
+            int i = (g + 1) * TrackDataset.MASK / (gates + 1);
+            timer.addGate(track.latitude[i] - 0.0001, track.longitude[i] - 0.0001,
+                    track.latitude[i] + 0.0001, track.longitude[i] + 0.0001);
+        }
+    }
+
+    @Benchmark
+    public Object onFix(){
+        int i = index = (index + 1) & TrackDataset.MASK;
+        time += 1000000000L; // monotonic across dataset wrap-around
+        Fix source = fixes[i];
+        timer.onFix(new Fix(time, source.getTime(), source.getLatitude(), source.getLongitude(),
+                source.getAltitude(), source.getAccuracy(), source.getSpeed(), source.getSpeedAccuracy()),
+                source.getSpeed());
+        return timer.getResult();
+    }
+
+    @Benchmark
+    public void onAccelerometer(){
+        int i = sample = TrackDataset.nextSample(sample);
+        sampleTime += 1000000000L / TrackDataset.ACC_RATE;
+        timer.onAccelerometer(sampleTime, track.accX[i], track.accY[i], track.accZ[i]);
+    }
+}
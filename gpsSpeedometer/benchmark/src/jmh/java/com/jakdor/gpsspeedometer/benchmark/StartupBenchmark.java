@@ -0,0 +1,76 @@
+package com.jakdor.gpsspeedometer.benchmark;
+
+import com.jakdor.gpsspeedometer.core.Fix;
+import com.jakdor.gpsspeedometer.core.FixedPointFormat;
+import com.jakdor.gpsspeedometer.core.TripCalculator;
+import com.jakdor.gpsspeedometer.core.TripSnapshot;
+import com.jakdor.gpsspeedometer.core.WarmStart;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Launch critical path from trip state to first speed display, one op = read warm start file,
+ * new TripCalculator restored from it, first snapshot formatted into HUD buffers (SpeedometerView);
+ * on device same span is reported as startup.first_display.ms metric
+ * - cold: no saved state (first launch), empty HUD
+ * - warm: saved state younger than WarmStart.MAX_SPEED_AGE, provisional speed and trip counters
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StartupBenchmark {
+
+    private static final long NOW = 1500000000000L;
+
+    @Param({"cold", "warm"})
+    public String start;
+
+    private File file;
+    private final char[] buffer = new char[64];
+
+    @Setup
+    public void setup() throws IOException {
+        file = File.createTempFile("warmstart", ".bin");
+        file.delete();
+        if("warm".equals(start)){
+            Fix fix = new Fix(0, NOW - 1000, 51.1, 17.03, 120, 4);
+            new WarmStart(NOW, new TripSnapshot(fix, 23.4, 12345.6, 1800000000000L, false, false)).write(file);
+        }
+    }
+
+    @TearDown
+    public void tearDown(){
+        file.delete();
+    }
+
+    @Benchmark
+    public int firstDisplay() throws IOException {
+        TripCalculator tripCalculator = new TripCalculator();
+        WarmStart warmStart = WarmStart.read(file);
+        if(warmStart != null){
+            tripCalculator.restore(warmStart, NOW + 5000, 5000000000L);
+        }
+
+        TripSnapshot snapshot = tripCalculator.getSnapshot();
+        int length = 0;
+        if(snapshot.isProvisional()){
+            buffer[length++] = '~';
+        }
+        length += FixedPointFormat.formatLong(Math.round(snapshot.getSpeed(false)), buffer, length);
+        length += FixedPointFormat.format(snapshot.getDistanceSum() / 1000, 2, buffer, length);
+        length += FixedPointFormat.formatDuration(snapshot.getTimer(), buffer, length);
+        return length + buffer[0];
+    }
+}
@@ -0,0 +1,75 @@
+package com.jakdor.gpsspeedometer.benchmark;
+
+import com.jakdor.gpsspeedometer.core.Fix;
+import com.jakdor.gpsspeedometer.core.TelemetryBatch;
+import com.jakdor.gpsspeedometer.core.TelemetryRing;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Telemetry uplink costs on recorded track
+ * - offer: fix thread hot path, one op = fix into off-heap ring (drained every ring capacity), 0 B/op with gc profiler
+ * - encode: uplink thread, one op = batch of given size drained, delta encoded and compressed;
+ *   encoded size per fix is the per fix network cost
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TelemetryBenchmark {
+
+    @Param({"16", "256"})
+    public int batchSize;
+
+    private Fix[] fixes;
+    private TelemetryRing ring;
+    private final TelemetryBatch batch = new TelemetryBatch();
+    private int index;
+
+    @Setup
+    public void setup(){
+        TrackDataset track = TrackDataset.forName("urban");
+        fixes = new Fix[TrackDataset.MASK + 1];
+        for(int i = 0; i < fixes.length; ++i){
+            fixes[i] = new Fix(i * 1000000000L, 1500000000000L + i * 1000L, track.latitude[i], track.longitude[i],
+                    track.altitude[i], 4);
+        }
+        ring = new TelemetryRing(batchSize);
+    }
+
+    @TearDown
+    public void tearDown(){
+        batch.close();
+    }
+
+    @Benchmark
+    public boolean offer(){
+        if(ring.size() == ring.capacity()){
+            batch.reset(0);
+            ring.drainTo(batch, ring.capacity());
+        }
+        int i = index = (index + 1) & TrackDataset.MASK;
+        return ring.offer(fixes[i], 15);
+    }
+
+    @Benchmark
+    public int encode(){
+        batch.reset(index);
+        for(int j = 0; j < batchSize; ++j){
+            int i = index = (index + 1) & TrackDataset.MASK;
+            ring.offer(fixes[i], 15);
+        }
+        ring.drainTo(batch, batchSize);
+        batch.encode();
+        return batch.getLength();
+    }
+}
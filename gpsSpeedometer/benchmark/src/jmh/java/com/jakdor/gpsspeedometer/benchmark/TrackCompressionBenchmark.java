@@ -0,0 +1,112 @@
+package com.jakdor.gpsspeedometer.benchmark;
+
+import com.jakdor.gpsspeedometer.core.Fix;
+import com.jakdor.gpsspeedometer.core.TrackCursor;
+import com.jakdor.gpsspeedometer.core.TrackRecorder;
+import com.jakdor.gpsspeedometer.core.TrackSimplifier;
+import com.jakdor.gpsspeedometer.core.TrackSink;
+import com.jakdor.gpsspeedometer.core.Tracks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stored track cost, dataset recorded at 1Hz (TrackDataset.FIXES records)
+ * - readRaw / readCompact: one op = open track and read every record (history render, replay input);
+ *   compact track is simplified within TrackSimplifier.DEFAULT_TOLERANCE
+ * - simplify: one op = one fix through TrackSimplifier
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TrackCompressionBenchmark {
+
+    @Param({"walking", "urban", "motorway"})
+    public String dataset;
+
+    private File raw;
+    private File compact;
+    private Fix[] fixes;
+    private TrackSink discard;
+    private TrackSimplifier simplifier;
+    private int index;
+
+    @Setup
+    public void setup() throws IOException {
+        TrackDataset track = TrackDataset.forName(dataset);
+        fixes = new Fix[TrackDataset.FIXES];
+        for(int i = 0; i < TrackDataset.FIXES; ++i){
+            fixes[i] = new Fix(i * 1000000000L, 1500000000000L + i * 1000L,
+                    track.latitude[i], track.longitude[i], track.altitude[i], 4);
+        }
+
+        raw = File.createTempFile("raw", ".trk");
+        TrackRecorder recorder = TrackRecorder.open(raw, 1500000000000L);
+        for(Fix fix : fixes){
+            recorder.append(fix, 10);
+        }
+        recorder.close();
+
+        compact = File.createTempFile("compact", ".trk");
+        compact.delete();
+        Tracks.compact(raw, compact, TrackSimplifier.DEFAULT_TOLERANCE);
+
+        discard = new TrackSink() {
+            @Override
+            public void append(Fix fix, float speed) {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        simplifier = new TrackSimplifier(discard);
+    }
+
+    @TearDown
+    public void tearDown(){
+        raw.delete();
+        compact.delete();
+    }
+
+    @Benchmark
+    public double readRaw() throws IOException {
+        return read(raw);
+    }
+
+    @Benchmark
+    public double readCompact() throws IOException {
+        return read(compact);
+    }
+
+    private static double read(File file) throws IOException {
+        TrackCursor cursor = Tracks.open(file);
+        double sum = 0;
+        while (cursor.next()){
+            sum += cursor.getLatitude() + cursor.getLongitude() + cursor.getSpeed();
+        }
+        cursor.close();
+        return sum;
+    }
+
+    @Benchmark
+    public long simplify() throws IOException {
+        int i = index = (index + 1) & TrackDataset.MASK;
+        if(i == 0){ //dataset wraps around, new track
+            simplifier = new TrackSimplifier(discard);
+        }
+        simplifier.append(fixes[i], 10);
+        return simplifier.getOutputCount();
+    }
+}
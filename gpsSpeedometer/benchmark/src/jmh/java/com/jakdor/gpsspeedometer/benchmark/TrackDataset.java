@@ -0,0 +1,100 @@
+package com.jakdor.gpsspeedometer.benchmark;
+
+import java.util.Random;
+
+/**
+ * Deterministic track datasets (walking, urban driving, motorway) for benchmarks;
+ * 1Hz gps fixes with receiver noise and 50Hz accelerometer samples (timestamps in ns)
+ */
+final class TrackDataset {
+
+    static final int FIXES = 4096; // power of 2, benchmarks cycle with index & MASK
+    static final int MASK = FIXES - 1;
+    static final int ACC_RATE = 50;
+    static final int ACC_SAMPLES = FIXES * ACC_RATE; // not a power of 2, cycle with nextSample()
+
+    private static final double START_LATITUDE = 51.1079;
+    private static final double START_LONGITUDE = 17.0385;
+    private static final double METERS_PER_DEGREE = 111320;
+    private static final float GRAVITY = 9.81f;
+
+    final double[] latitude = new double[FIXES + 1];
+    final double[] longitude = new double[FIXES + 1];
+    final double[] altitude = new double[FIXES + 1];
+    final double[] hopDistance = new double[FIXES + 1];
+
+    final float[] accX = new float[ACC_SAMPLES];
+    final float[] accY = new float[ACC_SAMPLES];
+    final float[] accZ = new float[ACC_SAMPLES];
+    final long[] accTime = new long[ACC_SAMPLES];
+
+    static TrackDataset forName(String name){
+        switch (name){
+            case "walking":
+                return new TrackDataset(1, 1.4, 0, 0, 3.0, 0.2, 2.0);
+            case "urban":
+                return new TrackDataset(2, 13.9, 90, 20, 5.0, 0.05, 0.8);
+            case "motorway":
+                return new TrackDataset(3, 33.3, 0, 0, 2.5, 0.005, 0.5);
+            default:
+                throw new IllegalArgumentException("Unknown dataset: " + name);
+        }
+    }
+
+    /**
+     * @param cruiseSpeed target speed m/s
+     * @param driveTime seconds between stops, 0 for no stops
+     * @param stopTime seconds spent stopped
+     * @param gpsNoise receiver position noise (1 sigma) m
+     * @param turnRate heading random walk (1 sigma) rad/s
+     * @param vibration accelerometer noise (1 sigma) m/s^2
+     */
+    private TrackDataset(long seed, double cruiseSpeed, int driveTime, int stopTime,
+                         double gpsNoise, double turnRate, double vibration){
+        Random random = new Random(seed);
+
+        double north = 0, east = 0, heading = 0, speed = 0;
+        for(int i = 0; i <= FIXES; ++i){
+            double target = cruiseSpeed;
+            if(driveTime > 0 && i % (driveTime + stopTime) >= driveTime){
+                target = 0;
+            }
+            double acceleration = Math.max(-3, Math.min(2, target - speed));
+            speed = Math.max(0, speed + acceleration + random.nextGaussian() * cruiseSpeed * 0.01);
+
+            heading += random.nextGaussian() * turnRate;
+            north += Math.cos(heading) * speed;
+            east += Math.sin(heading) * speed;
+
+            double noiseNorth = random.nextGaussian() * gpsNoise;
+            double noiseEast = random.nextGaussian() * gpsNoise;
+            latitude[i] = START_LATITUDE + (north + noiseNorth) / METERS_PER_DEGREE;
+            longitude[i] = START_LONGITUDE + (east + noiseEast)
+                    / (METERS_PER_DEGREE * Math.cos(Math.toRadians(START_LATITUDE)));
+            altitude[i] = 120 + 10 * Math.sin(i / 300.0) + random.nextGaussian() * gpsNoise * 1.5;
+
+            if(i < FIXES) {
+                for (int j = 0; j < ACC_RATE; ++j) {
+                    int k = i * ACC_RATE + j;
+                    accTime[k] = k * 1000000000L / ACC_RATE;
+                    accX[k] = (float) (random.nextGaussian() * vibration);
+                    accY[k] = (float) (acceleration + random.nextGaussian() * vibration);
+                    accZ[k] = GRAVITY + (float) (random.nextGaussian() * vibration);
+                }
+            }
+        }
+
+        for(int i = 1; i <= FIXES; ++i){
+            hopDistance[i - 1] = Math.hypot((latitude[i] - latitude[i - 1]) * METERS_PER_DEGREE,
+                    (longitude[i] - longitude[i - 1]) * METERS_PER_DEGREE
+                            * Math.cos(Math.toRadians(START_LATITUDE)));
+        }
+    }
+
+    /**
+     * Next accelerometer sample index, wraps to 0 after last sample
+     */
+    static int nextSample(int index){
+        return index + 1 < ACC_SAMPLES ? index + 1 : 0;
+    }
+}
@@ -0,0 +1,96 @@
+package com.jakdor.gpsspeedometer.benchmark;
+
+import com.jakdor.gpsspeedometer.core.CompactTrackRecorder;
+import com.jakdor.gpsspeedometer.core.ExportFormat;
+import com.jakdor.gpsspeedometer.core.Fix;
+import com.jakdor.gpsspeedometer.core.TrackCursor;
+import com.jakdor.gpsspeedometer.core.TrackExporter;
+import com.jakdor.gpsspeedometer.core.Tracks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Track export cost, one op = open full resolution compact track of RECORDS records
+ * (urban dataset repeated) and export it utf-8 encoded into discarding stream
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TrackExportBenchmark {
+
+    public static final int RECORDS = 100000;
+
+    @Param({"GPX", "KML", "CSV"})
+    public String format;
+
+    private File track;
+    private TrackExporter exporter;
+    private CountingStream output;
+    private Writer writer;
+
+    @Setup
+    public void setup() throws IOException {
+        TrackDataset dataset = TrackDataset.forName("urban");
+        track = File.createTempFile("export", ".trk");
+        track.delete();
+        CompactTrackRecorder recorder = CompactTrackRecorder.open(track, 1500000000000L, 0);
+        for(int i = 0; i < RECORDS; ++i){
+            int j = i & TrackDataset.MASK;
+            recorder.append(new Fix(i * 1000000000L, 1500000000000L + i * 1000L,
+                    dataset.latitude[j], dataset.longitude[j], dataset.altitude[j], 4), 10);
+        }
+        recorder.close();
+
+        exporter = new TrackExporter(ExportFormat.valueOf(format));
+        output = new CountingStream();
+        writer = new OutputStreamWriter(output, Charset.forName("UTF-8"));
+    }
+
+    @TearDown
+    public void tearDown(){
+        track.delete();
+    }
+
+    @Benchmark
+    public long export() throws IOException {
+        TrackCursor cursor = Tracks.open(track);
+        try {
+            exporter.export(cursor, "benchmark", writer);
+        }
+        finally {
+            cursor.close();
+        }
+        return output.count;
+    }
+
+    private static final class CountingStream extends OutputStream {
+
+        long count;
+
+        @Override
+        public void write(int b) {
+            ++count;
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) {
+            count += length;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.jakdor.gpsspeedometer.benchmark;
+
+import com.jakdor.gpsspeedometer.core.TripFilter;
+import com.jakdor.gpsspeedometer.core.TripIndex;
+import com.jakdor.gpsspeedometer.core.TripSummary;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Trip history screen cold start, one op = load index file and list every trip
+ * (start time, distance, moving time of each row); target under 100 ms for 5000 trips
+ * - coldList: all trips, newest first
+ * - filteredList: one month inside bounding box
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TripIndexBenchmark {
+
+    private static final long START = 1500000000000L;
+    private static final long DAY = 24 * 3600 * 1000L;
+
+    @Param({"5000"})
+    private int trips;
+
+    private File file;
+    private final TripFilter all = new TripFilter();
+    private final TripFilter month = new TripFilter();
+
+    @Setup
+    public void setup() throws IOException {
+        file = File.createTempFile("trips", ".idx");
+        file.delete();
+
+        Random random = new Random(7);
+        TripIndex index = TripIndex.open(file);
+        long startTime = START;
+        for(int i = 0; i < trips; ++i){
+            startTime += random.nextInt((int) DAY / 2);
+            double latitude = 50 + random.nextDouble() * 2;
+            double longitude = 16 + random.nextDouble() * 2;
+            index.put(new TripSummary(startTime, startTime + 1800000, 1800, random.nextDouble() * 50000,
+                    1500000, 30, 20, 20, latitude, longitude, latitude + 0.1, longitude + 0.1));
+        }
+
+        month.setTimeRange(startTime - 30 * DAY, startTime + 1);
+        month.setBounds(51, 17, 51.5, 17.5);
+    }
+
+    @TearDown
+    public void tearDown(){
+        file.delete();
+    }
+
+    @Benchmark
+    public double coldList() throws IOException {
+        return list(all);
+    }
+
+    @Benchmark
+    public double filteredList() throws IOException {
+        return list(month);
+    }
+
+    private double list(TripFilter filter) throws IOException {
+        TripIndex index = TripIndex.open(file);
+        int[] entries = index.query(filter);
+        double sum = 0;
+        for(int entry : entries){
+            sum += index.getStartTime(entry) + index.getDistance(entry) + index.getMovingTime(entry);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,50 @@
+package com.jakdor.gpsspeedometer.core;
+
+/**
+ * Detects motion (stop/go) from every accelerometer sample,
+ * compares acceleration vector standard deviation over 1s window against threshold
+ */
+public class AccelerationDetector {
+
+    public static final long WINDOW_NANOS = 1000000000L;
+    public static final int CAPACITY = 512; // 1s window up to SENSOR_DELAY_FASTEST rates
+
+    private static final double MOTION_STD_THRESHOLD = 0.2; // m/s^2, resting phone stays well under
+
+    private final AccelerometerRingBuffer buffer = new AccelerometerRingBuffer(CAPACITY, WINDOW_NANOS);
+    private boolean accelerating = false;
+
+    /**
+     * Feeds single accelerometer sample (m/s^2) with its event timestamp in ns,
+     * returns current acceleration state
+     */
+    public boolean update(long timestampNanos, float x, float y, float z){
+        buffer.add(timestampNanos, x, y, z);
+
+        if(buffer.getSpan() >= WINDOW_NANOS / 2) { //wait for enough data
+            accelerating = buffer.getVectorVariance() > MOTION_STD_THRESHOLD * MOTION_STD_THRESHOLD;
+        }
+
+        return accelerating;
+    }
+
+    public boolean isAccelerating(){
+        return accelerating;
+    }
+
+    public AccelerometerRingBuffer getBuffer(){
+        return buffer;
+    }
+
+    public float getX(){
+        return buffer.size() == 0 ? 0 : buffer.getX(0);
+    }
+
+    public float getY(){
+        return buffer.size() == 0 ? 0 : buffer.getY(0);
+    }
+
+    public float getZ(){
+        return buffer.size() == 0 ? 0 : buffer.getZ(0);
+    }
+}
@@ -0,0 +1,239 @@
+package com.jakdor.gpsspeedometer.core;
+
+/**
+ * Preallocated ring buffer of accelerometer samples stored at their event timestamps,
+ * keeps time window statistics of acceleration magnitude updated incrementally:
+ * - mean, variance
+ * - vector variance (sum of per axis variances, orientation independent)
+ * - jerk (mean absolute rate of magnitude change)
+ * Zero allocation per sample, single threaded (sensor thread)
+ */
+public class AccelerometerRingBuffer {
+
+    private final int mask;
+    private final long windowNanos;
+
+    private final long[] timestamps;
+    private final float[] x;
+    private final float[] y;
+    private final float[] z;
+    private final float[] magnitude;
+    private final float[] jerk;
+
+    private int head = 0; //next write position
+    private int size = 0;
+    private long sampleCount = 0;
+    private int evictionCount = 0;
+
+    private double magnitudeSum = 0;
+    private double magnitudeSqSum = 0;
+    private double jerkSum = 0;
+    private final double[] axisSum = new double[3];
+    private final double[] axisSqSum = new double[3];
+
+    /**
+     * @param capacity max samples kept, rounded up to power of 2
+     * @param windowNanos statistics window length
+     */
+    public AccelerometerRingBuffer(int capacity, long windowNanos){
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.mask = size - 1;
+        this.windowNanos = windowNanos;
+
+        timestamps = new long[size];
+        x = new float[size];
+        y = new float[size];
+        z = new float[size];
+        magnitude = new float[size];
+        jerk = new float[size];
+    }
+
+    /**
+     * Stores sample, evicts samples that fell out of time window or capacity
+     */
+    public void add(long timestampNanos, float x, float y, float z){
+        float magnitude = (float) Math.sqrt(x * x + y * y + z * z);
+        float jerk = 0;
+        if(size > 0){
+            int last = (head - 1) & mask;
+            long dt = timestampNanos - timestamps[last];
+            if(dt > 0) {
+                jerk = Math.abs(magnitude - this.magnitude[last]) / (dt / 1e9f);
+            }
+        }
+
+        if(size == mask + 1){
+            evictOldest();
+        }
+
+        timestamps[head] = timestampNanos;
+        this.x[head] = x;
+        this.y[head] = y;
+        this.z[head] = z;
+        this.magnitude[head] = magnitude;
+        this.jerk[head] = jerk;
+        head = (head + 1) & mask;
+        ++size;
+        ++sampleCount;
+
+        magnitudeSum += magnitude;
+        magnitudeSqSum += (double) magnitude * magnitude;
+        jerkSum += jerk;
+        accumulate(x, y, z, 1);
+
+        long windowStart = timestampNanos - windowNanos;
+        while (size > 1 && timestamps[(head - size) & mask] < windowStart){
+            evictOldest();
+        }
+    }
+
+    private void evictOldest(){
+        int tail = (head - size) & mask;
+        magnitudeSum -= magnitude[tail];
+        magnitudeSqSum -= (double) magnitude[tail] * magnitude[tail];
+        jerkSum -= jerk[tail];
+        accumulate(x[tail], y[tail], z[tail], -1);
+        --size;
+
+        if(size == 0){
+            resetAccumulators();
+        }
+        else if((++evictionCount & mask) == 0){ //resync every capacity evictions, no drift over long runs
+            resync();
+        }
+    }
+
+    /**
+     * Recomputes window sums from stored samples, amortized O(1) per sample
+     */
+    private void resync(){
+        resetAccumulators();
+        for(int i = (head - size) & mask, n = 0; n < size; i = (i + 1) & mask, ++n){
+            magnitudeSum += magnitude[i];
+            magnitudeSqSum += (double) magnitude[i] * magnitude[i];
+            jerkSum += jerk[i];
+            accumulate(x[i], y[i], z[i], 1);
+        }
+    }
+
+    private void accumulate(float x, float y, float z, int sign){
+        axisSum[0] += sign * x;
+        axisSum[1] += sign * y;
+        axisSum[2] += sign * z;
+        axisSqSum[0] += sign * (double) x * x;
+        axisSqSum[1] += sign * (double) y * y;
+        axisSqSum[2] += sign * (double) z * z;
+    }
+
+    private void resetAccumulators(){
+        magnitudeSum = 0;
+        magnitudeSqSum = 0;
+        jerkSum = 0;
+        for(int i = 0; i < 3; ++i){
+            axisSum[i] = 0;
+            axisSqSum[i] = 0;
+        }
+    }
+
+    public void clear(){
+        head = 0;
+        size = 0;
+        resetAccumulators();
+    }
+
+    /**
+     * Samples currently in window
+     */
+    public int size(){
+        return size;
+    }
+
+    public int capacity(){
+        return mask + 1;
+    }
+
+    /**
+     * Total samples received
+     */
+    public long getSampleCount(){
+        return sampleCount;
+    }
+
+    /**
+     * @param age 0 for newest sample, size() - 1 for oldest in window
+     */
+    public long getTimestamp(int age){
+        return timestamps[index(age)];
+    }
+
+    public float getX(int age){
+        return x[index(age)];
+    }
+
+    public float getY(int age){
+        return y[index(age)];
+    }
+
+    public float getZ(int age){
+        return z[index(age)];
+    }
+
+    public float getMagnitude(int age){
+        return magnitude[index(age)];
+    }
+
+    private int index(int age){
+        if(age < 0 || age >= size){
+            throw new IndexOutOfBoundsException("age: " + age + ", size: " + size);
+        }
+        return (head - 1 - age) & mask;
+    }
+
+    /**
+     * Mean magnitude in window, m/s^2
+     */
+    public double getMean(){
+        return size == 0 ? 0 : magnitudeSum / size;
+    }
+
+    /**
+     * Magnitude variance in window, (m/s^2)^2
+     */
+    public double getVariance(){
+        if(size < 2){
+            return 0;
+        }
+        double mean = magnitudeSum / size;
+        return Math.max(0, magnitudeSqSum / size - mean * mean);
+    }
+
+    /**
+     * Sum of x, y, z variances in window, (m/s^2)^2;
+     * unlike magnitude variance also picks up acceleration perpendicular to gravity
+     */
+    public double getVectorVariance(){
+        if(size < 2){
+            return 0;
+        }
+        double output = 0;
+        for(int i = 0; i < 3; ++i){
+            double mean = axisSum[i] / size;
+            output += axisSqSum[i] / size - mean * mean;
+        }
+        return Math.max(0, output);
+    }
+
+    /**
+     * Mean absolute jerk in window, m/s^3
+     */
+    public double getJerk(){
+        return size == 0 ? 0 : jerkSum / size;
+    }
+
+    /**
+     * Window time span covered by stored samples, ns
+     */
+    public long getSpan(){
+        return size == 0 ? 0 : getTimestamp(0) - getTimestamp(size - 1);
+    }
+}
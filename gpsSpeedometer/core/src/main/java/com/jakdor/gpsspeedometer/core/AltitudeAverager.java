@@ -0,0 +1,32 @@
+package com.jakdor.gpsspeedometer.core;
+
+/**
+ * Bucket averaging of raw gps altitude (experimental), new average every 4 samples
+ */
+public class AltitudeAverager {
+
+    private int altitudeCounter = 0;
+    private double altitudeSum = 0;
+    private double avrAltitude = 0;
+    private double lastAvrAltitude = 0;
+
+    public void add(double altitude){
+        if (altitudeCounter < 4) {
+            altitudeSum += altitude;
+        } else {
+            lastAvrAltitude = avrAltitude;
+            avrAltitude = altitudeSum / altitudeCounter;
+            altitudeCounter = 0;
+            altitudeSum = 0;
+        }
+        ++altitudeCounter;
+    }
+
+    public double getAverage(){
+        return avrAltitude;
+    }
+
+    public double getLastAverage(){
+        return lastAvrAltitude;
+    }
+}
@@ -0,0 +1,120 @@
+package com.jakdor.gpsspeedometer.core;
+
+/**
+ * Barometric altitude fused with gps altitude:
+ * - sensor thread: pressure converted to altitude (standard atmosphere), low pass at sensor rate,
+ *   sub-metre relative resolution but offset drifting with weather and temperature
+ * - fix thread: scalar Kalman filter estimates that offset from gps altitude - random walk offset,
+ *   gps measurement variance from fix accuracy - fused altitude = barometric altitude + offset
+ * Barometric altitude handed over through single writer volatile fields, no allocation on either side.
+ * Without pressure sensor fused altitude is NaN (raw gps altitude is too noisy for slope distance)
+ */
+public class AltitudeFilter {
+
+    public static final double STANDARD_PRESSURE = 1013.25; // hPa, sea level
+    public static final double PRESSURE_TAU = 0.5; // s, barometer noise low pass
+    public static final double OFFSET_DRIFT = 0.1; // m/sqrt(s), barometric offset random walk
+    public static final double VERTICAL_ACCURACY_FACTOR = 1.5; // gps vertical to horizontal error
+    public static final double MIN_GPS_ACCURACY = 3; // m
+    public static final long MAX_PRESSURE_AGE_NANOS = 5000000000L; // older barometer reading is stale
+    private static final long MAX_SAMPLE_GAP_NANOS = 1000000000L;
+
+    //written by sensor thread only
+    private volatile double pressureAltitude = Double.NaN;
+    private volatile long pressureNanos = Long.MIN_VALUE;
+
+    //fix thread only
+    private double offset = 0;
+    private double offsetVariance = Double.NaN; // NaN until first gps altitude
+    private long offsetNanos;
+    private double altitude = Double.NaN;
+
+    /**
+     * Barometer sample, sensor thread
+     * @param pressure hPa
+     */
+    public void onPressure(long timestampNanos, float pressure){
+        double sample = pressureToAltitude(pressure);
+        double previous = pressureAltitude;
+        long deltaNanos = timestampNanos - pressureNanos;
+        if(Double.isNaN(previous) || pressureNanos == Long.MIN_VALUE
+                || deltaNanos <= 0 || deltaNanos > MAX_SAMPLE_GAP_NANOS){
+            pressureAltitude = sample;
+        }
+        else {
+            double dt = deltaNanos / 1e9;
+            pressureAltitude = previous + dt / (PRESSURE_TAU + dt) * (sample - previous);
+        }
+        pressureNanos = timestampNanos;
+    }
+
+    /**
+     * Gps altitude measurement, fix thread
+     * @param altitude m, 0 is treated as missing (receiver without altitude)
+     * @param accuracy horizontal accuracy m, scaled to vertical
+     * @return fused altitude at fix time, NaN without recent barometer reading
+     */
+    public double onGpsAltitude(long timeNanos, double altitude, double accuracy){
+        double barometric = pressureAltitude;
+        long barometricNanos = pressureNanos;
+        if(Double.isNaN(barometric) || timeNanos - barometricNanos > MAX_PRESSURE_AGE_NANOS){
+            this.altitude = Double.NaN;
+            return this.altitude;
+        }
+
+        if(altitude != 0){
+            double sigma = VERTICAL_ACCURACY_FACTOR * Math.max(MIN_GPS_ACCURACY, accuracy);
+            double variance = sigma * sigma;
+            double measured = altitude - barometric;
+            if(Double.isNaN(offsetVariance)){
+                offset = measured;
+                offsetVariance = variance;
+            }
+            else {
+                double dt = Math.max(0, (timeNanos - offsetNanos) / 1e9);
+                offsetVariance += OFFSET_DRIFT * OFFSET_DRIFT * dt;
+                double gain = offsetVariance / (offsetVariance + variance);
+                offset += gain * (measured - offset);
+                offsetVariance *= 1 - gain;
+            }
+            offsetNanos = timeNanos;
+        }
+        this.altitude = barometric + offset;
+        return this.altitude;
+    }
+
+    /**
+     * Fused altitude as of last gps measurement, NaN without barometer; fix thread
+     */
+    public double getAltitude(){
+        return altitude;
+    }
+
+    /**
+     * Current barometric altitude (standard atmosphere, not offset corrected), NaN before first sample
+     */
+    public double getPressureAltitude(){
+        return pressureAltitude;
+    }
+
+    /**
+     * Offset standard deviation m, NaN before first gps altitude; fix thread
+     */
+    public double getOffsetAccuracy(){
+        return Math.sqrt(offsetVariance);
+    }
+
+    /**
+     * International standard atmosphere altitude for pressure, same as Android SensorManager.getAltitude()
+     */
+    public static double pressureToAltitude(double pressure){
+        return 44330.0 * (1.0 - Math.pow(pressure / STANDARD_PRESSURE, 1.0 / 5.255));
+    }
+
+    /**
+     * Slope distance from horizontal distance and climb, both m
+     */
+    public static double slopeDistance(double horizontal, double climb){
+        return Math.sqrt(horizontal * horizontal + climb * climb);
+    }
+}
@@ -0,0 +1,83 @@
+package com.jakdor.gpsspeedometer.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Command line batch replay of recorded trips (CI-like runs without emulator);
+ * usage: BatchReplay [--realtime[=factor]] file|dir...
+ * prints per trip distance/time/speed and total throughput, exits with 1 if any trip failed
+ */
+public final class BatchReplay {
+
+    private BatchReplay(){
+    }
+
+    public static void main(String[] args) throws Exception {
+        ReplayEngine.Mode mode = ReplayEngine.Mode.AS_FAST_AS_POSSIBLE;
+        double speedFactor = 1.0;
+        List<File> files = new ArrayList<>();
+
+        for(String arg : args){
+            if(arg.startsWith("--realtime")){
+                mode = ReplayEngine.Mode.REAL_TIME;
+                if(arg.startsWith("--realtime=")){
+                    speedFactor = Double.parseDouble(arg.substring("--realtime=".length()));
+                }
+            }
+            else {
+                collect(new File(arg), files);
+            }
+        }
+
+        ReplayEngine engine = new ReplayEngine(mode, speedFactor);
+        long totalFixes = 0, totalWall = 0;
+        int failed = 0;
+
+        System.out.println("trip\tfixes\trejected\tdistance_m\ttime_s\tmax_kmh\tmean_kmh\tfixes_per_s");
+        for(File file : files){
+            try {
+                ReplayResult result = engine.run(ReplayEngine.openSource(file), new TripCalculator());
+                totalFixes += result.getFixCount();
+                totalWall += result.getWallNanos();
+                System.out.println(String.format(Locale.ENGLISH, "%s\t%d\t%d\t%.1f\t%d\t%.1f\t%.1f\t%.0f",
+                        file.getName(), result.getFixCount(), result.getRejectedFixCount(), result.getDistance(),
+                        result.getTimerNanos() / 1000000000L, result.getMaxSpeed() * 3.6,
+                        result.getMeanSpeed() * 3.6, result.getFixesPerSecond()));
+            }
+            catch (IOException e){
+                ++failed;
+                System.err.println(file.getName() + "\tFAILED\t" + e.toString());
+            }
+        }
+
+        System.out.println(String.format(Locale.ENGLISH, "total\t%d trips\t%d fixes\t%.0f fixes/s\t%d failed",
+                files.size(), totalFixes, totalWall == 0 ? 0 : totalFixes * 1e9 / totalWall, failed));
+        if(failed > 0){
+            System.exit(1);
+        }
+    }
+
+    static void collect(File file, List<File> output){
+        if(file.isDirectory()){
+            File[] children = file.listFiles();
+            if(children != null) {
+                Arrays.sort(children);
+                for (File child : children) {
+                    collect(child, output);
+                }
+            }
+        }
+        else {
+            String name = file.getName().toLowerCase();
+            if(name.endsWith(".csv") || name.endsWith(".gpx") || name.endsWith(".kml")
+                    || name.endsWith(".nmea") || name.endsWith(".trk")){
+                output.add(file);
+            }
+        }
+    }
+}
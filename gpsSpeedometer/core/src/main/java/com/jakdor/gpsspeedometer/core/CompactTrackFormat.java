@@ -0,0 +1,78 @@
+package com.jakdor.gpsspeedometer.core;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * Compact (delta encoded) track file layout, little endian:
+ * header (16 bytes): magic "GPSC", version (short), simplification tolerance dm (short), start time UTC ms (long)
+ * block: record count (short), payload size (short), payload, crc32 of block header and payload (int)
+ * payload: per record zigzag varint deltas to previous record of same block, first record delta to 0,
+ * so every block decodes on its own and torn or corrupted block loses only its records:
+ * - time UTC ms
+ * - latitude, longitude in 1e-7 degrees
+ * - altitude dm
+ * - accuracy dm
+ * - speed cm/s
+ */
+final class CompactTrackFormat {
+
+    static final int MAGIC = 0x43535047; // "GPSC"
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int BLOCK_HEADER_SIZE = 4;
+    static final int BLOCK_RECORDS = 64;
+
+    static final int FIELDS = 6;
+    static final int TIME = 0;
+    static final int LATITUDE = 1;
+    static final int LONGITUDE = 2;
+    static final int ALTITUDE = 3;
+    static final int ACCURACY = 4;
+    static final int SPEED = 5;
+
+    static final double ALTITUDE_SCALE = 10;
+    static final double ACCURACY_SCALE = 10;
+    static final double SPEED_SCALE = 100;
+    static final double TOLERANCE_SCALE = 10;
+
+    static final int MAX_VARINT_SIZE = 10;
+    static final int MAX_PAYLOAD_SIZE = BLOCK_RECORDS * FIELDS * MAX_VARINT_SIZE;
+    static final int MAX_BLOCK_SIZE = BLOCK_HEADER_SIZE + MAX_PAYLOAD_SIZE + 4;
+
+    private CompactTrackFormat(){
+    }
+
+    /**
+     * Zigzag varint, small deltas of either sign take 1-3 bytes
+     */
+    static void putVarLong(ByteBuffer buffer, long value){
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7FL) != 0){
+            buffer.put((byte) ((zigzag & 0x7F) | 0x80));
+            zigzag >>>= 7;
+        }
+        buffer.put((byte) zigzag);
+    }
+
+    static long getVarLong(ByteBuffer buffer){
+        long zigzag = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            zigzag |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0 && shift < 64);
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    /**
+     * Crc of given range of array backed buffer
+     */
+    static int checksum(CRC32 crc, ByteBuffer buffer, int offset, int length){
+        crc.reset();
+        crc.update(buffer.array(), buffer.arrayOffset() + offset, length);
+        return (int) crc.getValue();
+    }
+}
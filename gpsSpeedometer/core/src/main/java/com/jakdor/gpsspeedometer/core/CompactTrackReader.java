@@ -0,0 +1,200 @@
+package com.jakdor.gpsspeedometer.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Cursor over compact track file written by CompactTrackRecorder;
+ * whole (small) file is read on open and blocks are indexed, so seek decodes at most one block.
+ * No allocation per record
+ */
+public class CompactTrackReader implements TrackCursor {
+
+    private final ByteBuffer data;
+    private final long startTime;
+    private final double tolerance;
+
+    private int blockCount = 0;
+    private int[] blockOffsets = new int[16]; //payload start
+    private long[] blockFirstIndex = new long[16];
+    private long recordCount = 0;
+    private long corruptBlockCount = 0;
+
+    private final long[] values = new long[CompactTrackFormat.FIELDS];
+    private long nextIndex = 0;
+    private boolean positioned = false;
+    private int block = -1;
+    private long blockEnd = 0; //index after last record of current block
+
+    public CompactTrackReader(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            if(channel.size() > Integer.MAX_VALUE){
+                throw new IOException("Compact track file too large");
+            }
+            data = ByteBuffer.allocate((int) channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            while (data.hasRemaining()){
+                if(channel.read(data, data.position()) < 0){
+                    throw new IOException("Compact track file truncated while reading");
+                }
+            }
+        }
+        finally {
+            randomAccessFile.close();
+        }
+
+        if(data.capacity() < CompactTrackFormat.HEADER_SIZE || data.getInt(0) != CompactTrackFormat.MAGIC
+                || data.getShort(4) != CompactTrackFormat.VERSION){
+            throw new IOException("Not a supported compact track file");
+        }
+        tolerance = data.getShort(6) / CompactTrackFormat.TOLERANCE_SCALE;
+        startTime = data.getLong(8);
+        indexBlocks();
+    }
+
+    /**
+     * Walks block headers, corrupted blocks are skipped while their size is plausible, torn tail ignored
+     */
+    private void indexBlocks(){
+        CRC32 crc = new CRC32();
+        int position = CompactTrackFormat.HEADER_SIZE;
+        int size = data.capacity();
+        while (position + CompactTrackFormat.BLOCK_HEADER_SIZE <= size){
+            int records = data.getShort(position);
+            int payloadSize = data.getShort(position + 2);
+            int length = CompactTrackFormat.BLOCK_HEADER_SIZE + payloadSize;
+            if(records <= 0 || records > CompactTrackFormat.BLOCK_RECORDS || payloadSize < 0
+                    || payloadSize > CompactTrackFormat.MAX_PAYLOAD_SIZE || position + length + 4 > size){
+                break;
+            }
+
+            if(CompactTrackFormat.checksum(crc, data, position, length) == data.getInt(position + length)) {
+                if(blockCount == blockOffsets.length){
+                    blockOffsets = Arrays.copyOf(blockOffsets, blockCount * 2);
+                    blockFirstIndex = Arrays.copyOf(blockFirstIndex, blockCount * 2);
+                }
+                blockOffsets[blockCount] = position + CompactTrackFormat.BLOCK_HEADER_SIZE;
+                blockFirstIndex[blockCount] = recordCount;
+                ++blockCount;
+                recordCount += records;
+            }
+            else {
+                ++corruptBlockCount;
+            }
+            position += length + 4;
+        }
+    }
+
+    @Override
+    public long getStartTime(){
+        return startTime;
+    }
+
+    @Override
+    public long getRecordCount(){
+        return recordCount;
+    }
+
+    @Override
+    public double getTolerance(){
+        return tolerance;
+    }
+
+    /**
+     * Blocks skipped due to crc mismatch
+     */
+    public long getCorruptBlockCount(){
+        return corruptBlockCount;
+    }
+
+    @Override
+    public void seek(long index){
+        nextIndex = Math.max(0, Math.min(index, recordCount));
+        positioned = false;
+    }
+
+    @Override
+    public long getIndex(){
+        return nextIndex - 1;
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        if(nextIndex >= recordCount){
+            return false;
+        }
+
+        if(!positioned){
+            int found = Arrays.binarySearch(blockFirstIndex, 0, blockCount, nextIndex);
+            enterBlock(found >= 0 ? found : -found - 2);
+            long skip = nextIndex - blockFirstIndex[block];
+            for(long i = 0; i < skip; ++i){
+                decode();
+            }
+            positioned = true;
+        }
+        else if(nextIndex == blockEnd){
+            enterBlock(block + 1);
+        }
+
+        decode();
+        ++nextIndex;
+        return true;
+    }
+
+    private void enterBlock(int block){
+        this.block = block;
+        blockEnd = block + 1 < blockCount ? blockFirstIndex[block + 1] : recordCount;
+        data.position(blockOffsets[block]);
+        for(int i = 0; i < CompactTrackFormat.FIELDS; ++i){
+            values[i] = 0;
+        }
+    }
+
+    private void decode(){
+        for(int i = 0; i < CompactTrackFormat.FIELDS; ++i){
+            values[i] += CompactTrackFormat.getVarLong(data);
+        }
+    }
+
+    @Override
+    public long getTime(){
+        return values[CompactTrackFormat.TIME];
+    }
+
+    @Override
+    public double getLatitude(){
+        return TrackFormat.fromScaled((int) values[CompactTrackFormat.LATITUDE]);
+    }
+
+    @Override
+    public double getLongitude(){
+        return TrackFormat.fromScaled((int) values[CompactTrackFormat.LONGITUDE]);
+    }
+
+    @Override
+    public float getAltitude(){
+        return (float) (values[CompactTrackFormat.ALTITUDE] / CompactTrackFormat.ALTITUDE_SCALE);
+    }
+
+    @Override
+    public float getAccuracy(){
+        return (float) (values[CompactTrackFormat.ACCURACY] / CompactTrackFormat.ACCURACY_SCALE);
+    }
+
+    @Override
+    public float getSpeed(){
+        return (float) (values[CompactTrackFormat.SPEED] / CompactTrackFormat.SPEED_SCALE);
+    }
+
+    @Override
+    public void close(){
+    }
+}
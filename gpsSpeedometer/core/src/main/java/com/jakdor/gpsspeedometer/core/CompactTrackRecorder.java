@@ -0,0 +1,245 @@
+package com.jakdor.gpsspeedometer.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Appends fixes to compact delta encoded track file (see CompactTrackFormat),
+ * usually behind TrackSimplifier
+ * - records are encoded into open block in preallocated buffer, no allocation per fix
+ * - open block is (re)written in place every FLUSH_INTERVAL of fix time and when full,
+ *   so sparse simplified tracks still fill blocks
+ * - every SYNC_INTERVAL of fix time (and on close) open block is forced to storage and closed, synced blocks
+ *   are never rewritten - torn rewrite (power loss, process killed mid write) loses at most records of open block
+ * - on open, torn or corrupted tail blocks are detected by size and crc, and dropped
+ */
+public class CompactTrackRecorder implements TrackSink {
+
+    public static final long FLUSH_INTERVAL = 10000; // ms
+    public static final long SYNC_INTERVAL = 60000; // ms
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final ByteBuffer block = ByteBuffer.allocate(CompactTrackFormat.MAX_BLOCK_SIZE)
+            .order(ByteOrder.LITTLE_ENDIAN);
+    private final CRC32 crc = new CRC32();
+    private final long[] previous = new long[CompactTrackFormat.FIELDS];
+    private final long[] values = new long[CompactTrackFormat.FIELDS];
+
+    private long blockPosition; // file offset of open block
+    private int blockRecords = 0;
+    private int blockSize = 0; // open block bytes last written
+    private boolean blockWritten = true;
+    private long recordCount = 0;
+    private long droppedBlockCount = 0;
+    private long lastFlushTime = Long.MIN_VALUE;
+    private long lastSyncTime = Long.MIN_VALUE;
+
+    private CompactTrackRecorder(File file) throws IOException {
+        this.file = new RandomAccessFile(file, "rw");
+        this.channel = this.file.getChannel();
+    }
+
+    /**
+     * Opens compact track file for appending, creates it if missing
+     * @param startTime UTC ms stored in header of new file
+     * @param tolerance simplification tolerance stored in header of new file (m), 0 for full resolution
+     */
+    public static CompactTrackRecorder open(File file, long startTime, double tolerance) throws IOException {
+        CompactTrackRecorder recorder = new CompactTrackRecorder(file);
+        try {
+            if (recorder.channel.size() < CompactTrackFormat.HEADER_SIZE) {
+                recorder.writeHeader(startTime, tolerance);
+            } else {
+                recorder.recover();
+            }
+        }
+        catch (IOException e){
+            recorder.close();
+            throw e;
+        }
+        return recorder;
+    }
+
+    private void writeHeader(long startTime, double tolerance) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(CompactTrackFormat.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(CompactTrackFormat.MAGIC);
+        header.putShort(CompactTrackFormat.VERSION);
+        header.putShort((short) Math.min(Short.MAX_VALUE, Math.round(tolerance * CompactTrackFormat.TOLERANCE_SCALE)));
+        header.putLong(startTime);
+        header.flip();
+
+        channel.truncate(0);
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+        channel.force(false);
+        blockPosition = CompactTrackFormat.HEADER_SIZE;
+    }
+
+    /**
+     * Validates header and blocks, drops torn or corrupted block with everything after it
+     */
+    private void recover() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(CompactTrackFormat.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(header, 0);
+        if(header.getInt(0) != CompactTrackFormat.MAGIC || header.getShort(4) != CompactTrackFormat.VERSION){
+            throw new IOException("Not a supported compact track file");
+        }
+
+        long size = channel.size();
+        long position = CompactTrackFormat.HEADER_SIZE;
+        while (position + CompactTrackFormat.BLOCK_HEADER_SIZE <= size){
+            block.clear();
+            block.limit(CompactTrackFormat.BLOCK_HEADER_SIZE);
+            readFully(block, position);
+            int records = block.getShort(0);
+            int payloadSize = block.getShort(2);
+            int blockSize = CompactTrackFormat.BLOCK_HEADER_SIZE + payloadSize + 4;
+            if(records <= 0 || records > CompactTrackFormat.BLOCK_RECORDS || payloadSize < 0
+                    || payloadSize > CompactTrackFormat.MAX_PAYLOAD_SIZE || position + blockSize > size){
+                break;
+            }
+
+            block.limit(blockSize);
+            readFully(block, position);
+            int length = CompactTrackFormat.BLOCK_HEADER_SIZE + payloadSize;
+            if(CompactTrackFormat.checksum(crc, block, 0, length) != block.getInt(length)){
+                break;
+            }
+            position += blockSize;
+            recordCount += records;
+        }
+
+        if(position != size) {
+            ++droppedBlockCount;
+            channel.truncate(position);
+            channel.force(false);
+        }
+        blockPosition = position;
+        block.clear();
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        buffer.position(0);
+        while (buffer.hasRemaining()){
+            if(channel.read(buffer, position + buffer.position()) < 0){
+                throw new IOException("Compact track file truncated");
+            }
+        }
+    }
+
+    /**
+     * Encodes single fix with speed computed for it into open block, writes block when needed
+     */
+    @Override
+    public void append(Fix fix, float speed) throws IOException {
+        if(blockRecords == 0){
+            block.clear();
+            block.position(CompactTrackFormat.BLOCK_HEADER_SIZE);
+            for(int i = 0; i < CompactTrackFormat.FIELDS; ++i){
+                previous[i] = 0;
+            }
+        }
+
+        values[CompactTrackFormat.TIME] = fix.getTime();
+        values[CompactTrackFormat.LATITUDE] = TrackFormat.toScaled(fix.getLatitude());
+        values[CompactTrackFormat.LONGITUDE] = TrackFormat.toScaled(fix.getLongitude());
+        values[CompactTrackFormat.ALTITUDE] = Math.round(fix.getAltitude() * CompactTrackFormat.ALTITUDE_SCALE);
+        values[CompactTrackFormat.ACCURACY] = Math.round(fix.getAccuracy() * CompactTrackFormat.ACCURACY_SCALE);
+        values[CompactTrackFormat.SPEED] = Math.round(speed * CompactTrackFormat.SPEED_SCALE);
+        for(int i = 0; i < CompactTrackFormat.FIELDS; ++i){
+            CompactTrackFormat.putVarLong(block, values[i] - previous[i]);
+            previous[i] = values[i];
+        }
+        ++blockRecords;
+        ++recordCount;
+        blockWritten = false;
+
+        if(lastFlushTime == Long.MIN_VALUE){
+            lastFlushTime = fix.getTime();
+            lastSyncTime = fix.getTime();
+        }
+        if(fix.getTime() - lastSyncTime >= SYNC_INTERVAL){
+            sync();
+            lastSyncTime = fix.getTime();
+            lastFlushTime = fix.getTime();
+        }
+        else if(blockRecords == CompactTrackFormat.BLOCK_RECORDS || fix.getTime() - lastFlushTime >= FLUSH_INTERVAL){
+            flush();
+            lastFlushTime = fix.getTime();
+        }
+    }
+
+    /**
+     * Writes open block to file, full block is closed and next record starts new one
+     */
+    public void flush() throws IOException {
+        if(blockWritten){
+            return;
+        }
+
+        int length = block.position();
+        block.putShort(0, (short) blockRecords);
+        block.putShort(2, (short) (length - CompactTrackFormat.BLOCK_HEADER_SIZE));
+        block.putInt(length, CompactTrackFormat.checksum(crc, block, 0, length));
+
+        ByteBuffer write = ByteBuffer.wrap(block.array(), 0, length + 4);
+        while (write.hasRemaining()){
+            channel.write(write, blockPosition + write.position());
+        }
+        blockWritten = true;
+        blockSize = length + 4;
+
+        if(blockRecords == CompactTrackFormat.BLOCK_RECORDS){
+            closeBlock();
+        }
+    }
+
+    /**
+     * Writes open block, forces it to storage and closes it, next record starts new block
+     */
+    public void sync() throws IOException {
+        flush();
+        channel.force(false);
+        if(blockRecords > 0){
+            closeBlock();
+        }
+    }
+
+    private void closeBlock(){
+        blockPosition += blockSize;
+        blockRecords = 0;
+    }
+
+    /**
+     * Records written so far, including buffered ones
+     */
+    public long getRecordCount(){
+        return recordCount;
+    }
+
+    /**
+     * Torn or corrupted tail dropped while opening (0 or 1)
+     */
+    public long getDroppedBlockCount(){
+        return droppedBlockCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if(channel.isOpen()) {
+                sync();
+            }
+        }
+        finally {
+            file.close();
+        }
+    }
+}
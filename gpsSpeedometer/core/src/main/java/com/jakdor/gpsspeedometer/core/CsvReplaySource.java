@@ -0,0 +1,78 @@
+package com.jakdor.gpsspeedometer.core;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Replay source reading CSV event log, one event per line, '#' starts comment:
+ * fix,elapsedRealtimeNanos,timeUtcMs,latitude,longitude,altitude,accuracy[,speed[,speedAccuracy]]
+ * acc,timestampNanos,x,y,z
+ * gyro,timestampNanos,x,y,z (rad/s)
+ * mag,timestampNanos,x,y,z (uT)
+ * baro,timestampNanos,pressure (hPa)
+ */
+public class CsvReplaySource implements ReplaySource {
+
+    public static final String FIX = "fix";
+    public static final String ACCELEROMETER = "acc";
+    public static final String GYROSCOPE = "gyro";
+    public static final String MAGNETOMETER = "mag";
+    public static final String PRESSURE = "baro";
+
+    private final BufferedReader reader;
+    private int lineNumber = 0;
+
+    public CsvReplaySource(Reader reader){
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+    }
+
+    @Override
+    public boolean next(ReplayEvent event) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null){
+            ++lineNumber;
+            line = line.trim();
+            if(line.isEmpty() || line.charAt(0) == '#'){
+                continue;
+            }
+
+            String[] fields = line.split(",");
+            try {
+                if (FIX.equals(fields[0]) && fields.length >= 7) {
+                    event.setFix(new Fix(Long.parseLong(fields[1]), Long.parseLong(fields[2]),
+                            Double.parseDouble(fields[3]), Double.parseDouble(fields[4]),
+                            Double.parseDouble(fields[5]), Float.parseFloat(fields[6]),
+                            fields.length >= 8 ? Float.parseFloat(fields[7]) : Float.NaN,
+                            fields.length >= 9 ? Float.parseFloat(fields[8]) : 0));
+                    return true;
+                } else if (ACCELEROMETER.equals(fields[0]) && fields.length >= 5) {
+                    event.setAccelerometer(Long.parseLong(fields[1]), Float.parseFloat(fields[2]),
+                            Float.parseFloat(fields[3]), Float.parseFloat(fields[4]));
+                    return true;
+                } else if (GYROSCOPE.equals(fields[0]) && fields.length >= 5) {
+                    event.setSensor(ReplayEvent.GYROSCOPE, Long.parseLong(fields[1]), Float.parseFloat(fields[2]),
+                            Float.parseFloat(fields[3]), Float.parseFloat(fields[4]));
+                    return true;
+                } else if (MAGNETOMETER.equals(fields[0]) && fields.length >= 5) {
+                    event.setSensor(ReplayEvent.MAGNETOMETER, Long.parseLong(fields[1]), Float.parseFloat(fields[2]),
+                            Float.parseFloat(fields[3]), Float.parseFloat(fields[4]));
+                    return true;
+                } else if (PRESSURE.equals(fields[0]) && fields.length >= 3) {
+                    event.setSensor(ReplayEvent.PRESSURE, Long.parseLong(fields[1]), Float.parseFloat(fields[2]), 0, 0);
+                    return true;
+                }
+            }
+            catch (NumberFormatException e){
+                throw new IOException("Malformed csv line " + lineNumber + ": " + line, e);
+            }
+            throw new IOException("Unknown csv record at line " + lineNumber + ": " + line);
+        }
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,533 @@
+package com.jakdor.gpsspeedometer.core;
+
+/**
+ * Inertial dead reckoning for gps outages (tunnels, garages), runs at sensor rate:
+ * - gravity direction: accelerometer low pass without vehicle acceleration (gps speed change forward,
+ *   speed x yaw rate sideways), rotated by gyroscope between samples; gyroscope only once fix is overdue
+ *   (forward tilt is not observable then)
+ * - vehicle forward axis in phone frame learned while gps is good: horizontal acceleration
+ *   correlated with gps speed change on straight road (gyroscope shows no turn, lateral acceleration
+ *   doesn't correlate); accelerometer bias ends up in gravity estimate
+ * - heading: last gps course, turned by gyroscope yaw rate, pulled towards tilt compensated
+ *   magnetic heading (offset to gps course learned as well)
+ * Outage starts when no fix came for max(MIN_STALE_NANOS, STALE_INTERVALS x fix interval) of sensor time
+ * while moving; speed and position then integrate forward acceleration until next fix,
+ * reconcile() scales the estimated path by gps displacement over the outage.
+ * Threading: onAccelerometer(), onGyroscope(), onMagnetometer() from single sensor thread, allocation free;
+ * onGpsFix() / reconcile() from fix thread, gps state handed over by single writer sequence lock
+ */
+public class DeadReckoning {
+
+    public static final long MIN_STALE_NANOS = 2500000000L;
+    public static final double STALE_INTERVALS = 3;
+    public static final double MIN_START_SPEED = 2; // m/s, no dead reckoning for stopped car
+    public static final double MAX_SPEED = 70; // m/s
+    public static final long MAX_DURATION_NANOS = 300000000000L; // estimate frozen afterwards
+    public static final double MIN_RECONCILE_DISPLACEMENT = 50; // m, shorter outages keep path length as is
+    public static final double MAX_RECONCILE_SCALE = 2;
+
+    private static final double GRAVITY_TAU = 20; // s, accelerometer share of gravity estimate
+    private static final double MAGNETIC_SMOOTHING = 0.2;
+    private static final double MAGNETIC_TAU = 10; // s, heading pull towards magnetic heading
+    private static final double LEARN_DECAY = 0.95; // per learned gps interval
+    private static final double MIN_LEARN_ENERGY = 2; // (m/s^2)^2, decayed sum of gps acceleration^2
+    private static final double MIN_LEARN_ACCELERATION = 0.3; // m/s^2, below gps speed noise dominates
+    private static final double MAX_LEARN_YAW_RATE = 0.05; // rad/s, turns add lateral acceleration
+    private static final double OFFSET_GAIN = 0.05;
+    private static final double MAX_LEARN_INTERVAL = 3; // s
+    private static final long MAX_SAMPLE_GAP_NANOS = 500000000L;
+    private static final double HEADING_MIN_DISTANCE = 5; // m between fixes for gps course
+    private static final double MOVING_SPEED = 0.5; // m/s
+
+    //fix thread -> sensor thread, sequence odd while writing
+    private volatile int gpsSequence = 0;
+    private volatile long gpsNanos;
+    private volatile double gpsSpeed;
+    private volatile double gpsHeading = Double.NaN;
+    private volatile double gpsLatitude;
+    private volatile double gpsLongitude;
+
+    //fix thread only
+    private double courseLatitude = Double.NaN;
+    private double courseLongitude;
+    private double course = Double.NaN;
+
+    //sensor thread only
+    private int seenSequence = 0;
+    private long seenNanos = 0;
+    private double seenSpeed;
+    private double seenHeading = Double.NaN;
+    private double seenLatitude;
+    private double seenLongitude;
+    private long gpsInterval = 0;
+
+    private final double[] gravity = new double[3];
+    private final double[] fixGravity = new double[3]; // as of last fix, before uncompensated samples
+    private final double[] up = new double[3];
+    private final double[] horizontal = new double[3];
+    private final double[] magnetic = new double[3];
+    private final double[] forward = new double[3];
+    private final double[] correlation = new double[3];
+    private final double[] horizontalSum = new double[3];
+    private boolean gravityValid = false;
+    private boolean magneticValid = false;
+    private boolean forwardValid = false;
+    private int horizontalCount = 0;
+    private double maxYawRate = 0; // since last fix
+    private double yawRate = 0; // last gyroscope sample
+    private double pendingSpeedChange = 0; // integrated since last fix, outage start value
+    private double pendingDistance = 0;
+    private double learnEnergy = 0;
+    private double gpsAcceleration = 0; // last gps interval, gravity filter compensation
+    private double magneticOffset = Double.NaN;
+    private long lastAccelerometerNanos = Long.MIN_VALUE;
+    private long lastGyroscopeNanos = Long.MIN_VALUE;
+    private long lastMagnetometerNanos = Long.MIN_VALUE;
+    private long startNanos;
+
+    //sensor thread -> readers
+    private volatile boolean active = false;
+    private volatile int activeSequence;
+    private volatile double speed;
+    private volatile double distance;
+    private volatile double north;
+    private volatile double east;
+    private volatile double heading = Double.NaN;
+    private volatile long movingNanos;
+    private volatile double startLatitude;
+    private volatile double startLongitude;
+
+    /**
+     * Accelerometer sample (m/s^2), timestamp on fix elapsed realtime clock;
+     * picks up gps state, learns or integrates, detects outage start
+     */
+    public void onAccelerometer(long timestampNanos, float x, float y, float z){
+        pollGps();
+
+        long deltaNanos = timestampNanos - lastAccelerometerNanos;
+        boolean continuous = lastAccelerometerNanos != Long.MIN_VALUE
+                && deltaNanos > 0 && deltaNanos < MAX_SAMPLE_GAP_NANOS;
+        lastAccelerometerNanos = timestampNanos;
+        double dt = continuous ? deltaNanos / 1e9 : 0;
+
+        if(!gravityValid){
+            gravity[0] = x;
+            gravity[1] = y;
+            gravity[2] = z;
+            gravityValid = true;
+        }
+        else if(continuous && !active && (gpsInterval == 0 || timestampNanos - seenNanos <= gpsInterval)){
+            double vx = 0;
+            double vy = 0;
+            double vz = 0;
+            if(forwardValid && updateUp()){
+                //forward and centripetal (left = up x forward) vehicle acceleration
+                double lateral = seenSpeed * yawRate;
+                vx = gpsAcceleration * forward[0] + lateral * (up[1] * forward[2] - up[2] * forward[1]);
+                vy = gpsAcceleration * forward[1] + lateral * (up[2] * forward[0] - up[0] * forward[2]);
+                vz = gpsAcceleration * forward[2] + lateral * (up[0] * forward[1] - up[1] * forward[0]);
+            }
+            double k = dt / (GRAVITY_TAU + dt);
+            gravity[0] += k * (x - vx - gravity[0]);
+            gravity[1] += k * (y - vy - gravity[1]);
+            gravity[2] += k * (z - vz - gravity[2]);
+        }
+        if(!updateUp()){
+            return;
+        }
+
+        //horizontal linear acceleration
+        double lx = x - gravity[0];
+        double ly = y - gravity[1];
+        double lz = z - gravity[2];
+        double vertical = lx * up[0] + ly * up[1] + lz * up[2];
+        horizontal[0] = lx - vertical * up[0];
+        horizontal[1] = ly - vertical * up[1];
+        horizontal[2] = lz - vertical * up[2];
+
+        if(active){
+            if(continuous){
+                integrate(timestampNanos, deltaNanos, dt);
+            }
+            return;
+        }
+
+        horizontalSum[0] += horizontal[0];
+        horizontalSum[1] += horizontal[1];
+        horizontalSum[2] += horizontal[2];
+        ++horizontalCount;
+        if(continuous){
+            if(forwardValid){
+                pendingSpeedChange += (horizontal[0] * forward[0] + horizontal[1] * forward[1]
+                        + horizontal[2] * forward[2]) * dt;
+            }
+            pendingDistance += Math.max(0, seenSpeed + pendingSpeedChange) * dt;
+        }
+
+        if(seenNanos != 0 && seenSpeed >= MIN_START_SPEED
+                && timestampNanos - seenNanos > Math.max(MIN_STALE_NANOS, (long) (STALE_INTERVALS * gpsInterval))){
+            start(timestampNanos);
+        }
+    }
+
+    /**
+     * Gyroscope sample (rad/s), rotates gravity estimate and turns heading
+     */
+    public void onGyroscope(long timestampNanos, float x, float y, float z){
+        long deltaNanos = timestampNanos - lastGyroscopeNanos;
+        boolean continuous = lastGyroscopeNanos != Long.MIN_VALUE
+                && deltaNanos > 0 && deltaNanos < MAX_SAMPLE_GAP_NANOS;
+        lastGyroscopeNanos = timestampNanos;
+        if(!continuous || !gravityValid){
+            return;
+        }
+        double dt = deltaNanos / 1e9;
+
+        //vector fixed in world seen from rotating phone: dg/dt = -w x g
+        double gx = gravity[0];
+        double gy = gravity[1];
+        double gz = gravity[2];
+        gravity[0] -= (y * gz - z * gy) * dt;
+        gravity[1] -= (z * gx - x * gz) * dt;
+        gravity[2] -= (x * gy - y * gx) * dt;
+
+        if(updateUp()){
+            yawRate = x * up[0] + y * up[1] + z * up[2]; // counter clockwise seen from above
+            if(active){
+                if(!Double.isNaN(heading)){
+                    heading = wrap(heading - yawRate * dt);
+                }
+            }
+            else {
+                maxYawRate = Math.max(maxYawRate, Math.abs(yawRate));
+            }
+        }
+    }
+
+    /**
+     * Magnetometer sample (uT), pulls dead reckoning heading towards magnetic heading
+     */
+    public void onMagnetometer(long timestampNanos, float x, float y, float z){
+        long deltaNanos = timestampNanos - lastMagnetometerNanos;
+        boolean continuous = lastMagnetometerNanos != Long.MIN_VALUE
+                && deltaNanos > 0 && deltaNanos < MAX_SAMPLE_GAP_NANOS;
+        lastMagnetometerNanos = timestampNanos;
+
+        if(!magneticValid){
+            magnetic[0] = x;
+            magnetic[1] = y;
+            magnetic[2] = z;
+            magneticValid = true;
+            return;
+        }
+        magnetic[0] += MAGNETIC_SMOOTHING * (x - magnetic[0]);
+        magnetic[1] += MAGNETIC_SMOOTHING * (y - magnetic[1]);
+        magnetic[2] += MAGNETIC_SMOOTHING * (z - magnetic[2]);
+
+        if(active && continuous && !Double.isNaN(heading) && !Double.isNaN(magneticOffset)){
+            double magneticHeading = magneticHeading();
+            if(!Double.isNaN(magneticHeading)){
+                double dt = deltaNanos / 1e9;
+                double current = heading;
+                heading = wrap(current + dt / (MAGNETIC_TAU + dt) * wrap(magneticHeading + magneticOffset - current));
+            }
+        }
+    }
+
+    /**
+     * Hands over accepted fix with current speed, ends outage in progress; fix thread
+     */
+    public void onGpsFix(Fix fix, double speed){
+        if(Double.isNaN(courseLatitude)){
+            courseLatitude = fix.getLatitude();
+            courseLongitude = fix.getLongitude();
+        }
+        else {
+            double dNorth = (fix.getLatitude() - courseLatitude) * Geodesy.metersPerDegreeLatitude(courseLatitude);
+            double dEast = Geodesy.normalizeLongitude(fix.getLongitude() - courseLongitude)
+                    * Geodesy.metersPerDegreeLongitude(courseLatitude);
+            if(dNorth * dNorth + dEast * dEast >= HEADING_MIN_DISTANCE * HEADING_MIN_DISTANCE){
+                course = Math.atan2(dEast, dNorth);
+                courseLatitude = fix.getLatitude();
+                courseLongitude = fix.getLongitude();
+            }
+        }
+
+        gpsSequence = gpsSequence + 1;
+        gpsNanos = fix.getElapsedRealtimeNanos();
+        gpsSpeed = speed;
+        gpsHeading = course;
+        gpsLatitude = fix.getLatitude();
+        gpsLongitude = fix.getLongitude();
+        gpsSequence = gpsSequence + 1;
+    }
+
+    /**
+     * Gps course is unknown after a gap, next fixes start it over; fix thread
+     */
+    public void resetCourse(){
+        courseLatitude = Double.NaN;
+        course = Double.NaN;
+    }
+
+    /**
+     * Outage path length fitted to first fix after it, call before onGpsFix(); fix thread.
+     * Estimated path is scaled by ratio of gps to estimated displacement (speed scale error),
+     * never shorter than straight distance between fixes
+     * @param straightDistance distance from last fix before outage to given fix
+     */
+    public double reconcile(double straightDistance){
+        double path = distance;
+        double displacement = Math.hypot(north, east);
+        if(!Double.isNaN(heading) && displacement >= MIN_RECONCILE_DISPLACEMENT){
+            double scale = Math.max(1 / MAX_RECONCILE_SCALE,
+                    Math.min(MAX_RECONCILE_SCALE, straightDistance / displacement));
+            path *= scale;
+        }
+        return Math.max(path, straightDistance);
+    }
+
+    /**
+     * Outage in progress, false as soon as next fix is handed over
+     */
+    public boolean isActive(){
+        return active && activeSequence == gpsSequence;
+    }
+
+    /**
+     * Estimated speed m/s
+     */
+    public double getSpeed(){
+        return speed;
+    }
+
+    /**
+     * Estimated path length since last fix, m
+     */
+    public double getDistance(){
+        return distance;
+    }
+
+    /**
+     * Estimated moving time since last fix
+     */
+    public long getMovingNanos(){
+        return movingNanos;
+    }
+
+    /**
+     * Estimated heading, radians clockwise from north, NaN if gps course was unknown
+     */
+    public double getHeading(){
+        return heading;
+    }
+
+    public double getLatitude(){
+        double latitude = startLatitude;
+        return latitude + north / Geodesy.metersPerDegreeLatitude(latitude);
+    }
+
+    public double getLongitude(){
+        double latitude = startLatitude;
+        return startLongitude + east / Geodesy.metersPerDegreeLongitude(latitude);
+    }
+
+    /**
+     * Vehicle forward axis learned (acceleration can be integrated), sensor thread
+     */
+    public boolean isForwardLearned(){
+        return forwardValid;
+    }
+
+    /**
+     * Reads gps state if writer published new one, learns from interval since previous fix
+     */
+    private void pollGps(){
+        int sequence = gpsSequence;
+        if(sequence == seenSequence || (sequence & 1) != 0){
+            return;
+        }
+        long nanos = gpsNanos;
+        double fixSpeed = gpsSpeed;
+        double fixHeading = gpsHeading;
+        double latitude = gpsLatitude;
+        double longitude = gpsLongitude;
+        if(gpsSequence != sequence){ //written meanwhile, next sample
+            return;
+        }
+
+        if(active){
+            active = false;
+            gpsAcceleration = 0;
+        }
+        else if(seenNanos != 0){
+            learn(nanos, fixSpeed, fixHeading);
+        }
+        if(seenNanos != 0 && nanos > seenNanos){
+            gpsInterval = nanos - seenNanos;
+        }
+
+        fixGravity[0] = gravity[0];
+        fixGravity[1] = gravity[1];
+        fixGravity[2] = gravity[2];
+        seenSequence = sequence;
+        seenNanos = nanos;
+        seenSpeed = fixSpeed;
+        seenHeading = fixHeading;
+        seenLatitude = latitude;
+        seenLongitude = longitude;
+        horizontalSum[0] = horizontalSum[1] = horizontalSum[2] = 0;
+        horizontalCount = 0;
+        maxYawRate = 0;
+        pendingSpeedChange = 0;
+        pendingDistance = 0;
+    }
+
+    /**
+     * Correlates mean horizontal acceleration since previous fix with gps acceleration
+     */
+    private void learn(long nanos, double fixSpeed, double fixHeading){
+        double dt = (nanos - seenNanos) / 1e9;
+        if(dt <= 0 || dt > MAX_LEARN_INTERVAL || horizontalCount == 0 || !gravityValid){
+            gpsAcceleration = 0;
+            return;
+        }
+
+        double acceleration = (fixSpeed - seenSpeed) / dt;
+        gpsAcceleration = acceleration;
+        double mx = horizontalSum[0] / horizontalCount;
+        double my = horizontalSum[1] / horizontalCount;
+        double mz = horizontalSum[2] / horizontalCount;
+        boolean straight = maxYawRate <= MAX_LEARN_YAW_RATE;
+        if(straight && Math.abs(acceleration) >= MIN_LEARN_ACCELERATION){
+            correlation[0] = correlation[0] * LEARN_DECAY + mx * acceleration;
+            correlation[1] = correlation[1] * LEARN_DECAY + my * acceleration;
+            correlation[2] = correlation[2] * LEARN_DECAY + mz * acceleration;
+            learnEnergy = learnEnergy * LEARN_DECAY + acceleration * acceleration;
+        }
+
+        if(learnEnergy >= MIN_LEARN_ENERGY && updateUp()){
+            double vertical = correlation[0] * up[0] + correlation[1] * up[1] + correlation[2] * up[2];
+            double fx = correlation[0] - vertical * up[0];
+            double fy = correlation[1] - vertical * up[1];
+            double fz = correlation[2] - vertical * up[2];
+            double norm = Math.sqrt(fx * fx + fy * fy + fz * fz);
+            if(norm > 0){
+                forward[0] = fx / norm;
+                forward[1] = fy / norm;
+                forward[2] = fz / norm;
+                forwardValid = true;
+            }
+        }
+        if(!forwardValid){
+            return;
+        }
+
+
+        if(!Double.isNaN(fixHeading) && fixSpeed >= MIN_START_SPEED){
+            double magneticHeading = magneticHeading();
+            if(!Double.isNaN(magneticHeading)){
+                double offset = wrap(fixHeading - magneticHeading);
+                magneticOffset = Double.isNaN(magneticOffset) ? offset
+                        : wrap(magneticOffset + OFFSET_GAIN * wrap(offset - magneticOffset));
+            }
+        }
+    }
+
+    /**
+     * Outage detected, continues from last fix with acceleration integrated since, along its course
+     */
+    private void start(long timestampNanos){
+        gravity[0] = fixGravity[0];
+        gravity[1] = fixGravity[1];
+        gravity[2] = fixGravity[2];
+        double startHeading = seenHeading;
+        startLatitude = seenLatitude;
+        startLongitude = seenLongitude;
+        speed = Math.max(0, Math.min(MAX_SPEED, seenSpeed + pendingSpeedChange));
+        distance = pendingDistance;
+        north = Double.isNaN(startHeading) ? 0 : distance * Math.cos(startHeading);
+        east = Double.isNaN(startHeading) ? 0 : distance * Math.sin(startHeading);
+        heading = startHeading;
+        movingNanos = timestampNanos - seenNanos;
+        startNanos = seenNanos;
+        activeSequence = seenSequence;
+        active = true;
+    }
+
+    private void integrate(long timestampNanos, long deltaNanos, double dt){
+        if(timestampNanos - startNanos > MAX_DURATION_NANOS){
+            speed = 0; //no longer trustworthy, hold path
+            return;
+        }
+
+        double current = speed;
+        if(forwardValid){
+            double acceleration = horizontal[0] * forward[0] + horizontal[1] * forward[1]
+                    + horizontal[2] * forward[2];
+            current = Math.max(0, Math.min(MAX_SPEED, current + acceleration * dt));
+            speed = current;
+        }
+
+        double step = current * dt;
+        distance = distance + step;
+        double direction = heading;
+        if(!Double.isNaN(direction)){
+            north = north + step * Math.cos(direction);
+            east = east + step * Math.sin(direction);
+        }
+        if(current >= MOVING_SPEED){
+            movingNanos = movingNanos + deltaNanos;
+        }
+    }
+
+    /**
+     * Unit up vector from gravity estimate
+     * @return false while gravity is degenerate (free fall)
+     */
+    private boolean updateUp(){
+        double norm = Math.sqrt(gravity[0] * gravity[0] + gravity[1] * gravity[1] + gravity[2] * gravity[2]);
+        if(norm < 1){
+            return false;
+        }
+        up[0] = gravity[0] / norm;
+        up[1] = gravity[1] / norm;
+        up[2] = gravity[2] / norm;
+        return true;
+    }
+
+    /**
+     * Tilt compensated magnetic heading of vehicle forward axis, NaN if not known
+     */
+    private double magneticHeading(){
+        if(!magneticValid || !forwardValid || !updateUp()){
+            return Double.NaN;
+        }
+        //east = m x up, north = up x east
+        double ex = magnetic[1] * up[2] - magnetic[2] * up[1];
+        double ey = magnetic[2] * up[0] - magnetic[0] * up[2];
+        double ez = magnetic[0] * up[1] - magnetic[1] * up[0];
+        double nx = up[1] * ez - up[2] * ey;
+        double ny = up[2] * ex - up[0] * ez;
+        double nz = up[0] * ey - up[1] * ex;
+        double toEast = forward[0] * ex + forward[1] * ey + forward[2] * ez;
+        double toNorth = forward[0] * nx + forward[1] * ny + forward[2] * nz;
+        if(toEast == 0 && toNorth == 0){
+            return Double.NaN;
+        }
+        return Math.atan2(toEast, toNorth);
+    }
+
+    /**
+     * Angle wrapped to -pi..pi
+     */
+    private static double wrap(double angle){
+        while (angle > Math.PI){
+            angle -= 2 * Math.PI;
+        }
+        while (angle < -Math.PI){
+            angle += 2 * Math.PI;
+        }
+        return angle;
+    }
+}
@@ -0,0 +1,137 @@
+package com.jakdor.gpsspeedometer.core;
+
+/**
+ * Accuracy aware fix gate, O(1) state per fix:
+ * - REJECT fixes with poor horizontal accuracy, too few satellites, stale or duplicated timestamps
+ *   and positions implying impossible acceleration (multipath jumps)
+ * - STATIONARY if displacement stays within combined accuracy noise and doppler speed (if any) is low
+ * - RESTART after time gap, or after repeated acceleration rejects (reference itself was outlier)
+ * Counters are plain fields, read them on processing thread or after replay
+ */
+public class DefaultFixGate implements FixGate {
+
+    public enum Reason { ACCURACY, SATELLITES, STALE, ACCELERATION, TIME_GAP, JITTER }
+
+    public static final float DEFAULT_MAX_ACCURACY = 50; // m
+    public static final int DEFAULT_MIN_SATELLITES = 4;
+    public static final double DEFAULT_MAX_ACCELERATION = 10; // m/s^2, ~1g is beyond any car
+    public static final long DEFAULT_MAX_GAP_NANOS = 20000000000L;
+
+    public static final double MIN_DISPLACEMENT = 0.4; // m
+    public static final double JITTER_DECORRELATION = 0.25; // consecutive fixes errors are correlated
+    public static final double STATIONARY_SPEED = 1.0; // m/s
+    private static final float UNKNOWN_ACCURACY = 3; // m, sources without accuracy
+    private static final int MAX_CONSECUTIVE_REJECTS = 3;
+
+    private final float maxAccuracy;
+    private final int minSatellites;
+    private final double maxAcceleration;
+    private final long maxGapNanos;
+
+    private double lastSpeed = Double.NaN;
+    private int consecutiveRejects = 0;
+
+    private final long[] counters = new long[Reason.values().length];
+    private long acceptedCount = 0;
+
+    public DefaultFixGate(){
+        this(DEFAULT_MAX_ACCURACY, DEFAULT_MIN_SATELLITES, DEFAULT_MAX_ACCELERATION, DEFAULT_MAX_GAP_NANOS);
+    }
+
+    /**
+     * @param minSatellites checked only for fixes reporting satellite count
+     */
+    public DefaultFixGate(float maxAccuracy, int minSatellites, double maxAcceleration, long maxGapNanos){
+        this.maxAccuracy = maxAccuracy;
+        this.minSatellites = minSatellites;
+        this.maxAcceleration = maxAcceleration;
+        this.maxGapNanos = maxGapNanos;
+    }
+
+    @Override
+    public Verdict check(Fix fix, Fix lastFix, double distance) {
+        if(fix.getAccuracy() > maxAccuracy){
+            return reject(Reason.ACCURACY);
+        }
+        if(fix.getSatellites() >= 0 && fix.getSatellites() < minSatellites){
+            return reject(Reason.SATELLITES);
+        }
+        if(lastFix == null){
+            return restart(null);
+        }
+
+        long deltaNanos = fix.getElapsedRealtimeNanos() - lastFix.getElapsedRealtimeNanos();
+        if(deltaNanos <= 0){ //duplicated or out of order fix
+            return reject(Reason.STALE);
+        }
+        if(deltaNanos > maxGapNanos){
+            return restart(Reason.TIME_GAP);
+        }
+
+        double deltaTime = deltaNanos / 1e9;
+        double accuracy = accuracyOf(fix);
+        double lastAccuracy = accuracyOf(lastFix);
+
+        double noise = JITTER_DECORRELATION * Math.sqrt(accuracy * accuracy + lastAccuracy * lastAccuracy);
+        if(distance < Math.max(MIN_DISPLACEMENT, noise)
+                && !(fix.hasSpeed() && fix.getSpeed() >= STATIONARY_SPEED)){
+            ++counters[Reason.JITTER.ordinal()];
+            consecutiveRejects = 0;
+            lastSpeed = 0;
+            return Verdict.STATIONARY;
+        }
+
+        double speed = distance / deltaTime;
+        if(!Double.isNaN(lastSpeed)){
+            double allowance = maxAcceleration * deltaTime + (accuracy + lastAccuracy) / deltaTime;
+            if(Math.abs(speed - lastSpeed) > allowance){
+                if(++consecutiveRejects >= MAX_CONSECUTIVE_REJECTS){
+                    return restart(Reason.ACCELERATION);
+                }
+                ++counters[Reason.ACCELERATION.ordinal()];
+                return Verdict.REJECT;
+            }
+        }
+
+        consecutiveRejects = 0;
+        lastSpeed = speed;
+        ++acceptedCount;
+        return Verdict.ACCEPT;
+    }
+
+    private Verdict reject(Reason reason){
+        ++counters[reason.ordinal()];
+        return Verdict.REJECT;
+    }
+
+    private Verdict restart(Reason reason){
+        if(reason != null) {
+            ++counters[reason.ordinal()];
+        }
+        consecutiveRejects = 0;
+        lastSpeed = Double.NaN;
+        return Verdict.RESTART;
+    }
+
+    private static double accuracyOf(Fix fix){
+        return fix.getAccuracy() > 0 ? fix.getAccuracy() : UNKNOWN_ACCURACY;
+    }
+
+    /**
+     * Number of fixes classified with given reason
+     */
+    public long getCount(Reason reason){
+        return counters[reason.ordinal()];
+    }
+
+    public long getAcceptedCount(){
+        return acceptedCount;
+    }
+
+    public void resetCounters(){
+        for(int i = 0; i < counters.length; ++i){
+            counters[i] = 0;
+        }
+        acceptedCount = 0;
+    }
+}
@@ -0,0 +1,133 @@
+package com.jakdor.gpsspeedometer.core;
+
+/**
+ * Adaptive gps / accelerometer duty cycling by motion state:
+ * - state classified from published trip snapshot (stop detection, speed)
+ * - switching to more expensive policy is immediate, to cheaper one only after DOWNGRADE_DWELL of fix time
+ * - accelerometer motion while stationary restores full rate immediately (wake-up)
+ * onFix() and onAccelerometer() may be called from different threads,
+ * listener is called on thread causing the change
+ */
+public class DutyCycleScheduler {
+
+    public static final double WALKING_MAX_SPEED = 3.0; // m/s
+    public static final double DRIVING_MAX_SPEED = 25.0; // m/s, 90 km/h
+    public static final long DOWNGRADE_DWELL = 15000000000L; // ns
+
+    public interface Listener {
+        void onPolicyChanged(MotionState state, PowerPolicy policy);
+    }
+
+    private final PowerPolicy[] policies;
+    private Listener listener;
+
+    private volatile MotionState state = MotionState.DRIVING;
+    private MotionState candidate = MotionState.DRIVING;
+    private long candidateSince = 0;
+
+    public DutyCycleScheduler(){
+        this(PowerPolicy.defaults());
+    }
+
+    /**
+     * @param policies policy table indexed by MotionState ordinal
+     */
+    public DutyCycleScheduler(PowerPolicy[] policies){
+        if(policies.length != MotionState.values().length){
+            throw new IllegalArgumentException("Policy required for every motion state");
+        }
+        this.policies = policies.clone();
+    }
+
+    public synchronized void setListener(Listener listener){
+        this.listener = listener;
+    }
+
+    /**
+     * Classifies motion after processed fix
+     * @param timeNanos fix elapsed realtime
+     */
+    public synchronized void onFix(long timeNanos, TripSnapshot snapshot){
+        MotionState classified = classify(snapshot);
+        if(rank(classified) > rank(state)){
+            candidate = classified;
+            change(classified);
+            return;
+        }
+        if(classified == state){
+            candidate = state;
+            return;
+        }
+
+        if(classified != candidate){
+            candidate = classified;
+            candidateSince = timeNanos;
+        }
+        else if(timeNanos - candidateSince >= DOWNGRADE_DWELL){
+            change(classified);
+        }
+    }
+
+    /**
+     * Accelerometer driven wake-up, cheap when no change is needed
+     */
+    public void onAccelerometer(boolean accelerating){
+        if(!accelerating || state != MotionState.STATIONARY){
+            return;
+        }
+        synchronized (this){
+            if(state == MotionState.STATIONARY){
+                candidate = MotionState.DRIVING;
+                change(MotionState.DRIVING);
+            }
+        }
+    }
+
+    private static MotionState classify(TripSnapshot snapshot){
+        if(snapshot.isStopped()){
+            return MotionState.STATIONARY;
+        }
+        double speed = snapshot.getSpeed();
+        if(speed < WALKING_MAX_SPEED){
+            return MotionState.WALKING;
+        }
+        if(speed < DRIVING_MAX_SPEED){
+            return MotionState.DRIVING;
+        }
+        return MotionState.HIGH_SPEED;
+    }
+
+    /**
+     * Power rank of state, driving (full rate) is most expensive
+     */
+    private static int rank(MotionState state){
+        switch (state){
+            case STATIONARY:
+                return 0;
+            case WALKING:
+                return 1;
+            case HIGH_SPEED:
+                return 2;
+            default:
+                return 3;
+        }
+    }
+
+    private void change(MotionState next){
+        if(next == state){
+            return;
+        }
+        state = next;
+        if(listener != null){
+            listener.onPolicyChanged(next, policies[next.ordinal()]);
+        }
+    }
+
+    public MotionState getState(){
+        return state;
+    }
+
+    public PowerPolicy getPolicy(){
+        return policies[state.ordinal()];
+    }
+}
@@ -0,0 +1,30 @@
+package com.jakdor.gpsspeedometer.core;
+
+/**
+ * Track exchange formats supported by TrackExporter and TrackImporter
+ * - GPX: GPX 1.1 track, accuracy stored as hdop (accuracy / GpxReplaySource.UERE)
+ * - KML: KML 2.2 placemark with time stamped gx:Track
+ * - CSV: CsvReplaySource fix records, replayable as is
+ */
+public enum ExportFormat {
+
+    GPX(".gpx", "application/gpx+xml"),
+    KML(".kml", "application/vnd.google-earth.kml+xml"),
+    CSV(".csv", "text/csv");
+
+    private final String extension;
+    private final String mimeType;
+
+    ExportFormat(String extension, String mimeType){
+        this.extension = extension;
+        this.mimeType = mimeType;
+    }
+
+    public String getExtension(){
+        return extension;
+    }
+
+    public String getMimeType(){
+        return mimeType;
+    }
+}
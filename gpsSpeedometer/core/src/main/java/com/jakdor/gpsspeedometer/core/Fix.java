@@ -0,0 +1,94 @@
+package com.jakdor.gpsspeedometer.core;
+
+/**
+ * Immutable gps fix record, all values captured at once from single receiver location
+ */
+public final class Fix {
+
+    private final long elapsedRealtimeNanos;
+    private final long time;
+    private final double latitude;
+    private final double longitude;
+    private final double altitude;
+    private final float accuracy;
+    private final float speed;
+    private final float speedAccuracy;
+    private final int satellites;
+
+    /**
+     * Fix without receiver speed
+     */
+    public Fix(long elapsedRealtimeNanos, long time, double latitude, double longitude,
+               double altitude, float accuracy){
+        this(elapsedRealtimeNanos, time, latitude, longitude, altitude, accuracy, Float.NaN, 0, -1);
+    }
+
+    /**
+     * Fix without satellite count
+     */
+    public Fix(long elapsedRealtimeNanos, long time, double latitude, double longitude,
+               double altitude, float accuracy, float speed, float speedAccuracy){
+        this(elapsedRealtimeNanos, time, latitude, longitude, altitude, accuracy, speed, speedAccuracy, -1);
+    }
+
+    /**
+     * @param elapsedRealtimeNanos monotonic fix timestamp, used for all time deltas
+     * @param time UTC fix time in ms
+     * @param accuracy horizontal accuracy radius (68% confidence) in meters, 0 if unknown
+     * @param speed receiver (doppler) speed over ground in m/s, NaN if not reported
+     * @param speedAccuracy speed accuracy (68% confidence) in m/s, 0 if unknown
+     * @param satellites satellites used in fix, -1 if unknown
+     */
+    public Fix(long elapsedRealtimeNanos, long time, double latitude, double longitude,
+               double altitude, float accuracy, float speed, float speedAccuracy, int satellites){
+        this.elapsedRealtimeNanos = elapsedRealtimeNanos;
+        this.time = time;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.altitude = altitude;
+        this.accuracy = accuracy;
+        this.speed = speed;
+        this.speedAccuracy = speedAccuracy;
+        this.satellites = satellites;
+    }
+
+    public long getElapsedRealtimeNanos(){
+        return elapsedRealtimeNanos;
+    }
+
+    public long getTime(){
+        return time;
+    }
+
+    public double getLatitude(){
+        return latitude;
+    }
+
+    public double getLongitude(){
+        return longitude;
+    }
+
+    public double getAltitude(){
+        return altitude;
+    }
+
+    public float getAccuracy(){
+        return accuracy;
+    }
+
+    public boolean hasSpeed(){
+        return !Float.isNaN(speed);
+    }
+
+    public float getSpeed(){
+        return speed;
+    }
+
+    public float getSpeedAccuracy(){
+        return speedAccuracy;
+    }
+
+    public int getSatellites(){
+        return satellites;
+    }
+}
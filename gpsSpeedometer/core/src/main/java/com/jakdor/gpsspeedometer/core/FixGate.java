@@ -0,0 +1,33 @@
+package com.jakdor.gpsspeedometer.core;
+
+/**
+ * Pluggable fix gating stage in front of TripCalculator distance and speed math
+ */
+public interface FixGate {
+
+    enum Verdict {
+        /**
+         * Real movement, distance and speed are processed
+         */
+        ACCEPT,
+        /**
+         * Displacement within receiver noise, fix counts as standing still
+         */
+        STATIONARY,
+        /**
+         * Continuity lost (time gap), fix becomes new reference without distance
+         */
+        RESTART,
+        /**
+         * Bad fix, dropped without any processing
+         */
+        REJECT
+    }
+
+    /**
+     * Classifies fix against last processed one, called once per fix on processing thread
+     * @param lastFix last accepted reference fix, null for first fix
+     * @param distance distance to lastFix in meters, 0 for first fix
+     */
+    Verdict check(Fix fix, Fix lastFix, double distance);
+}
@@ -0,0 +1,8 @@
+package com.jakdor.gpsspeedometer.core;
+
+/**
+ * Receiver of gps fixes
+ */
+public interface FixListener {
+    void onFix(Fix fix);
+}
@@ -0,0 +1,104 @@
+package com.jakdor.gpsspeedometer.core;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Push based fix pipeline - producer (gps listener) enqueues fixes into bounded queue,
+ * single consumer thread hands every fix to downstream listener exactly once, in arrival order.
+ * When consumer falls behind oldest queued fix is dropped, producer never blocks.
+ */
+public class FixPipeline implements FixListener {
+
+    public static final int DEFAULT_CAPACITY = 64;
+    public static final long STOP_TIMEOUT = 1000; // ms
+
+    private static final Fix STOP = new Fix(0, 0, 0, 0, 0, 0);
+
+    private final BlockingQueue<Fix> queue;
+    private final FixListener consumer;
+    private final AtomicLong droppedCount = new AtomicLong();
+    private volatile Thread thread;
+    private volatile boolean running = false;
+
+    public FixPipeline(FixListener consumer){
+        this(consumer, DEFAULT_CAPACITY);
+    }
+
+    public FixPipeline(FixListener consumer, int capacity){
+        this.consumer = consumer;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Enqueues fix, called from producer thread
+     */
+    @Override
+    public void onFix(Fix fix){
+        while (!queue.offer(fix)){
+            if(queue.poll() != null){
+                droppedCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Starts consumer thread
+     */
+    public synchronized void start(){
+        if(thread != null){
+            return;
+        }
+
+        running = true;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (running) {
+                        Fix fix = queue.take();
+                        if(fix == STOP || !running){
+                            break;
+                        }
+                        consumer.onFix(fix);
+                    }
+                }
+                catch (InterruptedException e){
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "FixPipeline");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops consumer thread, fixes still queued are discarded;
+     * waits (up to STOP_TIMEOUT) for fix in progress, so consumer resources can be released afterwards.
+     * Consumer is not interrupted, interrupt would close its NIO channels mid write
+     */
+    public synchronized void stop(){
+        Thread stopped = thread;
+        if(stopped == null){
+            return;
+        }
+
+        running = false;
+        thread = null;
+        queue.clear();
+        onFix(STOP); // wakes consumer, if evicted by producer any later fix does it
+
+        if(stopped != Thread.currentThread()) {
+            try {
+                stopped.join(STOP_TIMEOUT);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public long getDroppedCount(){
+        return droppedCount.get();
+    }
+}
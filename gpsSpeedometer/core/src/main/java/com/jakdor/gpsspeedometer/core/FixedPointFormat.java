@@ -0,0 +1,100 @@
+package com.jakdor.gpsspeedometer.core;
+
+/**
+ * Allocation free number formatting into preallocated char buffers, for per frame HUD drawing;
+ * values are rounded half up, NaN / infinity / out of range print as dashes
+ */
+public final class FixedPointFormat {
+
+    private static final long[] POWERS = {1, 10, 100, 1000, 10000, 100000, 1000000, 10000000};
+    private static final long MAX_SCALED = 1000000000000000L;
+
+    private FixedPointFormat(){
+    }
+
+    /**
+     * Writes value with given number of decimals (0..7) at offset
+     * @return number of chars written
+     */
+    public static int format(double value, int decimals, char[] buffer, int offset){
+        if(decimals < 0 || decimals >= POWERS.length){
+            throw new IllegalArgumentException("Unsupported decimals: " + decimals);
+        }
+        double scaled = Math.abs(value) * POWERS[decimals] + 0.5;
+        if(Double.isNaN(value) || scaled >= MAX_SCALED){
+            return dashes(decimals, buffer, offset);
+        }
+
+        long fixed = (long) scaled;
+        int position = offset;
+        if(value < 0 && fixed != 0){
+            buffer[position++] = '-';
+        }
+
+        long integer = fixed / POWERS[decimals];
+        position += formatLong(integer, buffer, position);
+        if(decimals > 0){
+            buffer[position++] = '.';
+            long fraction = fixed - integer * POWERS[decimals];
+            for(int i = decimals - 1; i >= 0; --i){
+                buffer[position + i] = (char) ('0' + fraction % 10);
+                fraction /= 10;
+            }
+            position += decimals;
+        }
+        return position - offset;
+    }
+
+    /**
+     * Writes non negative integer at offset
+     * @return number of chars written
+     */
+    public static int formatLong(long value, char[] buffer, int offset){
+        if(value < 0){
+            throw new IllegalArgumentException("Negative value: " + value);
+        }
+        int length = 1;
+        for(long rest = value / 10; rest > 0; rest /= 10){
+            ++length;
+        }
+        for(int i = offset + length - 1; i >= offset; --i){
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return length;
+    }
+
+    /**
+     * Writes seconds as h:mm:ss
+     * @return number of chars written
+     */
+    public static int formatDuration(long seconds, char[] buffer, int offset){
+        if(seconds < 0){
+            seconds = 0;
+        }
+        int position = offset + formatLong(seconds / 3600, buffer, offset);
+        position = twoDigits(':', (seconds / 60) % 60, buffer, position);
+        position = twoDigits(':', seconds % 60, buffer, position);
+        return position - offset;
+    }
+
+    private static int twoDigits(char separator, long value, char[] buffer, int position){
+        buffer[position] = separator;
+        buffer[position + 1] = (char) ('0' + value / 10);
+        buffer[position + 2] = (char) ('0' + value % 10);
+        return position + 3;
+    }
+
+    private static int dashes(int decimals, char[] buffer, int offset){
+        buffer[offset] = '-';
+        buffer[offset + 1] = '-';
+        if(decimals == 0){
+            return 2;
+        }
+        buffer[offset + 2] = '.';
+        for(int i = 0; i < decimals; ++i){
+            buffer[offset + 3 + i] = '-';
+        }
+        return 3 + decimals;
+    }
+}
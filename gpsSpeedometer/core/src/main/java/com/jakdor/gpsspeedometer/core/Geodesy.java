@@ -0,0 +1,165 @@
+package com.jakdor.gpsspeedometer.core;
+
+/**
+ * Android-free geodesy helpers, all distances in meters on WGS-84 ellipsoid
+ *
+ * Accuracy/performance contract of distance():
+ * - spans under FAST_PATH_LIMIT (and away from the poles) use local ellipsoidal projection,
+ *   relative error against Vincenty stays under FAST_PATH_MAX_RELATIVE_ERROR,
+ *   cost is one sin, one cos and two sqrt, no iteration
+ * - longer spans use iterative Vincenty inverse formula (sub-millimeter accuracy)
+ * - nearly antipodal points where Vincenty doesn't converge fall back to haversine
+ */
+public final class Geodesy {
+
+    public static final double WGS84_A = 6378137; // semi-major axis
+    public static final double WGS84_B = 6356752.314245; // semi-minor axis
+    public static final double WGS84_F = 1 / 298.257223563; // flattening
+    public static final double MEAN_EARTH_RADIUS = 6371000;
+
+    public static final double FAST_PATH_LIMIT = 5000;
+    public static final double FAST_PATH_MAX_RELATIVE_ERROR = 1e-5;
+    public static final double FAST_PATH_MAX_LATITUDE = 85;
+
+    private static final double E2 = WGS84_F * (2 - WGS84_F); // first eccentricity squared
+    private static final int VINCENTY_ITERATION_LIMIT = 100;
+
+    private Geodesy(){
+    }
+
+    /**
+     * Adaptive distance between two points in degrees,
+     * picks cheapest kernel that still meets the accuracy contract
+     */
+    public static double distance(double lat1, double lon1, double lat2, double lon2){
+        if(Math.abs(lat1) < FAST_PATH_MAX_LATITUDE && Math.abs(lat2) < FAST_PATH_MAX_LATITUDE) {
+            double output = distanceLocal(lat1, lon1, lat2, lon2);
+            if (output < FAST_PATH_LIMIT) {
+                return output;
+            }
+        }
+
+        double output = distanceVincenty(lat1, lon1, lat2, lon2);
+        if(Double.isNaN(output)){
+            return distanceHaversine(lat1, lon1, lat2, lon2);
+        }
+        return output;
+    }
+
+    /**
+     * Local projection kernel - flat plane tangent at mid latitude,
+     * scaled by WGS-84 meridional and prime vertical radii of curvature
+     */
+    public static double distanceLocal(double lat1, double lon1, double lat2, double lon2){
+        double midLat = Math.toRadians((lat1 + lat2) / 2);
+        double sinMidLat = Math.sin(midLat);
+        double w = 1 - E2 * sinMidLat * sinMidLat;
+        double n = WGS84_A / Math.sqrt(w); // prime vertical radius
+        double m = n * (1 - E2) / w; // meridional radius
+
+        double dy = m * Math.toRadians(lat2 - lat1);
+        double dx = n * Math.cos(midLat) * Math.toRadians(normalizeLongitude(lon2 - lon1));
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Meters per degree of latitude at given latitude, local projection scale (WGS-84 meridional radius)
+     */
+    public static double metersPerDegreeLatitude(double latitude){
+        double sinLat = Math.sin(Math.toRadians(latitude));
+        double w = 1 - E2 * sinLat * sinLat;
+        return Math.toRadians(WGS84_A * (1 - E2) / (w * Math.sqrt(w)));
+    }
+
+    /**
+     * Meters per degree of longitude at given latitude, local projection scale (WGS-84 prime vertical radius)
+     */
+    public static double metersPerDegreeLongitude(double latitude){
+        double latRad = Math.toRadians(latitude);
+        double sinLat = Math.sin(latRad);
+        return Math.toRadians(WGS84_A / Math.sqrt(1 - E2 * sinLat * sinLat) * Math.cos(latRad));
+    }
+
+    /**
+     * Simple approximate distance, spherical earth model (haversine formula)
+     */
+    public static double distanceHaversine(double lat1, double lon1, double lat2, double lon2){
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat/2) * Math.sin(dLat/2) +
+                Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) *
+                        Math.sin(dLng/2) * Math.sin(dLng/2);
+        double b = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1-a));
+        return MEAN_EARTH_RADIUS * b;
+    }
+
+    /**
+     * Vincenty inverse formula on WGS-84 ellipsoid,
+     * returns NaN if formula failed to converge (nearly antipodal points)
+     */
+    public static double distanceVincenty(double lat1, double lon1, double lat2, double lon2){
+        double a = WGS84_A, b = WGS84_B, f = WGS84_F;
+        double L = Math.toRadians(normalizeLongitude(lon2 - lon1));
+        double U1 = Math.atan((1 - f) * Math.tan(Math.toRadians(lat1)));
+        double U2 = Math.atan((1 - f) * Math.tan(Math.toRadians(lat2)));
+        double sinU1 = Math.sin(U1), cosU1 = Math.cos(U1);
+        double sinU2 = Math.sin(U2), cosU2 = Math.cos(U2);
+
+        double sinLambda, cosLambda, sinSigma, cosSigma, sigma, sinAlpha, cosSqAlpha, cos2SigmaM;
+        double lambda = L, lambdaP;
+        int interLimit = VINCENTY_ITERATION_LIMIT;
+
+        do {
+            sinLambda = Math.sin(lambda);
+            cosLambda = Math.cos(lambda);
+            sinSigma = Math.sqrt((cosU2 * sinLambda) * (cosU2 * sinLambda)
+                    + (cosU1 * sinU2 - sinU1 * cosU2 * cosLambda) * (cosU1 * sinU2 - sinU1 * cosU2 * cosLambda));
+            if (sinSigma == 0) {
+                return 0; // co-incident points
+            }
+
+            cosSigma = sinU1 * sinU2 + cosU1 * cosU2 * cosLambda;
+            sigma = Math.atan2(sinSigma, cosSigma);
+            sinAlpha = cosU1 * cosU2 * sinLambda / sinSigma;
+            cosSqAlpha = 1 - sinAlpha * sinAlpha;
+            cos2SigmaM = cosSigma - 2 * sinU1 * sinU2 / cosSqAlpha;
+
+            if (Double.isNaN(cos2SigmaM)) {
+                cos2SigmaM = 0; // equatorial line: cosSqAlpha=0 (sec. 6)
+            }
+
+            double C = f / 16 * cosSqAlpha * (4 + f * (4 - 3 * cosSqAlpha));
+            lambdaP = lambda;
+            lambda = L + (1 - C) * f * sinAlpha
+                    * (sigma + C * sinSigma * (cos2SigmaM + C * cosSigma * (-1 + 2 * cos2SigmaM * cos2SigmaM)));
+        } while (Math.abs(lambda - lambdaP) > 1e-12 && --interLimit > 0);
+
+        if (interLimit == 0) {
+            return Double.NaN; // formula failed to converge
+        }
+
+        double uSq = cosSqAlpha * (a * a - b * b) / (b * b);
+        double A = 1 + uSq / 16384 * (4096 + uSq * (-768 + uSq * (320 - 175 * uSq)));
+        double B = uSq / 1024 * (256 + uSq * (-128 + uSq * (74 - 47 * uSq)));
+        double deltaSigma = B
+                * sinSigma
+                * (cos2SigmaM + B
+                / 4
+                * (cosSigma * (-1 + 2 * cos2SigmaM * cos2SigmaM) - B / 6 * cos2SigmaM
+                * (-3 + 4 * sinSigma * sinSigma) * (-3 + 4 * cos2SigmaM * cos2SigmaM)));
+        return b * A * (sigma - deltaSigma);
+    }
+
+    /**
+     * Maps longitude difference into [-180, 180] range, handles antimeridian crossing
+     */
+    static double normalizeLongitude(double dLon){
+        if(dLon > 180){
+            return dLon - 360;
+        }
+        if(dLon < -180){
+            return dLon + 360;
+        }
+        return dLon;
+    }
+}
@@ -0,0 +1,105 @@
+package com.jakdor.gpsspeedometer.core;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Replay source streaming track points (trkpt, rtept) out of GPX 1.0/1.1 file;
+ * elapsed realtime is derived from point time, accuracy from hdop when present
+ */
+public class GpxReplaySource implements ReplaySource {
+
+    /**
+     * Typical user equivalent range error, accuracy = hdop * UERE
+     */
+    public static final float UERE = 5;
+
+    private static final long DEFAULT_INTERVAL = 1000; // ms, points without time
+
+    private final XmlPullScanner scanner;
+    private long firstTime = Long.MIN_VALUE;
+    private long lastTime = 0;
+
+    public GpxReplaySource(Reader reader){
+        this.scanner = new XmlPullScanner(reader);
+    }
+
+    @Override
+    public boolean next(ReplayEvent event) throws IOException {
+        boolean inPoint = false;
+        String element = null;
+        double latitude = 0, longitude = 0, altitude = 0;
+        long time = Long.MIN_VALUE;
+        float accuracy = 0;
+
+        int token;
+        while ((token = scanner.next()) != XmlPullScanner.END_DOCUMENT){
+            if(token == XmlPullScanner.START_TAG){
+                String name = scanner.getLocalName();
+                if("trkpt".equals(name) || "rtept".equals(name)){
+                    inPoint = true;
+                    latitude = parseCoordinate(scanner.getAttribute("lat"));
+                    longitude = parseCoordinate(scanner.getAttribute("lon"));
+                    altitude = 0;
+                    time = Long.MIN_VALUE;
+                    accuracy = 0;
+                }
+                element = name;
+            }
+            else if(token == XmlPullScanner.TEXT && inPoint && element != null){
+                String text = scanner.getText().trim();
+                try {
+                    switch (element) {
+                        case "ele":
+                            altitude = Double.parseDouble(text);
+                            break;
+                        case "time":
+                            time = IsoTime.parse(text);
+                            break;
+                        case "hdop":
+                            accuracy = Float.parseFloat(text) * UERE;
+                            break;
+                    }
+                }
+                catch (IllegalArgumentException e){
+                    throw new IOException("Malformed gpx " + element + ": " + text, e);
+                }
+            }
+            else if(token == XmlPullScanner.END_TAG){
+                String name = scanner.getLocalName();
+                element = null;
+                if(inPoint && ("trkpt".equals(name) || "rtept".equals(name))){
+                    if(time == Long.MIN_VALUE){
+                        time = lastTime + DEFAULT_INTERVAL;
+                    }
+                    if(firstTime == Long.MIN_VALUE){
+                        firstTime = time;
+                    }
+                    lastTime = time;
+
+                    event.setFix(new Fix((time - firstTime) * 1000000L, time,
+                            latitude, longitude, altitude, accuracy));
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static double parseCoordinate(String value) throws IOException {
+        if(value == null){
+            throw new IOException("Gpx point without coordinates");
+        }
+        try {
+            return Double.parseDouble(value);
+        }
+        catch (NumberFormatException e){
+            throw new IOException("Malformed gpx coordinate: " + value, e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        scanner.close();
+    }
+}
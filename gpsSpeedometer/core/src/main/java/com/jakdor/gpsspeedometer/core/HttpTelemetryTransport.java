@@ -0,0 +1,73 @@
+package com.jakdor.gpsspeedometer.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Telemetry batch per HTTP POST request (application/octet-stream body), any 2xx response acknowledges it,
+ * 4xx refuses it for good (except 408 and 429, retried like 5xx and network errors);
+ * connections are kept alive between batches by HttpURLConnection pool.
+ * Vehicle or device identity is part of the URL (e.g. query parameter), batches carry no identity
+ */
+public class HttpTelemetryTransport implements TelemetryTransport {
+
+    public static final String CONTENT_TYPE = "application/octet-stream";
+    public static final int TIMEOUT = 10000; // ms, connect and read
+    private static final int HTTP_REQUEST_TIMEOUT = 408;
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    private final URL url;
+
+    public HttpTelemetryTransport(URL url){
+        this.url = url;
+    }
+
+    @Override
+    public void send(byte[] data, int offset, int length) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try {
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setConnectTimeout(TIMEOUT);
+            connection.setReadTimeout(TIMEOUT);
+            connection.setFixedLengthStreamingMode(length);
+            connection.setRequestProperty("Content-Type", CONTENT_TYPE);
+
+            OutputStream output = connection.getOutputStream();
+            try {
+                output.write(data, offset, length);
+            }
+            finally {
+                output.close();
+            }
+
+            int code = connection.getResponseCode();
+            if(code / 100 == 4 && code != HTTP_REQUEST_TIMEOUT && code != HTTP_TOO_MANY_REQUESTS){
+                throw new TelemetryRejectedException("Telemetry batch refused: HTTP " + code);
+            }
+            if(code / 100 != 2){
+                throw new IOException("Telemetry upload rejected: HTTP " + code);
+            }
+            InputStream input = connection.getInputStream();
+            try {
+                byte[] skip = new byte[256];
+                while (input.read(skip) >= 0){ //drained response lets connection be reused
+                }
+            }
+            finally {
+                input.close();
+            }
+        }
+        catch (IOException e){
+            connection.disconnect();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close(){
+    }
+}
@@ -0,0 +1,113 @@
+package com.jakdor.gpsspeedometer.core;
+
+/**
+ * ISO 8601 UTC timestamps ("2017-09-12T10:15:30.250Z") used by GPX/KML, without SimpleDateFormat
+ */
+public final class IsoTime {
+
+    private IsoTime(){
+    }
+
+    /**
+     * Parses yyyy-MM-ddTHH:mm:ss[.SSS](Z|+hh:mm|-hh:mm) to UTC ms
+     */
+    public static long parse(CharSequence text){
+        try {
+            int year = number(text, 0, 4);
+            int month = number(text, 5, 2);
+            int day = number(text, 8, 2);
+            int hour = number(text, 11, 2);
+            int minute = number(text, 14, 2);
+            int second = number(text, 17, 2);
+
+            int position = 19;
+            int millis = 0;
+            if (position < text.length() && text.charAt(position) == '.') {
+                int scale = 100;
+                ++position;
+                while (position < text.length() && Character.isDigit(text.charAt(position))) {
+                    millis += (text.charAt(position) - '0') * scale;
+                    scale /= 10;
+                    ++position;
+                }
+            }
+
+            long offset = 0;
+            if (position < text.length() && text.charAt(position) != 'Z') {
+                int sign = text.charAt(position) == '-' ? -1 : 1;
+                offset = sign * (number(text, position + 1, 2) * 60L + number(text, position + 4, 2)) * 60000L;
+            }
+
+            return ((daysFromCivil(year, month, day) * 24 + hour) * 60 + minute) * 60000L
+                    + second * 1000L + millis - offset;
+        }
+        catch (IndexOutOfBoundsException e){
+            throw new IllegalArgumentException("Invalid ISO 8601 time: " + text, e);
+        }
+    }
+
+    /**
+     * Formats UTC ms as yyyy-MM-ddTHH:mm:ss.SSSZ into given builder
+     */
+    public static void format(long time, StringBuilder output){
+        long days = floorDiv(time, 86400000L);
+        long millisOfDay = time - days * 86400000L;
+
+        // civil from days (Howard Hinnant's algorithm)
+        long z = days + 719468;
+        long era = floorDiv(z, 146097);
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        long day = doy - (153 * mp + 2) / 5 + 1;
+        long month = mp < 10 ? mp + 3 : mp - 9;
+        long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+
+        pad(output, year, 4).append('-');
+        pad(output, month, 2).append('-');
+        pad(output, day, 2).append('T');
+        pad(output, millisOfDay / 3600000, 2).append(':');
+        pad(output, millisOfDay / 60000 % 60, 2).append(':');
+        pad(output, millisOfDay / 1000 % 60, 2).append('.');
+        pad(output, millisOfDay % 1000, 3).append('Z');
+    }
+
+    private static StringBuilder pad(StringBuilder output, long value, int digits){
+        for(long limit = 10; digits > 1; --digits, limit *= 10){
+            if(value < limit){
+                output.append('0');
+            }
+        }
+        return output.append(value);
+    }
+
+    private static long daysFromCivil(long year, long month, long day){
+        year -= month <= 2 ? 1 : 0;
+        long era = floorDiv(year, 400);
+        long yoe = year - era * 400;
+        long doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+
+    private static long floorDiv(long x, long y){
+        long output = x / y;
+        if((x % y != 0) && ((x ^ y) < 0)){
+            --output;
+        }
+        return output;
+    }
+
+    private static int number(CharSequence text, int start, int length){
+        int output = 0;
+        for(int i = start; i < start + length; ++i){
+            char c = text.charAt(i);
+            if(c < '0' || c > '9'){
+                throw new IllegalArgumentException("Invalid ISO 8601 time: " + text);
+            }
+            output = output * 10 + c - '0';
+        }
+        return output;
+    }
+}
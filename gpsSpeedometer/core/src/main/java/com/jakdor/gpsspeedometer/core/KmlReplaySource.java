@@ -0,0 +1,161 @@
+package com.jakdor.gpsspeedometer.core;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Replay source streaming KML 2.2 tracks: time stamped gx:Track (when / gx:coord pairs)
+ * and untimed LineString coordinates, spaced DEFAULT_INTERVAL apart.
+ * gx:Track lists all times before coordinates, so times of current track are queued (8 bytes per point)
+ */
+public class KmlReplaySource implements ReplaySource {
+
+    private static final long DEFAULT_INTERVAL = 1000; // ms, points without time
+
+    private final XmlPullScanner scanner;
+    private long firstTime = Long.MIN_VALUE;
+    private long lastTime = 0;
+
+    private String element;
+    private boolean inLineString = false;
+    private long[] times = new long[64]; //queued gx:Track times
+    private int timesHead = 0;
+    private int timesTail = 0;
+    private String coordinates; //LineString tuples not yet replayed
+    private int coordinatesPosition;
+
+    public KmlReplaySource(Reader reader){
+        this.scanner = new XmlPullScanner(reader);
+    }
+
+    @Override
+    public boolean next(ReplayEvent event) throws IOException {
+        if(coordinates != null && nextTuple(event)){
+            return true;
+        }
+
+        int token;
+        while ((token = scanner.next()) != XmlPullScanner.END_DOCUMENT){
+            if(token == XmlPullScanner.START_TAG){
+                element = scanner.getLocalName();
+                if("LineString".equals(element)){
+                    inLineString = true;
+                }
+            }
+            else if(token == XmlPullScanner.TEXT && element != null){
+                String text = scanner.getText().trim();
+                switch (element) {
+                    case "when":
+                        queueTime(parseTime(text));
+                        break;
+                    case "coord":
+                        String[] fields = text.split("\\s+");
+                        if(fields.length < 2){
+                            throw new IOException("Malformed kml coord: " + text);
+                        }
+                        long time = timesHead < timesTail ? times[timesHead++] : lastTime + DEFAULT_INTERVAL;
+                        setFix(event, time, parse(fields[1]), parse(fields[0]),
+                                fields.length > 2 ? parse(fields[2]) : 0);
+                        return true;
+                    case "coordinates":
+                        if(inLineString){
+                            coordinates = text;
+                            coordinatesPosition = 0;
+                            if(nextTuple(event)){
+                                return true;
+                            }
+                        }
+                        break;
+                }
+            }
+            else if(token == XmlPullScanner.END_TAG){
+                String name = scanner.getLocalName();
+                element = null;
+                if("Track".equals(name)){ //unpaired times are dropped
+                    timesHead = 0;
+                    timesTail = 0;
+                }
+                else if("LineString".equals(name)){
+                    inLineString = false;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Replays next "lon,lat[,alt]" tuple of current LineString
+     */
+    private boolean nextTuple(ReplayEvent event) throws IOException {
+        int length = coordinates.length();
+        int start = coordinatesPosition;
+        while (start < length && Character.isWhitespace(coordinates.charAt(start))){
+            ++start;
+        }
+        if(start == length){
+            coordinates = null;
+            return false;
+        }
+        int end = start;
+        while (end < length && !Character.isWhitespace(coordinates.charAt(end))){
+            ++end;
+        }
+        coordinatesPosition = end;
+
+        String tuple = coordinates.substring(start, end);
+        String[] fields = tuple.split(",");
+        if(fields.length < 2){
+            throw new IOException("Malformed kml coordinates: " + tuple);
+        }
+        setFix(event, lastTime + DEFAULT_INTERVAL, parse(fields[1]), parse(fields[0]),
+                fields.length > 2 ? parse(fields[2]) : 0);
+        return true;
+    }
+
+    private void setFix(ReplayEvent event, long time, double latitude, double longitude, double altitude){
+        if(firstTime == Long.MIN_VALUE){
+            firstTime = time;
+        }
+        lastTime = time;
+        event.setFix(new Fix((time - firstTime) * 1000000L, time, latitude, longitude, altitude, 0));
+    }
+
+    private void queueTime(long time){
+        if(timesTail == times.length){
+            if(timesHead > 0){
+                System.arraycopy(times, timesHead, times, 0, timesTail - timesHead);
+            }
+            else {
+                long[] grown = new long[times.length * 2];
+                System.arraycopy(times, 0, grown, 0, timesTail);
+                times = grown;
+            }
+            timesTail -= timesHead;
+            timesHead = 0;
+        }
+        times[timesTail++] = time;
+    }
+
+    private static long parseTime(String text) throws IOException {
+        try {
+            return IsoTime.parse(text);
+        }
+        catch (IllegalArgumentException e){
+            throw new IOException("Malformed kml when: " + text, e);
+        }
+    }
+
+    private static double parse(String value) throws IOException {
+        try {
+            return Double.parseDouble(value);
+        }
+        catch (NumberFormatException e){
+            throw new IOException("Malformed kml coordinate: " + value, e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        scanner.close();
+    }
+}
@@ -0,0 +1,120 @@
+package com.jakdor.gpsspeedometer.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram in the spirit of HdrHistogram - log-linear buckets,
+ * every power of 2 split into SUB_BUCKETS / 2 linear sub-buckets, so recorded values keep
+ * relative precision of 1/16..1/32 over whole long range with fixed 8 KB of counts.
+ * record() is wait-free (atomic increments, no allocation), safe from any number of threads;
+ * reads are not atomic snapshots, counts recorded during a read may be partially seen
+ */
+public class LatencyHistogram {
+
+    static final int SUB_BITS = 5;
+    static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int HALF = SUB_BUCKETS / 2;
+    private static final int SIZE = (64 - SUB_BITS) * HALF + SUB_BUCKETS;
+
+    private final Metrics metrics;
+    private final AtomicLongArray counts = new AtomicLongArray(SIZE);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    LatencyHistogram(Metrics metrics){
+        this.metrics = metrics;
+    }
+
+    /**
+     * Records value (ns), negative as 0; no-op while metrics are disabled
+     */
+    public void record(long value){
+        if(!metrics.isEnabled()){
+            return;
+        }
+        if(value < 0){
+            value = 0;
+        }
+        counts.incrementAndGet(index(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)){
+            current = max.get();
+        }
+    }
+
+    /**
+     * Records time elapsed since Metrics.startTime(), nothing if it was taken while disabled
+     */
+    public void recordSince(long startTime){
+        if(startTime != 0){
+            record(System.nanoTime() - startTime);
+        }
+    }
+
+    public long getCount(){
+        return count.get();
+    }
+
+    public long getMax(){
+        return max.get();
+    }
+
+    public double getMean(){
+        long recorded = count.get();
+        return recorded == 0 ? 0 : sum.get() / (double) recorded;
+    }
+
+    /**
+     * Highest value equivalent (within bucket precision) to given percentile of recorded values,
+     * 0 if empty
+     * @param percentile 0..100
+     */
+    public long getValueAtPercentile(double percentile){
+        long total = count.get();
+        if(total == 0){
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(Math.min(100, percentile) / 100 * total));
+        long seen = 0;
+        for(int i = 0; i < SIZE; ++i){
+            seen += counts.get(i);
+            if(seen >= target){
+                return Math.min(highestEquivalent(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Clears all counts, concurrent records may survive partially
+     */
+    public void reset(){
+        for(int i = 0; i < SIZE; ++i){
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    static int index(long value){
+        if(value < SUB_BUCKETS){
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS + 1;
+        return shift * HALF + (int) (value >>> shift);
+    }
+
+    static long highestEquivalent(int index){
+        if(index < SUB_BUCKETS){
+            return index;
+        }
+        int shift = index / HALF - 1;
+        long sub = index - shift * HALF;
+        return ((sub + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,412 @@
+package com.jakdor.gpsspeedometer.core;
+
+import java.util.Arrays;
+
+/**
+ * Incremental HMM map matcher (Newson & Krumm 2009) over offline RoadGraph:
+ * - states: up to MAX_CANDIDATES road positions within search radius of fix (grid lookup)
+ * - emission: gaussian of fix to road distance, sigma from reported accuracy (at least SIGMA_Z)
+ * - transition: exponential of |route distance - fix distance|, route by bounded Dijkstra,
+ *   scale BETA per second but not below sigma - noisy fixes make noisy fix distances;
+ *   routes turning back against direction state was reached in pay U_TURN_PENALTY,
+ *   so single outlier next to crossing doesn't pull path into out-and-back detour
+ * Viterbi runs one lattice column per fix; last WINDOW columns are kept in ring buffer for back tracking
+ * of recent matched path. Distances are differences of best path length, so when later fixes revise
+ * earlier choice (detour into side street at crossing) the next distance corrects the previous ones.
+ * Fixes without road in reach are skipped, fixes no candidate can be reached from break the lattice.
+ * Allocation free per fix, not thread safe
+ */
+public class MapMatcher {
+
+    public static final int MAX_CANDIDATES = 8;
+    public static final int WINDOW = 32; // lattice columns kept for back tracking
+    public static final double DEFAULT_SEARCH_RADIUS = 50; // m
+    public static final double SIGMA_Z = 4.07; // m, gps noise of original paper
+    public static final double BETA = 3; // m per second between fixes, transition scale
+    public static final double ROUTE_FACTOR = 2; // route longer than factor * fix distance (+ search slack) is unreachable
+    public static final float MAX_ACCURACY = 50; // m, worse fixes are not matched
+    public static final double U_TURN_PENALTY = 3; // log probability
+    public static final double NODE_SNAP = SIGMA_Z; // m, candidates closer to segment end sit on its node
+
+    private static final double IMPOSSIBLE = Double.NEGATIVE_INFINITY;
+
+    private final RoadGraph graph;
+    private final double searchRadius;
+
+    //lattice ring, state (slot * MAX_CANDIDATES + candidate)
+    private final int[] columnSize = new int[WINDOW];
+    private final int[] stateSegment = new int[WINDOW * MAX_CANDIDATES];
+    private final double[] stateOffset = new double[WINDOW * MAX_CANDIDATES];
+    private final double[] stateScore = new double[WINDOW * MAX_CANDIDATES]; // log probability
+    private final double[] statePath = new double[WINDOW * MAX_CANDIDATES]; // path distance from lattice start
+    private final int[] stateBack = new int[WINDOW * MAX_CANDIDATES];
+    private final int[] stateDirection = new int[WINDOW * MAX_CANDIDATES]; // +1 towards segment to node, -1 back, 0 unknown
+    private long column = -1; // absolute index of last column
+    private long breakColumn = 0; // first column of current lattice
+    private int bestState;
+    private long lastFixNanos;
+    private double lastX, lastY;
+    private boolean matched = false;
+
+    private long referenceColumn = -1;
+    private double referencePath;
+
+    private long skippedCount = 0;
+    private long breakCount = 0;
+
+    //candidate lookup buffers
+    private final int[] segments = new int[MAX_CANDIDATES];
+    private final double[] distances = new double[MAX_CANDIDATES];
+
+    //bounded Dijkstra, node arrays reset lazily by stamp
+    private final double[] nodeDistance;
+    private final int[] nodeStamp;
+    private final boolean[] nodeBackward; // route left origin segment through its from node
+    private final int[] heapNode;
+    private final double[] heapKey;
+    private int heapSize;
+    private int stamp = 0;
+    private boolean routeBackward; // last routeTo() results
+    private int routeDirection;
+
+    public MapMatcher(RoadGraph graph){
+        this(graph, DEFAULT_SEARCH_RADIUS);
+    }
+
+    /**
+     * @param searchRadius candidate lookup radius m, widened to 3 sigma for inaccurate fixes
+     */
+    public MapMatcher(RoadGraph graph, double searchRadius){
+        this.graph = graph;
+        this.searchRadius = searchRadius;
+        nodeDistance = new double[graph.getNodeCount()];
+        nodeStamp = new int[graph.getNodeCount()];
+        nodeBackward = new boolean[graph.getNodeCount()];
+        heapNode = new int[graph.getSegmentCount() * 2 + 2];
+        heapKey = new double[heapNode.length];
+    }
+
+    /**
+     * Adds fix to lattice
+     * @return true if fix was placed on road network
+     */
+    public boolean match(Fix fix){
+        matched = false;
+        if(fix.getAccuracy() > MAX_ACCURACY || (column >= 0 && fix.getElapsedRealtimeNanos() <= lastFixNanos)){
+            ++skippedCount;
+            return false;
+        }
+
+        double x = graph.toX(fix.getLongitude());
+        double y = graph.toY(fix.getLatitude());
+        double sigma = Math.max(SIGMA_Z, fix.getAccuracy());
+        int count = graph.findSegments(x, y, Math.max(searchRadius, 3 * sigma), segments, distances, MAX_CANDIDATES);
+        if(count == 0){ //off road or outlier, lattice unchanged
+            ++skippedCount;
+            return false;
+        }
+
+        boolean first = column < 0;
+        int previousSlot = first ? 0 : slot(column);
+        int previousSize = first ? 0 : columnSize[previousSlot];
+        int currentSlot = slot(column + 1);
+        int base = currentSlot * MAX_CANDIDATES;
+
+        for(int j = 0; j < count; ++j){
+            stateSegment[base + j] = segments[j];
+            stateOffset[base + j] = snapToNode(segments[j], graph.projectOffset(segments[j], x, y));
+            stateScore[base + j] = first ? emission(distances[j], sigma) : IMPOSSIBLE;
+            statePath[base + j] = 0;
+            stateBack[base + j] = -1;
+            stateDirection[base + j] = 0;
+        }
+
+        boolean reachable = first;
+        if(!first) {
+            double fixDistance = Math.hypot(x - lastX, y - lastY);
+            double deltaTime = (fix.getElapsedRealtimeNanos() - lastFixNanos) / 1e9;
+            double beta = Math.max(BETA * Math.max(1, deltaTime), sigma);
+            double maxRoute = ROUTE_FACTOR * fixDistance + 2 * Math.max(searchRadius, 3 * sigma);
+            int previousBase = previousSlot * MAX_CANDIDATES;
+
+            for (int i = 0; i < previousSize; ++i) {
+                int from = previousBase + i;
+                if (stateScore[from] == IMPOSSIBLE) {
+                    continue;
+                }
+                route(stateSegment[from], stateOffset[from], maxRoute);
+                for (int j = 0; j < count; ++j) {
+                    double route = routeTo(stateSegment[from], stateOffset[from], stateDirection[from],
+                            segments[j], stateOffset[base + j]);
+                    if (route > maxRoute) {
+                        continue;
+                    }
+                    double score = stateScore[from] - Math.abs(route - fixDistance) / beta
+                            + emission(distances[j], sigma);
+                    if (stateDirection[from] != 0 && routeBackward == stateDirection[from] > 0
+                            && (stateSegment[from] != segments[j] || route > NODE_SNAP)) {
+                        score -= U_TURN_PENALTY;
+                    }
+                    if (score > stateScore[base + j]) {
+                        stateScore[base + j] = score;
+                        statePath[base + j] = statePath[from] + route;
+                        stateBack[base + j] = i;
+                        stateDirection[base + j] = routeDirection;
+                        reachable = true;
+                    }
+                }
+            }
+        }
+
+        if(!reachable){ //no path between consecutive fixes, new lattice from this fix
+            ++breakCount;
+            breakColumn = column + 1;
+            for(int j = 0; j < count; ++j){
+                stateScore[base + j] = emission(distances[j], sigma);
+            }
+        }
+
+        //normalize, best state of column
+        bestState = 0;
+        for(int j = 1; j < count; ++j){
+            if(stateScore[base + j] > stateScore[base + bestState]){
+                bestState = j;
+            }
+        }
+        double max = stateScore[base + bestState];
+        for(int j = 0; j < count; ++j){
+            stateScore[base + j] -= max;
+        }
+
+        columnSize[currentSlot] = count;
+        ++column;
+        lastFixNanos = fix.getElapsedRealtimeNanos();
+        lastX = x;
+        lastY = y;
+        matched = true;
+        return true;
+    }
+
+    private static double emission(double distance, double sigma){
+        double z = distance / sigma;
+        return -0.5 * z * z;
+    }
+
+    private static int slot(long column){
+        return (int) (column % WINDOW);
+    }
+
+    /**
+     * Dijkstra from position on segment over nodes within maxRoute
+     */
+    private void route(int segment, double offset, double maxRoute){
+        if(++stamp == 0){
+            Arrays.fill(nodeStamp, 0);
+            stamp = 1;
+        }
+        heapSize = 0;
+        relax(graph.getSegmentFrom(segment), offset, true);
+        relax(graph.getSegmentTo(segment), graph.getSegmentLength(segment) - offset, false);
+
+        while (heapSize > 0){
+            int node = heapNode[0];
+            double key = heapKey[0];
+            pop();
+            if(key > nodeDistance[node]){ //stale entry
+                continue;
+            }
+            if(key > maxRoute){
+                break;
+            }
+            for(int i = graph.getAdjacencyStart(node); i < graph.getAdjacencyStart(node + 1); ++i){
+                int adjacent = graph.getAdjacentSegment(i);
+                relax(graph.getOtherNode(adjacent, node), key + graph.getSegmentLength(adjacent), nodeBackward[node]);
+            }
+        }
+    }
+
+    /**
+     * Offset near segment end moved onto the node, so fix at crossing doesn't leave
+     * few meters excursion into crossing road in matched path
+     */
+    private double snapToNode(int segment, double offset){
+        double length = graph.getSegmentLength(segment);
+        if(offset < NODE_SNAP && offset < length / 2){
+            return 0;
+        }
+        if(length - offset < NODE_SNAP && offset > length / 2){
+            return length;
+        }
+        return offset;
+    }
+
+    /**
+     * Route length from last route() origin to position on segment, infinity if not reached;
+     * sets routeBackward (route leaves origin towards its from node) and routeDirection on target segment,
+     * unknown (0) for target at segment end - crossing node belongs to every way through it
+     */
+    private double routeTo(int fromSegment, double fromOffset, int fromDirection, int segment, double offset){
+        if(segment == fromSegment){
+            routeBackward = offset < fromOffset;
+            routeDirection = offset > fromOffset ? 1 : offset < fromOffset ? -1 : fromDirection;
+            return Math.abs(offset - fromOffset);
+        }
+        int fromNode = graph.getSegmentFrom(segment);
+        int toNode = graph.getSegmentTo(segment);
+        double viaFrom = distanceTo(fromNode) + offset;
+        double viaTo = distanceTo(toNode) + graph.getSegmentLength(segment) - offset;
+        boolean end = offset <= 0 || offset >= graph.getSegmentLength(segment);
+        if(viaFrom <= viaTo){
+            routeBackward = nodeBackward[fromNode];
+            routeDirection = end ? 0 : 1;
+            return viaFrom;
+        }
+        routeBackward = nodeBackward[toNode];
+        routeDirection = end ? 0 : -1;
+        return viaTo;
+    }
+
+    private double distanceTo(int node){
+        return nodeStamp[node] == stamp ? nodeDistance[node] : Double.POSITIVE_INFINITY;
+    }
+
+    private void relax(int node, double distance, boolean backward){
+        if(nodeStamp[node] == stamp && nodeDistance[node] <= distance){
+            return;
+        }
+        nodeStamp[node] = stamp;
+        nodeDistance[node] = distance;
+        nodeBackward[node] = backward;
+        if(heapSize == heapNode.length){ //lazy deletion overflow, can't happen with one push per relaxed edge end
+            return;
+        }
+        int position = heapSize++;
+        while (position > 0){
+            int parent = (position - 1) / 2;
+            if(heapKey[parent] <= distance){
+                break;
+            }
+            heapNode[position] = heapNode[parent];
+            heapKey[position] = heapKey[parent];
+            position = parent;
+        }
+        heapNode[position] = node;
+        heapKey[position] = distance;
+    }
+
+    private void pop(){
+        int node = heapNode[--heapSize];
+        double key = heapKey[heapSize];
+        int position = 0;
+        while (true){
+            int child = position * 2 + 1;
+            if(child >= heapSize){
+                break;
+            }
+            if(child + 1 < heapSize && heapKey[child + 1] < heapKey[child]){
+                ++child;
+            }
+            if(heapKey[child] >= key){
+                break;
+            }
+            heapNode[position] = heapNode[child];
+            heapKey[position] = heapKey[child];
+            position = child;
+        }
+        heapNode[position] = node;
+        heapKey[position] = key;
+    }
+
+    /**
+     * Last match() result
+     */
+    public boolean isMatched(){
+        return matched;
+    }
+
+    /**
+     * Makes last matched fix reference point of getReferenceDistance(), invalid reference if last fix wasn't matched
+     */
+    public void markReference(){
+        if(!matched){
+            referenceColumn = -1;
+            return;
+        }
+        referenceColumn = column;
+        referencePath = statePath[slot(column) * MAX_CANDIDATES + bestState];
+    }
+
+    /**
+     * Best path length now minus best path length at reference fix, m; negative when path got revised shorter,
+     * sum over consecutive references adds up to final best path length.
+     * NaN if last fix or reference wasn't matched, or lattice broke in between
+     */
+    public double getReferenceDistance(){
+        if(!matched || referenceColumn < 0 || referenceColumn < breakColumn){
+            return Double.NaN;
+        }
+        return getPathDistance() - referencePath;
+    }
+
+    /**
+     * Road positions of recent fixes along current best path (at most WINDOW, since last break), oldest first
+     * @return number of positions written
+     */
+    public int getMatchedPath(double[] latitudes, double[] longitudes){
+        if(column < 0){
+            return 0;
+        }
+        int count = (int) Math.min(Math.min(WINDOW, column - breakColumn + 1), latitudes.length);
+        int state = bestState;
+        for(int i = count - 1; i >= 0; --i){
+            long c = column - (count - 1 - i);
+            int index = slot(c) * MAX_CANDIDATES + state;
+            latitudes[i] = graph.toLatitude(graph.pointY(stateSegment[index], stateOffset[index]));
+            longitudes[i] = graph.toLongitude(graph.pointX(stateSegment[index], stateOffset[index]));
+            state = stateBack[index];
+        }
+        return count;
+    }
+
+    /**
+     * Path distance of best hypothesis since lattice start (last break), m
+     */
+    public double getPathDistance(){
+        return column < 0 ? 0 : statePath[slot(column) * MAX_CANDIDATES + bestState];
+    }
+
+    /**
+     * Road position of last matched fix, best hypothesis
+     */
+    public double getMatchedLatitude(){
+        int state = slot(column) * MAX_CANDIDATES + bestState;
+        return graph.toLatitude(graph.pointY(stateSegment[state], stateOffset[state]));
+    }
+
+    public double getMatchedLongitude(){
+        int state = slot(column) * MAX_CANDIDATES + bestState;
+        return graph.toLongitude(graph.pointX(stateSegment[state], stateOffset[state]));
+    }
+
+    public int getMatchedSegment(){
+        return stateSegment[slot(column) * MAX_CANDIDATES + bestState];
+    }
+
+    /**
+     * Fixes without road in reach, too inaccurate or out of order
+     */
+    public long getSkippedCount(){
+        return skippedCount;
+    }
+
+    /**
+     * Lattice restarts, consecutive fixes without connecting route
+     */
+    public long getBreakCount(){
+        return breakCount;
+    }
+
+    public RoadGraph getGraph(){
+        return graph;
+    }
+}
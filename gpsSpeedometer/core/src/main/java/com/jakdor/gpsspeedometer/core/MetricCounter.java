@@ -0,0 +1,32 @@
+package com.jakdor.gpsspeedometer.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free event counter, no-op while metrics are disabled
+ */
+public class MetricCounter {
+
+    private final Metrics metrics;
+    private final AtomicLong value = new AtomicLong();
+
+    MetricCounter(Metrics metrics){
+        this.metrics = metrics;
+    }
+
+    public void increment(){
+        if(metrics.isEnabled()){
+            value.incrementAndGet();
+        }
+    }
+
+    public void add(long delta){
+        if(metrics.isEnabled()){
+            value.addAndGet(delta);
+        }
+    }
+
+    public long get(){
+        return value.get();
+    }
+}
@@ -0,0 +1,185 @@
+package com.jakdor.gpsspeedometer.core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Runtime instrumentation registry - named lock-free counters, latency histograms and gauges
+ * (values read on demand from their owner). Metrics are created once and kept by the instrumented
+ * code, so hot path is single volatile read while disabled: counters and histograms ignore records,
+ * startTime() skips clock read. Registration is synchronized, recording never locks
+ */
+public class Metrics {
+
+    //fix measurement (receiver timestamp) to start of processing / first frame showing it
+    public static final String FIX_AGE_PROCESSED = "fix.age.processed";
+    public static final String FIX_AGE_DISPLAYED = "fix.age.displayed";
+    //LocationCalculator stages of one fix
+    public static final String STAGE_TRIP = "stage.trip";
+    public static final String STAGE_SCHEDULER = "stage.scheduler";
+    public static final String STAGE_RECORD = "stage.record";
+    public static final String SENSOR_EVENTS = "sensor.events";
+    public static final String FIXES_ACCEPTED = "fix.accepted";
+    public static final String FIXES_REJECTED = "fix.rejected";
+    public static final String FIXES_DROPPED = "fix.dropped";
+    public static final String TIME_TO_FIRST_FIX = "gps.ttff.ms";
+    public static final String TIME_TO_FIRST_DISPLAY = "startup.first_display.ms";
+    public static final String GC_COUNT = "gc.count";
+    public static final String GC_TIME = "gc.time.ms";
+    public static final String ALLOCATED_BYTES = "alloc.bytes";
+    //telemetry uplink, -1 while disabled
+    public static final String TELEMETRY_SENT_BYTES = "telemetry.sent.bytes";
+    public static final String TELEMETRY_BATCH = "telemetry.batch";
+    public static final String TELEMETRY_QUEUED = "telemetry.queued";
+    public static final String TELEMETRY_DROPPED = "telemetry.dropped";
+    public static final String TELEMETRY_REJECTED = "telemetry.rejected";
+
+    /**
+     * Value read when snapshot is taken, -1 for unknown
+     */
+    public interface Gauge {
+        long get();
+    }
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final long createdNanos = System.nanoTime();
+    private final Map<String, MetricCounter> counters = new LinkedHashMap<>();
+    private final Map<String, LatencyHistogram> histograms = new LinkedHashMap<>();
+    private final Map<String, Gauge> gauges = new LinkedHashMap<>();
+    private volatile boolean enabled = false;
+
+    public void setEnabled(boolean enabled){
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled(){
+        return enabled;
+    }
+
+    /**
+     * Clock for latency measurement, 0 while disabled (recordSince() then records nothing)
+     */
+    public long startTime(){
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Counter of given name, created on first use
+     */
+    public synchronized MetricCounter counter(String name){
+        MetricCounter counter = counters.get(name);
+        if(counter == null){
+            counter = new MetricCounter(this);
+            counters.put(name, counter);
+        }
+        return counter;
+    }
+
+    /**
+     * Histogram of given name (values in ns), created on first use
+     */
+    public synchronized LatencyHistogram histogram(String name){
+        LatencyHistogram histogram = histograms.get(name);
+        if(histogram == null){
+            histogram = new LatencyHistogram(this);
+            histograms.put(name, histogram);
+        }
+        return histogram;
+    }
+
+    /**
+     * Registers gauge, replaces previous one of the same name, null removes it
+     */
+    public synchronized void gauge(String name, Gauge gauge){
+        if(gauge == null){
+            gauges.remove(name);
+        }
+        else {
+            gauges.put(name, gauge);
+        }
+    }
+
+    /**
+     * Current gauge value, -1 if not registered
+     */
+    public long getGauge(String name){
+        Gauge gauge;
+        synchronized (this){
+            gauge = gauges.get(name);
+        }
+        return gauge != null ? gauge.get() : -1;
+    }
+
+    /**
+     * Plain text dump, one metric per line: counters with average rate since creation,
+     * gauges, histograms as count / mean / percentiles / max in microseconds
+     */
+    public synchronized void writeSnapshot(Writer writer) throws IOException {
+        double uptime = (System.nanoTime() - createdNanos) / 1e9;
+        StringBuilder line = new StringBuilder(128);
+        char[] number = new char[32];
+
+        line.append("# metrics, uptime ");
+        appendNumber(line, number, uptime, 1);
+        line.append(" s, ").append(enabled ? "enabled" : "disabled").append('\n');
+        writer.write(line.toString());
+
+        for(Map.Entry<String, MetricCounter> entry : counters.entrySet()){
+            long value = entry.getValue().get();
+            line.setLength(0);
+            line.append("counter ").append(entry.getKey()).append(' ').append(value).append(' ');
+            appendNumber(line, number, uptime > 0 ? value / uptime : 0, 1);
+            line.append("/s\n");
+            writer.write(line.toString());
+        }
+
+        for(Map.Entry<String, Gauge> entry : gauges.entrySet()){
+            line.setLength(0);
+            line.append("gauge ").append(entry.getKey()).append(' ').append(entry.getValue().get()).append('\n');
+            writer.write(line.toString());
+        }
+
+        for(Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()){
+            LatencyHistogram histogram = entry.getValue();
+            line.setLength(0);
+            line.append("histogram ").append(entry.getKey()).append(" count ").append(histogram.getCount());
+            line.append(" mean ");
+            appendNumber(line, number, histogram.getMean() / 1000, 1);
+            line.append(" p50 ");
+            appendNumber(line, number, histogram.getValueAtPercentile(50) / 1000.0, 1);
+            line.append(" p90 ");
+            appendNumber(line, number, histogram.getValueAtPercentile(90) / 1000.0, 1);
+            line.append(" p99 ");
+            appendNumber(line, number, histogram.getValueAtPercentile(99) / 1000.0, 1);
+            line.append(" max ");
+            appendNumber(line, number, histogram.getMax() / 1000.0, 1);
+            line.append(" us\n");
+            writer.write(line.toString());
+        }
+        writer.flush();
+    }
+
+    /**
+     * Writes snapshot to file (utf-8), replacing it
+     */
+    public void writeSnapshot(File file) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), UTF_8);
+        try {
+            writeSnapshot(writer);
+        }
+        finally {
+            writer.close();
+        }
+    }
+
+    private static void appendNumber(StringBuilder line, char[] number, double value, int decimals){
+        line.append(number, 0, FixedPointFormat.format(value, decimals, number, 0));
+    }
+}
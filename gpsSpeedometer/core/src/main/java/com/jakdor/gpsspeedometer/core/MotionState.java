@@ -0,0 +1,11 @@
+package com.jakdor.gpsspeedometer.core;
+
+/**
+ * Coarse motion classes driving gps and sensor duty cycle
+ */
+public enum MotionState {
+    STATIONARY,
+    WALKING,
+    DRIVING,
+    HIGH_SPEED
+}
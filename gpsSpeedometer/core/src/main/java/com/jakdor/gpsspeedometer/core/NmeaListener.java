@@ -0,0 +1,41 @@
+package com.jakdor.gpsspeedometer.core;
+
+/**
+ * Receiver of parsed NMEA 0183 sentences, all values primitive;
+ * time of day in ms since UTC midnight, coordinates in degrees, speed in m/s,
+ * NaN / -1 for empty fields
+ */
+public interface NmeaListener {
+
+    /**
+     * GGA - fix data
+     * @param quality 0 invalid, 1 gps, 2 dgps, ...
+     * @param altitude above mean sea level, m
+     */
+    void onGga(long timeOfDay, double latitude, double longitude, int quality, int satellites,
+               float hdop, double altitude);
+
+    /**
+     * RMC - recommended minimum data, speed and course over ground are receiver (doppler) derived
+     * @param date UTC days since epoch, -1 if missing
+     */
+    void onRmc(long timeOfDay, boolean valid, double latitude, double longitude, float speed,
+               float course, long date);
+
+    /**
+     * VTG - course and speed over ground
+     */
+    void onVtg(float course, float speed);
+
+    /**
+     * GSA - dop and active satellites
+     * @param fixType 1 no fix, 2 2D, 3 3D
+     */
+    void onGsa(int fixType, int satellitesUsed, float pdop, float hdop, float vdop);
+
+    /**
+     * GSV - satellites in view, reported once per complete GSV group
+     * @param maxSnr strongest signal to noise ratio in group, dB-Hz
+     */
+    void onGsv(int satellitesInView, int maxSnr);
+}
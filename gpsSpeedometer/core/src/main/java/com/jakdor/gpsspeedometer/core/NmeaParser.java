@@ -0,0 +1,374 @@
+package com.jakdor.gpsspeedometer.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Streaming NMEA 0183 parser (GGA, RMC, VTG, GSA, GSV from any talker: GP, GN, GL, GA, BD...)
+ * - parse(CharSequence) for whole sentences (OnNmeaMessageListener)
+ * - feed(ByteBuffer) for raw byte streams (file, socket), sentences may span buffers
+ * Fields are parsed in place from field offsets, no String per field / sentence; not thread safe
+ */
+public class NmeaParser {
+
+    private static final int MAX_SENTENCE = 164; // 82 by standard, some receivers exceed it
+    private static final int MAX_FIELDS = 40;
+    private static final float KNOTS = 0.514444f;
+    private static final float KMH = 1 / 3.6f;
+
+    private final NmeaListener listener;
+
+    private final char[] line = new char[MAX_SENTENCE];
+    private int lineLength = 0;
+    private boolean lineOverflow = false;
+
+    private CharSequence sentence;
+    private final int[] fieldStart = new int[MAX_FIELDS];
+    private final int[] fieldEnd = new int[MAX_FIELDS];
+    private int fieldCount;
+
+    private final LineSequence lineSequence = new LineSequence();
+
+    private int gsvSatellites = 0;
+    private int gsvMaxSnr = 0;
+
+    private long sentenceCount = 0;
+    private long checksumErrorCount = 0;
+    private long malformedCount = 0;
+
+    public NmeaParser(NmeaListener listener){
+        this.listener = listener;
+    }
+
+    /**
+     * Feeds raw bytes, every complete line is parsed; buffer is fully consumed
+     */
+    public void feed(ByteBuffer buffer){
+        while (buffer.hasRemaining()){
+            char c = (char) (buffer.get() & 0xff);
+            if(c == '\n' || c == '\r'){
+                if(lineLength > 0 && !lineOverflow){
+                    parse(lineSequence);
+                }
+                else if(lineOverflow){
+                    ++malformedCount;
+                }
+                lineLength = 0;
+                lineOverflow = false;
+            }
+            else if(lineLength < line.length){
+                line[lineLength++] = c;
+            }
+            else {
+                lineOverflow = true;
+            }
+        }
+    }
+
+    /**
+     * Parses single sentence, "$GPRMC,...*hh" with optional trailing line break
+     * @return true if sentence was valid and supported
+     */
+    public boolean parse(CharSequence sentence){
+        int length = sentence.length();
+        while (length > 0 && Character.isWhitespace(sentence.charAt(length - 1))){
+            --length;
+        }
+        int start = 0;
+        while (start < length && sentence.charAt(start) != '$'){
+            ++start;
+        }
+        if(length - start < 7){
+            ++malformedCount;
+            return false;
+        }
+
+        int end = length;
+        if(length - start > 3 && sentence.charAt(length - 3) == '*'){
+            int checksum = 0;
+            for(int i = start + 1; i < length - 3; ++i){
+                checksum ^= sentence.charAt(i);
+            }
+            if(checksum != (hex(sentence.charAt(length - 2)) << 4 | hex(sentence.charAt(length - 1)))){
+                ++checksumErrorCount;
+                return false;
+            }
+            end = length - 3;
+        }
+
+        this.sentence = sentence;
+        fieldCount = 0;
+        int fieldBegin = start + 1;
+        for(int i = start + 1; i <= end && fieldCount < MAX_FIELDS; ++i){
+            if(i == end || sentence.charAt(i) == ','){
+                fieldStart[fieldCount] = fieldBegin;
+                fieldEnd[fieldCount] = i;
+                ++fieldCount;
+                fieldBegin = i + 1;
+            }
+        }
+
+        if(fieldEnd[0] - fieldStart[0] < 5){
+            ++malformedCount;
+            return false;
+        }
+
+        ++sentenceCount;
+        int type = fieldEnd[0] - 3; // skip talker id
+        char a = sentence.charAt(type), b = sentence.charAt(type + 1), c = sentence.charAt(type + 2);
+        if(a == 'G' && b == 'G' && c == 'A'){
+            return parseGga();
+        }
+        if(a == 'R' && b == 'M' && c == 'C'){
+            return parseRmc();
+        }
+        if(a == 'V' && b == 'T' && c == 'G'){
+            return parseVtg();
+        }
+        if(a == 'G' && b == 'S' && c == 'A'){
+            return parseGsa();
+        }
+        if(a == 'G' && b == 'S' && c == 'V'){
+            return parseGsv();
+        }
+        return false;
+    }
+
+    private boolean parseGga(){
+        if(fieldCount < 10){
+            ++malformedCount;
+            return false;
+        }
+        listener.onGga(timeOfDay(1), coordinate(2, 3), coordinate(4, 5), integer(6, 0), integer(7, -1),
+                (float) decimal(8), decimal(9));
+        return true;
+    }
+
+    private boolean parseRmc(){
+        if(fieldCount < 10){
+            ++malformedCount;
+            return false;
+        }
+        float speed = (float) decimal(7) * KNOTS;
+        listener.onRmc(timeOfDay(1), character(2) == 'A', coordinate(3, 4), coordinate(5, 6), speed,
+                (float) decimal(8), date(9));
+        return true;
+    }
+
+    private boolean parseVtg(){
+        if(fieldCount < 8){
+            ++malformedCount;
+            return false;
+        }
+        float speed = (float) decimal(7) * KMH;
+        if(Float.isNaN(speed)){
+            speed = (float) decimal(5) * KNOTS;
+        }
+        listener.onVtg((float) decimal(1), speed);
+        return true;
+    }
+
+    private boolean parseGsa(){
+        if(fieldCount < 18){
+            ++malformedCount;
+            return false;
+        }
+        int satellitesUsed = 0;
+        for(int i = 3; i <= 14; ++i){
+            if(fieldEnd[i] > fieldStart[i]){
+                ++satellitesUsed;
+            }
+        }
+        listener.onGsa(integer(2, 1), satellitesUsed, (float) decimal(15), (float) decimal(16), (float) decimal(17));
+        return true;
+    }
+
+    private boolean parseGsv(){
+        if(fieldCount < 4){
+            ++malformedCount;
+            return false;
+        }
+        int total = integer(1, 1);
+        int number = integer(2, 1);
+        if(number == 1){
+            gsvMaxSnr = 0;
+        }
+        gsvSatellites = integer(3, 0);
+        for(int i = 7; i < fieldCount; i += 4){
+            gsvMaxSnr = Math.max(gsvMaxSnr, integer(i, 0));
+        }
+        if(number == total){
+            listener.onGsv(gsvSatellites, gsvMaxSnr);
+        }
+        return true;
+    }
+
+    private char character(int field){
+        return fieldEnd[field] > fieldStart[field] ? sentence.charAt(fieldStart[field]) : 0;
+    }
+
+    private int integer(int field, int empty){
+        if(field >= fieldCount || fieldEnd[field] == fieldStart[field]){
+            return empty;
+        }
+        int output = 0;
+        for(int i = fieldStart[field]; i < fieldEnd[field]; ++i){
+            char c = sentence.charAt(i);
+            if(c < '0' || c > '9'){
+                break;
+            }
+            output = output * 10 + c - '0';
+        }
+        return output;
+    }
+
+    /**
+     * Decimal field without allocation, NaN if empty or malformed
+     */
+    private double decimal(int field){
+        return decimal(fieldStart[field], fieldEnd[field]);
+    }
+
+    private double decimal(int start, int end){
+        if(end <= start){
+            return Double.NaN;
+        }
+        boolean negative = sentence.charAt(start) == '-';
+        if(negative || sentence.charAt(start) == '+'){
+            ++start;
+        }
+
+        long mantissa = 0;
+        int scale = -1;
+        for(int i = start; i < end; ++i){
+            char c = sentence.charAt(i);
+            if(c == '.' && scale < 0){
+                scale = 0;
+            }
+            else if(c >= '0' && c <= '9'){
+                if(mantissa < 100000000000000L) {
+                    mantissa = mantissa * 10 + c - '0';
+                    if (scale >= 0) {
+                        ++scale;
+                    }
+                }
+            }
+            else {
+                return Double.NaN;
+            }
+        }
+
+        double output = mantissa;
+        for(int i = 0; i < scale; ++i){
+            output /= 10;
+        }
+        return negative ? -output : output;
+    }
+
+    /**
+     * ddmm.mmmm / dddmm.mmmm with hemisphere field
+     */
+    private double coordinate(int field, int hemisphereField){
+        double value = decimal(field);
+        if(Double.isNaN(value)){
+            return Double.NaN;
+        }
+        double degrees = Math.floor(value / 100);
+        double output = degrees + (value - degrees * 100) / 60;
+        char hemisphere = character(hemisphereField);
+        return hemisphere == 'S' || hemisphere == 'W' ? -output : output;
+    }
+
+    /**
+     * hhmmss.sss to ms since midnight, -1 if empty
+     */
+    private long timeOfDay(int field){
+        int start = fieldStart[field];
+        if(fieldEnd[field] - start < 6){
+            return -1;
+        }
+        long hours = digits(start, 2), minutes = digits(start + 2, 2);
+        double seconds = decimal(start + 4, fieldEnd[field]);
+        return (hours * 60 + minutes) * 60000L + Math.round(seconds * 1000);
+    }
+
+    /**
+     * ddmmyy to days since epoch, -1 if empty
+     */
+    private long date(int field){
+        int start = fieldStart[field];
+        if(fieldEnd[field] - start != 6){
+            return -1;
+        }
+        long day = digits(start, 2), month = digits(start + 2, 2), year = 2000 + digits(start + 4, 2);
+        if(year >= 2080){ //two digit year pivot
+            year -= 100;
+        }
+
+        year -= month <= 2 ? 1 : 0;
+        long era = year / 400;
+        long yoe = year - era * 400;
+        long doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        return era * 146097 + yoe * 365 + yoe / 4 - yoe / 100 + doy - 719468;
+    }
+
+    private int digits(int start, int count){
+        int output = 0;
+        for(int i = start; i < start + count; ++i){
+            output = output * 10 + sentence.charAt(i) - '0';
+        }
+        return output;
+    }
+
+    private static int hex(char c){
+        if(c >= '0' && c <= '9'){
+            return c - '0';
+        }
+        if(c >= 'A' && c <= 'F'){
+            return c - 'A' + 10;
+        }
+        if(c >= 'a' && c <= 'f'){
+            return c - 'a' + 10;
+        }
+        return -1;
+    }
+
+    /**
+     * Sentences parsed (valid checksum and structure)
+     */
+    public long getSentenceCount(){
+        return sentenceCount;
+    }
+
+    public long getChecksumErrorCount(){
+        return checksumErrorCount;
+    }
+
+    public long getMalformedCount(){
+        return malformedCount;
+    }
+
+    /**
+     * View over internal line buffer, avoids String per streamed sentence
+     */
+    private final class LineSequence implements CharSequence {
+        @Override
+        public int length() {
+            return lineLength;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return line[index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(line, start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(line, 0, lineLength);
+        }
+    }
+}
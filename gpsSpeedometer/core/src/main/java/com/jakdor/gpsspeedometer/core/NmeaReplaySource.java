@@ -0,0 +1,159 @@
+package com.jakdor.gpsspeedometer.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayDeque;
+
+/**
+ * Replay source streaming raw NMEA 0183 log out of any byte channel (file, socket),
+ * GGA and RMC of single epoch (same time of day) are merged into one fix,
+ * accuracy from hdop, speed from RMC, elapsed realtime derived from fix time
+ */
+public class NmeaReplaySource implements ReplaySource, NmeaListener {
+
+    private static final long DAY = 86400000L;
+
+    private final ReadableByteChannel channel;
+    private final NmeaParser parser = new NmeaParser(this);
+    private final ByteBuffer buffer = ByteBuffer.allocate(8192);
+    private final ArrayDeque<Fix> ready = new ArrayDeque<>();
+    private boolean endOfStream = false;
+
+    private long date = 0; // days since epoch, from RMC
+    private long firstTime = Long.MIN_VALUE;
+    private long lastTime = Long.MIN_VALUE;
+
+    //pending epoch
+    private long epochTimeOfDay = -1;
+    private boolean epochValid = false;
+    private double latitude;
+    private double longitude;
+    private double altitude;
+    private float accuracy;
+    private float speed;
+    private int satellites;
+
+    public NmeaReplaySource(ReadableByteChannel channel){
+        this.channel = channel;
+    }
+
+    @Override
+    public boolean next(ReplayEvent event) throws IOException {
+        while (ready.isEmpty() && !endOfStream){
+            buffer.clear();
+            if(channel.read(buffer) < 0){
+                endOfStream = true;
+                buffer.clear();
+                buffer.put((byte) '\n');
+                buffer.flip();
+                parser.feed(buffer);
+                flushEpoch();
+            }
+            else {
+                buffer.flip();
+                parser.feed(buffer);
+            }
+        }
+
+        Fix fix = ready.poll();
+        if(fix == null){
+            return false;
+        }
+        event.setFix(fix);
+        return true;
+    }
+
+    @Override
+    public void onGga(long timeOfDay, double latitude, double longitude, int quality, int satellites,
+                      float hdop, double altitude) {
+        startEpoch(timeOfDay);
+        if(quality > 0 && !Double.isNaN(latitude) && !Double.isNaN(longitude)) {
+            setPosition(latitude, longitude);
+        }
+        if(!Double.isNaN(altitude)){
+            this.altitude = altitude;
+        }
+        if(!Float.isNaN(hdop)){
+            this.accuracy = hdop * GpxReplaySource.UERE;
+        }
+        this.satellites = satellites;
+    }
+
+    @Override
+    public void onRmc(long timeOfDay, boolean valid, double latitude, double longitude, float speed,
+                      float course, long date) {
+        if(date >= 0){
+            this.date = date;
+        }
+        startEpoch(timeOfDay);
+        if(valid && !Double.isNaN(latitude) && !Double.isNaN(longitude)) {
+            setPosition(latitude, longitude);
+            this.speed = speed;
+        }
+    }
+
+    @Override
+    public void onVtg(float course, float speed) {
+    }
+
+    @Override
+    public void onGsa(int fixType, int satellitesUsed, float pdop, float hdop, float vdop) {
+    }
+
+    @Override
+    public void onGsv(int satellitesInView, int maxSnr) {
+    }
+
+    private void setPosition(double latitude, double longitude){
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.epochValid = true;
+    }
+
+    /**
+     * Sentence of new time of day closes previous epoch
+     */
+    private void startEpoch(long timeOfDay){
+        if(timeOfDay < 0 || timeOfDay == epochTimeOfDay){
+            return;
+        }
+        flushEpoch();
+        epochTimeOfDay = timeOfDay;
+        epochValid = false;
+        accuracy = 0;
+        speed = Float.NaN;
+        satellites = -1;
+    }
+
+    private void flushEpoch(){
+        if(!epochValid){
+            return;
+        }
+        epochValid = false;
+
+        long time = date * DAY + epochTimeOfDay;
+        while (lastTime != Long.MIN_VALUE && time < lastTime){
+            time += DAY; // midnight rollover before next RMC date
+        }
+        if(firstTime == Long.MIN_VALUE){
+            firstTime = time;
+        }
+        lastTime = time;
+
+        ready.add(new Fix((time - firstTime) * 1000000L, time, latitude, longitude, altitude, accuracy,
+                speed, 0, satellites));
+    }
+
+    /**
+     * Underlying parser, exposes sentence / checksum error counters
+     */
+    public NmeaParser getParser(){
+        return parser;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,133 @@
+package com.jakdor.gpsspeedometer.core;
+
+/**
+ * Immutable performance timer state published by PerformanceTimer whenever it changes:
+ * acceleration run (speed and distance targets) of current or last run, lap and sector times.
+ * Times are durations in ns rounded to RESOLUTION, NONE if not reached
+ */
+public final class PerformanceResult {
+
+    public static final long NONE = -1;
+    public static final long RESOLUTION = 10000000L; // ns, 10 ms
+
+    private final PerformanceTimer.State state;
+    private final boolean launchDetected;
+    private final double[] speedTargets;
+    private final long[] speedTimes;
+    private final double[] distanceTargets;
+    private final long[] distanceTimes;
+    private final double[] trapSpeeds;
+    private final long[] laps;
+    private final long[] splits;
+
+    /**
+     * Arrays are owned by result, not copied
+     * @param launchDetected run started by accelerometer launch detection, otherwise extrapolated from gps speed
+     * @param trapSpeeds speed at distance targets, m/s
+     * @param laps completed lap times
+     * @param splits time from lap start to each gate of current lap, gate 0 (start / finish) is always NONE
+     */
+    PerformanceResult(PerformanceTimer.State state, boolean launchDetected,
+                      double[] speedTargets, long[] speedTimes, double[] distanceTargets, long[] distanceTimes,
+                      double[] trapSpeeds, long[] laps, long[] splits){
+        this.state = state;
+        this.launchDetected = launchDetected;
+        this.speedTargets = speedTargets;
+        this.speedTimes = speedTimes;
+        this.distanceTargets = distanceTargets;
+        this.distanceTimes = distanceTimes;
+        this.trapSpeeds = trapSpeeds;
+        this.laps = laps;
+        this.splits = splits;
+    }
+
+    /**
+     * Rounds duration to RESOLUTION, keeps NONE
+     */
+    static long round(long nanos){
+        return nanos < 0 ? NONE : (nanos + RESOLUTION / 2) / RESOLUTION * RESOLUTION;
+    }
+
+    public PerformanceTimer.State getState(){
+        return state;
+    }
+
+    public boolean isLaunchDetected(){
+        return launchDetected;
+    }
+
+    public int getSpeedTargetCount(){
+        return speedTargets.length;
+    }
+
+    /**
+     * m/s
+     */
+    public double getSpeedTarget(int index){
+        return speedTargets[index];
+    }
+
+    /**
+     * Time from launch to speed target, NONE if not reached
+     */
+    public long getSpeedTime(int index){
+        return speedTimes[index];
+    }
+
+    public int getDistanceTargetCount(){
+        return distanceTargets.length;
+    }
+
+    /**
+     * m
+     */
+    public double getDistanceTarget(int index){
+        return distanceTargets[index];
+    }
+
+    /**
+     * Time from launch to distance target, NONE if not reached
+     */
+    public long getDistanceTime(int index){
+        return distanceTimes[index];
+    }
+
+    /**
+     * Speed at distance target m/s, NaN if not reached
+     */
+    public double getTrapSpeed(int index){
+        return trapSpeeds[index];
+    }
+
+    public int getLapCount(){
+        return laps.length;
+    }
+
+    public long getLap(int index){
+        return laps[index];
+    }
+
+    /**
+     * Fastest completed lap, NONE without laps
+     */
+    public long getBestLap(){
+        long best = NONE;
+        for(long lap : laps){
+            if(best == NONE || lap < best){
+                best = lap;
+            }
+        }
+        return best;
+    }
+
+    public int getGateCount(){
+        return splits.length;
+    }
+
+    /**
+     * Time from start of current lap to gate, NONE if not crossed yet
+     */
+    public long getSplit(int gate){
+        return splits[gate];
+    }
+}
@@ -0,0 +1,482 @@
+package com.jakdor.gpsspeedometer.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Acceleration run and lap timing from fix timestamps (elapsed realtime ns), independent of processing latency:
+ * - arms after ARM_HOLD at standstill (gps speed under ARM_SPEED)
+ * - sensor thread detects launch: accelerometer deviation from resting gravity over LAUNCH_ACCELERATION
+ *   for LAUNCH_HOLD, back-dated to last sample under LAUNCH_ONSET; without it launch is extrapolated
+ *   to zero speed from first two moving fixes
+ * - targets crossed between fixes are interpolated with constant acceleration between fix speeds
+ *   (doppler speed when available), distance integrated from speed - 1/4 mile time with trap speed
+ * - run ends at standstill, after fix gap over MAX_FIX_GAP or MAX_RUN
+ * - lap gates: lines crossed by path between fixes, crossing time interpolated the same way;
+ *   gate 0 is start / finish, others split the lap into sectors
+ * Threading as in TripCalculator: onAccelerometer() on sensor thread, onFix() and gates on fix thread,
+ * launch and arm state handed over through single writer volatile fields, PerformanceResult published
+ * through volatile reference on change
+ */
+public class PerformanceTimer {
+
+    public enum State { WAITING, ARMED, RUNNING }
+
+    public static final double KMH_60 = 60 / 3.6; // m/s
+    public static final double KMH_100 = 100 / 3.6; // m/s
+    public static final double QUARTER_MILE = 402.336; // m
+
+    public static final double ARM_SPEED = 0.5; // m/s
+    public static final long ARM_HOLD = 1000000000L; // ns
+    public static final double LAUNCH_ACCELERATION = 1.0; // m/s^2
+    public static final double LAUNCH_ONSET = 0.3; // m/s^2
+    public static final long LAUNCH_HOLD = 100000000L; // ns
+    public static final long LAUNCH_TOLERANCE = 500000000L; // ns, launch before last standstill fix
+    public static final long MAX_FIX_GAP = 2000000000L; // ns
+    public static final long MAX_RUN = 60000000000L; // ns
+    public static final long MIN_GATE_INTERVAL = 5000000000L; // ns, repeated crossing of same gate ignored
+    public static final double DEFAULT_GATE_WIDTH = 30; // m
+    private static final double GRAVITY_TAU = 1.0; // s, resting gravity low pass
+    private static final long MAX_SAMPLE_GAP_NANOS = 1000000000L;
+
+    private final double[] speedTargets;
+    private final double[] distanceTargets;
+
+    //sensor thread only
+    private final double[] gravity = new double[3];
+    private long lastSampleNanos = Long.MIN_VALUE;
+    private long calmNanos = Long.MIN_VALUE; // last sample under onset level
+    private long pushNanos = Long.MIN_VALUE; // start of current over threshold run
+    private boolean pushReported = false;
+
+    //handover
+    private volatile boolean armed = false; // written by fix thread
+    private volatile long launchNanos = Long.MIN_VALUE; // written by sensor thread
+    private volatile boolean gateRequested = false;
+    private volatile PerformanceResult result;
+
+    //fix thread only
+    private State state = State.WAITING;
+    private Fix lastFix = null;
+    private double lastSpeed = 0;
+    private long stationarySince = Long.MIN_VALUE;
+    private long standstillNanos; // last fix at standstill while armed
+    private boolean launchPending = false; // first moving fix seen, launch not known yet
+    private long movingNanos; // first moving fix
+    private double movingSpeed;
+    private long runStart;
+    private boolean runDetected;
+    private double runDistance;
+    private final long[] speedTimes;
+    private final long[] distanceTimes;
+    private final double[] trapSpeeds;
+    private final List<Gate> gates = new ArrayList<>();
+    private final List<Long> laps = new ArrayList<>();
+    private long[] splits = new long[0];
+    private long lapStart = Long.MIN_VALUE;
+
+    /**
+     * Lap gate line in local metric frame centered at its first point
+     */
+    private static final class Gate {
+        final double latitude;
+        final double longitude;
+        final double metersPerDegreeLatitude;
+        final double metersPerDegreeLongitude;
+        final double east; // second point
+        final double north;
+        long lastCrossing = Long.MIN_VALUE;
+
+        Gate(double latitude1, double longitude1, double latitude2, double longitude2){
+            latitude = latitude1;
+            longitude = longitude1;
+            metersPerDegreeLatitude = Geodesy.metersPerDegreeLatitude(latitude1);
+            metersPerDegreeLongitude = Geodesy.metersPerDegreeLongitude(latitude1);
+            east = (longitude2 - longitude1) * metersPerDegreeLongitude;
+            north = (latitude2 - latitude1) * metersPerDegreeLatitude;
+        }
+
+        /**
+         * Fraction of path from a to b where it crosses the gate line, NaN if it doesn't
+         */
+        double cross(Fix a, Fix b){
+            double ax = (a.getLongitude() - longitude) * metersPerDegreeLongitude;
+            double ay = (a.getLatitude() - latitude) * metersPerDegreeLatitude;
+            double dx = (b.getLongitude() - longitude) * metersPerDegreeLongitude - ax;
+            double dy = (b.getLatitude() - latitude) * metersPerDegreeLatitude - ay;
+
+            double denominator = dx * north - dy * east;
+            if(denominator == 0){
+                return Double.NaN;
+            }
+            double fraction = (east * ay - north * ax) / denominator; // along path
+            double along = (dx * ay - dy * ax) / denominator; // along gate
+            if(fraction < 0 || fraction > 1 || along < 0 || along > 1){
+                return Double.NaN;
+            }
+            return fraction;
+        }
+    }
+
+    /**
+     * 0-60 km/h, 0-100 km/h and 1/4 mile
+     */
+    public PerformanceTimer(){
+        this(new double[]{KMH_60, KMH_100}, new double[]{QUARTER_MILE});
+    }
+
+    /**
+     * @param speedTargets m/s, ascending
+     * @param distanceTargets m, ascending
+     */
+    public PerformanceTimer(double[] speedTargets, double[] distanceTargets){
+        this.speedTargets = speedTargets.clone();
+        this.distanceTargets = distanceTargets.clone();
+        speedTimes = new long[speedTargets.length];
+        distanceTimes = new long[distanceTargets.length];
+        trapSpeeds = new double[distanceTargets.length];
+        clearRun();
+        publish();
+    }
+
+    /**
+     * Accelerometer sample, sensor thread; timestamps on fix clock (elapsed realtime)
+     */
+    public void onAccelerometer(long timestampNanos, float x, float y, float z){
+        long deltaNanos = timestampNanos - lastSampleNanos;
+        if(lastSampleNanos == Long.MIN_VALUE || deltaNanos <= 0 || deltaNanos > MAX_SAMPLE_GAP_NANOS){
+            gravity[0] = x;
+            gravity[1] = y;
+            gravity[2] = z;
+            lastSampleNanos = timestampNanos;
+            calmNanos = timestampNanos;
+            pushNanos = Long.MIN_VALUE;
+            return;
+        }
+        lastSampleNanos = timestampNanos;
+
+        double dx = x - gravity[0];
+        double dy = y - gravity[1];
+        double dz = z - gravity[2];
+        double dynamic = Math.sqrt(dx * dx + dy * dy + dz * dz);
+
+        if(dynamic < LAUNCH_ONSET){
+            calmNanos = timestampNanos;
+        }
+        if(dynamic > LAUNCH_ACCELERATION){
+            if(pushNanos == Long.MIN_VALUE){
+                pushNanos = timestampNanos;
+                pushReported = false;
+            }
+            if(!pushReported && timestampNanos - pushNanos >= LAUNCH_HOLD){
+                pushReported = true;
+                if(armed){
+                    launchNanos = calmNanos;
+                }
+            }
+            return; // resting gravity frozen while pushed
+        }
+
+        pushNanos = Long.MIN_VALUE;
+        double gain = deltaNanos / 1e9 / (GRAVITY_TAU + deltaNanos / 1e9);
+        gravity[0] += gain * dx;
+        gravity[1] += gain * dy;
+        gravity[2] += gain * dz;
+    }
+
+    /**
+     * Processed fix, fix thread
+     * @param speed m/s, used when fix has no doppler speed
+     */
+    public void onFix(Fix fix, double speed){
+        long time = fix.getElapsedRealtimeNanos();
+        if(lastFix != null && time <= lastFix.getElapsedRealtimeNanos()){
+            return;
+        }
+        double fixSpeed = fix.hasSpeed() ? fix.getSpeed() : speed;
+        boolean changed = false;
+
+        if(lastFix != null && time - lastFix.getElapsedRealtimeNanos() <= MAX_FIX_GAP){
+            changed = crossGates(lastFix, lastSpeed, fix, fixSpeed);
+        }
+        if(gateRequested && lastFix != null){
+            gateRequested = false;
+            addGateAcross(lastFix, fix, DEFAULT_GATE_WIDTH);
+            changed = true;
+        }
+
+        switch (state){
+            case WAITING:
+            case ARMED:
+                changed |= waitForLaunch(fix, fixSpeed);
+                break;
+            case RUNNING:
+                long lastTime = lastFix.getElapsedRealtimeNanos();
+                if(time - lastTime > MAX_FIX_GAP){
+                    disarm();
+                }
+                else {
+                    advance(lastTime, lastSpeed, time, fixSpeed);
+                    if(fixSpeed < ARM_SPEED || time - runStart > MAX_RUN){
+                        disarm();
+                    }
+                }
+                changed = true;
+                break;
+        }
+
+        lastFix = fix;
+        lastSpeed = fixSpeed;
+        if(changed){
+            publish();
+        }
+    }
+
+    /**
+     * Arms at standstill, starts run from launch time: accelerometer detected one if it falls between
+     * last standstill fix and first moving fix, otherwise zero speed crossing of line through first two
+     * moving fixes - detection needs LAUNCH_HOLD, may come after first moving fix, so it's checked on both
+     * @return true if state changed
+     */
+    private boolean waitForLaunch(Fix fix, double speed){
+        long time = fix.getElapsedRealtimeNanos();
+        if(speed < ARM_SPEED){
+            launchPending = false;
+            standstillNanos = time;
+            if(stationarySince == Long.MIN_VALUE){
+                stationarySince = time;
+            }
+            if(state == State.WAITING && time - stationarySince >= ARM_HOLD){
+                state = State.ARMED;
+                launchNanos = Long.MIN_VALUE;
+                armed = true;
+                return true;
+            }
+            return false;
+        }
+
+        stationarySince = Long.MIN_VALUE;
+        if(state != State.ARMED){
+            return false;
+        }
+        if(time - lastFix.getElapsedRealtimeNanos() > MAX_FIX_GAP){
+            disarm();
+            return true;
+        }
+
+        if(!launchPending){
+            launchPending = true;
+            movingNanos = time;
+            movingSpeed = speed;
+            long launch = launchNanos;
+            if(isLaunch(launch)){
+                startRun(launch, true);
+                advance(launch, 0, time, speed);
+                return true;
+            }
+            return false;
+        }
+
+        long launch = launchNanos;
+        boolean detected = isLaunch(launch);
+        if(!detected){
+            double acceleration = (speed - movingSpeed) / ((time - movingNanos) / 1e9);
+            launch = acceleration > 0 ? movingNanos - (long) (movingSpeed / acceleration * 1e9) : standstillNanos;
+            launch = Math.max(standstillNanos - LAUNCH_TOLERANCE, launch); //standstill fix speed is only near 0
+        }
+        startRun(launch, detected);
+        advance(launch, 0, movingNanos, movingSpeed);
+        advance(movingNanos, movingSpeed, time, speed);
+        return true;
+    }
+
+    private boolean isLaunch(long launch){
+        return launch != Long.MIN_VALUE && launch >= standstillNanos - LAUNCH_TOLERANCE && launch < movingNanos;
+    }
+
+    private void startRun(long launch, boolean detected){
+        clearRun();
+        armed = false;
+        launchPending = false;
+        runStart = launch;
+        runDetected = detected;
+        state = State.RUNNING;
+    }
+
+    private void disarm(){
+        armed = false;
+        launchPending = false;
+        state = State.WAITING;
+    }
+
+    private void clearRun(){
+        Arrays.fill(speedTimes, PerformanceResult.NONE);
+        Arrays.fill(distanceTimes, PerformanceResult.NONE);
+        Arrays.fill(trapSpeeds, Double.NaN);
+        runDistance = 0;
+    }
+
+    /**
+     * Run targets crossed between two fixes, constant acceleration in between
+     */
+    private void advance(long startNanos, double startSpeed, long endNanos, double endSpeed){
+        double deltaTime = (endNanos - startNanos) / 1e9;
+        if(deltaTime <= 0){
+            return;
+        }
+        double acceleration = (endSpeed - startSpeed) / deltaTime;
+
+        for(int i = 0; i < speedTargets.length; ++i){
+            double target = speedTargets[i];
+            if(speedTimes[i] == PerformanceResult.NONE && startSpeed < target && endSpeed >= target){
+                double t = (target - startSpeed) / acceleration;
+                speedTimes[i] = startNanos + (long) (t * 1e9) - runStart;
+            }
+        }
+
+        double segment = (startSpeed + endSpeed) / 2 * deltaTime;
+        for(int i = 0; i < distanceTargets.length; ++i){
+            double target = distanceTargets[i];
+            if(distanceTimes[i] == PerformanceResult.NONE && runDistance + segment >= target){
+                double t = timeAtDistance(startSpeed, acceleration, target - runDistance, deltaTime);
+                distanceTimes[i] = startNanos + (long) (t * 1e9) - runStart;
+                trapSpeeds[i] = startSpeed + acceleration * t;
+            }
+        }
+        runDistance += segment;
+    }
+
+    /**
+     * Time to cover distance from given speed with constant acceleration, clamped to segment
+     */
+    static double timeAtDistance(double speed, double acceleration, double distance, double deltaTime){
+        double t;
+        if(Math.abs(acceleration) < 1e-9){
+            t = speed > 0 ? distance / speed : deltaTime;
+        }
+        else {
+            double discriminant = Math.max(0, speed * speed + 2 * acceleration * distance);
+            t = (Math.sqrt(discriminant) - speed) / acceleration;
+        }
+        return Math.max(0, Math.min(deltaTime, t));
+    }
+
+    /**
+     * Gate crossings of path between fixes: laps on gate 0, sector splits on others
+     * @return true if any gate was crossed
+     */
+    private boolean crossGates(Fix from, double fromSpeed, Fix to, double toSpeed){
+        boolean crossed = false;
+        long startNanos = from.getElapsedRealtimeNanos();
+        double deltaTime = (to.getElapsedRealtimeNanos() - startNanos) / 1e9;
+        for(int i = 0; i < gates.size(); ++i){
+            Gate gate = gates.get(i);
+            double fraction = gate.cross(from, to);
+            if(Double.isNaN(fraction)){
+                continue;
+            }
+            double distance = fraction * (fromSpeed + toSpeed) / 2 * deltaTime;
+            double t = timeAtDistance(fromSpeed, (toSpeed - fromSpeed) / deltaTime, distance, deltaTime);
+            long crossing = startNanos + (long) (t * 1e9);
+            if(gate.lastCrossing != Long.MIN_VALUE && crossing - gate.lastCrossing < MIN_GATE_INTERVAL){
+                continue;
+            }
+            gate.lastCrossing = crossing;
+            crossed = true;
+
+            if(i == 0){
+                if(lapStart != Long.MIN_VALUE){
+                    laps.add(crossing - lapStart);
+                }
+                lapStart = crossing;
+                Arrays.fill(splits, PerformanceResult.NONE);
+            }
+            else if(lapStart != Long.MIN_VALUE){
+                splits[i] = crossing - lapStart;
+            }
+        }
+        return crossed;
+    }
+
+    /**
+     * Adds lap gate line, first one is start / finish; fix thread
+     */
+    public void addGate(double latitude1, double longitude1, double latitude2, double longitude2){
+        gates.add(new Gate(latitude1, longitude1, latitude2, longitude2));
+        splits = Arrays.copyOf(splits, gates.size());
+        splits[splits.length - 1] = PerformanceResult.NONE;
+        publish();
+    }
+
+    /**
+     * Gate of given width centered at fix b, perpendicular to direction from a to b
+     */
+    private void addGateAcross(Fix a, Fix b, double width){
+        double metersPerDegreeLatitude = Geodesy.metersPerDegreeLatitude(b.getLatitude());
+        double metersPerDegreeLongitude = Geodesy.metersPerDegreeLongitude(b.getLatitude());
+        double east = (b.getLongitude() - a.getLongitude()) * metersPerDegreeLongitude;
+        double north = (b.getLatitude() - a.getLatitude()) * metersPerDegreeLatitude;
+        double length = Math.sqrt(east * east + north * north);
+        if(length == 0){
+            return;
+        }
+        double halfEast = -north / length * width / 2 / metersPerDegreeLongitude;
+        double halfNorth = east / length * width / 2 / metersPerDegreeLatitude;
+        addGate(b.getLatitude() - halfNorth, b.getLongitude() - halfEast,
+                b.getLatitude() + halfNorth, b.getLongitude() + halfEast);
+    }
+
+    /**
+     * Places gate across path at next fix, callable from any thread (button on UI thread)
+     */
+    public void requestGate(){
+        gateRequested = true;
+    }
+
+    /**
+     * Removes gates and laps; fix thread
+     */
+    public void clearGates(){
+        gates.clear();
+        laps.clear();
+        splits = new long[0];
+        lapStart = Long.MIN_VALUE;
+        publish();
+    }
+
+    private void publish(){
+        long[] speed = new long[speedTimes.length];
+        for(int i = 0; i < speed.length; ++i){
+            speed[i] = PerformanceResult.round(speedTimes[i]);
+        }
+        long[] distance = new long[distanceTimes.length];
+        for(int i = 0; i < distance.length; ++i){
+            distance[i] = PerformanceResult.round(distanceTimes[i]);
+        }
+        long[] lapTimes = new long[laps.size()];
+        for(int i = 0; i < lapTimes.length; ++i){
+            lapTimes[i] = PerformanceResult.round(laps.get(i));
+        }
+        long[] splitTimes = new long[splits.length];
+        for(int i = 0; i < splitTimes.length; ++i){
+            splitTimes[i] = PerformanceResult.round(splits[i]);
+        }
+        result = new PerformanceResult(state, runDetected, speedTargets, speed, distanceTargets, distance,
+                trapSpeeds.clone(), lapTimes, splitTimes);
+    }
+
+    /**
+     * Latest result, safe to call from any thread
+     */
+    public PerformanceResult getResult(){
+        return result;
+    }
+
+    /**
+     * Fix thread
+     */
+    public State getState(){
+        return state;
+    }
+}
@@ -0,0 +1,62 @@
+package com.jakdor.gpsspeedometer.core;
+
+/**
+ * Gps request and accelerometer rate for single motion state
+ */
+public final class PowerPolicy {
+
+    public static final int SENSOR_DELAY_FULL = 20000; // us, SENSOR_DELAY_GAME
+    public static final int SENSOR_DELAY_REDUCED = 60000; // us, SENSOR_DELAY_UI
+    public static final int SENSOR_DELAY_WAKE = 200000; // us, SENSOR_DELAY_NORMAL, enough for motion wake-up
+    public static final int SENSOR_DELAY_FASTEST = 0; // us, SENSOR_DELAY_FASTEST
+
+    /**
+     * Performance timing: every fix the receiver produces, fastest accelerometer for launch detection
+     */
+    public static final PowerPolicy PERFORMANCE = new PowerPolicy(0, 0, SENSOR_DELAY_FASTEST);
+
+    private final long gpsInterval;
+    private final float gpsMinDistance;
+    private final int sensorDelay;
+
+    /**
+     * @param gpsInterval minimal time between location updates, ms
+     * @param gpsMinDistance minimal distance between location updates, m
+     * @param sensorDelay accelerometer sampling period, us
+     */
+    public PowerPolicy(long gpsInterval, float gpsMinDistance, int sensorDelay){
+        this.gpsInterval = gpsInterval;
+        this.gpsMinDistance = gpsMinDistance;
+        this.sensorDelay = sensorDelay;
+    }
+
+    /**
+     * Default policy table indexed by MotionState ordinal;
+     * - stationary: sparse gps, accelerometer only for wake-up
+     * - walking: slow gps, reduced accelerometer (step vibration dominates anyway)
+     * - driving: full rate, speed filter needs accelerometer dynamics
+     * - high speed: full gps, reduced accelerometer (steady cruising)
+     * Duty cycled by interval only: min distance would stop fixes at standstill, then stop detection
+     * never fires and the scheduler never reaches stationary
+     */
+    public static PowerPolicy[] defaults(){
+        PowerPolicy[] output = new PowerPolicy[MotionState.values().length];
+        output[MotionState.STATIONARY.ordinal()] = new PowerPolicy(10000, 0, SENSOR_DELAY_WAKE);
+        output[MotionState.WALKING.ordinal()] = new PowerPolicy(3000, 0, SENSOR_DELAY_REDUCED);
+        output[MotionState.DRIVING.ordinal()] = new PowerPolicy(1000, 0, SENSOR_DELAY_FULL);
+        output[MotionState.HIGH_SPEED.ordinal()] = new PowerPolicy(1000, 0, SENSOR_DELAY_REDUCED);
+        return output;
+    }
+
+    public long getGpsInterval(){
+        return gpsInterval;
+    }
+
+    public float getGpsMinDistance(){
+        return gpsMinDistance;
+    }
+
+    public int getSensorDelay(){
+        return sensorDelay;
+    }
+}
@@ -0,0 +1,189 @@
+package com.jakdor.gpsspeedometer.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Replayable duty cycle policy simulator - decimates recorded full rate trip the way
+ * DutyCycleScheduler would request it and reports delivered fixes / sensor events,
+ * processing time and distance against full rate baseline.
+ * Estimated cpu = delivered events * per event device cost + measured processing time
+ * usage: PowerPolicySimulator file|dir...
+ */
+public class PowerPolicySimulator {
+
+    public static final long DEFAULT_FIX_COST_NANOS = 500000; // location delivery through framework, rough figure
+    public static final long DEFAULT_SENSOR_EVENT_COST_NANOS = 30000; // sensor event delivery, rough figure
+    private static final double RATE_TOLERANCE = 0.9; // recorded timestamps jitter
+
+    private final long fixCostNanos;
+    private final long sensorEventCostNanos;
+
+    public PowerPolicySimulator(){
+        this(DEFAULT_FIX_COST_NANOS, DEFAULT_SENSOR_EVENT_COST_NANOS);
+    }
+
+    public PowerPolicySimulator(long fixCostNanos, long sensorEventCostNanos){
+        this.fixCostNanos = fixCostNanos;
+        this.sensorEventCostNanos = sensorEventCostNanos;
+    }
+
+    /**
+     * Simulation output of single trip
+     */
+    public static class Result {
+        private long fixCount = 0;
+        private long sensorEventCount = 0;
+        private long processingNanos = 0;
+        private long estimatedCpuNanos = 0;
+        private double distance = 0;
+        private final long[] stateNanos = new long[MotionState.values().length];
+        private int policyChanges = 0;
+
+        public long getFixCount(){
+            return fixCount;
+        }
+
+        public long getSensorEventCount(){
+            return sensorEventCount;
+        }
+
+        /**
+         * Measured TripCalculator + scheduler time on this JVM
+         */
+        public long getProcessingNanos(){
+            return processingNanos;
+        }
+
+        public long getEstimatedCpuNanos(){
+            return estimatedCpuNanos;
+        }
+
+        public double getDistance(){
+            return distance;
+        }
+
+        /**
+         * Recorded time spent in given state
+         */
+        public long getStateNanos(MotionState state){
+            return stateNanos[state.ordinal()];
+        }
+
+        public int getPolicyChanges(){
+            return policyChanges;
+        }
+    }
+
+    /**
+     * Replays source, source is closed afterwards
+     * @param adaptive false for full rate baseline (every recorded event delivered)
+     */
+    public Result run(ReplaySource source, boolean adaptive) throws IOException {
+        final Result result = new Result();
+        TripCalculator tripCalculator = new TripCalculator();
+        DutyCycleScheduler scheduler = new DutyCycleScheduler();
+        scheduler.setListener(new DutyCycleScheduler.Listener() {
+            @Override
+            public void onPolicyChanged(MotionState state, PowerPolicy policy) {
+                ++result.policyChanges;
+            }
+        });
+
+        ReplayEvent event = new ReplayEvent();
+        Fix lastDelivered = null;
+        long lastSensor = Long.MIN_VALUE;
+        long lastTimestamp = Long.MIN_VALUE;
+
+        try {
+            while (source.next(event)) {
+                long timestamp = event.getTimestampNanos();
+                if(lastTimestamp != Long.MIN_VALUE && timestamp > lastTimestamp){
+                    result.stateNanos[scheduler.getState().ordinal()] += timestamp - lastTimestamp;
+                }
+                lastTimestamp = Math.max(lastTimestamp, timestamp);
+                PowerPolicy policy = scheduler.getPolicy();
+
+                if (event.getType() == ReplayEvent.FIX) {
+                    Fix fix = event.getFix();
+                    if (adaptive && lastDelivered != null && !due(fix, lastDelivered, policy)) {
+                        continue;
+                    }
+                    lastDelivered = fix;
+
+                    long start = System.nanoTime();
+                    tripCalculator.onFix(fix);
+                    scheduler.onFix(fix.getElapsedRealtimeNanos(), tripCalculator.getSnapshot());
+                    result.processingNanos += System.nanoTime() - start;
+                    ++result.fixCount;
+                } else {
+                    if (adaptive && lastSensor != Long.MIN_VALUE
+                            && timestamp - lastSensor < policy.getSensorDelay() * 1000L * RATE_TOLERANCE) {
+                        continue;
+                    }
+                    lastSensor = timestamp;
+
+                    long start = System.nanoTime();
+                    tripCalculator.onAccelerometer(timestamp, event.getX(), event.getY(), event.getZ());
+                    scheduler.onAccelerometer(tripCalculator.isAccelerating());
+                    result.processingNanos += System.nanoTime() - start;
+                    ++result.sensorEventCount;
+                }
+            }
+        }
+        finally {
+            source.close();
+        }
+
+        result.distance = tripCalculator.getDistanceSum(false);
+        result.estimatedCpuNanos = result.fixCount * fixCostNanos
+                + result.sensorEventCount * sensorEventCostNanos + result.processingNanos;
+        return result;
+    }
+
+    /**
+     * Would location manager deliver this fix under given request (interval and min distance)
+     */
+    private static boolean due(Fix fix, Fix lastDelivered, PowerPolicy policy){
+        long elapsed = fix.getElapsedRealtimeNanos() - lastDelivered.getElapsedRealtimeNanos();
+        if(elapsed < policy.getGpsInterval() * 1000000L * RATE_TOLERANCE){
+            return false;
+        }
+        return policy.getGpsMinDistance() <= 0 || Geodesy.distance(lastDelivered.getLatitude(),
+                lastDelivered.getLongitude(), fix.getLatitude(), fix.getLongitude()) >= policy.getGpsMinDistance();
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<File> files = new ArrayList<>();
+        for(String arg : args){
+            BatchReplay.collect(new File(arg), files);
+        }
+
+        PowerPolicySimulator simulator = new PowerPolicySimulator();
+        System.out.println("trip\tfixes\tadaptive_fixes\tsensor_events\tadaptive_sensor_events"
+                + "\tcpu_ms\tadaptive_cpu_ms\tdistance_m\tadaptive_distance_m\tstationary_s\tpolicy_changes");
+        int failed = 0;
+        for(File file : files){
+            try {
+                Result baseline = simulator.run(ReplayEngine.openSource(file), false);
+                Result adaptive = simulator.run(ReplayEngine.openSource(file), true);
+                System.out.println(String.format(Locale.ENGLISH, "%s\t%d\t%d\t%d\t%d\t%.1f\t%.1f\t%.1f\t%.1f\t%d\t%d",
+                        file.getName(), baseline.getFixCount(), adaptive.getFixCount(),
+                        baseline.getSensorEventCount(), adaptive.getSensorEventCount(),
+                        baseline.getEstimatedCpuNanos() / 1e6, adaptive.getEstimatedCpuNanos() / 1e6,
+                        baseline.getDistance(), adaptive.getDistance(),
+                        adaptive.getStateNanos(MotionState.STATIONARY) / 1000000000L, adaptive.getPolicyChanges()));
+            }
+            catch (IOException e){
+                ++failed;
+                System.err.println(file.getName() + "\tFAILED\t" + e.toString());
+            }
+        }
+        if(failed > 0){
+            System.exit(1);
+        }
+    }
+}
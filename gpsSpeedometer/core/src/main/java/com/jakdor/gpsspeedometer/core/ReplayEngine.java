@@ -0,0 +1,135 @@
+package com.jakdor.gpsspeedometer.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+
+/**
+ * Headless simulator - feeds recorded gps and inertial sensor streams through TripCalculator on plain JVM
+ * - AS_FAST_AS_POSSIBLE: no pacing, for batch accuracy checks and throughput measurement
+ * - REAL_TIME: events delivered at recorded pace (optionally scaled by speed factor)
+ */
+public class ReplayEngine {
+
+    public enum Mode { AS_FAST_AS_POSSIBLE, REAL_TIME }
+
+    /**
+     * Per fix output observer, IOException aborts replay
+     */
+    public interface Listener {
+        void onFixProcessed(Fix fix, TripCalculator tripCalculator) throws IOException;
+    }
+
+    private final Mode mode;
+    private final double speedFactor;
+    private Listener listener;
+
+    public ReplayEngine(Mode mode){
+        this(mode, 1.0);
+    }
+
+    /**
+     * @param speedFactor REAL_TIME pacing multiplier, 2.0 replays twice as fast as recorded
+     */
+    public ReplayEngine(Mode mode, double speedFactor){
+        if(speedFactor <= 0){
+            throw new IllegalArgumentException("Speed factor must be positive: " + speedFactor);
+        }
+        this.mode = mode;
+        this.speedFactor = speedFactor;
+    }
+
+    public void setListener(Listener listener){
+        this.listener = listener;
+    }
+
+    /**
+     * Replays whole source through given calculator, source is closed afterwards
+     */
+    public ReplayResult run(ReplaySource source, TripCalculator tripCalculator)
+            throws IOException, InterruptedException {
+        ReplayEvent event = new ReplayEvent();
+        ReplayResult result = new ReplayResult();
+
+        long wallStart = System.nanoTime();
+        long firstTimestamp = Long.MIN_VALUE;
+        long lastTimestamp = 0;
+
+        try {
+            while (source.next(event)) {
+                long timestamp = event.getTimestampNanos();
+                if (firstTimestamp == Long.MIN_VALUE) {
+                    firstTimestamp = timestamp;
+                }
+                lastTimestamp = Math.max(lastTimestamp, timestamp);
+
+                if (mode == Mode.REAL_TIME) {
+                    pace(wallStart, (long) ((timestamp - firstTimestamp) / speedFactor));
+                }
+
+                if (event.getType() == ReplayEvent.FIX) {
+                    Fix fix = event.getFix();
+                    tripCalculator.onFix(fix);
+                    result.onFix(tripCalculator.getSpeed());
+                    if (listener != null) {
+                        listener.onFixProcessed(fix, tripCalculator);
+                    }
+                } else {
+                    if (event.getType() == ReplayEvent.GYROSCOPE) {
+                        tripCalculator.onGyroscope(timestamp, event.getX(), event.getY(), event.getZ());
+                    } else if (event.getType() == ReplayEvent.MAGNETOMETER) {
+                        tripCalculator.onMagnetometer(timestamp, event.getX(), event.getY(), event.getZ());
+                    } else if (event.getType() == ReplayEvent.PRESSURE) {
+                        tripCalculator.onPressure(timestamp, event.getX());
+                    } else {
+                        tripCalculator.onAccelerometer(timestamp, event.getX(), event.getY(), event.getZ());
+                    }
+                    result.onSensorEvent();
+                }
+            }
+        }
+        finally {
+            source.close();
+        }
+
+        result.finish(System.nanoTime() - wallStart,
+                firstTimestamp == Long.MIN_VALUE ? 0 : lastTimestamp - firstTimestamp,
+                tripCalculator.getDistanceSum(false), tripCalculator.getTimerNanos(),
+                tripCalculator.getRejectedFixCount());
+        return result;
+    }
+
+    private static void pace(long wallStart, long offsetNanos) throws InterruptedException {
+        long wait = wallStart + offsetNanos - System.nanoTime();
+        if(wait > 0){
+            Thread.sleep(wait / 1000000L, (int) (wait % 1000000L));
+        }
+    }
+
+    /**
+     * Opens replay source by file extension: .csv, .gpx, .kml, .nmea (raw receiver log), .trk (TrackRecorder binary)
+     */
+    public static ReplaySource openSource(File file) throws IOException {
+        String name = file.getName().toLowerCase();
+        if(name.endsWith(".trk")){
+            return new TrackReplaySource(file);
+        }
+        if(name.endsWith(".nmea") || name.endsWith(".nma")){
+            return new NmeaReplaySource(new FileInputStream(file).getChannel());
+        }
+        InputStreamReader reader = new InputStreamReader(new FileInputStream(file), Charset.forName("UTF-8"));
+        if(name.endsWith(".csv")){
+            return new CsvReplaySource(reader);
+        }
+        if(name.endsWith(".gpx")){
+            return new GpxReplaySource(reader);
+        }
+        if(name.endsWith(".kml")){
+            return new KmlReplaySource(reader);
+        }
+        reader.close();
+        throw new IOException("Unsupported replay file: " + file);
+    }
+}
@@ -0,0 +1,68 @@
+package com.jakdor.gpsspeedometer.core;
+
+/**
+ * Single recorded input event: gps fix or accelerometer, gyroscope, magnetometer, barometer sample
+ * (pressure hPa in x),
+ * reusable holder filled by ReplaySource
+ */
+public final class ReplayEvent {
+
+    public static final int FIX = 0;
+    public static final int ACCELEROMETER = 1;
+    public static final int GYROSCOPE = 2;
+    public static final int MAGNETOMETER = 3;
+    public static final int PRESSURE = 4;
+
+    private int type;
+    private long timestampNanos;
+    private Fix fix;
+    private float x;
+    private float y;
+    private float z;
+
+    void setFix(Fix fix){
+        this.type = FIX;
+        this.timestampNanos = fix.getElapsedRealtimeNanos();
+        this.fix = fix;
+    }
+
+    void setAccelerometer(long timestampNanos, float x, float y, float z){
+        setSensor(ACCELEROMETER, timestampNanos, x, y, z);
+    }
+
+    void setSensor(int type, long timestampNanos, float x, float y, float z){
+        this.type = type;
+        this.timestampNanos = timestampNanos;
+        this.fix = null;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+    }
+
+    public int getType(){
+        return type;
+    }
+
+    /**
+     * Event time, elapsed realtime clock
+     */
+    public long getTimestampNanos(){
+        return timestampNanos;
+    }
+
+    public Fix getFix(){
+        return fix;
+    }
+
+    public float getX(){
+        return x;
+    }
+
+    public float getY(){
+        return y;
+    }
+
+    public float getZ(){
+        return z;
+    }
+}
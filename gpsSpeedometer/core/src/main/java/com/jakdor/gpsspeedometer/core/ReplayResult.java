@@ -0,0 +1,99 @@
+package com.jakdor.gpsspeedometer.core;
+
+/**
+ * Outputs and throughput of single replay run
+ */
+public class ReplayResult {
+
+    private long fixCount = 0;
+    private long sensorEventCount = 0;
+    private double maxSpeed = 0;
+    private double speedSum = 0;
+
+    private long wallNanos;
+    private long trackNanos;
+    private double distance;
+    private long timerNanos;
+    private long rejectedFixCount;
+
+    void onFix(double speed){
+        ++fixCount;
+        speedSum += speed;
+        if(speed > maxSpeed){
+            maxSpeed = speed;
+        }
+    }
+
+    void onSensorEvent(){
+        ++sensorEventCount;
+    }
+
+    void finish(long wallNanos, long trackNanos, double distance, long timerNanos, long rejectedFixCount){
+        this.wallNanos = wallNanos;
+        this.trackNanos = trackNanos;
+        this.distance = distance;
+        this.timerNanos = timerNanos;
+        this.rejectedFixCount = rejectedFixCount;
+    }
+
+    public long getFixCount(){
+        return fixCount;
+    }
+
+    public long getSensorEventCount(){
+        return sensorEventCount;
+    }
+
+    /**
+     * Fixes dropped by TripCalculator fix gate
+     */
+    public long getRejectedFixCount(){
+        return rejectedFixCount;
+    }
+
+    /**
+     * Max displayed speed, m/s
+     */
+    public double getMaxSpeed(){
+        return maxSpeed;
+    }
+
+    /**
+     * Mean displayed speed over all fixes, m/s
+     */
+    public double getMeanSpeed(){
+        return fixCount == 0 ? 0 : speedSum / fixCount;
+    }
+
+    /**
+     * Trip distance, m
+     */
+    public double getDistance(){
+        return distance;
+    }
+
+    /**
+     * Trip (moving) time, ns
+     */
+    public long getTimerNanos(){
+        return timerNanos;
+    }
+
+    /**
+     * Recorded time span of replayed source, ns
+     */
+    public long getTrackNanos(){
+        return trackNanos;
+    }
+
+    /**
+     * Wall clock time spent replaying, ns
+     */
+    public long getWallNanos(){
+        return wallNanos;
+    }
+
+    public double getFixesPerSecond(){
+        return wallNanos == 0 ? 0 : fixCount * 1e9 / wallNanos;
+    }
+}
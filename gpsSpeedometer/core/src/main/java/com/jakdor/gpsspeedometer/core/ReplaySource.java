@@ -0,0 +1,15 @@
+package com.jakdor.gpsspeedometer.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Streaming source of recorded events, ordered by timestamp
+ */
+public interface ReplaySource extends Closeable {
+
+    /**
+     * Reads next event into given holder, false at end of stream
+     */
+    boolean next(ReplayEvent event) throws IOException;
+}
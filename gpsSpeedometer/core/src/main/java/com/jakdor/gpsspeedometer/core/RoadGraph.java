@@ -0,0 +1,425 @@
+package com.jakdor.gpsspeedometer.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Offline road network for map matching, loaded from OSM XML extract (highway ways only).
+ * Nodes are projected to local plane (meters, equirectangular around extract center - extracts
+ * are city sized), ways are split into straight segments; travel direction restrictions are ignored.
+ * Flat arrays only: CSR node adjacency for routing, uniform grid of segments for candidate lookup.
+ * Immutable after loading; findSegments() keeps dedupe stamps, so graph serves one matcher thread
+ */
+public class RoadGraph {
+
+    public static final double DEFAULT_CELL_SIZE = 50; // m
+
+    /**
+     * Highway values that aren't travelled roads
+     */
+    private static final Set<String> IGNORED_HIGHWAYS = new HashSet<>(Arrays.asList(
+            "proposed", "construction", "abandoned", "platform", "bus_stop", "elevator", "rest_area", "services"));
+
+    private final double originLatitude;
+    private final double originLongitude;
+    private final double metersPerDegreeLatitude;
+    private final double metersPerDegreeLongitude;
+
+    private final double[] nodeX;
+    private final double[] nodeY;
+    private final int[] segmentFrom;
+    private final int[] segmentTo;
+    private final double[] segmentLength;
+
+    //CSR adjacency: segments touching node n are adjacency[adjacencyStart[n] .. adjacencyStart[n + 1])
+    private final int[] adjacencyStart;
+    private final int[] adjacency;
+
+    //CSR grid: segments crossing cell c are cellSegments[cellStart[c] .. cellStart[c + 1])
+    private final double cellSize;
+    private final double gridMinX;
+    private final double gridMinY;
+    private final int columns;
+    private final int rows;
+    private final int[] cellStart;
+    private final int[] cellSegments;
+
+    private final int[] segmentMark; //query stamps, dedupes segments spanning several cells
+    private int markStamp = 0;
+
+    /**
+     * @param latitudes node coordinates, degrees
+     * @param segmentFrom segment end node indexes
+     */
+    RoadGraph(double[] latitudes, double[] longitudes, int[] segmentFrom, int[] segmentTo, double cellSize){
+        int nodeCount = latitudes.length;
+        int segmentCount = segmentFrom.length;
+        this.segmentFrom = segmentFrom;
+        this.segmentTo = segmentTo;
+        this.cellSize = cellSize;
+
+        double minLatitude = 90, maxLatitude = -90, minLongitude = 180, maxLongitude = -180;
+        for(int i = 0; i < nodeCount; ++i){
+            minLatitude = Math.min(minLatitude, latitudes[i]);
+            maxLatitude = Math.max(maxLatitude, latitudes[i]);
+            minLongitude = Math.min(minLongitude, longitudes[i]);
+            maxLongitude = Math.max(maxLongitude, longitudes[i]);
+        }
+        originLatitude = nodeCount > 0 ? (minLatitude + maxLatitude) / 2 : 0;
+        originLongitude = nodeCount > 0 ? (minLongitude + maxLongitude) / 2 : 0;
+        metersPerDegreeLatitude = Geodesy.metersPerDegreeLatitude(originLatitude);
+        metersPerDegreeLongitude = Geodesy.metersPerDegreeLongitude(originLatitude);
+
+        nodeX = new double[nodeCount];
+        nodeY = new double[nodeCount];
+        double minX = 0, minY = 0, maxX = 0, maxY = 0;
+        for(int i = 0; i < nodeCount; ++i){
+            nodeX[i] = toX(longitudes[i]);
+            nodeY[i] = toY(latitudes[i]);
+            minX = i == 0 ? nodeX[i] : Math.min(minX, nodeX[i]);
+            minY = i == 0 ? nodeY[i] : Math.min(minY, nodeY[i]);
+            maxX = i == 0 ? nodeX[i] : Math.max(maxX, nodeX[i]);
+            maxY = i == 0 ? nodeY[i] : Math.max(maxY, nodeY[i]);
+        }
+
+        segmentLength = new double[segmentCount];
+        adjacencyStart = new int[nodeCount + 1];
+        for(int s = 0; s < segmentCount; ++s){
+            segmentLength[s] = Math.hypot(nodeX[segmentTo[s]] - nodeX[segmentFrom[s]],
+                    nodeY[segmentTo[s]] - nodeY[segmentFrom[s]]);
+            ++adjacencyStart[segmentFrom[s] + 1];
+            ++adjacencyStart[segmentTo[s] + 1];
+        }
+        for(int i = 0; i < nodeCount; ++i){
+            adjacencyStart[i + 1] += adjacencyStart[i];
+        }
+        adjacency = new int[segmentCount * 2];
+        int[] fill = Arrays.copyOf(adjacencyStart, nodeCount);
+        for(int s = 0; s < segmentCount; ++s){
+            adjacency[fill[segmentFrom[s]]++] = s;
+            adjacency[fill[segmentTo[s]]++] = s;
+        }
+
+        gridMinX = minX;
+        gridMinY = minY;
+        columns = (int) ((maxX - minX) / cellSize) + 1;
+        rows = (int) ((maxY - minY) / cellSize) + 1;
+        cellStart = new int[columns * rows + 1];
+        int[] bounds = new int[segmentCount * 4]; //first column, last column, first row, last row
+        for(int s = 0; s < segmentCount; ++s){
+            bounds[s * 4] = column(Math.min(nodeX[segmentFrom[s]], nodeX[segmentTo[s]]));
+            bounds[s * 4 + 1] = column(Math.max(nodeX[segmentFrom[s]], nodeX[segmentTo[s]]));
+            bounds[s * 4 + 2] = row(Math.min(nodeY[segmentFrom[s]], nodeY[segmentTo[s]]));
+            bounds[s * 4 + 3] = row(Math.max(nodeY[segmentFrom[s]], nodeY[segmentTo[s]]));
+            for(int r = bounds[s * 4 + 2]; r <= bounds[s * 4 + 3]; ++r){
+                for(int c = bounds[s * 4]; c <= bounds[s * 4 + 1]; ++c){
+                    ++cellStart[r * columns + c + 1];
+                }
+            }
+        }
+        for(int c = 0; c < columns * rows; ++c){
+            cellStart[c + 1] += cellStart[c];
+        }
+        cellSegments = new int[cellStart[columns * rows]];
+        fill = Arrays.copyOf(cellStart, columns * rows);
+        for(int s = 0; s < segmentCount; ++s){
+            for(int r = bounds[s * 4 + 2]; r <= bounds[s * 4 + 3]; ++r){
+                for(int c = bounds[s * 4]; c <= bounds[s * 4 + 1]; ++c){
+                    cellSegments[fill[r * columns + c]++] = s;
+                }
+            }
+        }
+        segmentMark = new int[segmentCount];
+    }
+
+    /**
+     * Loads highway network out of OSM XML file
+     */
+    public static RoadGraph loadOsm(File file) throws IOException {
+        return loadOsm(new InputStreamReader(new FileInputStream(file), Charset.forName("UTF-8")));
+    }
+
+    /**
+     * Loads highway network out of OSM XML (nodes listed before ways, as in osm extracts);
+     * way references to nodes missing in extract split the way. Reader is closed afterwards
+     */
+    public static RoadGraph loadOsm(Reader reader) throws IOException {
+        XmlPullScanner scanner = new XmlPullScanner(reader);
+        Map<Long, Integer> nodeIndexes = new HashMap<>();
+        double[] latitudes = new double[1024];
+        double[] longitudes = new double[1024];
+        int nodeCount = 0;
+
+        long[] wayNodes = new long[256];
+        int wayLength = 0;
+        boolean inWay = false;
+        boolean road = false;
+
+        int[] from = new int[1024];
+        int[] to = new int[1024];
+        int segmentCount = 0;
+
+        try {
+            int token;
+            while ((token = scanner.next()) != XmlPullScanner.END_DOCUMENT) {
+                if (token == XmlPullScanner.START_TAG) {
+                    String name = scanner.getName();
+                    if ("node".equals(name)) {
+                        if (nodeCount == latitudes.length) {
+                            latitudes = Arrays.copyOf(latitudes, nodeCount * 2);
+                            longitudes = Arrays.copyOf(longitudes, nodeCount * 2);
+                        }
+                        latitudes[nodeCount] = parse(scanner.getAttribute("lat"));
+                        longitudes[nodeCount] = parse(scanner.getAttribute("lon"));
+                        nodeIndexes.put(parseId(scanner.getAttribute("id")), nodeCount++);
+                    } else if ("way".equals(name)) {
+                        inWay = true;
+                        road = false;
+                        wayLength = 0;
+                    } else if (inWay && "nd".equals(name)) {
+                        if (wayLength == wayNodes.length) {
+                            wayNodes = Arrays.copyOf(wayNodes, wayLength * 2);
+                        }
+                        wayNodes[wayLength++] = parseId(scanner.getAttribute("ref"));
+                    } else if (inWay && "tag".equals(name) && "highway".equals(scanner.getAttribute("k"))) {
+                        road = !IGNORED_HIGHWAYS.contains(scanner.getAttribute("v"));
+                    }
+                } else if (token == XmlPullScanner.END_TAG && "way".equals(scanner.getName())) {
+                    inWay = false;
+                    if (!road) {
+                        continue;
+                    }
+                    Integer last = null;
+                    for (int i = 0; i < wayLength; ++i) {
+                        Integer node = nodeIndexes.get(wayNodes[i]);
+                        if (last != null && node != null && !last.equals(node)) {
+                            if (segmentCount == from.length) {
+                                from = Arrays.copyOf(from, segmentCount * 2);
+                                to = Arrays.copyOf(to, segmentCount * 2);
+                            }
+                            from[segmentCount] = last;
+                            to[segmentCount++] = node;
+                        }
+                        last = node;
+                    }
+                }
+            }
+        }
+        finally {
+            scanner.close();
+        }
+
+        //keep road nodes only
+        int[] remap = new int[nodeCount];
+        Arrays.fill(remap, -1);
+        int roadNodeCount = 0;
+        for(int s = 0; s < segmentCount * 2; ++s){
+            int node = s < segmentCount ? from[s] : to[s - segmentCount];
+            if(remap[node] < 0){
+                remap[node] = roadNodeCount++;
+            }
+        }
+        double[] roadLatitudes = new double[roadNodeCount];
+        double[] roadLongitudes = new double[roadNodeCount];
+        for(int i = 0; i < nodeCount; ++i){
+            if(remap[i] >= 0){
+                roadLatitudes[remap[i]] = latitudes[i];
+                roadLongitudes[remap[i]] = longitudes[i];
+            }
+        }
+        int[] segmentFrom = new int[segmentCount];
+        int[] segmentTo = new int[segmentCount];
+        for(int s = 0; s < segmentCount; ++s){
+            segmentFrom[s] = remap[from[s]];
+            segmentTo[s] = remap[to[s]];
+        }
+        return new RoadGraph(roadLatitudes, roadLongitudes, segmentFrom, segmentTo, DEFAULT_CELL_SIZE);
+    }
+
+    private static double parse(String value) throws IOException {
+        if(value == null){
+            throw new IOException("Osm node without coordinates");
+        }
+        try {
+            return Double.parseDouble(value);
+        }
+        catch (NumberFormatException e){
+            throw new IOException("Malformed osm coordinate: " + value, e);
+        }
+    }
+
+    private static long parseId(String value) throws IOException {
+        if(value == null){
+            throw new IOException("Osm element without id");
+        }
+        try {
+            return Long.parseLong(value);
+        }
+        catch (NumberFormatException e){
+            throw new IOException("Malformed osm id: " + value, e);
+        }
+    }
+
+    private int column(double x){
+        return Math.max(0, Math.min(columns - 1, (int) ((x - gridMinX) / cellSize)));
+    }
+
+    private int row(double y){
+        return Math.max(0, Math.min(rows - 1, (int) ((y - gridMinY) / cellSize)));
+    }
+
+    /**
+     * Finds up to max segments within radius of local point, nearest first
+     * @param segments found segment ids
+     * @param distances distance from point to each found segment, m
+     * @return number of segments found
+     */
+    public int findSegments(double x, double y, double radius, int[] segments, double[] distances, int max){
+        if(segmentMark.length == 0 || max <= 0){
+            return 0;
+        }
+        if(++markStamp == 0){ //stamp wrapped around
+            Arrays.fill(segmentMark, 0);
+            markStamp = 1;
+        }
+
+        int count = 0;
+        int fromColumn = column(x - radius), toColumn = column(x + radius);
+        int fromRow = row(y - radius), toRow = row(y + radius);
+        for(int r = fromRow; r <= toRow; ++r){
+            for(int c = fromColumn; c <= toColumn; ++c){
+                int cell = r * columns + c;
+                for(int i = cellStart[cell]; i < cellStart[cell + 1]; ++i){
+                    int segment = cellSegments[i];
+                    if(segmentMark[segment] == markStamp){
+                        continue;
+                    }
+                    segmentMark[segment] = markStamp;
+
+                    double distance = Math.hypot(x - projectX(segment, x, y), y - projectY(segment, x, y));
+                    if(distance > radius || (count == max && distance >= distances[count - 1])){
+                        continue;
+                    }
+                    int position = count < max ? count++ : count - 1; //insertion sort, drops farthest
+                    while (position > 0 && distances[position - 1] > distance){
+                        segments[position] = segments[position - 1];
+                        distances[position] = distances[position - 1];
+                        --position;
+                    }
+                    segments[position] = segment;
+                    distances[position] = distance;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Position of point projection along segment, m from segment from node
+     */
+    public double projectOffset(int segment, double x, double y){
+        double length = segmentLength[segment];
+        if(length == 0){
+            return 0;
+        }
+        double fromX = nodeX[segmentFrom[segment]], fromY = nodeY[segmentFrom[segment]];
+        double t = ((x - fromX) * (nodeX[segmentTo[segment]] - fromX) + (y - fromY) * (nodeY[segmentTo[segment]] - fromY))
+                / (length * length);
+        return Math.max(0, Math.min(1, t)) * length;
+    }
+
+    private double projectX(int segment, double x, double y){
+        return pointX(segment, projectOffset(segment, x, y));
+    }
+
+    private double projectY(int segment, double x, double y){
+        return pointY(segment, projectOffset(segment, x, y));
+    }
+
+    /**
+     * Local x of point at offset (m) along segment
+     */
+    public double pointX(int segment, double offset){
+        double length = segmentLength[segment];
+        double fromX = nodeX[segmentFrom[segment]];
+        return length == 0 ? fromX : fromX + (nodeX[segmentTo[segment]] - fromX) * offset / length;
+    }
+
+    /**
+     * Local y of point at offset (m) along segment
+     */
+    public double pointY(int segment, double offset){
+        double length = segmentLength[segment];
+        double fromY = nodeY[segmentFrom[segment]];
+        return length == 0 ? fromY : fromY + (nodeY[segmentTo[segment]] - fromY) * offset / length;
+    }
+
+    /**
+     * Local plane x (m east of extract center) of longitude
+     */
+    public double toX(double longitude){
+        return (longitude - originLongitude) * metersPerDegreeLongitude;
+    }
+
+    /**
+     * Local plane y (m north of extract center) of latitude
+     */
+    public double toY(double latitude){
+        return (latitude - originLatitude) * metersPerDegreeLatitude;
+    }
+
+    public double toLatitude(double y){
+        return originLatitude + y / metersPerDegreeLatitude;
+    }
+
+    public double toLongitude(double x){
+        return originLongitude + x / metersPerDegreeLongitude;
+    }
+
+    public int getNodeCount(){
+        return nodeX.length;
+    }
+
+    public int getSegmentCount(){
+        return segmentFrom.length;
+    }
+
+    public int getSegmentFrom(int segment){
+        return segmentFrom[segment];
+    }
+
+    public int getSegmentTo(int segment){
+        return segmentTo[segment];
+    }
+
+    public double getSegmentLength(int segment){
+        return segmentLength[segment];
+    }
+
+    /**
+     * Segments touching node are getAdjacentSegment(i) for i in [getAdjacencyStart(node), getAdjacencyStart(node + 1))
+     */
+    public int getAdjacencyStart(int node){
+        return adjacencyStart[node];
+    }
+
+    public int getAdjacentSegment(int index){
+        return adjacency[index];
+    }
+
+    /**
+     * Other end of segment touching given node
+     */
+    public int getOtherNode(int segment, int node){
+        return segmentFrom[segment] == node ? segmentTo[segment] : segmentFrom[segment];
+    }
+}
@@ -0,0 +1,202 @@
+package com.jakdor.gpsspeedometer.core;
+
+/**
+ * Primitive accumulators of single trip part (whole trip, lap or segment between stops),
+ * updated in O(1) per fix, never rescans points; consecutive parts can be merged
+ */
+public class SegmentStatistics {
+
+    /**
+     * Altitude change ignored until it exceeds this step, filters out gps altitude noise (m)
+     */
+    public static final double ELEVATION_HYSTERESIS = 5.0;
+
+    private long startNanos = Long.MIN_VALUE;
+    private long endNanos = Long.MIN_VALUE;
+    private long fixCount = 0;
+
+    private double distance = 0;
+    private long movingNanos = 0;
+    private long stoppedNanos = 0;
+    private double maxSpeed = 0;
+
+    private double elevationGain = 0;
+    private double elevationLoss = 0;
+    private double referenceAltitude = Double.NaN;
+
+    private final SpeedHistogram histogram;
+
+    public SegmentStatistics(SpeedHistogram histogram){
+        this.histogram = histogram;
+    }
+
+    /**
+     * Time interval ending at timeNanos spent moving, distance in m, speed in m/s
+     */
+    public void addMoving(long timeNanos, long deltaNanos, double distance, double speed){
+        extend(timeNanos, deltaNanos);
+        this.distance += distance;
+        movingNanos += deltaNanos;
+        if(speed > maxSpeed){
+            maxSpeed = speed;
+        }
+        histogram.add(speed, deltaNanos);
+    }
+
+    /**
+     * Time interval ending at timeNanos spent at full stop
+     */
+    public void addStopped(long timeNanos, long deltaNanos){
+        extend(timeNanos, deltaNanos);
+        stoppedNanos += deltaNanos;
+        histogram.add(0, deltaNanos);
+    }
+
+    private void extend(long timeNanos, long deltaNanos){
+        if(startNanos == Long.MIN_VALUE){
+            startNanos = timeNanos - deltaNanos;
+        }
+        endNanos = timeNanos;
+        ++fixCount;
+    }
+
+    /**
+     * Gps altitude (m), 0 or NaN if unknown; climb and descent counted in hysteresis steps
+     */
+    public void addAltitude(double altitude){
+        if(altitude == 0 || Double.isNaN(altitude)){
+            return;
+        }
+        if(Double.isNaN(referenceAltitude)){
+            referenceAltitude = altitude;
+            return;
+        }
+
+        double difference = altitude - referenceAltitude;
+        if(difference >= ELEVATION_HYSTERESIS){
+            elevationGain += difference;
+            referenceAltitude = altitude;
+        }
+        else if(difference <= -ELEVATION_HYSTERESIS){
+            elevationLoss -= difference;
+            referenceAltitude = altitude;
+        }
+    }
+
+    /**
+     * Continues elevation tracking from preceding part, so split parts add up to the whole
+     */
+    void continueFrom(SegmentStatistics previous){
+        referenceAltitude = previous.referenceAltitude;
+    }
+
+    /**
+     * Appends directly following part
+     */
+    public void merge(SegmentStatistics next){
+        if(next.fixCount == 0){
+            return;
+        }
+        if(fixCount == 0){
+            startNanos = next.startNanos;
+        }
+        endNanos = next.endNanos;
+        fixCount += next.fixCount;
+        distance += next.distance;
+        movingNanos += next.movingNanos;
+        stoppedNanos += next.stoppedNanos;
+        maxSpeed = Math.max(maxSpeed, next.maxSpeed);
+        elevationGain += next.elevationGain;
+        elevationLoss += next.elevationLoss;
+        referenceAltitude = next.referenceAltitude;
+        histogram.merge(next.histogram);
+    }
+
+    public SegmentStatistics copy(){
+        SegmentStatistics copy = new SegmentStatistics(
+                new SpeedHistogram(histogram.getBucketWidth(), histogram.getBucketCount()));
+        copy.merge(this);
+        copy.referenceAltitude = referenceAltitude;
+        return copy;
+    }
+
+    /**
+     * Start on Fix elapsed realtime clock, Long.MIN_VALUE while empty
+     */
+    public long getStartNanos(){
+        return startNanos;
+    }
+
+    public long getEndNanos(){
+        return endNanos;
+    }
+
+    /**
+     * Fix intervals accounted, moving and stopped
+     */
+    public long getFixCount(){
+        return fixCount;
+    }
+
+    /**
+     * Distance, m
+     */
+    public double getDistance(){
+        return distance;
+    }
+
+    public long getMovingNanos(){
+        return movingNanos;
+    }
+
+    public long getStoppedNanos(){
+        return stoppedNanos;
+    }
+
+    /**
+     * Moving and stopped time, gps outages excluded
+     */
+    public long getElapsedNanos(){
+        return movingNanos + stoppedNanos;
+    }
+
+    /**
+     * Max speed, m/s
+     */
+    public double getMaxSpeed(){
+        return maxSpeed;
+    }
+
+    /**
+     * Distance over elapsed time including stops, m/s
+     */
+    public double getAverageSpeed(){
+        long elapsed = getElapsedNanos();
+        return elapsed == 0 ? 0 : distance / (elapsed / 1e9);
+    }
+
+    /**
+     * Distance over moving time, m/s
+     */
+    public double getMovingSpeed(){
+        return movingNanos == 0 ? 0 : distance / (movingNanos / 1e9);
+    }
+
+    /**
+     * Total climb, m
+     */
+    public double getElevationGain(){
+        return elevationGain;
+    }
+
+    /**
+     * Total descent, m
+     */
+    public double getElevationLoss(){
+        return elevationLoss;
+    }
+
+    public SpeedHistogram getHistogram(){
+        return histogram;
+    }
+}
@@ -0,0 +1,46 @@
+package com.jakdor.gpsspeedometer.core;
+
+/**
+ * Bucket averaging of raw speed samples (m/s) for smooth reads
+ * - new average every 3 samples
+ * - discards averages speed under 1m/s due to random gps jitter
+ */
+public class SpeedAverager {
+
+    private int speedCounter = 0;
+    private double speedSum = 0;
+    private double avrCurrentSpeed = 0;
+
+    /**
+     * Adds raw speed sample, returns current average
+     */
+    public double add(double speed){
+        if(speedCounter < 2){
+            speedSum += speed;
+        }
+        else {
+            speedSum += speed;
+            avrCurrentSpeed = speedSum / speedCounter;
+            speedCounter = 0;
+            speedSum = 0;
+        }
+        ++speedCounter;
+
+        if(avrCurrentSpeed < 1.0){ //discard random jitter
+            avrCurrentSpeed = 0.0;
+        }
+
+        return avrCurrentSpeed;
+    }
+
+    /**
+     * Full stop detected, zeroes current average
+     */
+    public void stop(){
+        avrCurrentSpeed = 0;
+    }
+
+    public double getAverage(){
+        return avrCurrentSpeed;
+    }
+}
@@ -0,0 +1,96 @@
+package com.jakdor.gpsspeedometer.core;
+
+/**
+ * Time spent in fixed width speed buckets, last bucket is open ended;
+ * O(1) add, histograms with same layout can be merged
+ */
+public class SpeedHistogram {
+
+    public static final double DEFAULT_BUCKET_WIDTH = 10 / TripSnapshot.MS_TO_KMH; // 10 km/h
+    public static final int DEFAULT_BUCKET_COUNT = 20;
+
+    private final double bucketWidth;
+    private final long[] bucketNanos;
+
+    public SpeedHistogram(){
+        this(DEFAULT_BUCKET_WIDTH, DEFAULT_BUCKET_COUNT);
+    }
+
+    /**
+     * @param bucketWidth m/s
+     */
+    public SpeedHistogram(double bucketWidth, int bucketCount){
+        if(bucketWidth <= 0 || bucketCount < 1){
+            throw new IllegalArgumentException("Invalid histogram layout: " + bucketCount + " x " + bucketWidth);
+        }
+        this.bucketWidth = bucketWidth;
+        this.bucketNanos = new long[bucketCount];
+    }
+
+    /**
+     * Adds time spent at given speed (m/s)
+     */
+    public void add(double speed, long nanos){
+        int bucket = speed > 0 ? (int) (speed / bucketWidth) : 0;
+        if(bucket >= bucketNanos.length || bucket < 0){ //overflow or NaN free
+            bucket = bucketNanos.length - 1;
+        }
+        bucketNanos[bucket] += nanos;
+    }
+
+    /**
+     * Adds all buckets of other histogram, layouts must match
+     */
+    public void merge(SpeedHistogram other){
+        if(other.bucketWidth != bucketWidth || other.bucketNanos.length != bucketNanos.length){
+            throw new IllegalArgumentException("Histogram layouts differ");
+        }
+        for(int i = 0; i < bucketNanos.length; ++i){
+            bucketNanos[i] += other.bucketNanos[i];
+        }
+    }
+
+    public SpeedHistogram copy(){
+        SpeedHistogram copy = new SpeedHistogram(bucketWidth, bucketNanos.length);
+        System.arraycopy(bucketNanos, 0, copy.bucketNanos, 0, bucketNanos.length);
+        return copy;
+    }
+
+    public int getBucketCount(){
+        return bucketNanos.length;
+    }
+
+    /**
+     * Bucket width, m/s
+     */
+    public double getBucketWidth(){
+        return bucketWidth;
+    }
+
+    /**
+     * Lower speed bound of bucket, m/s
+     */
+    public double getLowerBound(int bucket){
+        return bucket * bucketWidth;
+    }
+
+    public long getNanos(int bucket){
+        return bucketNanos[bucket];
+    }
+
+    public long getTotalNanos(){
+        long total = 0;
+        for(long nanos : bucketNanos){
+            total += nanos;
+        }
+        return total;
+    }
+
+    /**
+     * Share of total time spent in bucket, 0 for empty histogram
+     */
+    public double getFraction(int bucket){
+        long total = getTotalNanos();
+        return total == 0 ? 0 : (double) bucketNanos[bucket] / total;
+    }
+}
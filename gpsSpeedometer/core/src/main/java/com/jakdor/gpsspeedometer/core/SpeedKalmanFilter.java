@@ -0,0 +1,155 @@
+package com.jakdor.gpsspeedometer.core;
+
+/**
+ * Constant acceleration Kalman filter for ground speed,
+ * state: [speed m/s, acceleration m/s^2]
+ * - predict() propagates state, measured motion intensity drives process noise
+ * - correct() runs on every gps fix, measurement noise derived from reported accuracy
+ * Allocation free, not thread safe - caller serializes predict/correct
+ */
+public class SpeedKalmanFilter {
+
+    public static final double DEFAULT_PROCESS_NOISE = 0.1; // jerk m/s^3
+    public static final double VIBRATION_DEADBAND = 0.5; // m/s^2, road and hand vibration
+    public static final double MIN_SPEED_VARIANCE = 0.05;
+    public static final double DEFAULT_DOPPLER_ACCURACY = 0.5; // m/s, receivers not reporting speed accuracy
+
+    /**
+     * Share of reported accuracy that is uncorrelated between consecutive fixes,
+     * most of gps position error is slowly changing bias that cancels out in differencing
+     */
+    private static final double ACCURACY_DECORRELATION = 0.25;
+    private static final double INITIAL_ACCELERATION_VARIANCE = 1.0;
+
+    private final double[] x = new double[2];
+    private final double[] p = new double[4]; //covariance, row major
+
+    private boolean initialized = false;
+    private long timeNanos;
+    private double processNoise = DEFAULT_PROCESS_NOISE;
+
+    /**
+     * Propagates state to given time
+     * @param processNoise jerk noise density m/s^3, scaled by measured motion intensity
+     */
+    public void predict(long timeNanos, double processNoise){
+        this.processNoise = processNoise;
+        if(!initialized){
+            return;
+        }
+
+        double dt = (timeNanos - this.timeNanos) / 1e9;
+        if(dt <= 0){
+            return;
+        }
+        this.timeNanos = timeNanos;
+
+        // x = F x, F = [1 dt; 0 1]
+        x[0] += x[1] * dt;
+
+        // P = F P F' + Q, Q = q * [dt^3/3 dt^2/2; dt^2/2 dt] (white jerk)
+        double q = processNoise * processNoise;
+        double dt2 = dt * dt;
+        double p00 = p[0] + dt * (p[1] + p[2]) + dt2 * p[3] + q * dt2 * dt / 3;
+        double p01 = p[1] + dt * p[3] + q * dt2 / 2;
+        double p10 = p[2] + dt * p[3] + q * dt2 / 2;
+        double p11 = p[3] + q * dt;
+        p[0] = p00;
+        p[1] = p01;
+        p[2] = p10;
+        p[3] = p11;
+    }
+
+    /**
+     * Fuses speed measurement taken at given time
+     * @param variance measurement variance (m/s)^2
+     */
+    public void correct(long timeNanos, double speed, double variance){
+        if(variance < MIN_SPEED_VARIANCE){
+            variance = MIN_SPEED_VARIANCE;
+        }
+
+        if(!initialized){
+            x[0] = speed;
+            x[1] = 0;
+            p[0] = variance;
+            p[1] = 0;
+            p[2] = 0;
+            p[3] = INITIAL_ACCELERATION_VARIANCE;
+            this.timeNanos = timeNanos;
+            initialized = true;
+            return;
+        }
+
+        predict(timeNanos, processNoise);
+
+        // H = [1 0]
+        double s = p[0] + variance;
+        double k0 = p[0] / s;
+        double k1 = p[2] / s;
+        double innovation = speed - x[0];
+
+        x[0] += k0 * innovation;
+        x[1] += k1 * innovation;
+
+        // P = (I - K H) P
+        double p00 = (1 - k0) * p[0];
+        double p01 = (1 - k0) * p[1];
+        double p10 = p[2] - k1 * p[0];
+        double p11 = p[3] - k1 * p[1];
+        p[0] = p00;
+        p[1] = p01;
+        p[2] = p10;
+        p[3] = p11;
+
+        if(x[0] < 0){ //ground speed can't be negative
+            x[0] = 0;
+        }
+    }
+
+    public void reset(){
+        initialized = false;
+        x[0] = 0;
+        x[1] = 0;
+    }
+
+    public double getSpeed(){
+        return x[0];
+    }
+
+    public double getAcceleration(){
+        return x[1];
+    }
+
+    public double getSpeedVariance(){
+        return p[0];
+    }
+
+    public boolean isInitialized(){
+        return initialized;
+    }
+
+    /**
+     * Variance of speed derived from two fixes with given horizontal accuracy (m) taken dt seconds apart
+     */
+    public static double positionSpeedVariance(double accuracy, double dt){
+        double sigma = ACCURACY_DECORRELATION * accuracy / dt;
+        return sigma * sigma;
+    }
+
+    /**
+     * Variance of receiver doppler speed with given reported accuracy (m/s), 0 if unknown
+     */
+    public static double dopplerSpeedVariance(double speedAccuracy){
+        double sigma = speedAccuracy > 0 ? speedAccuracy : DEFAULT_DOPPLER_ACCURACY;
+        return sigma * sigma;
+    }
+
+    /**
+     * Process noise for given dynamic acceleration magnitude (|acc| - g) in m/s^2,
+     * intensity under vibration deadband is treated as constant speed
+     */
+    public static double processNoise(double motionIntensity){
+        return DEFAULT_PROCESS_NOISE + Math.max(0, Math.abs(motionIntensity) - VIBRATION_DEADBAND);
+    }
+}
@@ -0,0 +1,19 @@
+package com.jakdor.gpsspeedometer.core;
+
+/**
+ * Speed measurement fed into TripCalculator speed filter
+ */
+public enum SpeedSource {
+    /**
+     * Receiver doppler speed or position derived speed, whichever reports lower variance
+     */
+    AUTO,
+    /**
+     * Receiver doppler speed, position derived speed only for fixes without it
+     */
+    DOPPLER,
+    /**
+     * Distance between consecutive fixes over real fix time delta
+     */
+    POSITION
+}
@@ -0,0 +1,173 @@
+package com.jakdor.gpsspeedometer.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Telemetry uplink batch, wire format little endian:
+ * header (16 bytes): magic "GPSU", version (short), record count (short), batch sequence (long)
+ * payload: zlib compressed per record zigzag varint deltas to previous record, first record delta to 0,
+ * fields as in CompactTrackFormat (time ms, latitude, longitude 1e-7 degrees, altitude dm, accuracy dm, speed cm/s).
+ * At 1 Hz deltas take about 8 bytes per fix before compression. Sequence grows by one per batch,
+ * receiver drops duplicates of retried batches by it. Encoder reuses its buffers, one instance per uplink thread
+ */
+public class TelemetryBatch {
+
+    public static final int MAX_RECORDS = 1024;
+    public static final int FIELDS = CompactTrackFormat.FIELDS;
+
+    static final int MAGIC = 0x55535047; // "GPSU"
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 16;
+
+    private static final int MAX_RAW_SIZE = MAX_RECORDS * CompactTrackFormat.MAX_PAYLOAD_SIZE
+            / CompactTrackFormat.BLOCK_RECORDS;
+
+    private final ByteBuffer raw = ByteBuffer.allocate(MAX_RAW_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final long[] previous = new long[FIELDS];
+    private final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+    private final byte[] data = new byte[HEADER_SIZE + MAX_RAW_SIZE + MAX_RAW_SIZE / 100 + 64];
+    private final ByteBuffer header = ByteBuffer.wrap(data, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private long sequence;
+    private int count;
+    private int length;
+
+    /**
+     * Starts new empty batch
+     */
+    public void reset(long sequence){
+        this.sequence = sequence;
+        count = 0;
+        length = 0;
+        raw.clear();
+        for(int i = 0; i < FIELDS; ++i){
+            previous[i] = 0;
+        }
+    }
+
+    /**
+     * Appends record in scaled units (TelemetryRing layout), ignored when batch is full
+     */
+    void add(long time, int latitude, int longitude, int altitude, int accuracy, int speed){
+        if(count == MAX_RECORDS){
+            return;
+        }
+        put(CompactTrackFormat.TIME, time);
+        put(CompactTrackFormat.LATITUDE, latitude);
+        put(CompactTrackFormat.LONGITUDE, longitude);
+        put(CompactTrackFormat.ALTITUDE, altitude);
+        put(CompactTrackFormat.ACCURACY, accuracy);
+        put(CompactTrackFormat.SPEED, speed);
+        ++count;
+    }
+
+    private void put(int field, long value){
+        CompactTrackFormat.putVarLong(raw, value - previous[field]);
+        previous[field] = value;
+    }
+
+    /**
+     * Writes header and compressed payload into getData()
+     */
+    public void encode(){
+        header.putInt(0, MAGIC);
+        header.putShort(4, VERSION);
+        header.putShort(6, (short) count);
+        header.putLong(8, sequence);
+
+        deflater.reset();
+        deflater.setInput(raw.array(), 0, raw.position());
+        deflater.finish();
+        length = HEADER_SIZE;
+        while (!deflater.finished()){
+            int written = deflater.deflate(data, length, data.length - length);
+            if(written == 0 && length == data.length){
+                throw new IllegalStateException("Telemetry batch exceeds buffer");
+            }
+            length += written;
+        }
+    }
+
+    /**
+     * Encoded batch, valid until next reset()
+     */
+    public byte[] getData(){
+        return data;
+    }
+
+    public int getLength(){
+        return length;
+    }
+
+    public int getCount(){
+        return count;
+    }
+
+    public long getSequence(){
+        return sequence;
+    }
+
+    /**
+     * Releases native compressor
+     */
+    public void close(){
+        deflater.end();
+    }
+
+    /**
+     * Batch sequence of encoded batch
+     */
+    public static long getSequence(byte[] data, int offset){
+        return ByteBuffer.wrap(data, offset, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN).getLong(offset + 8);
+    }
+
+    /**
+     * Decodes encoded batch (receiver side)
+     * @param records FIELDS values per record in scaled units, at least count * FIELDS long
+     * @return record count
+     * @throws IOException not a telemetry batch or corrupted payload
+     */
+    public static int decode(byte[] data, int offset, int length, long[] records) throws IOException {
+        ByteBuffer header = ByteBuffer.wrap(data, offset, length).order(ByteOrder.LITTLE_ENDIAN);
+        if(length < HEADER_SIZE || header.getInt(offset) != MAGIC || header.getShort(offset + 4) != VERSION){
+            throw new IOException("Not a supported telemetry batch");
+        }
+        int count = header.getShort(offset + 6);
+        if(count < 0 || count > MAX_RECORDS || records.length < count * FIELDS){
+            throw new IOException("Telemetry batch record count out of range: " + count);
+        }
+
+        ByteBuffer payload = ByteBuffer.allocate(MAX_RAW_SIZE);
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, offset + HEADER_SIZE, length - HEADER_SIZE);
+            payload.limit(inflater.inflate(payload.array()));
+            if(!inflater.finished()){
+                throw new IOException("Telemetry batch payload truncated");
+            }
+        }
+        catch (DataFormatException e){
+            throw new IOException("Telemetry batch payload corrupted", e);
+        }
+        finally {
+            inflater.end();
+        }
+
+        try {
+            for(int i = 0; i < count; ++i){
+                for(int field = 0; field < FIELDS; ++field){
+                    long previous = i > 0 ? records[(i - 1) * FIELDS + field] : 0;
+                    records[i * FIELDS + field] = previous + CompactTrackFormat.getVarLong(payload);
+                }
+            }
+        }
+        catch (RuntimeException e){
+            throw new IOException("Telemetry batch payload corrupted", e);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,16 @@
+package com.jakdor.gpsspeedometer.core;
+
+import java.io.IOException;
+
+/**
+ * Batch refused by receiver for good (e.g. HTTP 4xx), sending it again won't help -
+ * uplink drops it instead of spooling, link itself is up
+ */
+public class TelemetryRejectedException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public TelemetryRejectedException(String message){
+        super(message);
+    }
+}
@@ -0,0 +1,99 @@
+package com.jakdor.gpsspeedometer.core;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded single producer / single consumer ring of fix records in off-heap (direct) memory,
+ * fixed 32 byte records written and read in place - no object, allocation or lock per fix:
+ * - producer (fix thread) writes record, then publishes head
+ * - consumer (uplink thread) reads records, then publishes tail
+ * Full ring rejects new record (counted as dropped), producer never waits for consumer.
+ * Record, little endian: time UTC ms (long), latitude, longitude 1e-7 degrees, altitude dm,
+ * accuracy dm, speed cm/s (int), reserved (int)
+ */
+public class TelemetryRing {
+
+    static final int RECORD_SIZE = 32;
+
+    private static final int TIME = 0;
+    private static final int LATITUDE = 8;
+    private static final int LONGITUDE = 12;
+    private static final int ALTITUDE = 16;
+    private static final int ACCURACY = 20;
+    private static final int SPEED = 24;
+
+    private final ByteBuffer records;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong(); // records published, written by producer only
+    private final AtomicLong tail = new AtomicLong(); // records consumed, written by consumer only
+    private volatile long droppedCount = 0; // single writer, producer
+
+    /**
+     * @param capacity max records, rounded up to power of 2
+     */
+    public TelemetryRing(int capacity){
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        mask = size - 1;
+        records = ByteBuffer.allocateDirect(size * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Appends fix, producer thread
+     * @param speed m/s, processed (filtered) speed
+     * @return false if ring is full, record dropped
+     */
+    public boolean offer(Fix fix, double speed){
+        long position = head.get();
+        if(position - tail.get() > mask){
+            droppedCount = droppedCount + 1;
+            return false;
+        }
+
+        int offset = (int) (position & mask) * RECORD_SIZE;
+        records.putLong(offset + TIME, fix.getTime());
+        records.putInt(offset + LATITUDE, TrackFormat.toScaled(fix.getLatitude()));
+        records.putInt(offset + LONGITUDE, TrackFormat.toScaled(fix.getLongitude()));
+        records.putInt(offset + ALTITUDE, (int) Math.round(fix.getAltitude() * CompactTrackFormat.ALTITUDE_SCALE));
+        records.putInt(offset + ACCURACY, (int) Math.round(fix.getAccuracy() * CompactTrackFormat.ACCURACY_SCALE));
+        records.putInt(offset + SPEED, (int) Math.round(speed * CompactTrackFormat.SPEED_SCALE));
+        head.lazySet(position + 1);
+        return true;
+    }
+
+    /**
+     * Moves up to max oldest records into batch, consumer thread
+     * @return records moved
+     */
+    public int drainTo(TelemetryBatch batch, int max){
+        long position = tail.get();
+        int count = (int) Math.min(max, head.get() - position);
+        for(int i = 0; i < count; ++i){
+            int offset = (int) ((position + i) & mask) * RECORD_SIZE;
+            batch.add(records.getLong(offset + TIME), records.getInt(offset + LATITUDE),
+                    records.getInt(offset + LONGITUDE), records.getInt(offset + ALTITUDE),
+                    records.getInt(offset + ACCURACY), records.getInt(offset + SPEED));
+        }
+        tail.lazySet(position + count);
+        return count;
+    }
+
+    /**
+     * Records waiting: lower bound on consumer thread, upper bound on producer thread
+     */
+    public int size(){
+        return (int) (head.get() - tail.get());
+    }
+
+    public int capacity(){
+        return mask + 1;
+    }
+
+    /**
+     * Fixes rejected because ring was full
+     */
+    public long getDroppedCount(){
+        return droppedCount;
+    }
+}
@@ -0,0 +1,129 @@
+package com.jakdor.gpsspeedometer.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Disk spill of encoded telemetry batches not delivered while offline, one file per batch named by
+ * batch sequence (hex, sorts in send order); survives restarts, files of previous runs are picked up on open.
+ * Bounded by total size, oldest batches are dropped first. Single threaded (uplink thread)
+ */
+public class TelemetrySpool {
+
+    public static final String EXTENSION = ".tlm";
+
+    private final File dir;
+    private final long maxBytes;
+    private final ArrayDeque<File> files = new ArrayDeque<>();
+    private long bytes = 0;
+    private long droppedCount = 0;
+
+    /**
+     * Lists batches left by previous runs, missing dir is created on first put()
+     */
+    public TelemetrySpool(File dir, long maxBytes){
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+
+        File[] existing = dir.listFiles();
+        if(existing != null){
+            Arrays.sort(existing);
+            for(File file : existing){
+                if(file.getName().endsWith(EXTENSION)){
+                    files.add(file);
+                    bytes += file.length();
+                }
+            }
+        }
+    }
+
+    /**
+     * Stores batch, drops oldest batches over size limit
+     */
+    public void put(long sequence, byte[] data, int offset, int length) throws IOException {
+        if(!dir.isDirectory() && !dir.mkdirs()){
+            throw new IOException("Unable to create telemetry spool dir " + dir);
+        }
+
+        String name = Long.toHexString(sequence);
+        StringBuilder fileName = new StringBuilder(16 + EXTENSION.length());
+        for(int i = name.length(); i < 16; ++i){
+            fileName.append('0');
+        }
+        File file = new File(dir, fileName.append(name).append(EXTENSION).toString());
+        File temp = new File(dir, fileName.append(".tmp").toString());
+        FileOutputStream output = new FileOutputStream(temp);
+        try {
+            output.write(data, offset, length);
+            output.getFD().sync();
+        }
+        finally {
+            output.close();
+        }
+        if(!temp.renameTo(file)){
+            throw new IOException("Unable to spool telemetry batch " + file);
+        }
+        files.add(file);
+        bytes += length;
+
+        while (bytes > maxBytes && files.size() > 1){
+            remove(files.peekFirst());
+            ++droppedCount;
+        }
+    }
+
+    /**
+     * Oldest spooled batch, null if empty
+     */
+    public File peek(){
+        return files.peekFirst();
+    }
+
+    public byte[] read(File file) throws IOException {
+        byte[] data = new byte[(int) file.length()];
+        FileInputStream input = new FileInputStream(file);
+        try {
+            int read = 0;
+            while (read < data.length){
+                int count = input.read(data, read, data.length - read);
+                if(count < 0){
+                    throw new IOException("Telemetry batch truncated " + file);
+                }
+                read += count;
+            }
+        }
+        finally {
+            input.close();
+        }
+        return data;
+    }
+
+    /**
+     * Deletes spooled batch (delivered, unreadable or over limit)
+     */
+    public void remove(File file){
+        if(files.remove(file)){
+            bytes -= file.length();
+        }
+        file.delete();
+    }
+
+    public int size(){
+        return files.size();
+    }
+
+    public long getBytes(){
+        return bytes;
+    }
+
+    /**
+     * Batches dropped over size limit
+     */
+    public long getDroppedCount(){
+        return droppedCount;
+    }
+}
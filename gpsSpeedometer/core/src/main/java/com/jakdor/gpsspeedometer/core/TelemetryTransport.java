@@ -0,0 +1,18 @@
+package com.jakdor.gpsspeedometer.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Delivery of encoded TelemetryBatch to fleet backend (HttpTelemetryTransport, or other link),
+ * called on uplink thread only - may block, fix processing never waits for it
+ */
+public interface TelemetryTransport extends Closeable {
+
+    /**
+     * Sends one batch, returns once receiver acknowledged it
+     * @throws TelemetryRejectedException batch refused for good, uplink drops it
+     * @throws IOException batch not acknowledged, uplink spools it and retries later
+     */
+    void send(byte[] data, int offset, int length) throws IOException;
+}
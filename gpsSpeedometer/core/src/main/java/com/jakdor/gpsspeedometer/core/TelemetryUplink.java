@@ -0,0 +1,353 @@
+package com.jakdor.gpsspeedometer.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Live fleet telemetry: processed fixes buffered in off-heap TelemetryRing on fix thread (no lock, no I/O),
+ * sent by uplink thread in delta encoded, compressed TelemetryBatch over pluggable TelemetryTransport.
+ * Uplink step (process()):
+ * - batches spooled while offline go first, oldest first
+ * - ring is drained into batch once it holds batch size fixes or, while online, oldest waited MAX_BATCH_DELAY
+ * - failed send spills batch to disk (TelemetrySpool) and backs transport off, RETRY_MIN doubling to RETRY_MAX;
+ *   while backed off full batches go straight to spool
+ * - batch refused by receiver (TelemetryRejectedException) is dropped and counted, never spooled or retried -
+ *   one bad batch can't hold back spool behind it
+ * - adaptive batch size: doubled (up to MAX_BATCH) on failed or slow send and when ring fills past half
+ *   (backpressure - fewer, larger, better compressed requests), shrinks by quarter (down to MIN_BATCH)
+ *   with every fast send - fresh dashboard on good link
+ * Remaining fixes are spooled on stop(), sent with next run; uplink replacing stopped one (start(previous))
+ * waits for its thread to finish before opening shared spool dir
+ */
+public class TelemetryUplink {
+
+    public static final int DEFAULT_CAPACITY = 4096; // fixes, over an hour at 1 Hz
+    public static final long DEFAULT_SPOOL_BYTES = 4 * 1024 * 1024;
+    public static final int MIN_BATCH = 4;
+    public static final int MAX_BATCH = TelemetryBatch.MAX_RECORDS;
+    public static final long MAX_BATCH_DELAY = 5000000000L; // ns
+    public static final long SLOW_SEND = 2000000000L; // ns
+    public static final long RETRY_MIN = 1000000000L; // ns
+    public static final long RETRY_MAX = 60000000000L; // ns
+    private static final long POLL_INTERVAL = 500000000L; // ns
+
+    private static final int SENT = 0;
+    private static final int REJECTED = 1;
+    private static final int FAILED = 2;
+
+    private final TelemetryRing ring;
+    private final TelemetryTransport transport;
+    private final File spoolDir;
+    private final long spoolBytes;
+    private final TelemetryBatch batch = new TelemetryBatch();
+
+    //uplink thread only
+    private TelemetrySpool spool;
+    private long sequence;
+    private long lastFlushNanos = Long.MIN_VALUE;
+    private long retryNanos = Long.MIN_VALUE;
+    private long retryDelay = RETRY_MIN;
+
+    private volatile int batchSize = MIN_BATCH;
+    private volatile Thread thread;
+    private volatile boolean running = false;
+
+    //single writer (uplink thread) statistics
+    private volatile long sentBatches = 0;
+    private volatile long sentFixes = 0;
+    private volatile long sentBytes = 0;
+    private volatile long failedCount = 0;
+    private volatile long spilledBatches = 0;
+    private volatile long lostBatches = 0;
+    private volatile long rejectedBatches = 0;
+
+    public TelemetryUplink(TelemetryTransport transport, File spoolDir){
+        this(transport, spoolDir, DEFAULT_CAPACITY, DEFAULT_SPOOL_BYTES);
+    }
+
+    /**
+     * @param spoolDir batches not delivered are kept here, shared with previous runs
+     * @param capacity fixes buffered in memory
+     * @param spoolBytes disk spill limit
+     */
+    public TelemetryUplink(TelemetryTransport transport, File spoolDir, int capacity, long spoolBytes){
+        this.transport = transport;
+        this.spoolDir = spoolDir;
+        this.spoolBytes = spoolBytes;
+        ring = new TelemetryRing(capacity);
+        sequence = System.currentTimeMillis() * 1000; // unique across runs
+    }
+
+    /**
+     * Queues processed fix, fix thread; never blocks, wakes uplink thread once batch is ready
+     * @param speed m/s
+     */
+    public void onFix(Fix fix, double speed){
+        ring.offer(fix, speed);
+        Thread uplink = thread;
+        if(uplink != null && ring.size() >= batchSize){
+            LockSupport.unpark(uplink);
+        }
+    }
+
+    /**
+     * Starts uplink thread
+     */
+    public void start(){
+        start(null);
+    }
+
+    /**
+     * Starts uplink thread, which first waits until previous (stopped) uplink finished spooling
+     * @param previous uplink sharing spool dir, null if none
+     */
+    public synchronized void start(final TelemetryUplink previous){
+        if(thread != null){
+            return;
+        }
+
+        running = true;
+        Thread uplink = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                if(previous != null){
+                    try {
+                        previous.join(0);
+                    }
+                    catch (InterruptedException e){
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                while (running){
+                    process(System.nanoTime());
+                    LockSupport.parkNanos(TelemetryUplink.this, POLL_INTERVAL);
+                }
+                spill();
+                close();
+            }
+        }, "TelemetryUplink");
+        uplink.setDaemon(true);
+        thread = uplink;
+        uplink.start();
+    }
+
+    /**
+     * Signals uplink thread to stop, returns immediately; send in progress finishes (or times out)
+     * on uplink thread, queued fixes are then spooled - join() waits for that
+     */
+    public synchronized void stop(){
+        Thread uplink = thread;
+        if(uplink == null || !running){
+            return;
+        }
+        running = false;
+        LockSupport.unpark(uplink);
+    }
+
+    /**
+     * Waits for stopped uplink thread to finish spooling, returns at once if never started
+     * @param millis 0 waits forever
+     */
+    public void join(long millis) throws InterruptedException {
+        Thread uplink = thread;
+        if(uplink != null){
+            uplink.join(millis);
+        }
+    }
+
+    /**
+     * One uplink step, uplink thread (tests drive it directly without start())
+     * @param nowNanos monotonic time
+     */
+    public void process(long nowNanos){
+        TelemetrySpool spool = getSpool();
+        if(lastFlushNanos == Long.MIN_VALUE){
+            lastFlushNanos = nowNanos;
+        }
+        boolean online = nowNanos >= retryNanos;
+
+        while (online && spool.size() > 0){
+            File file = spool.peek();
+            byte[] data;
+            try {
+                data = spool.read(file);
+            }
+            catch (IOException e){
+                spool.remove(file);
+                lostBatches = lostBatches + 1;
+                continue;
+            }
+            if(send(data, 0, data.length, nowNanos) == FAILED){
+                online = false;
+                break;
+            }
+            spool.remove(file);
+        }
+
+        int size = batchSize;
+        if(ring.size() > ring.capacity() / 2){
+            size = grow(size);
+        }
+        while (ring.size() >= size
+                || (online && ring.size() > 0 && nowNanos - lastFlushNanos >= MAX_BATCH_DELAY)){
+            batch.reset(sequence++);
+            ring.drainTo(batch, size);
+            batch.encode();
+            lastFlushNanos = nowNanos;
+
+            int result = online ? send(batch.getData(), 0, batch.getLength(), nowNanos) : FAILED;
+            if(result == SENT){
+                sentFixes = sentFixes + batch.getCount();
+            }
+            else if(result == FAILED){
+                online = false;
+                spool(batch);
+            }
+            size = batchSize;
+        }
+    }
+
+    /**
+     * @return SENT, REJECTED (receiver is reachable, batch must be dropped) or FAILED (back off, spool)
+     */
+    private int send(byte[] data, int offset, int length, long nowNanos){
+        long start = System.nanoTime();
+        try {
+            transport.send(data, offset, length);
+        }
+        catch (TelemetryRejectedException e){
+            rejectedBatches = rejectedBatches + 1;
+            return REJECTED;
+        }
+        catch (IOException e){
+            failedCount = failedCount + 1;
+            retryNanos = nowNanos + retryDelay;
+            retryDelay = Math.min(RETRY_MAX, retryDelay * 2);
+            grow(batchSize);
+            return FAILED;
+        }
+
+        sentBatches = sentBatches + 1;
+        sentBytes = sentBytes + length;
+        retryDelay = RETRY_MIN;
+        if(System.nanoTime() - start > SLOW_SEND){
+            grow(batchSize);
+        }
+        else {
+            batchSize = Math.max(MIN_BATCH, batchSize - batchSize / 4);
+        }
+        return SENT;
+    }
+
+    private int grow(int size){
+        batchSize = Math.min(MAX_BATCH, Math.max(size, batchSize) * 2);
+        return batchSize;
+    }
+
+    private void spool(TelemetryBatch batch){
+        try {
+            getSpool().put(batch.getSequence(), batch.getData(), 0, batch.getLength());
+            spilledBatches = spilledBatches + 1;
+        }
+        catch (IOException e){
+            lostBatches = lostBatches + 1;
+        }
+    }
+
+    /**
+     * Moves every queued fix into spool, no network
+     */
+    private void spill(){
+        while (ring.size() > 0){
+            batch.reset(sequence++);
+            ring.drainTo(batch, MAX_BATCH);
+            batch.encode();
+            spool(batch);
+        }
+    }
+
+    private void close(){
+        batch.close();
+        try {
+            transport.close();
+        }
+        catch (IOException ignored){
+        }
+    }
+
+    private TelemetrySpool getSpool(){
+        if(spool == null){
+            spool = new TelemetrySpool(spoolDir, spoolBytes);
+        }
+        return spool;
+    }
+
+    /**
+     * Current batch size in fixes
+     */
+    public int getBatchSize(){
+        return batchSize;
+    }
+
+    /**
+     * Fixes waiting in memory
+     */
+    public int getQueued(){
+        return ring.size();
+    }
+
+    /**
+     * Fixes dropped because memory buffer was full
+     */
+    public long getDroppedCount(){
+        return ring.getDroppedCount();
+    }
+
+    public long getSentBatches(){
+        return sentBatches;
+    }
+
+    /**
+     * Fixes delivered live (not counting spooled batches sent later)
+     */
+    public long getSentFixes(){
+        return sentFixes;
+    }
+
+    /**
+     * Encoded bytes delivered, live and spooled batches
+     */
+    public long getSentBytes(){
+        return sentBytes;
+    }
+
+    public long getFailedCount(){
+        return failedCount;
+    }
+
+    public long getSpilledBatches(){
+        return spilledBatches;
+    }
+
+    /**
+     * Batches lost: spool write or read error
+     */
+    public long getLostBatches(){
+        return lostBatches;
+    }
+
+    /**
+     * Batches dropped because receiver refused them
+     */
+    public long getRejectedBatches(){
+        return rejectedBatches;
+    }
+
+    /**
+     * Batches waiting on disk, uplink thread
+     */
+    public int getSpooled(){
+        return getSpool().size();
+    }
+}
@@ -0,0 +1,50 @@
+package com.jakdor.gpsspeedometer.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Record cursor over stored track, random access by record index;
+ * values of record loaded by last next() call
+ */
+public interface TrackCursor extends Closeable {
+
+    /**
+     * Track start time, UTC ms
+     */
+    long getStartTime();
+
+    long getRecordCount();
+
+    /**
+     * Simplification tolerance track was stored with (m), 0 for full resolution track
+     */
+    double getTolerance();
+
+    /**
+     * Moves cursor so next() returns record with given index
+     */
+    void seek(long index);
+
+    /**
+     * Index of record loaded by last next() call
+     */
+    long getIndex();
+
+    /**
+     * Loads next valid record into cursor, false at end of track
+     */
+    boolean next() throws IOException;
+
+    long getTime();
+
+    double getLatitude();
+
+    double getLongitude();
+
+    float getAltitude();
+
+    float getAccuracy();
+
+    float getSpeed();
+}
@@ -0,0 +1,296 @@
+package com.jakdor.gpsspeedometer.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Streaming export of stored tracks to GPX/KML/CSV, records go straight from TrackCursor
+ * through fixed char buffer to writer - memory use doesn't depend on track length.
+ * KML lists all times before all coordinates (gx:Track), so track is read twice instead of buffered.
+ * Reusable for many tracks, not thread safe
+ */
+public class TrackExporter {
+
+    public static final int BUFFER_SIZE = 8192;
+
+    private static final int MAX_RECORD = 256; // chars, longest formatted record
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ExportFormat format;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private final StringBuilder time = new StringBuilder(32);
+    private Writer writer;
+    private int position;
+
+    public TrackExporter(ExportFormat format){
+        this.format = format;
+    }
+
+    public ExportFormat getFormat(){
+        return format;
+    }
+
+    /**
+     * Writes whole track as single document, writer is flushed but not closed
+     * @param name track name stored in GPX/KML document
+     * @return number of exported records
+     */
+    public long export(TrackCursor cursor, String name, Writer writer) throws IOException {
+        this.writer = writer;
+        position = 0;
+        try {
+            long count;
+            switch (format) {
+                case GPX:
+                    count = writeGpx(cursor, name);
+                    break;
+                case KML:
+                    count = writeKml(cursor, name);
+                    break;
+                default:
+                    count = writeCsv(cursor);
+                    break;
+            }
+            flushBuffer();
+            writer.flush();
+            return count;
+        }
+        finally {
+            this.writer = null;
+        }
+    }
+
+    /**
+     * Writes given trips as zip archive, one entry per trip named by getFileName();
+     * trips without track file are skipped. Output is finished but not closed
+     * @return number of exported trips
+     */
+    public int exportZip(File tracksDir, long[] startTimes, OutputStream output) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(output);
+        Writer zipWriter = new OutputStreamWriter(zip, UTF_8);
+        int count = 0;
+        for(long startTime : startTimes){
+            File trackFile = TripIndex.getTrackFile(tracksDir, startTime);
+            if(!trackFile.isFile()){
+                continue;
+            }
+
+            TrackCursor cursor = Tracks.open(trackFile);
+            try {
+                zip.putNextEntry(new ZipEntry(getFileName(startTime)));
+                time.setLength(0);
+                IsoTime.format(startTime, time);
+                export(cursor, time.toString(), zipWriter);
+                zip.closeEntry();
+                ++count;
+            }
+            finally {
+                cursor.close();
+            }
+        }
+        zip.finish();
+        output.flush();
+        return count;
+    }
+
+    /**
+     * Export file name of trip started at given UTC ms, "trip-2017-09-12T10-15-30.gpx"
+     */
+    public String getFileName(long startTime){
+        StringBuilder output = new StringBuilder("trip-");
+        IsoTime.format(startTime, output);
+        output.setLength(5 + 19); //drop millis and zone
+        for(int i = 5; i < output.length(); ++i){
+            if(output.charAt(i) == ':'){
+                output.setCharAt(i, '-');
+            }
+        }
+        return output.append(format.getExtension()).toString();
+    }
+
+    private long writeGpx(TrackCursor cursor, String name) throws IOException {
+        append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<gpx version=\"1.1\" creator=\"GpsSpeedometer\" xmlns=\"http://www.topografix.com/GPX/1/1\">\n"
+                + "<metadata><time>");
+        appendTime(cursor.getStartTime());
+        append("</time></metadata>\n<trk><name>");
+        appendEscaped(name);
+        append("</name><trkseg>\n");
+
+        long count = 0;
+        cursor.seek(0);
+        while (cursor.next()){
+            ensure(MAX_RECORD);
+            append("<trkpt lat=\"");
+            appendNumber(cursor.getLatitude(), 7);
+            append("\" lon=\"");
+            appendNumber(cursor.getLongitude(), 7);
+            append("\">");
+            if(!Float.isNaN(cursor.getAltitude())){
+                append("<ele>");
+                appendNumber(cursor.getAltitude(), 1);
+                append("</ele>");
+            }
+            append("<time>");
+            appendTime(cursor.getTime());
+            append("</time>");
+            if(cursor.getAccuracy() > 0){
+                append("<hdop>");
+                appendNumber(cursor.getAccuracy() / GpxReplaySource.UERE, 2);
+                append("</hdop>");
+            }
+            append("</trkpt>\n");
+            ++count;
+        }
+
+        append("</trkseg></trk>\n</gpx>\n");
+        return count;
+    }
+
+    private long writeKml(TrackCursor cursor, String name) throws IOException {
+        append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<kml xmlns=\"http://www.opengis.net/kml/2.2\" xmlns:gx=\"http://www.google.com/kml/ext/2.2\">\n"
+                + "<Document><name>");
+        appendEscaped(name);
+        append("</name>\n<Placemark><name>");
+        appendEscaped(name);
+        append("</name>\n<gx:Track><altitudeMode>absolute</altitudeMode>\n");
+
+        cursor.seek(0);
+        while (cursor.next()){
+            ensure(MAX_RECORD);
+            append("<when>");
+            appendTime(cursor.getTime());
+            append("</when>\n");
+        }
+
+        long count = 0;
+        cursor.seek(0);
+        while (cursor.next()){
+            ensure(MAX_RECORD);
+            append("<gx:coord>");
+            appendNumber(cursor.getLongitude(), 7);
+            append(' ');
+            appendNumber(cursor.getLatitude(), 7);
+            append(' ');
+            appendNumber(Float.isNaN(cursor.getAltitude()) ? 0 : cursor.getAltitude(), 1);
+            append("</gx:coord>\n");
+            ++count;
+        }
+
+        append("</gx:Track></Placemark>\n</Document>\n</kml>\n");
+        return count;
+    }
+
+    /**
+     * CsvReplaySource fix records, elapsed realtime counted from first record
+     */
+    private long writeCsv(TrackCursor cursor) throws IOException {
+        append("# fix,elapsedRealtimeNanos,timeUtcMs,latitude,longitude,altitude,accuracy,speed\n");
+
+        long count = 0;
+        long firstTime = 0;
+        cursor.seek(0);
+        while (cursor.next()){
+            if(count == 0){
+                firstTime = cursor.getTime();
+            }
+            ensure(MAX_RECORD);
+            append(CsvReplaySource.FIX);
+            append(',');
+            appendLong((cursor.getTime() - firstTime) * 1000000L);
+            append(',');
+            appendLong(cursor.getTime());
+            append(',');
+            appendNumber(cursor.getLatitude(), 7);
+            append(',');
+            appendNumber(cursor.getLongitude(), 7);
+            append(',');
+            appendNumber(Float.isNaN(cursor.getAltitude()) ? 0 : cursor.getAltitude(), 1);
+            append(',');
+            appendNumber(cursor.getAccuracy(), 1);
+            append(',');
+            appendNumber(cursor.getSpeed(), 2);
+            append('\n');
+            ++count;
+        }
+        return count;
+    }
+
+    private void ensure(int length) throws IOException {
+        if(position + length > buffer.length){
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        writer.write(buffer, 0, position);
+        position = 0;
+    }
+
+    private void append(char c) throws IOException {
+        ensure(1);
+        buffer[position++] = c;
+    }
+
+    private void append(String text) throws IOException {
+        for(int start = 0; start < text.length(); ){
+            ensure(1);
+            int end = Math.min(text.length(), start + buffer.length - position);
+            text.getChars(start, end, buffer, position);
+            position += end - start;
+            start = end;
+        }
+    }
+
+    private void appendEscaped(String text) throws IOException {
+        for(int i = 0; i < text.length(); ++i){
+            char c = text.charAt(i);
+            switch (c) {
+                case '<':
+                    append("&lt;");
+                    break;
+                case '>':
+                    append("&gt;");
+                    break;
+                case '&':
+                    append("&amp;");
+                    break;
+                case '"':
+                    append("&quot;");
+                    break;
+                default:
+                    append(c);
+                    break;
+            }
+        }
+    }
+
+    private void appendNumber(double value, int decimals) throws IOException {
+        ensure(32);
+        position += FixedPointFormat.format(value, decimals, buffer, position);
+    }
+
+    private void appendLong(long value) throws IOException {
+        ensure(21);
+        if(value < 0){
+            buffer[position++] = '-';
+            value = -value;
+        }
+        position += FixedPointFormat.formatLong(value, buffer, position);
+    }
+
+    private void appendTime(long utcTime) throws IOException {
+        time.setLength(0);
+        IsoTime.format(utcTime, time);
+        ensure(time.length());
+        time.getChars(0, time.length(), buffer, position);
+        position += time.length();
+    }
+}
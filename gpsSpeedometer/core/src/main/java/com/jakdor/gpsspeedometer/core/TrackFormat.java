@@ -0,0 +1,63 @@
+package com.jakdor.gpsspeedometer.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Binary track file layout, little endian:
+ * header (16 bytes): magic "GPST", version (short), record size (short), start time UTC ms (long)
+ * record (32 bytes):
+ * - time UTC ms (long)
+ * - latitude, longitude in 1e-7 degrees (int)
+ * - altitude m, accuracy m, speed m/s (float)
+ * - crc32 of preceding 28 record bytes (int)
+ */
+final class TrackFormat {
+
+    static final int MAGIC = 0x54535047; // "GPST"
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 32;
+    static final int RECORD_PAYLOAD_SIZE = RECORD_SIZE - 4;
+    static final double COORDINATE_SCALE = 1e7;
+
+    private TrackFormat(){
+    }
+
+    static int toScaled(double coordinate){
+        return (int) Math.round(coordinate * COORDINATE_SCALE);
+    }
+
+    static double fromScaled(int coordinate){
+        return coordinate / COORDINATE_SCALE;
+    }
+
+    /**
+     * Validates header, returns track start time UTC ms
+     */
+    static long readHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        while (header.hasRemaining()){
+            if(channel.read(header, header.position()) < 0){
+                throw new IOException("Track file header truncated");
+            }
+        }
+
+        if(header.getInt(0) != MAGIC || header.getShort(4) != VERSION || header.getShort(6) != RECORD_SIZE){
+            throw new IOException("Not a supported track file");
+        }
+        return header.getLong(8);
+    }
+
+    /**
+     * Crc of record payload starting at given offset of array backed buffer
+     */
+    static int checksum(CRC32 crc, ByteBuffer buffer, int offset){
+        crc.reset();
+        crc.update(buffer.array(), buffer.arrayOffset() + offset, RECORD_PAYLOAD_SIZE);
+        return (int) crc.getValue();
+    }
+}
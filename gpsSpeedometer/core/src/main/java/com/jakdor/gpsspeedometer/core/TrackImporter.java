@@ -0,0 +1,212 @@
+package com.jakdor.gpsspeedometer.core;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Imports external tracks (GPX/KML/CSV/NMEA, single file or zip of them) into trip history:
+ * fixes and sensor records are replayed (ReplayEngine) through fresh TripCalculator the same way live ones are,
+ * track is stored simplified and delta encoded like recorded trips and summary added to TripIndex.
+ * Streams, one trip at a time
+ */
+public class TrackImporter {
+
+    private static final int SNIFF_LENGTH = 512;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset LATIN_1 = Charset.forName("ISO-8859-1");
+    private static final String UTF_8_BOM = "\u00ef\u00bb\u00bf"; //as latin-1
+
+    private final File tracksDir;
+    private final TripIndex tripIndex;
+    private double tolerance = TrackSimplifier.DEFAULT_TOLERANCE;
+    private int duplicateCount = 0;
+
+    public TrackImporter(File tracksDir, TripIndex tripIndex){
+        this.tracksDir = tracksDir;
+        this.tripIndex = tripIndex;
+    }
+
+    /**
+     * Simplification tolerance of stored tracks (m), 0 keeps every fix
+     */
+    public void setTolerance(double tolerance){
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Trips skipped so far because trip with same start time already was in history
+     */
+    public int getDuplicateCount(){
+        return duplicateCount;
+    }
+
+    /**
+     * Imports single file or zip archive, format detected from content
+     * @return number of imported trips
+     */
+    public int importStream(InputStream input) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(input);
+        if(!isZip(buffered)){
+            return importTrack(openSource(buffered)) != null ? 1 : 0;
+        }
+
+        final ZipInputStream zip = new ZipInputStream(buffered);
+        InputStream entryInput = new FilterInputStream(zip) {
+            @Override
+            public void close() throws IOException {
+                zip.closeEntry(); //keeps archive open for next entry
+            }
+        };
+        int count = 0;
+        try {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (!entry.isDirectory() && importTrack(openSource(entryInput)) != null) {
+                    ++count;
+                }
+            }
+        }
+        finally {
+            zip.close();
+        }
+        return count;
+    }
+
+    /**
+     * Replays source into new trip, trip start time is time of first fix; source is closed afterwards
+     * @return summary of imported trip, null if source had no fix or trip was already in history
+     */
+    public TripSummary importTrack(ReplaySource source) throws IOException {
+        TripCalculator tripCalculator = new TripCalculator();
+        TrackWriter writer = new TrackWriter();
+        ReplayEngine engine = new ReplayEngine(ReplayEngine.Mode.AS_FAST_AS_POSSIBLE);
+        engine.setListener(writer);
+        boolean finished = false;
+
+        try {
+            engine.run(source, tripCalculator);
+            if (writer.sink == null) {
+                return null;
+            }
+            TrackSink sink = writer.sink;
+            writer.sink = null;
+            sink.close();
+
+            TripSummary summary = TripSummary.scan(writer.trackFile, tripCalculator.getStatistics().getTotal());
+            tripIndex.put(summary);
+            finished = true;
+            return summary;
+        }
+        catch (DuplicateTripException e){
+            ++duplicateCount;
+            return null;
+        }
+        catch (InterruptedException e){ //not paced, only on interrupted thread
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Track import interrupted");
+        }
+        finally {
+            if(!finished && writer.trackFile != null){ //partial track of failed import
+                if(writer.sink != null){
+                    try {
+                        writer.sink.close();
+                    }
+                    catch (IOException ignored){
+                    }
+                }
+                if(!writer.trackFile.delete()){
+                    throw new IOException("Unable to delete partial track: " + writer.trackFile);
+                }
+            }
+        }
+    }
+
+    /**
+     * Opens track file on first fix, unless trip is already in history, then stores every processed fix
+     */
+    private final class TrackWriter implements ReplayEngine.Listener {
+
+        private File trackFile;
+        private TrackSink sink;
+
+        @Override
+        public void onFixProcessed(Fix fix, TripCalculator tripCalculator) throws IOException {
+            if (sink == null) {
+                File file = TripIndex.getTrackFile(tracksDir, fix.getTime());
+                if (file.exists() || tripIndex.indexOf(fix.getTime()) >= 0) {
+                    throw new DuplicateTripException();
+                }
+                trackFile = file;
+                CompactTrackRecorder recorder = CompactTrackRecorder.open(trackFile, fix.getTime(), tolerance);
+                sink = tolerance > 0
+                        ? new TrackSimplifier(recorder, tolerance, TrackSimplifier.DEFAULT_ALTITUDE_TOLERANCE)
+                        : recorder;
+            }
+            sink.append(fix, (float) tripCalculator.getSpeed());
+        }
+    }
+
+    /**
+     * Aborts replay of trip already in history
+     */
+    private static final class DuplicateTripException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Opens replay source over GPX, KML, NMEA or CSV stream, picked by first bytes of content
+     */
+    public static ReplaySource openSource(InputStream input) throws IOException {
+        BufferedInputStream buffered = input instanceof BufferedInputStream
+                ? (BufferedInputStream) input : new BufferedInputStream(input);
+        String head = sniff(buffered);
+        if(head.startsWith(UTF_8_BOM)){
+            buffered.skip(UTF_8_BOM.length());
+            head = head.substring(UTF_8_BOM.length());
+        }
+        if(head.startsWith("PK")){
+            buffered.close();
+            throw new IOException("Nested archives are not supported");
+        }
+
+        if(head.contains("<gpx")){
+            return new GpxReplaySource(new InputStreamReader(buffered, UTF_8));
+        }
+        if(head.contains("<kml")){
+            return new KmlReplaySource(new InputStreamReader(buffered, UTF_8));
+        }
+        if(head.trim().startsWith("$")){
+            return new NmeaReplaySource(Channels.newChannel(buffered));
+        }
+        return new CsvReplaySource(new InputStreamReader(buffered, UTF_8));
+    }
+
+    private static boolean isZip(BufferedInputStream input) throws IOException {
+        return sniff(input).startsWith("PK");
+    }
+
+    /**
+     * First bytes of stream as latin-1 text, stream position unchanged
+     */
+    private static String sniff(BufferedInputStream input) throws IOException {
+        byte[] head = new byte[SNIFF_LENGTH];
+        input.mark(SNIFF_LENGTH);
+        int length = 0;
+        int read;
+        while (length < head.length && (read = input.read(head, length, head.length - length)) > 0){
+            length += read;
+        }
+        input.reset();
+        return new String(head, 0, length, LATIN_1);
+    }
+}
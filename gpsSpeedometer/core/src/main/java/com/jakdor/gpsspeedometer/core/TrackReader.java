@@ -0,0 +1,167 @@
+package com.jakdor.gpsspeedometer.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Cursor over full resolution binary track file written by TrackRecorder,
+ * reads records in pages, random access by record index; no allocation per record
+ */
+public class TrackReader implements TrackCursor {
+
+    public static final int PAGE_RECORDS = 256;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final ByteBuffer page = ByteBuffer.allocate(PAGE_RECORDS * TrackFormat.RECORD_SIZE)
+            .order(ByteOrder.LITTLE_ENDIAN);
+    private final CRC32 crc = new CRC32();
+
+    private final long startTime;
+    private final long recordCount;
+    private long nextIndex = 0;
+    private long corruptRecordCount = 0;
+
+    private long time;
+    private double latitude;
+    private double longitude;
+    private float altitude;
+    private float accuracy;
+    private float speed;
+
+    public TrackReader(File file) throws IOException {
+        this.file = new RandomAccessFile(file, "r");
+        this.channel = this.file.getChannel();
+        try {
+            startTime = TrackFormat.readHeader(channel);
+        }
+        catch (IOException e){
+            this.file.close();
+            throw e;
+        }
+        recordCount = (channel.size() - TrackFormat.HEADER_SIZE) / TrackFormat.RECORD_SIZE; //ignores torn tail
+        page.limit(0);
+    }
+
+    @Override
+    public long getStartTime(){
+        return startTime;
+    }
+
+    @Override
+    public long getRecordCount(){
+        return recordCount;
+    }
+
+    @Override
+    public double getTolerance(){
+        return 0;
+    }
+
+    /**
+     * Records skipped due to crc mismatch
+     */
+    public long getCorruptRecordCount(){
+        return corruptRecordCount;
+    }
+
+    /**
+     * Moves cursor so next() returns record with given index
+     */
+    @Override
+    public void seek(long index){
+        nextIndex = Math.max(0, Math.min(index, recordCount));
+        page.limit(0);
+    }
+
+    /**
+     * Index of record loaded by last next() call
+     */
+    @Override
+    public long getIndex(){
+        return nextIndex - 1;
+    }
+
+    /**
+     * Loads next valid record into cursor, false at end of track
+     */
+    @Override
+    public boolean next() throws IOException {
+        while (nextIndex < recordCount) {
+            if (!page.hasRemaining()) {
+                readPage();
+            }
+
+            int offset = page.position();
+            page.position(offset + TrackFormat.RECORD_SIZE);
+            ++nextIndex;
+
+            if (TrackFormat.checksum(crc, page, offset) != page.getInt(offset + TrackFormat.RECORD_PAYLOAD_SIZE)) {
+                ++corruptRecordCount;
+                continue;
+            }
+
+            time = page.getLong(offset);
+            latitude = TrackFormat.fromScaled(page.getInt(offset + 8));
+            longitude = TrackFormat.fromScaled(page.getInt(offset + 12));
+            altitude = page.getFloat(offset + 16);
+            accuracy = page.getFloat(offset + 20);
+            speed = page.getFloat(offset + 24);
+            return true;
+        }
+        return false;
+    }
+
+    private void readPage() throws IOException {
+        long records = Math.min(PAGE_RECORDS, recordCount - nextIndex);
+        page.clear();
+        page.limit((int) records * TrackFormat.RECORD_SIZE);
+        long position = TrackFormat.HEADER_SIZE + nextIndex * TrackFormat.RECORD_SIZE;
+        while (page.hasRemaining()){
+            if(channel.read(page, position + page.position()) < 0){
+                throw new IOException("Track file truncated while reading");
+            }
+        }
+        page.flip();
+    }
+
+    @Override
+    public long getTime(){
+        return time;
+    }
+
+    @Override
+    public double getLatitude(){
+        return latitude;
+    }
+
+    @Override
+    public double getLongitude(){
+        return longitude;
+    }
+
+    @Override
+    public float getAltitude(){
+        return altitude;
+    }
+
+    @Override
+    public float getAccuracy(){
+        return accuracy;
+    }
+
+    @Override
+    public float getSpeed(){
+        return speed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
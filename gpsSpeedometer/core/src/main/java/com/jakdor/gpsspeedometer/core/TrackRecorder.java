@@ -0,0 +1,173 @@
+package com.jakdor.gpsspeedometer.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Appends processed fixes to fixed width binary track file (see TrackFormat)
+ * - records are batched in preallocated buffer, written with single FileChannel write
+ *   when batch is full or FLUSH_INTERVAL of fix time passed
+ * - no allocation per fix
+ * - on open, partially written or corrupted tail records are detected by size and crc, and dropped
+ */
+public class TrackRecorder implements TrackSink {
+
+    public static final int BATCH_RECORDS = 64;
+    public static final long FLUSH_INTERVAL = 10000; // ms
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final ByteBuffer batch = ByteBuffer.allocate(BATCH_RECORDS * TrackFormat.RECORD_SIZE)
+            .order(ByteOrder.LITTLE_ENDIAN);
+    private final CRC32 crc = new CRC32();
+
+    private long recordCount;
+    private long droppedRecordCount = 0;
+    private long lastFlushTime = Long.MIN_VALUE;
+
+    private TrackRecorder(File file) throws IOException {
+        this.file = new RandomAccessFile(file, "rw");
+        this.channel = this.file.getChannel();
+    }
+
+    /**
+     * Opens track file for appending, creates it if missing
+     * @param startTime UTC ms stored in header of new file
+     */
+    public static TrackRecorder open(File file, long startTime) throws IOException {
+        TrackRecorder recorder = new TrackRecorder(file);
+        try {
+            if (recorder.channel.size() < TrackFormat.HEADER_SIZE) {
+                recorder.writeHeader(startTime);
+            } else {
+                recorder.recover();
+            }
+        }
+        catch (IOException e){
+            recorder.close();
+            throw e;
+        }
+        return recorder;
+    }
+
+    private void writeHeader(long startTime) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(TrackFormat.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(TrackFormat.MAGIC);
+        header.putShort(TrackFormat.VERSION);
+        header.putShort((short) TrackFormat.RECORD_SIZE);
+        header.putLong(startTime);
+        header.flip();
+
+        channel.truncate(0);
+        channel.write(header, 0);
+        channel.force(false);
+        channel.position(TrackFormat.HEADER_SIZE);
+        recordCount = 0;
+    }
+
+    /**
+     * Validates header and drops torn tail: incomplete record and trailing records with bad crc
+     */
+    private void recover() throws IOException {
+        TrackFormat.readHeader(channel);
+
+        long size = channel.size() - TrackFormat.HEADER_SIZE;
+        long records = size / TrackFormat.RECORD_SIZE;
+        if(size % TrackFormat.RECORD_SIZE != 0){
+            ++droppedRecordCount;
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(TrackFormat.RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        while (records > 0){
+            record.clear();
+            channel.read(record, TrackFormat.HEADER_SIZE + (records - 1) * TrackFormat.RECORD_SIZE);
+            if(TrackFormat.checksum(crc, record, 0) == record.getInt(TrackFormat.RECORD_PAYLOAD_SIZE)){
+                break;
+            }
+            --records;
+            ++droppedRecordCount;
+        }
+
+        long validSize = TrackFormat.HEADER_SIZE + records * TrackFormat.RECORD_SIZE;
+        if(channel.size() != validSize) {
+            channel.truncate(validSize);
+            channel.force(false);
+        }
+        channel.position(validSize);
+        recordCount = records;
+    }
+
+    /**
+     * Buffers single fix with speed computed for it, writes batch when needed
+     */
+    @Override
+    public void append(Fix fix, float speed) throws IOException {
+        int offset = batch.position();
+        batch.putLong(fix.getTime());
+        batch.putInt(TrackFormat.toScaled(fix.getLatitude()));
+        batch.putInt(TrackFormat.toScaled(fix.getLongitude()));
+        batch.putFloat((float) fix.getAltitude());
+        batch.putFloat(fix.getAccuracy());
+        batch.putFloat(speed);
+        batch.putInt(TrackFormat.checksum(crc, batch, offset));
+        ++recordCount;
+
+        if(lastFlushTime == Long.MIN_VALUE){
+            lastFlushTime = fix.getTime();
+        }
+        if(!batch.hasRemaining() || fix.getTime() - lastFlushTime >= FLUSH_INTERVAL){
+            flush();
+            lastFlushTime = fix.getTime();
+        }
+    }
+
+    /**
+     * Writes buffered records to file
+     */
+    public void flush() throws IOException {
+        batch.flip();
+        while (batch.hasRemaining()) {
+            channel.write(batch);
+        }
+        batch.clear();
+    }
+
+    /**
+     * Writes buffered records and forces them to storage
+     */
+    public void sync() throws IOException {
+        flush();
+        channel.force(false);
+    }
+
+    /**
+     * Records written so far, including buffered ones
+     */
+    public long getRecordCount(){
+        return recordCount;
+    }
+
+    /**
+     * Torn or corrupted records dropped while opening
+     */
+    public long getDroppedRecordCount(){
+        return droppedRecordCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if(channel.isOpen()) {
+                sync();
+            }
+        }
+        finally {
+            file.close();
+        }
+    }
+}
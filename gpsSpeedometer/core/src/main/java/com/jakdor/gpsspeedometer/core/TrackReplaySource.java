@@ -0,0 +1,73 @@
+package com.jakdor.gpsspeedometer.core;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Replay source reading binary track files written on device, full resolution or compact;
+ * simplified tracks are re-densified to RESAMPLE_INTERVAL by linear interpolation
+ * (within simplification tolerance), so fix gate and speed filter see on device fix rate
+ */
+public class TrackReplaySource implements ReplaySource {
+
+    public static final long RESAMPLE_INTERVAL = 1000; // ms
+
+    private final TrackCursor cursor;
+    private final boolean resample;
+    private long firstTime = Long.MIN_VALUE;
+
+    //previous and pending record, interpolated fixes are emitted in between
+    private long lastTime;
+    private double lastLatitude, lastLongitude, lastAltitude;
+    private boolean pending = false;
+    private long time;
+    private double latitude, longitude, altitude;
+    private float accuracy;
+
+    public TrackReplaySource(File file) throws IOException {
+        this.cursor = Tracks.open(file);
+        this.resample = cursor.getTolerance() > 0;
+    }
+
+    @Override
+    public boolean next(ReplayEvent event) throws IOException {
+        if(!pending){
+            if(!cursor.next()){
+                return false;
+            }
+            time = cursor.getTime();
+            latitude = cursor.getLatitude();
+            longitude = cursor.getLongitude();
+            altitude = cursor.getAltitude();
+            accuracy = cursor.getAccuracy();
+            pending = true;
+        }
+
+        if(firstTime == Long.MIN_VALUE){
+            firstTime = time;
+        }
+        else if(resample && time - lastTime > RESAMPLE_INTERVAL){
+            double ratio = (double) RESAMPLE_INTERVAL / (time - lastTime);
+            lastTime += RESAMPLE_INTERVAL;
+            lastLatitude += (latitude - lastLatitude) * ratio;
+            lastLongitude += (longitude - lastLongitude) * ratio;
+            lastAltitude += (altitude - lastAltitude) * ratio;
+            event.setFix(new Fix((lastTime - firstTime) * 1000000L, lastTime, lastLatitude, lastLongitude,
+                    lastAltitude, accuracy));
+            return true;
+        }
+
+        pending = false;
+        lastTime = time;
+        lastLatitude = latitude;
+        lastLongitude = longitude;
+        lastAltitude = altitude;
+        event.setFix(new Fix((time - firstTime) * 1000000L, time, latitude, longitude, altitude, accuracy));
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        cursor.close();
+    }
+}
@@ -0,0 +1,142 @@
+package com.jakdor.gpsspeedometer.core;
+
+import java.io.IOException;
+
+/**
+ * Streaming track simplification stage in front of TrackSink (opening window algorithm):
+ * - every stored point is anchor of segment to next stored point
+ * - fixes are buffered while every buffered fix lies within tolerance of segment from anchor
+ *   to newest fix, measured as synchronized euclidean distance - distance to position interpolated
+ *   on segment at fix time, so stored track keeps both shape and timing (replay speed)
+ * - on first violation last fitting fix is stored and becomes new anchor
+ * Window is bounded (MAX_WINDOW fixes, MAX_HOLD of fix time - buffered fixes exist only in memory and are
+ * lost with the process), O(window) per fix, no allocation per fix; first and last fix are always stored.
+ */
+public class TrackSimplifier implements TrackSink {
+
+    public static final double DEFAULT_TOLERANCE = 5; // m, above typical gps fix noise
+    public static final double DEFAULT_ALTITUDE_TOLERANCE = 10; // m, gps altitude is noisier
+    public static final int MAX_WINDOW = 128;
+    public static final long MAX_HOLD = 10000; // ms, same as recorder flush interval
+
+    private final TrackSink sink;
+    private final double tolerance;
+    private final double altitudeTolerance;
+
+    private final Fix[] window = new Fix[MAX_WINDOW];
+    private final float[] speeds = new float[MAX_WINDOW];
+    private int windowSize = 0;
+
+    private Fix anchor = null;
+    private double metersPerLatitude;
+    private double metersPerLongitude;
+
+    private long inputCount = 0;
+    private long outputCount = 0;
+
+    public TrackSimplifier(TrackSink sink){
+        this(sink, DEFAULT_TOLERANCE, DEFAULT_ALTITUDE_TOLERANCE);
+    }
+
+    /**
+     * @param tolerance max horizontal deviation of dropped fix, m
+     * @param altitudeTolerance max altitude deviation of dropped fix, m
+     */
+    public TrackSimplifier(TrackSink sink, double tolerance, double altitudeTolerance){
+        this.sink = sink;
+        this.tolerance = tolerance;
+        this.altitudeTolerance = altitudeTolerance;
+    }
+
+    @Override
+    public void append(Fix fix, float speed) throws IOException {
+        ++inputCount;
+        if(anchor == null){
+            store(fix, speed);
+            return;
+        }
+
+        if(windowSize == MAX_WINDOW
+                || (windowSize > 0 && (fix.getTime() - window[0].getTime() >= MAX_HOLD || !fits(fix)))){
+            store(window[windowSize - 1], speeds[windowSize - 1]);
+        }
+        window[windowSize] = fix;
+        speeds[windowSize] = speed;
+        ++windowSize;
+    }
+
+    private void store(Fix fix, float speed) throws IOException {
+        sink.append(fix, speed);
+        ++outputCount;
+
+        anchor = fix;
+        metersPerLatitude = Geodesy.metersPerDegreeLatitude(fix.getLatitude());
+        metersPerLongitude = Geodesy.metersPerDegreeLongitude(fix.getLatitude());
+        for(int i = 0; i < windowSize; ++i){
+            window[i] = null;
+        }
+        windowSize = 0;
+    }
+
+    /**
+     * Checks buffered fixes against segment from anchor to candidate
+     */
+    private boolean fits(Fix candidate){
+        long anchorTime = anchor.getElapsedRealtimeNanos();
+        double span = candidate.getElapsedRealtimeNanos() - anchorTime;
+        double deltaLatitude = candidate.getLatitude() - anchor.getLatitude();
+        double deltaLongitude = candidate.getLongitude() - anchor.getLongitude();
+        double deltaAltitude = candidate.getAltitude() - anchor.getAltitude();
+        double toleranceSquared = tolerance * tolerance;
+
+        for(int i = 0; i < windowSize; ++i){
+            Fix fix = window[i];
+            double ratio = span > 0 ? (fix.getElapsedRealtimeNanos() - anchorTime) / span : 0;
+
+            double dy = (fix.getLatitude() - anchor.getLatitude() - ratio * deltaLatitude) * metersPerLatitude;
+            double dx = (fix.getLongitude() - anchor.getLongitude() - ratio * deltaLongitude) * metersPerLongitude;
+            if(dx * dx + dy * dy > toleranceSquared){
+                return false;
+            }
+
+            double dz = fix.getAltitude() - anchor.getAltitude() - ratio * deltaAltitude;
+            if(Math.abs(dz) > altitudeTolerance){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stores last buffered fix and closes downstream sink
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (windowSize > 0) {
+                store(window[windowSize - 1], speeds[windowSize - 1]);
+            }
+        }
+        finally {
+            sink.close();
+        }
+    }
+
+    public double getTolerance(){
+        return tolerance;
+    }
+
+    /**
+     * Fixes taken
+     */
+    public long getInputCount(){
+        return inputCount;
+    }
+
+    /**
+     * Fixes passed to sink
+     */
+    public long getOutputCount(){
+        return outputCount;
+    }
+}
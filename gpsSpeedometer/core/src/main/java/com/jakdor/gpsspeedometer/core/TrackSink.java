@@ -0,0 +1,15 @@
+package com.jakdor.gpsspeedometer.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Destination of processed fixes - track file or processing stage in front of it
+ */
+public interface TrackSink extends Closeable {
+
+    /**
+     * Takes single fix with speed (m/s) computed for it
+     */
+    void append(Fix fix, float speed) throws IOException;
+}
@@ -0,0 +1,65 @@
+package com.jakdor.gpsspeedometer.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Track file helpers: format detection and conversion of full resolution tracks to compact ones
+ */
+public final class Tracks {
+
+    private Tracks(){
+    }
+
+    /**
+     * Opens cursor over track file of either format, picked by file magic
+     */
+    public static TrackCursor open(File file) throws IOException {
+        int magic;
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            magic = Integer.reverseBytes(randomAccessFile.readInt()); //little endian
+        }
+        finally {
+            randomAccessFile.close();
+        }
+
+        if(magic == TrackFormat.MAGIC){
+            return new TrackReader(file);
+        }
+        if(magic == CompactTrackFormat.MAGIC){
+            return new CompactTrackReader(file);
+        }
+        throw new IOException("Not a supported track file");
+    }
+
+    /**
+     * Simplifies and delta encodes track into compact file, returns stored record count
+     * @param tolerance simplification tolerance m, 0 keeps every record
+     */
+    public static long compact(File source, File target, double tolerance) throws IOException {
+        TrackCursor cursor = open(source);
+        try {
+            CompactTrackRecorder recorder = CompactTrackRecorder.open(target, cursor.getStartTime(), tolerance);
+            TrackSink sink = tolerance > 0
+                    ? new TrackSimplifier(recorder, tolerance, TrackSimplifier.DEFAULT_ALTITUDE_TOLERANCE)
+                    : recorder;
+            try {
+                while (cursor.next()) {
+                    long time = cursor.getTime();
+                    sink.append(new Fix((time - cursor.getStartTime()) * 1000000L, time,
+                            cursor.getLatitude(), cursor.getLongitude(), cursor.getAltitude(),
+                            cursor.getAccuracy()), cursor.getSpeed());
+                }
+            }
+            finally {
+                sink.close();
+            }
+            return recorder.getRecordCount();
+        }
+        finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,568 @@
+package com.jakdor.gpsspeedometer.core;
+
+/**
+ * Android-free trip processing: distance, speed and trip time from gps fixes and inertial sensor samples.
+ * Same pipeline on device (LocationCalculator) and in headless replay (ReplayEngine).
+ * Threading, no locks on either input thread:
+ * - onFix() thread owns trip state and speed filter
+ * - sensor thread (onAccelerometer(), onGyroscope(), onMagnetometer(), onPressure()) owns AccelerationDetector,
+ *   DeadReckoning integration and barometric altitude, hands over motion noise integral, accelerating flag
+ *   and pressure altitude through single writer volatile fields
+ * - other threads read immutable TripSnapshot, published through single volatile reference after every fix,
+ *   during gps outage by sensor thread from dead reckoning estimate, on launch from restored WarmStart;
+ *   plain getters are meant for onFix() thread (headless replay)
+ */
+public class TripCalculator implements FixListener {
+
+    public static final double GRAVITY_EARTH = 9.80665;
+    public static final long DEAD_RECKONING_PUBLISH_INTERVAL = 200000000L; // ns
+    public static final double DEAD_RECKONING_SPEED_VARIANCE = 4; // (m/s)^2, filter seed after outage
+    public static final double DOPPLER_STEP_SIGMAS = 3; // doppler innovation restarting speed filter
+    public static final int STOP_RELEASE_FIXES = 2; // consecutive moving fixes releasing stop, no accelerometer
+
+    private Fix lastFix = null; // distance reference, last accepted fix
+    private long lastTimeNanos; // timer and speed interval reference, stationary fixes advance it too
+    private FixGate fixGate = new DefaultFixGate();
+    private volatile MapMatcher mapMatcher = null;
+    private volatile long rejectedFixCount = 0; // single writer, read by metrics
+    private volatile long acceptedFixCount = 0;
+
+    private final AltitudeAverager altitudeAverager = new AltitudeAverager();
+    private final AltitudeFilter altitudeFilter = new AltitudeFilter();
+    private double referenceAltitude = Double.NaN; // fused altitude at lastFix
+
+    private final SpeedKalmanFilter speedFilter = new SpeedKalmanFilter();
+    private volatile SpeedSource speedSource = SpeedSource.AUTO;
+    private volatile SpeedSource activeSpeedSource = SpeedSource.POSITION;
+    private double avrCurrentSpeed = 0;
+    private int speedStopCounter = 0;
+
+    private double distance;
+    private double distanceSum = 0;
+
+    private long timerNanos = 0;
+    private final TripStatistics statistics = new TripStatistics();
+
+    private boolean stopLock = false;
+    private int releaseCounter = 0;
+
+    private final AccelerationDetector accelerationDetector = new AccelerationDetector();
+    private volatile boolean accelerating = false;
+    private volatile boolean accelerometerSeen = false; // without it stop lock is released by gate alone
+
+    //written by accelerometer thread only
+    private volatile double noiseIntegral = 0; // integral of process noise^2 over sensor time
+    private long lastSensorNanos = Long.MIN_VALUE;
+
+    //read by fix thread only
+    private double usedNoiseIntegral = 0;
+
+    private final DeadReckoning deadReckoning = new DeadReckoning();
+    private volatile boolean deadReckoningEnabled = true;
+    private volatile TripSnapshot deadReckoningSnapshot = null; // written by sensor thread only
+    private long deadReckoningPublishNanos = Long.MIN_VALUE;
+
+    private volatile TripSnapshot snapshot = TripSnapshot.EMPTY;
+    private boolean provisional = false; // restored snapshot shown until first accepted fix
+
+    @Override
+    public void onFix(Fix fix) {
+        update(fix);
+        if(provisional){
+            if(lastFix == null){
+                return;
+            }
+            provisional = false;
+        }
+        snapshot = new TripSnapshot(lastFix, avrCurrentSpeed, distanceSum, timerNanos, accelerating, stopLock);
+    }
+
+    /**
+     * Main update loop, called for every new fix;
+     * - lunches distance calculation method, snapped to road network when map matcher is set
+     * - discards bad fixes and random gps input jitter (FixGate), and fixes not newer than time reference
+     * - fuses gps altitude with barometer, accepted distance includes climb (slope distance)
+     * - closes gps outage with dead reckoning estimate (reconciled to fix) instead of restarting
+     * - lunches speed calculation method
+     * - starts and stops timers, after full stop movement counts again once accelerometer confirms it
+     *   (see confirmsMovement() for sources without accelerometer)
+     * - feeds trip, lap and segment statistics
+     */
+    private void update(Fix fix){
+        boolean reckoned = deadReckoning.isActive();
+        double latitude = fix.getLatitude();
+        double longitude = fix.getLongitude();
+
+        if(lastFix == null){
+            distance = 0;
+        }
+        else {
+            //calculateDistanceSimple(latitude, longitude);
+            calculateDistanceAdvance(latitude, longitude);
+        }
+        MapMatcher matcher = mapMatcher;
+        if(matcher != null){
+            snapDistance(matcher, fix);
+        }
+
+        //gate checks staleness against lastFix only, stationary fixes move time reference past it
+        if(lastFix != null && fix.getElapsedRealtimeNanos() <= lastTimeNanos){
+            ++rejectedFixCount;
+            return;
+        }
+        FixGate.Verdict verdict = fixGate.check(fix, lastFix, distance);
+        if(verdict == FixGate.Verdict.REJECT){
+            ++rejectedFixCount;
+            return;
+        }
+        altitudeFilter.onGpsAltitude(fix.getElapsedRealtimeNanos(), fix.getAltitude(), fix.getAccuracy());
+        if(reckoned && lastFix != null){ //outage covered by dead reckoning, path estimate replaces gap restart
+            distance = deadReckoning.reconcile(distance);
+            speedFilter.reset();
+            speedFilter.correct(fix.getElapsedRealtimeNanos(), deadReckoning.getSpeed(),
+                    DEAD_RECKONING_SPEED_VARIANCE);
+            stopLock = false;
+            accept(fix, matcher, true);
+        }
+        else if(verdict == FixGate.Verdict.RESTART){
+            statistics.onGap(fix.getElapsedRealtimeNanos());
+            setReference(matcher, fix);
+            deadReckoning.resetCourse();
+        }
+        else if(verdict == FixGate.Verdict.ACCEPT) {
+            accept(fix, matcher, false);
+        }
+        else{
+            stationary(fix);
+        }
+        deadReckoning.onGpsFix(fix, avrCurrentSpeed);
+    }
+
+    /**
+     * Accepted movement from last accepted fix: speed, distance, timer, statistics
+     * @param reckoned fix ends gps outage, distance is reconciled dead reckoning path
+     */
+    private void accept(Fix fix, MapMatcher matcher, boolean reckoned){
+        ++acceptedFixCount;
+        double altitude = altitudeFilter.getAltitude();
+        if(!Double.isNaN(altitude) && !Double.isNaN(referenceAltitude)){
+            distance = AltitudeFilter.slopeDistance(distance, altitude - referenceAltitude);
+        }
+        else {
+            altitude = fix.getAltitude();
+        }
+        long deltaNanos = fix.getElapsedRealtimeNanos() - lastTimeNanos;
+        calculateSpeed(fix, deltaNanos, reckoned);
+        speedStopCounter = 0;
+
+        if(stopLock && (accelerating || !accelerometerSeen && confirmsMovement(fix))){ //accelerometer, if any
+            stopLock = false;
+        }
+
+        if(!stopLock) {
+            distanceSum += distance;
+            calculateTime(deltaNanos);
+            statistics.onMoving(fix.getElapsedRealtimeNanos(), distance, avrCurrentSpeed, altitude);
+        }
+        else {
+            statistics.onStopped(fix.getElapsedRealtimeNanos());
+        }
+
+        setReference(matcher, fix);
+
+        altitudeAverager.add(fix.getAltitude()); //experimental
+    }
+
+    /**
+     * Fix within jitter of last accepted fix: distance reference stays, time reference moves on
+     * (standstill doesn't count into timer or next speed interval);
+     * doppler speed under stop threshold stops at once, otherwise full stop after 4 such fixes
+     */
+    private void stationary(Fix fix){
+        long timeNanos = fix.getElapsedRealtimeNanos();
+        statistics.onStopped(timeNanos);
+        releaseCounter = 0;
+        double deltaTime = (timeNanos - lastTimeNanos) / 1e9;
+        lastTimeNanos = timeNanos;
+
+        if(fix.hasSpeed() && speedSource != SpeedSource.POSITION){
+            if(fix.getSpeed() < DefaultFixGate.STATIONARY_SPEED){
+                fullStop();
+                return;
+            }
+            speedFilter.predict(timeNanos, takeProcessNoise(deltaTime));
+            speedFilter.correct(timeNanos, fix.getSpeed(),
+                    SpeedKalmanFilter.dopplerSpeedVariance(fix.getSpeedAccuracy()));
+            avrCurrentSpeed = speedFilter.getSpeed() < 1.0 ? 0.0 : speedFilter.getSpeed();
+        }
+
+        if(++speedStopCounter == 4){
+            fullStop();
+        }
+    }
+
+    /**
+     * Stop release for sources without accelerometer (gpx, nmea, recorded tracks):
+     * doppler speed if fix has one, otherwise movement accepted by gate on consecutive fixes (not single jitter)
+     */
+    private boolean confirmsMovement(Fix fix){
+        if(fix.hasSpeed()){
+            return fix.getSpeed() >= DefaultFixGate.STATIONARY_SPEED;
+        }
+        return ++releaseCounter >= STOP_RELEASE_FIXES;
+    }
+
+    private void fullStop(){
+        speedFilter.reset();
+        avrCurrentSpeed = 0;
+        speedStopCounter = 0;
+        releaseCounter = 0;
+        stopLock = true;
+        statistics.onStop();
+    }
+
+    /**
+     * Simple approximate distance calculation methode
+     * <Currently replaced by calculateDistanceAdvance()>
+     */
+    private void calculateDistanceSimple(double latitude, double longitude){
+        distance = Geodesy.distanceHaversine(lastFix.getLatitude(), lastFix.getLongitude(), latitude, longitude);
+
+        double avrAltitude = altitudeAverager.getAverage();
+        double lastAvrAltitude = altitudeAverager.getLastAverage();
+        double altitudeDifference = Math.abs(lastAvrAltitude - avrAltitude); //experimental
+        if(avrAltitude != 0 && lastAvrAltitude != 0 && altitudeDifference > 10){
+            distance = Math.sqrt(Math.pow(altitudeDifference, 2.0) + Math.pow(distance, 2.0));
+        }
+    }
+
+    /**
+     * Advance distance calculation method based on WGS-84 ellipsoid modeling,
+     * fast local projection for short hops, Vincenty for long spans (see Geodesy)
+     */
+    private void calculateDistanceAdvance(double latitude, double longitude){
+        distance = Geodesy.distance(lastFix.getLatitude(), lastFix.getLongitude(), latitude, longitude);
+    }
+
+    /**
+     * Map matching, distance along matched road path replaces straight distance to last accepted fix,
+     * so multipath jitter across the road doesn't add up; unmatched fixes keep straight distance
+     */
+    private void snapDistance(MapMatcher matcher, Fix fix){
+        if(matcher.match(fix) && lastFix != null){
+            double matchedDistance = matcher.getReferenceDistance();
+            if(!Double.isNaN(matchedDistance)){
+                distance = matchedDistance;
+            }
+        }
+    }
+
+    private void setReference(MapMatcher matcher, Fix fix){
+        lastFix = fix;
+        lastTimeNanos = fix.getElapsedRealtimeNanos();
+        referenceAltitude = altitudeFilter.getAltitude();
+        if(matcher != null){
+            matcher.markReference();
+        }
+    }
+
+    /**
+     * Speed calculation method, measurement picked by speed source mode:
+     * - receiver doppler speed, weighted by reported speed accuracy
+     * - distance over real time between fixes, weighted by fix accuracy
+     * - fuses measured speed with accelerometer driven prediction (SpeedKalmanFilter),
+     *   doppler speed far outside prediction (speed step the accelerometer didn't see) restarts filter on it
+     * - after gps outage position speed is only outage average, filter keeps dead reckoning speed instead
+     * - discards speed under 1m/s due to random gps jitter
+     */
+    private void calculateSpeed(Fix fix, long deltaNanos, boolean reckoned){
+        double deltaTime = deltaNanos / 1e9;
+        double speed = distance / deltaTime;
+        double variance = SpeedKalmanFilter.positionSpeedVariance(fix.getAccuracy(), deltaTime);
+
+        SpeedSource source = SpeedSource.POSITION;
+        if(fix.hasSpeed() && speedSource != SpeedSource.POSITION){
+            double dopplerVariance = SpeedKalmanFilter.dopplerSpeedVariance(fix.getSpeedAccuracy());
+            if(speedSource == SpeedSource.DOPPLER || fix.getAccuracy() <= 0 || dopplerVariance <= variance){
+                speed = fix.getSpeed();
+                variance = dopplerVariance;
+                source = SpeedSource.DOPPLER;
+            }
+        }
+        activeSpeedSource = source;
+
+        speedFilter.predict(fix.getElapsedRealtimeNanos(), takeProcessNoise(deltaTime));
+        if(source == SpeedSource.DOPPLER && speedFilter.isInitialized()
+                && Math.abs(speed - speedFilter.getSpeed())
+                > DOPPLER_STEP_SIGMAS * Math.sqrt(speedFilter.getSpeedVariance() + variance)){
+            speedFilter.reset();
+        }
+        if(!reckoned || source == SpeedSource.DOPPLER){
+            speedFilter.correct(fix.getElapsedRealtimeNanos(), speed, variance);
+        }
+        double filteredSpeed = speedFilter.getSpeed();
+
+        if(filteredSpeed < 1.0){ //discard random jitter
+            filteredSpeed = 0.0;
+        }
+        avrCurrentSpeed = filteredSpeed;
+    }
+
+    /**
+     * Mean process noise since last fix from accelerometer thread integral,
+     * one predict over fix interval approximates chain of sensor rate predicts with same noise energy
+     */
+    private double takeProcessNoise(double deltaTime){
+        double integral = noiseIntegral;
+        double covered = integral - usedNoiseIntegral;
+        usedNoiseIntegral = integral;
+        if(covered <= 0 || deltaTime <= 0){
+            return SpeedKalmanFilter.DEFAULT_PROCESS_NOISE;
+        }
+        return Math.max(SpeedKalmanFilter.DEFAULT_PROCESS_NOISE, Math.sqrt(covered / deltaTime));
+    }
+
+    private void calculateTime(long deltaNanos){
+        timerNanos += deltaNanos;
+    }
+
+    /**
+     * Accelerometer sample (m/s^2), timestamp on same clock as Fix elapsed realtime;
+     * - detects acceleration
+     * - integrates motion driven process noise for next speed prediction
+     */
+    public void onAccelerometer(long timestampNanos, float x, float y, float z){
+        accelerating = accelerationDetector.update(timestampNanos, x, y, z);
+        if(!accelerometerSeen){
+            accelerometerSeen = true;
+        }
+
+        double motionIntensity = accelerationDetector.getBuffer().getMagnitude(0) - GRAVITY_EARTH;
+        double noise = SpeedKalmanFilter.processNoise(motionIntensity);
+        if(lastSensorNanos != Long.MIN_VALUE){
+            double dt = (timestampNanos - lastSensorNanos) / 1e9;
+            if(dt > 0 && dt < 1){ //skip sensor gaps
+                noiseIntegral += noise * noise * dt; //single writer
+            }
+        }
+        lastSensorNanos = timestampNanos;
+
+        if(deadReckoningEnabled){
+            deadReckoning.onAccelerometer(timestampNanos, x, y, z);
+            publishDeadReckoning(timestampNanos);
+        }
+    }
+
+    /**
+     * Barometer sample (hPa), sensor thread, same clock as accelerometer
+     */
+    public void onPressure(long timestampNanos, float pressure){
+        altitudeFilter.onPressure(timestampNanos, pressure);
+    }
+
+    /**
+     * Gyroscope sample (rad/s), sensor thread, same clock as accelerometer
+     */
+    public void onGyroscope(long timestampNanos, float x, float y, float z){
+        if(deadReckoningEnabled){
+            deadReckoning.onGyroscope(timestampNanos, x, y, z);
+        }
+    }
+
+    /**
+     * Magnetometer sample (uT), sensor thread, same clock as accelerometer
+     */
+    public void onMagnetometer(long timestampNanos, float x, float y, float z){
+        if(deadReckoningEnabled){
+            deadReckoning.onMagnetometer(timestampNanos, x, y, z);
+        }
+    }
+
+    /**
+     * Outage snapshot from dead reckoning estimate on top of last fix snapshot, at most every publish interval
+     */
+    private void publishDeadReckoning(long timestampNanos){
+        if(!deadReckoning.isActive()){
+            deadReckoningPublishNanos = Long.MIN_VALUE;
+            return;
+        }
+        if(deadReckoningPublishNanos != Long.MIN_VALUE
+                && timestampNanos - deadReckoningPublishNanos < DEAD_RECKONING_PUBLISH_INTERVAL){
+            return;
+        }
+        deadReckoningPublishNanos = timestampNanos;
+        TripSnapshot last = snapshot;
+        deadReckoningSnapshot = new TripSnapshot(last.getFix(), deadReckoning.getSpeed(),
+                last.getDistanceSum() + deadReckoning.getDistance(),
+                last.getTimerNanos() + deadReckoning.getMovingNanos(), accelerating, false, true);
+    }
+
+    /**
+     * Warm start, call before first fix: saved state is published as provisional snapshot
+     * until first accepted fix; trip counters continue when unfinished state is younger than
+     * WarmStart.MAX_RESUME_AGE (process died mid trip), saved speed is shown only within WarmStart.MAX_SPEED_AGE;
+     * finished trip (clean shutdown) restores position only.
+     * Fix time is rebased to current elapsed realtime, fix age stays meaningful across reboot
+     * @param time current UTC ms
+     * @param elapsedRealtimeNanos current monotonic time, same clock as fixes
+     */
+    public void restore(WarmStart warmStart, long time, long elapsedRealtimeNanos){
+        long age = time - warmStart.getSavedTime();
+        boolean fresh = warmStart.canResume(time);
+        if(fresh){
+            distanceSum = warmStart.getDistanceSum();
+            timerNanos = warmStart.getTimerNanos();
+        }
+        double speed = fresh && age <= WarmStart.MAX_SPEED_AGE ? warmStart.getSpeed() : 0;
+
+        Fix fix = warmStart.getFix();
+        if(fix != null){
+            fix = new Fix(elapsedRealtimeNanos - (time - fix.getTime()) * 1000000L, fix.getTime(),
+                    fix.getLatitude(), fix.getLongitude(), fix.getAltitude(), fix.getAccuracy());
+        }
+        provisional = true;
+        snapshot = new TripSnapshot(fix, speed, distanceSum, timerNanos, false, false, false, true);
+    }
+
+    /**
+     * Replaces fix gating stage, call before first fix
+     */
+    public void setFixGate(FixGate fixGate){
+        this.fixGate = fixGate;
+    }
+
+    public FixGate getFixGate(){
+        return fixGate;
+    }
+
+    /**
+     * Dead reckoning through gps outages, enabled by default; disabled outages end in FixGate gap restart
+     */
+    public void setDeadReckoningEnabled(boolean enabled){
+        this.deadReckoningEnabled = enabled;
+    }
+
+    public DeadReckoning getDeadReckoning(){
+        return deadReckoning;
+    }
+
+    /**
+     * Enables road snapping of distance and position derived speed, null disables;
+     * may be set from any thread (road graph loads in background), used from next fix on
+     */
+    public void setMapMatcher(MapMatcher mapMatcher){
+        this.mapMatcher = mapMatcher;
+    }
+
+    public MapMatcher getMapMatcher(){
+        return mapMatcher;
+    }
+
+    /**
+     * Fixes dropped by FixGate
+     */
+    public long getRejectedFixCount(){
+        return rejectedFixCount;
+    }
+
+    /**
+     * Fixes accepted by FixGate as movement
+     */
+    public long getAcceptedFixCount(){
+        return acceptedFixCount;
+    }
+
+    /**
+     * Speed measurement mode, may be changed at any time
+     */
+    public void setSpeedSource(SpeedSource speedSource){
+        this.speedSource = speedSource;
+    }
+
+    public SpeedSource getSpeedSource(){
+        return speedSource;
+    }
+
+    /**
+     * Source actually used for last speed measurement, DOPPLER or POSITION
+     */
+    public SpeedSource getActiveSpeedSource(){
+        return activeSpeedSource;
+    }
+
+    /**
+     * Current speed in m/s
+     */
+    public double getSpeed(){
+        return avrCurrentSpeed;
+    }
+
+    public double getSpeed(boolean retardedSystem){
+        if(retardedSystem){ //imperial unit system conversion
+            return avrCurrentSpeed * TripSnapshot.MS_TO_MPH;
+        }
+        return avrCurrentSpeed * TripSnapshot.MS_TO_KMH;
+    }
+
+    public double getDistanceSum(boolean retardedSystem){
+        if(retardedSystem){ //imperial unit system conversion
+            return distanceSum * TripSnapshot.M_TO_KFT;
+        }
+        return distanceSum;
+    }
+
+    /**
+     * Barometer fused altitude m as of last fix, NaN without pressure sensor
+     */
+    public double getAltitude(){
+        return altitudeFilter.getAltitude();
+    }
+
+    public AltitudeFilter getAltitudeFilter(){
+        return altitudeFilter;
+    }
+
+    public long getTimer(){
+        return timerNanos / 1000000000L;
+    }
+
+    public long getTimerNanos(){
+        return timerNanos;
+    }
+
+    /**
+     * Trip, lap and stop split segment statistics, for onFix() thread
+     */
+    public TripStatistics getStatistics(){
+        return statistics;
+    }
+
+    /**
+     * Consistent trip state as of last processed fix, or dead reckoning estimate during gps outage;
+     * safe to call from any thread
+     */
+    public TripSnapshot getSnapshot(){
+        if(deadReckoning.isActive()){
+            TripSnapshot estimate = deadReckoningSnapshot;
+            if(estimate != null && estimate.getFix() == snapshot.getFix()){
+                return estimate;
+            }
+        }
+        return snapshot;
+    }
+
+    public boolean isAccelerating(){
+        return accelerating;
+    }
+
+    /**
+     * Full stop detected (stop lock), until accelerometer sees movement
+     */
+    public boolean isStopped(){
+        return stopLock;
+    }
+
+    public AccelerationDetector getAccelerationDetector(){
+        return accelerationDetector;
+    }
+}
@@ -0,0 +1,60 @@
+package com.jakdor.gpsspeedometer.core;
+
+/**
+ * TripIndex query: start time range, bounding box intersection and min distance,
+ * unset criteria match every trip
+ */
+public class TripFilter {
+
+    private long fromTime = Long.MIN_VALUE;
+    private long toTime = Long.MAX_VALUE;
+    private double minDistance = 0;
+
+    private boolean bounded = false;
+    private int south, west, north, east; //1e-7 degrees, TrackFormat scale
+
+    /**
+     * Trips started in [fromTime, toTime), UTC ms
+     */
+    public void setTimeRange(long fromTime, long toTime){
+        this.fromTime = fromTime;
+        this.toTime = toTime;
+    }
+
+    /**
+     * Trips with bounding box intersecting given area, degrees
+     */
+    public void setBounds(double south, double west, double north, double east){
+        this.south = TrackFormat.toScaled(south);
+        this.west = TrackFormat.toScaled(west);
+        this.north = TrackFormat.toScaled(north);
+        this.east = TrackFormat.toScaled(east);
+        bounded = true;
+    }
+
+    /**
+     * Trips at least given distance long, m
+     */
+    public void setMinDistance(double minDistance){
+        this.minDistance = minDistance;
+    }
+
+    long getFromTime(){
+        return fromTime;
+    }
+
+    long getToTime(){
+        return toTime;
+    }
+
+    /**
+     * Non time criteria check of entry values
+     */
+    boolean matches(float distance, int minLatitude, int minLongitude, int maxLatitude, int maxLongitude){
+        if(distance < minDistance){
+            return false;
+        }
+        return !bounded || (minLatitude <= north && maxLatitude >= south
+                && minLongitude <= east && maxLongitude >= west);
+    }
+}
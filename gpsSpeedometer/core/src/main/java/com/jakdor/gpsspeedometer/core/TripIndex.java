@@ -0,0 +1,415 @@
+package com.jakdor.gpsspeedometer.core;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Trip history index, single binary file of fixed width TripSummary entries sorted by start time;
+ * loaded with one read into memory, entries are read in place - no object per trip,
+ * time range lookup by binary search, other criteria (TripFilter) by linear scan of packed entries.
+ * Little endian layout:
+ * header (16 bytes): magic "GPTI", version (short), entry size (short), reserved (long)
+ * entry (64 bytes):
+ * - start time, end time UTC ms (long)
+ * - record count (int), distance m (float), moving time s (int), max speed m/s (float)
+ * - elevation gain, loss m (float)
+ * - bounding box min latitude, min longitude, max latitude, max longitude in 1e-7 degrees (int)
+ * - reserved (int), crc32 of preceding 60 entry bytes (int)
+ * New trips are appended in place (torn entry is dropped by crc), out of order ones (recovered tracks)
+ * and cleanup of dropped entries rewrite whole index into temporary file renamed over it.
+ * Unreadable index (foreign or truncated header) loads empty, rebuild it from tracks with indexMissing().
+ */
+public class TripIndex {
+
+    public static final String FILE_NAME = "trips.idx";
+    public static final String TRACK_EXTENSION = ".trk";
+
+    static final int MAGIC = 0x49545047; // "GPTI"
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int ENTRY_SIZE = 64;
+    static final int ENTRY_PAYLOAD_SIZE = ENTRY_SIZE - 4;
+
+    private static final int START_TIME = 0;
+    private static final int END_TIME = 8;
+    private static final int RECORD_COUNT = 16;
+    private static final int DISTANCE = 20;
+    private static final int MOVING_TIME = 24;
+    private static final int MAX_SPEED = 28;
+    private static final int ELEVATION_GAIN = 32;
+    private static final int ELEVATION_LOSS = 36;
+    private static final int MIN_LATITUDE = 40;
+    private static final int MIN_LONGITUDE = 44;
+    private static final int MAX_LATITUDE = 48;
+    private static final int MAX_LONGITUDE = 52;
+
+    private static final Object FILE_LOCK = new Object(); //recorder and history screen write same file
+
+    private final File file;
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer entries;
+    private int size;
+    private int droppedEntryCount = 0;
+    private boolean unreadable = false;
+    private long fileLength = 0; //as last loaded or written, detects writes of other instances
+
+    private TripIndex(File file){
+        this.file = file;
+    }
+
+    /**
+     * Loads index file, missing or unreadable file is empty index; corrupted entries are dropped
+     */
+    public static TripIndex open(File file) throws IOException {
+        TripIndex index = new TripIndex(file);
+        synchronized (FILE_LOCK) {
+            index.load();
+        }
+        return index;
+    }
+
+    private void load() throws IOException {
+        entries = ByteBuffer.allocate(0).order(ByteOrder.LITTLE_ENDIAN);
+        size = 0;
+        droppedEntryCount = 0;
+        unreadable = false;
+        fileLength = file.length();
+        if(!file.isFile()){
+            return;
+        }
+
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            long length = channel.size() - HEADER_SIZE;
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.max(0, channel.size())).order(ByteOrder.LITTLE_ENDIAN);
+            while (buffer.hasRemaining()){
+                if(channel.read(buffer, buffer.position()) < 0){
+                    break;
+                }
+            }
+
+            if(length < 0 || buffer.hasRemaining() || buffer.getInt(0) != MAGIC || buffer.getShort(4) != VERSION
+                    || buffer.getShort(6) != ENTRY_SIZE){
+                unreadable = true;
+                ++droppedEntryCount; //whole file, rewritten on next put
+                return;
+            }
+            if(length % ENTRY_SIZE != 0){
+                ++droppedEntryCount; //torn tail
+            }
+
+            int count = (int) (length / ENTRY_SIZE);
+            entries = ByteBuffer.allocate(count * ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            for(int i = 0; i < count; ++i){
+                int offset = HEADER_SIZE + i * ENTRY_SIZE;
+                crc.reset();
+                crc.update(buffer.array(), offset, ENTRY_PAYLOAD_SIZE);
+                if((int) crc.getValue() != buffer.getInt(offset + ENTRY_PAYLOAD_SIZE)){
+                    ++droppedEntryCount;
+                    continue;
+                }
+                entries.put(buffer.array(), offset, ENTRY_SIZE);
+                ++size;
+            }
+        }
+        finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Adds or replaces (same start time) trip entry and writes it through to index file,
+     * reloads first if file was changed by other instance
+     */
+    public void put(TripSummary summary) throws IOException {
+        synchronized (FILE_LOCK) {
+            if(file.length() != fileLength){
+                load();
+            }
+
+            int position = lowerBound(summary.getStartTime());
+            boolean replace = position < size && getStartTime(position) == summary.getStartTime();
+            if(!replace) {
+                ensureCapacity(size + 1);
+                byte[] array = entries.array();
+                System.arraycopy(array, position * ENTRY_SIZE, array, (position + 1) * ENTRY_SIZE,
+                        (size - position) * ENTRY_SIZE);
+                ++size;
+            }
+            encode(summary, position * ENTRY_SIZE);
+
+            if(!file.isFile() || droppedEntryCount > 0){
+                writeAll();
+            }
+            else if(!replace && position < size - 1){
+                writeAll(); //out of order
+            }
+            else {
+                write(position, position + 1);
+            }
+            fileLength = file.length();
+        }
+    }
+
+    private void ensureCapacity(int count){
+        if(entries.capacity() >= count * ENTRY_SIZE){
+            return;
+        }
+        int capacity = Math.max(count, Math.max(16, size * 2));
+        ByteBuffer grown = ByteBuffer.allocate(capacity * ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        System.arraycopy(entries.array(), 0, grown.array(), 0, size * ENTRY_SIZE);
+        entries = grown;
+    }
+
+    private void encode(TripSummary summary, int offset){
+        entries.putLong(offset + START_TIME, summary.getStartTime());
+        entries.putLong(offset + END_TIME, summary.getEndTime());
+        entries.putInt(offset + RECORD_COUNT, (int) Math.min(Integer.MAX_VALUE, summary.getRecordCount()));
+        entries.putFloat(offset + DISTANCE, (float) summary.getDistance());
+        entries.putInt(offset + MOVING_TIME, (int) Math.min(Integer.MAX_VALUE, summary.getMovingTime() / 1000));
+        entries.putFloat(offset + MAX_SPEED, (float) summary.getMaxSpeed());
+        entries.putFloat(offset + ELEVATION_GAIN, (float) summary.getElevationGain());
+        entries.putFloat(offset + ELEVATION_LOSS, (float) summary.getElevationLoss());
+        entries.putInt(offset + MIN_LATITUDE, TrackFormat.toScaled(summary.getMinLatitude()));
+        entries.putInt(offset + MIN_LONGITUDE, TrackFormat.toScaled(summary.getMinLongitude()));
+        entries.putInt(offset + MAX_LATITUDE, TrackFormat.toScaled(summary.getMaxLatitude()));
+        entries.putInt(offset + MAX_LONGITUDE, TrackFormat.toScaled(summary.getMaxLongitude()));
+        entries.putInt(offset + ENTRY_PAYLOAD_SIZE - 4, 0);
+        crc.reset();
+        crc.update(entries.array(), offset, ENTRY_PAYLOAD_SIZE);
+        entries.putInt(offset + ENTRY_PAYLOAD_SIZE, (int) crc.getValue());
+    }
+
+    /**
+     * Rewrites whole file with header, drops corrupted entries for good;
+     * written to temporary file and renamed over index, crash mid write never leaves it short
+     */
+    private void writeAll() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putShort(VERSION);
+        header.putShort((short) ENTRY_SIZE);
+        header.putLong(0);
+        header.flip();
+
+        File temp = new File(file.getPath() + ".tmp");
+        RandomAccessFile randomAccessFile = new RandomAccessFile(temp, "rw");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            channel.truncate(0);
+            writeFully(channel, header, 0);
+            writeEntries(channel, 0, size);
+            channel.force(false);
+        }
+        finally {
+            randomAccessFile.close();
+        }
+        if(!temp.renameTo(file)){
+            throw new IOException("Unable to replace trip index " + file);
+        }
+        droppedEntryCount = 0;
+        unreadable = false;
+    }
+
+    private void write(int from, int to) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            writeEntries(channel, from, to);
+            channel.force(false);
+        }
+        finally {
+            randomAccessFile.close();
+        }
+    }
+
+    private void writeEntries(FileChannel channel, int from, int to) throws IOException {
+        ByteBuffer slice = ByteBuffer.wrap(entries.array(), from * ENTRY_SIZE, (to - from) * ENTRY_SIZE);
+        writeFully(channel, slice, HEADER_SIZE + (long) from * ENTRY_SIZE);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long offset = position - buffer.position();
+        while (buffer.hasRemaining()){
+            channel.write(buffer, offset + buffer.position());
+        }
+    }
+
+    /**
+     * Indexes track files from directory missing in index (trip not closed properly, index lost),
+     * given track (currently recorded) is skipped; returns count of indexed tracks
+     * @param excludeStartTime start time of track to skip, Long.MIN_VALUE for none
+     */
+    public int indexMissing(File tracksDir, long excludeStartTime) throws IOException {
+        File[] tracks = tracksDir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().endsWith(TRACK_EXTENSION);
+            }
+        });
+        if(tracks == null){
+            return 0;
+        }
+        Arrays.sort(tracks);
+
+        int indexed = 0;
+        for(File track : tracks){
+            String name = track.getName();
+            long startTime;
+            try {
+                startTime = Long.parseLong(name.substring(0, name.length() - TRACK_EXTENSION.length()));
+            }
+            catch (NumberFormatException e){
+                continue;
+            }
+            if(startTime == excludeStartTime || indexOf(startTime) >= 0){
+                continue;
+            }
+
+            try {
+                TripSummary summary = TripSummary.scan(track, null);
+                if(summary.getRecordCount() > 0) {
+                    put(summary);
+                    ++indexed;
+                }
+            }
+            catch (IOException e){ //unreadable track, leave it out
+            }
+        }
+        return indexed;
+    }
+
+    /**
+     * Track file of indexed trip
+     */
+    public static File getTrackFile(File tracksDir, long startTime){
+        return new File(tracksDir, startTime + TRACK_EXTENSION);
+    }
+
+    /**
+     * First entry with start time not less than given
+     */
+    public int lowerBound(long startTime){
+        int low = 0;
+        int high = size;
+        while (low < high){
+            int middle = (low + high) >>> 1;
+            if(getStartTime(middle) < startTime){
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Entry of trip with given start time, -1 if not indexed
+     */
+    public int indexOf(long startTime){
+        int position = lowerBound(startTime);
+        return position < size && getStartTime(position) == startTime ? position : -1;
+    }
+
+    /**
+     * Matching entries newest first
+     */
+    public int[] query(TripFilter filter){
+        int from = lowerBound(filter.getFromTime());
+        int to = filter.getToTime() == Long.MAX_VALUE ? size : lowerBound(filter.getToTime());
+
+        int[] result = new int[Math.max(0, to - from)];
+        int count = 0;
+        for(int i = to - 1; i >= from; --i){
+            int offset = i * ENTRY_SIZE;
+            if(filter.matches(entries.getFloat(offset + DISTANCE),
+                    entries.getInt(offset + MIN_LATITUDE), entries.getInt(offset + MIN_LONGITUDE),
+                    entries.getInt(offset + MAX_LATITUDE), entries.getInt(offset + MAX_LONGITUDE))){
+                result[count++] = i;
+            }
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Entry as standalone summary
+     */
+    public TripSummary get(int entry){
+        return new TripSummary(getStartTime(entry), getEndTime(entry), getRecordCount(entry),
+                getDistance(entry), getMovingTime(entry), getMaxSpeed(entry),
+                getElevationGain(entry), getElevationLoss(entry),
+                TrackFormat.fromScaled(entries.getInt(entry * ENTRY_SIZE + MIN_LATITUDE)),
+                TrackFormat.fromScaled(entries.getInt(entry * ENTRY_SIZE + MIN_LONGITUDE)),
+                TrackFormat.fromScaled(entries.getInt(entry * ENTRY_SIZE + MAX_LATITUDE)),
+                TrackFormat.fromScaled(entries.getInt(entry * ENTRY_SIZE + MAX_LONGITUDE)));
+    }
+
+    public int size(){
+        return size;
+    }
+
+    /**
+     * Corrupted entries dropped while loading, removed from file on next write
+     */
+    public int getDroppedEntryCount(){
+        return droppedEntryCount;
+    }
+
+    /**
+     * Index file existed but couldn't be read (truncated or foreign header), loaded empty;
+     * trips are restored from track files by indexMissing()
+     */
+    public boolean isUnreadable(){
+        return unreadable;
+    }
+
+    public long getStartTime(int entry){
+        return entries.getLong(entry * ENTRY_SIZE + START_TIME);
+    }
+
+    public long getEndTime(int entry){
+        return entries.getLong(entry * ENTRY_SIZE + END_TIME);
+    }
+
+    public long getRecordCount(int entry){
+        return entries.getInt(entry * ENTRY_SIZE + RECORD_COUNT);
+    }
+
+    /**
+     * Trip distance, m
+     */
+    public float getDistance(int entry){
+        return entries.getFloat(entry * ENTRY_SIZE + DISTANCE);
+    }
+
+    /**
+     * Moving time, ms (stored with 1s resolution)
+     */
+    public long getMovingTime(int entry){
+        return entries.getInt(entry * ENTRY_SIZE + MOVING_TIME) * 1000L;
+    }
+
+    /**
+     * Max speed, m/s
+     */
+    public float getMaxSpeed(int entry){
+        return entries.getFloat(entry * ENTRY_SIZE + MAX_SPEED);
+    }
+
+    public float getElevationGain(int entry){
+        return entries.getFloat(entry * ENTRY_SIZE + ELEVATION_GAIN);
+    }
+
+    public float getElevationLoss(int entry){
+        return entries.getFloat(entry * ENTRY_SIZE + ELEVATION_LOSS);
+    }
+}
@@ -0,0 +1,120 @@
+package com.jakdor.gpsspeedometer.core;
+
+/**
+ * Immutable trip state published by TripCalculator after every processed fix,
+ * lightweight read model for UI and other subscribers - all values always come from the same fix
+ */
+public final class TripSnapshot {
+
+    public static final double MS_TO_KMH = 3.6;
+    public static final double MS_TO_MPH = 2.2369362912;
+    public static final double M_TO_KFT = 0.0032808399;
+
+    public static final TripSnapshot EMPTY = new TripSnapshot(null, 0, 0, 0, false, false);
+
+    private final Fix fix;
+
+    private final double speed;
+    private final double distanceSum;
+    private final long timerNanos;
+    private final boolean accelerating;
+    private final boolean stopped;
+    private final boolean deadReckoning;
+    private final boolean provisional;
+
+    /**
+     * @param fix last accepted fix, null before first one
+     * @param speed m/s
+     * @param distanceSum m
+     * @param timerNanos trip (moving) time
+     * @param stopped full stop detected, until accelerometer sees movement
+     */
+    public TripSnapshot(Fix fix, double speed, double distanceSum, long timerNanos,
+                        boolean accelerating, boolean stopped){
+        this(fix, speed, distanceSum, timerNanos, accelerating, stopped, false);
+    }
+
+    /**
+     * @param deadReckoning speed, distance and time estimated from inertial sensors during gps outage,
+     *                      fix is the last one before outage
+     */
+    public TripSnapshot(Fix fix, double speed, double distanceSum, long timerNanos,
+                        boolean accelerating, boolean stopped, boolean deadReckoning){
+        this(fix, speed, distanceSum, timerNanos, accelerating, stopped, deadReckoning, false);
+    }
+
+    /**
+     * @param provisional state restored on launch (WarmStart), no fresh fix yet -
+     *                    fix position and time are last known, speed may be stale
+     */
+    public TripSnapshot(Fix fix, double speed, double distanceSum, long timerNanos,
+                        boolean accelerating, boolean stopped, boolean deadReckoning, boolean provisional){
+        this.fix = fix;
+        this.speed = speed;
+        this.distanceSum = distanceSum;
+        this.timerNanos = timerNanos;
+        this.accelerating = accelerating;
+        this.stopped = stopped;
+        this.deadReckoning = deadReckoning;
+        this.provisional = provisional;
+    }
+
+    /**
+     * Last accepted fix (position, accuracy), null before first one
+     */
+    public Fix getFix(){
+        return fix;
+    }
+
+    /**
+     * Speed in m/s
+     */
+    public double getSpeed(){
+        return speed;
+    }
+
+    public double getSpeed(boolean retardedSystem){
+        return speed * (retardedSystem ? MS_TO_MPH : MS_TO_KMH);
+    }
+
+    /**
+     * Trip distance in meters
+     */
+    public double getDistanceSum(){
+        return distanceSum;
+    }
+
+    public double getDistanceSum(boolean retardedSystem){
+        return retardedSystem ? distanceSum * M_TO_KFT : distanceSum;
+    }
+
+    public long getTimer(){
+        return timerNanos / 1000000000L;
+    }
+
+    public long getTimerNanos(){
+        return timerNanos;
+    }
+
+    public boolean isAccelerating(){
+        return accelerating;
+    }
+
+    public boolean isStopped(){
+        return stopped;
+    }
+
+    /**
+     * Gps outage, values estimated by dead reckoning
+     */
+    public boolean isDeadReckoning(){
+        return deadReckoning;
+    }
+
+    /**
+     * Restored state waiting for first fresh fix, display as provisional
+     */
+    public boolean isProvisional(){
+        return provisional;
+    }
+}
@@ -0,0 +1,165 @@
+package com.jakdor.gpsspeedometer.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Incremental trip statistics: whole trip, current lap and segments between auto detected stops,
+ * every fix updates each open part in O(1), multi-hour trips never need a rescan.
+ * Driven by TripCalculator, not thread safe - read on fix thread or through copies.
+ */
+public class TripStatistics {
+
+    private final double bucketWidth;
+    private final int bucketCount;
+
+    private final SegmentStatistics total;
+    private SegmentStatistics lap;
+    private final List<SegmentStatistics> laps = new ArrayList<>();
+    private final List<SegmentStatistics> segments = new ArrayList<>(); //last one is open
+
+    private boolean autoSplit = true;
+    private long lastNanos = Long.MIN_VALUE;
+
+    public TripStatistics(){
+        this(SpeedHistogram.DEFAULT_BUCKET_WIDTH, SpeedHistogram.DEFAULT_BUCKET_COUNT);
+    }
+
+    /**
+     * @param bucketWidth speed histogram bucket width, m/s
+     */
+    public TripStatistics(double bucketWidth, int bucketCount){
+        this.bucketWidth = bucketWidth;
+        this.bucketCount = bucketCount;
+        total = newPart();
+        lap = newPart();
+        segments.add(newPart());
+    }
+
+    private SegmentStatistics newPart(){
+        return new SegmentStatistics(new SpeedHistogram(bucketWidth, bucketCount));
+    }
+
+    /**
+     * Accepted fix while moving, distance since previous fix in m, speed in m/s
+     */
+    public void onMoving(long timeNanos, double distance, double speed, double altitude){
+        long deltaNanos = delta(timeNanos);
+        total.addMoving(timeNanos, deltaNanos, distance, speed);
+        lap.addMoving(timeNanos, deltaNanos, distance, speed);
+        SegmentStatistics segment = getSegment();
+        segment.addMoving(timeNanos, deltaNanos, distance, speed);
+
+        total.addAltitude(altitude);
+        lap.addAltitude(altitude);
+        segment.addAltitude(altitude);
+    }
+
+    /**
+     * Fix while stationary or stop locked
+     */
+    public void onStopped(long timeNanos){
+        long deltaNanos = delta(timeNanos);
+        total.addStopped(timeNanos, deltaNanos);
+        lap.addStopped(timeNanos, deltaNanos);
+        getSegment().addStopped(timeNanos, deltaNanos);
+    }
+
+    /**
+     * Fix after gps outage or first fix, time since previous fix isn't accounted
+     */
+    public void onGap(long timeNanos){
+        lastNanos = timeNanos;
+    }
+
+    /**
+     * Full stop detected, closes current segment when auto split is on,
+     * time spent at stop from now on is accounted into next segment
+     */
+    public void onStop(){
+        if(autoSplit && getSegment().getMovingNanos() > 0){
+            split();
+        }
+    }
+
+    private long delta(long timeNanos){
+        long deltaNanos = lastNanos == Long.MIN_VALUE ? 0 : Math.max(0, timeNanos - lastNanos);
+        lastNanos = timeNanos;
+        return deltaNanos;
+    }
+
+    /**
+     * Closes current segment and opens next one
+     */
+    public void split(){
+        SegmentStatistics next = newPart();
+        next.continueFrom(getSegment());
+        segments.add(next);
+    }
+
+    /**
+     * Closes current lap (and segment), returns closed lap
+     */
+    public SegmentStatistics lap(){
+        SegmentStatistics closed = lap;
+        laps.add(closed);
+        lap = newPart();
+        lap.continueFrom(closed);
+        split();
+        return closed;
+    }
+
+    /**
+     * Merges segment following given index into it, merging into open segment keeps it open
+     */
+    public void mergeSegments(int index){
+        if(index < 0 || index + 1 >= segments.size()){
+            throw new IndexOutOfBoundsException("No segment after " + index + " of " + segments.size());
+        }
+        segments.get(index).merge(segments.remove(index + 1));
+    }
+
+    /**
+     * Split segments on auto detected stops, default true
+     */
+    public void setAutoSplit(boolean autoSplit){
+        this.autoSplit = autoSplit;
+    }
+
+    public boolean isAutoSplit(){
+        return autoSplit;
+    }
+
+    public SegmentStatistics getTotal(){
+        return total;
+    }
+
+    /**
+     * Current (open) lap
+     */
+    public SegmentStatistics getLap(){
+        return lap;
+    }
+
+    /**
+     * Closed laps, oldest first
+     */
+    public List<SegmentStatistics> getLaps(){
+        return Collections.unmodifiableList(laps);
+    }
+
+    /**
+     * Current (open) segment
+     */
+    public SegmentStatistics getSegment(){
+        return segments.get(segments.size() - 1);
+    }
+
+    /**
+     * All segments oldest first, last one is open
+     */
+    public List<SegmentStatistics> getSegments(){
+        return Collections.unmodifiableList(segments);
+    }
+}
@@ -0,0 +1,158 @@
+package com.jakdor.gpsspeedometer.core;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Immutable trip history record: time span, bounding box and summary statistics of single track,
+ * stored in TripIndex so history can be listed and filtered without opening track files
+ */
+public final class TripSummary {
+
+    private final long startTime;
+    private final long endTime;
+    private final long recordCount;
+    private final double distance;
+    private final long movingTime;
+    private final double maxSpeed;
+    private final double elevationGain;
+    private final double elevationLoss;
+    private final double minLatitude;
+    private final double minLongitude;
+    private final double maxLatitude;
+    private final double maxLongitude;
+
+    /**
+     * @param startTime track start UTC ms, trip key
+     * @param endTime last record UTC ms
+     * @param distance m
+     * @param movingTime ms
+     * @param maxSpeed m/s
+     * @param elevationGain m
+     * @param elevationLoss m
+     */
+    public TripSummary(long startTime, long endTime, long recordCount, double distance, long movingTime,
+                       double maxSpeed, double elevationGain, double elevationLoss,
+                       double minLatitude, double minLongitude, double maxLatitude, double maxLongitude){
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.recordCount = recordCount;
+        this.distance = distance;
+        this.movingTime = movingTime;
+        this.maxSpeed = maxSpeed;
+        this.elevationGain = elevationGain;
+        this.elevationLoss = elevationLoss;
+        this.minLatitude = minLatitude;
+        this.minLongitude = minLongitude;
+        this.maxLatitude = maxLatitude;
+        this.maxLongitude = maxLongitude;
+    }
+
+    /**
+     * Summarizes recorded track (either format), single sequential pass;
+     * statistics computed from records (interval ending with recorded speed > 0 counts as moving)
+     * unless live trip statistics are given
+     * @param statistics whole trip statistics collected while recording, null if unavailable
+     */
+    public static TripSummary scan(File track, SegmentStatistics statistics) throws IOException {
+        TrackCursor reader = Tracks.open(track);
+        try {
+            SegmentStatistics scanned = new SegmentStatistics(new SpeedHistogram());
+            long endTime = reader.getStartTime();
+            long count = 0;
+            double minLatitude = 90, minLongitude = 180, maxLatitude = -90, maxLongitude = -180;
+            double lastLatitude = 0, lastLongitude = 0;
+
+            while (reader.next()){
+                double latitude = reader.getLatitude();
+                double longitude = reader.getLongitude();
+                minLatitude = Math.min(minLatitude, latitude);
+                maxLatitude = Math.max(maxLatitude, latitude);
+                minLongitude = Math.min(minLongitude, longitude);
+                maxLongitude = Math.max(maxLongitude, longitude);
+
+                if(count > 0 && statistics == null){
+                    long timeNanos = reader.getTime() * 1000000L;
+                    long deltaNanos = timeNanos - endTime * 1000000L;
+                    if(deltaNanos > 0) { //simplified tracks have long straight intervals
+                        if (reader.getSpeed() > 0) {
+                            scanned.addMoving(timeNanos, deltaNanos,
+                                    Geodesy.distance(lastLatitude, lastLongitude, latitude, longitude),
+                                    reader.getSpeed());
+                        } else {
+                            scanned.addStopped(timeNanos, deltaNanos);
+                        }
+                    }
+                }
+                scanned.addAltitude(reader.getAltitude());
+
+                lastLatitude = latitude;
+                lastLongitude = longitude;
+                endTime = reader.getTime();
+                ++count;
+            }
+
+            if(count == 0){
+                minLatitude = minLongitude = maxLatitude = maxLongitude = 0;
+            }
+            if(statistics == null){
+                statistics = scanned;
+            }
+            return new TripSummary(reader.getStartTime(), endTime, count, statistics.getDistance(),
+                    statistics.getMovingNanos() / 1000000L, statistics.getMaxSpeed(),
+                    statistics.getElevationGain(), statistics.getElevationLoss(),
+                    minLatitude, minLongitude, maxLatitude, maxLongitude);
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    public long getStartTime(){
+        return startTime;
+    }
+
+    public long getEndTime(){
+        return endTime;
+    }
+
+    public long getRecordCount(){
+        return recordCount;
+    }
+
+    public double getDistance(){
+        return distance;
+    }
+
+    public long getMovingTime(){
+        return movingTime;
+    }
+
+    public double getMaxSpeed(){
+        return maxSpeed;
+    }
+
+    public double getElevationGain(){
+        return elevationGain;
+    }
+
+    public double getElevationLoss(){
+        return elevationLoss;
+    }
+
+    public double getMinLatitude(){
+        return minLatitude;
+    }
+
+    public double getMinLongitude(){
+        return minLongitude;
+    }
+
+    public double getMaxLatitude(){
+        return maxLatitude;
+    }
+
+    public double getMaxLongitude(){
+        return maxLongitude;
+    }
+}
@@ -0,0 +1,224 @@
+package com.jakdor.gpsspeedometer.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Last trip state and last good fix, restored on launch (TripCalculator.restore) so first frame
+ * shows provisional reading instead of empty HUD while receiver is acquiring.
+ * Tiny fixed size binary file, little endian layout (80 bytes):
+ * - magic "GPSW" (int), version (short), flags (short, bit 0: fix present, bit 1: trip finished)
+ * - saved time UTC ms (long)
+ * - fix time UTC ms (long), latitude, longitude (double), altitude, accuracy m (float)
+ * - speed m/s (float), distance m (double), moving time ns (long)
+ * - track start time UTC ms (long), 0 if trip had no track
+ * - crc32 of preceding 76 bytes (int)
+ * Written to temporary file and renamed over old one, torn write never replaces last good state.
+ * State saved on clean shutdown is marked finished: that trip is closed and indexed, next launch
+ * restores only position; after process death mid trip (canResume) counters continue
+ * and the same track is appended to, so history keeps it as one trip.
+ */
+public final class WarmStart {
+
+    public static final String FILE_NAME = "warmstart.bin";
+    public static final long MAX_RESUME_AGE = 15 * 60 * 1000L; // ms, younger state continues trip counters
+    public static final long MAX_SPEED_AGE = 30 * 1000L; // ms, younger state shows saved speed
+
+    static final int MAGIC = 0x57535047; // "GPSW"
+    static final short VERSION = 2;
+    static final int SIZE = 80;
+    static final int PAYLOAD_SIZE = SIZE - 4;
+
+    private static final short FLAG_FIX = 1;
+    private static final short FLAG_FINISHED = 2;
+
+    private final long savedTime;
+    private final Fix fix;
+    private final double speed;
+    private final double distanceSum;
+    private final long timerNanos;
+    private final long trackStartTime;
+    private final boolean finished;
+
+    /**
+     * Trip in progress
+     */
+    public WarmStart(long savedTime, TripSnapshot snapshot){
+        this(savedTime, snapshot, 0, false);
+    }
+
+    /**
+     * @param savedTime UTC ms
+     * @param snapshot trip state to persist, fix may be null
+     * @param trackStartTime start time of trip track (UTC ms, names track file), 0 if none
+     * @param finished trip closed on clean shutdown, its counters are not continued
+     */
+    public WarmStart(long savedTime, TripSnapshot snapshot, long trackStartTime, boolean finished){
+        this(savedTime, snapshot.getFix(), snapshot.getSpeed(), snapshot.getDistanceSum(), snapshot.getTimerNanos(),
+                trackStartTime, finished);
+    }
+
+    private WarmStart(long savedTime, Fix fix, double speed, double distanceSum, long timerNanos, long trackStartTime,
+                      boolean finished){
+        this.savedTime = savedTime;
+        this.fix = fix;
+        this.speed = speed;
+        this.distanceSum = distanceSum;
+        this.timerNanos = timerNanos;
+        this.trackStartTime = trackStartTime;
+        this.finished = finished;
+    }
+
+    /**
+     * Loads saved state
+     * @return null if file doesn't exist
+     * @throws IOException on read error or corrupted file
+     */
+    public static WarmStart read(File file) throws IOException {
+        if(!file.isFile()){
+            return null;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            while (buffer.hasRemaining()){
+                if(channel.read(buffer) < 0){
+                    throw new IOException("Warm start state truncated");
+                }
+            }
+        }
+        finally {
+            randomAccessFile.close();
+        }
+        return decode(buffer);
+    }
+
+    /**
+     * Saves state, replaces previous file only after complete write
+     */
+    public void write(File file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        encode(buffer);
+        buffer.flip();
+
+        File temp = new File(file.getPath() + ".tmp");
+        RandomAccessFile randomAccessFile = new RandomAccessFile(temp, "rw");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            channel.truncate(0);
+            while (buffer.hasRemaining()){
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        finally {
+            randomAccessFile.close();
+        }
+        if(!temp.renameTo(file)){
+            throw new IOException("Unable to replace warm start state " + file);
+        }
+    }
+
+    void encode(ByteBuffer buffer){
+        int start = buffer.position();
+        buffer.putInt(MAGIC);
+        buffer.putShort(VERSION);
+        buffer.putShort((short) ((fix != null ? FLAG_FIX : 0) | (finished ? FLAG_FINISHED : 0)));
+        buffer.putLong(savedTime);
+        buffer.putLong(fix != null ? fix.getTime() : 0);
+        buffer.putDouble(fix != null ? fix.getLatitude() : 0);
+        buffer.putDouble(fix != null ? fix.getLongitude() : 0);
+        buffer.putFloat(fix != null ? (float) fix.getAltitude() : 0);
+        buffer.putFloat(fix != null ? fix.getAccuracy() : 0);
+        buffer.putFloat((float) speed);
+        buffer.putDouble(distanceSum);
+        buffer.putLong(timerNanos);
+        buffer.putLong(trackStartTime);
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), buffer.arrayOffset() + start, PAYLOAD_SIZE);
+        buffer.putInt((int) crc.getValue());
+    }
+
+    static WarmStart decode(ByteBuffer buffer) throws IOException {
+        if(buffer.getInt(0) != MAGIC || buffer.getShort(4) != VERSION){
+            throw new IOException("Not a supported warm start state");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), buffer.arrayOffset(), PAYLOAD_SIZE);
+        if((int) crc.getValue() != buffer.getInt(PAYLOAD_SIZE)){
+            throw new IOException("Warm start state corrupted");
+        }
+
+        short flags = buffer.getShort(6);
+        Fix fix = null;
+        if((flags & FLAG_FIX) != 0){
+            fix = new Fix(0, buffer.getLong(16), buffer.getDouble(24), buffer.getDouble(32),
+                    buffer.getFloat(40), buffer.getFloat(44));
+        }
+        return new WarmStart(buffer.getLong(8), fix, buffer.getFloat(48), buffer.getDouble(52), buffer.getLong(60),
+                buffer.getLong(68), (flags & FLAG_FINISHED) != 0);
+    }
+
+    /**
+     * UTC ms
+     */
+    public long getSavedTime(){
+        return savedTime;
+    }
+
+    /**
+     * Last accepted fix, null if trip had none; elapsed realtime is not persisted (0 after read)
+     */
+    public Fix getFix(){
+        return fix;
+    }
+
+    /**
+     * m/s
+     */
+    public double getSpeed(){
+        return speed;
+    }
+
+    /**
+     * m
+     */
+    public double getDistanceSum(){
+        return distanceSum;
+    }
+
+    public long getTimerNanos(){
+        return timerNanos;
+    }
+
+    /**
+     * UTC ms, 0 if trip had no track
+     */
+    public long getTrackStartTime(){
+        return trackStartTime;
+    }
+
+    /**
+     * Saved on clean shutdown, trip already closed
+     */
+    public boolean isFinished(){
+        return finished;
+    }
+
+    /**
+     * Unfinished trip younger than MAX_RESUME_AGE, its counters and track are continued
+     * @param time current UTC ms
+     */
+    public boolean canResume(long time){
+        long age = time - savedTime;
+        return !finished && age >= 0 && age <= MAX_RESUME_AGE;
+    }
+}
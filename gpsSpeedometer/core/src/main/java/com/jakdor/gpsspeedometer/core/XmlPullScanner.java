@@ -0,0 +1,255 @@
+package com.jakdor.gpsspeedometer.core;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Minimal streaming XML tokenizer for GPX/KML/OSM files, works the same on Android and plain JVM;
+ * no validation, namespaces are kept as name prefixes, skips declarations, comments and doctype
+ */
+public class XmlPullScanner {
+
+    public static final int END_DOCUMENT = 0;
+    public static final int START_TAG = 1;
+    public static final int END_TAG = 2;
+    public static final int TEXT = 3;
+
+    private final Reader reader;
+    private final char[] buffer = new char[8192];
+    private int position = 0;
+    private int limit = 0;
+    private long offset = 0; //chars consumed before buffer start
+
+    private final StringBuilder token = new StringBuilder();
+    private String name;
+    private String text;
+    private final List<String> attributeNames = new ArrayList<>();
+    private final List<String> attributeValues = new ArrayList<>();
+    private boolean pendingEndTag = false;
+
+    public XmlPullScanner(Reader reader){
+        this.reader = reader;
+    }
+
+    /**
+     * Advances to next token, self closing tags produce START_TAG followed by END_TAG
+     */
+    public int next() throws IOException {
+        if(pendingEndTag){
+            pendingEndTag = false;
+            attributeNames.clear();
+            attributeValues.clear();
+            return END_TAG;
+        }
+
+        while (true) {
+            int c = read();
+            if (c < 0) {
+                return END_DOCUMENT;
+            }
+
+            if (c != '<') {
+                token.setLength(0);
+                appendDecoded(c);
+                while ((c = peek()) >= 0 && c != '<') {
+                    appendDecoded(read());
+                }
+                text = token.toString();
+                if (text.trim().isEmpty()) {
+                    continue;
+                }
+                return TEXT;
+            }
+
+            c = read();
+            if (c == '?') {
+                skipPast("?>");
+            } else if (c == '!') {
+                if (peek() == '-') {
+                    skipPast("-->");
+                } else if (peek() == '[') {
+                    token.setLength(0);
+                    skipPast("[CDATA[");
+                    readUntil("]]>");
+                    text = token.toString();
+                    return TEXT;
+                } else {
+                    skipPast(">");
+                }
+            } else if (c == '/') {
+                token.setLength(0);
+                while ((c = read()) >= 0 && c != '>') {
+                    if (!Character.isWhitespace(c)) {
+                        token.append((char) c);
+                    }
+                }
+                name = token.toString();
+                attributeNames.clear();
+                attributeValues.clear();
+                return END_TAG;
+            } else {
+                readStartTag(c);
+                return START_TAG;
+            }
+        }
+    }
+
+    private void readStartTag(int c) throws IOException {
+        attributeNames.clear();
+        attributeValues.clear();
+
+        token.setLength(0);
+        while (c >= 0 && !Character.isWhitespace(c) && c != '>' && c != '/') {
+            token.append((char) c);
+            c = read();
+        }
+        name = token.toString();
+
+        while (c >= 0 && c != '>') {
+            if (c == '/') {
+                pendingEndTag = true;
+            } else if (!Character.isWhitespace(c)) {
+                token.setLength(0);
+                while (c >= 0 && c != '=' && !Character.isWhitespace(c)) {
+                    token.append((char) c);
+                    c = read();
+                }
+                String attributeName = token.toString();
+                while (c >= 0 && c != '"' && c != '\'') {
+                    c = read();
+                }
+                int quote = c;
+                token.setLength(0);
+                while ((c = read()) >= 0 && c != quote) {
+                    appendDecoded(c);
+                }
+                attributeNames.add(attributeName);
+                attributeValues.add(token.toString());
+            }
+            c = read();
+        }
+    }
+
+    private void appendDecoded(int c) throws IOException {
+        if(c != '&'){
+            token.append((char) c);
+            return;
+        }
+
+        long start = offset + position - 1;
+        StringBuilder entity = new StringBuilder();
+        while ((c = read()) >= 0 && c != ';' && c != '&' && c != '<' && !Character.isWhitespace(c)){
+            entity.append((char) c);
+        }
+        String value = entity.toString();
+        if(c != ';'){
+            throw new IOException("Unterminated entity at char " + start + ": &" + value);
+        }
+        switch (value){
+            case "amp": token.append('&'); break;
+            case "lt": token.append('<'); break;
+            case "gt": token.append('>'); break;
+            case "quot": token.append('"'); break;
+            case "apos": token.append('\''); break;
+            default:
+                if(value.startsWith("#")){
+                    token.appendCodePoint(parseCharacterReference(value, start));
+                }
+        }
+    }
+
+    private static int parseCharacterReference(String value, long start) throws IOException {
+        try {
+            int codePoint = value.startsWith("#x") ? Integer.parseInt(value.substring(2), 16)
+                    : Integer.parseInt(value.substring(1));
+            if(Character.isValidCodePoint(codePoint)){
+                return codePoint;
+            }
+        }
+        catch (NumberFormatException ignored){
+        }
+        throw new IOException("Malformed character reference at char " + start + ": &" + value + ";");
+    }
+
+    private void skipPast(String end) throws IOException {
+        int matched = 0;
+        int c;
+        while (matched < end.length() && (c = read()) >= 0){
+            matched = c == end.charAt(matched) ? matched + 1 : (c == end.charAt(0) ? 1 : 0);
+        }
+    }
+
+    private void readUntil(String end) throws IOException {
+        int c;
+        while ((c = read()) >= 0){
+            token.append((char) c);
+            if(token.length() >= end.length()
+                    && token.lastIndexOf(end) == token.length() - end.length()){
+                token.setLength(token.length() - end.length());
+                return;
+            }
+        }
+    }
+
+    private int read() throws IOException {
+        if(position == limit && !fill()){
+            return -1;
+        }
+        return buffer[position++];
+    }
+
+    private int peek() throws IOException {
+        if(position == limit && !fill()){
+            return -1;
+        }
+        return buffer[position];
+    }
+
+    private boolean fill() throws IOException {
+        offset += limit;
+        limit = reader.read(buffer, 0, buffer.length);
+        position = 0;
+        if(limit <= 0){
+            limit = 0;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Tag name of current START_TAG / END_TAG, with namespace prefix if present
+     */
+    public String getName(){
+        return name;
+    }
+
+    /**
+     * Tag name without namespace prefix
+     */
+    public String getLocalName(){
+        int colon = name.indexOf(':');
+        return colon < 0 ? name : name.substring(colon + 1);
+    }
+
+    public String getText(){
+        return text;
+    }
+
+    /**
+     * Attribute of current START_TAG, null if absent
+     */
+    public String getAttribute(String attributeName){
+        for(int i = 0; i < attributeNames.size(); ++i){
+            if(attributeNames.get(i).equals(attributeName)){
+                return attributeValues.get(i);
+            }
+        }
+        return null;
+    }
+
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,113 @@
+package com.jakdor.gpsspeedometer.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * AccelerometerRingBuffer incremental statistics tests, checked against full window rescan
+ */
+public class AccelerometerRingBufferTest {
+
+    private static final long MS = 1000000L;
+
+    @Test
+    public void incrementalStatsMatchRescan() throws Exception {
+        Random random = new Random(7);
+        AccelerometerRingBuffer buffer = new AccelerometerRingBuffer(256, 500 * MS);
+
+        long time = 0;
+        for(int i = 0; i < 100000; ++i){
+            time += (5 + random.nextInt(20)) * MS;
+            buffer.add(time, (float) random.nextGaussian(), (float) random.nextGaussian(),
+                    9.81f + (float) random.nextGaussian());
+
+            int size = buffer.size();
+            double sum = 0, sqSum = 0, xSum = 0, xSqSum = 0;
+            for(int age = 0; age < size; ++age){
+                assertTrue(buffer.getTimestamp(age) >= time - 500 * MS);
+                sum += buffer.getMagnitude(age);
+                xSum += buffer.getX(age);
+            }
+            double mean = sum / size, xMean = xSum / size;
+            for(int age = 0; age < size; ++age){
+                double d = buffer.getMagnitude(age) - mean;
+                sqSum += d * d;
+                d = buffer.getX(age) - xMean;
+                xSqSum += d * d;
+            }
+
+            assertEquals(mean, buffer.getMean(), 1e-6);
+            assertEquals(size < 2 ? 0 : sqSum / size, buffer.getVariance(), 1e-4);
+            assertTrue(size < 2 || buffer.getVectorVariance() >= xSqSum / size - 1e-4);
+        }
+    }
+
+    @Test
+    public void steadyWindowResyncsAfterLargeSamples() throws Exception {
+        Random random = new Random(1);
+        AccelerometerRingBuffer buffer = new AccelerometerRingBuffer(64, 10000 * MS);
+        long time = 0;
+        for(int i = 0; i < 64; ++i){ //spike: cancellation error left in sums once evicted
+            buffer.add(time += 10 * MS, 0, 0, 1e9f + i * 1e5f);
+        }
+        for(int i = 0; i < 10 * 64; ++i){ //window never empties
+            buffer.add(time += 10 * MS, 0, 0, 9.81f + (float) random.nextGaussian());
+        }
+
+        double sum = 0, sqSum = 0;
+        for(int age = 0; age < 64; ++age){
+            sum += buffer.getMagnitude(age);
+        }
+        double mean = sum / 64;
+        for(int age = 0; age < 64; ++age){
+            double d = buffer.getMagnitude(age) - mean;
+            sqSum += d * d;
+        }
+        assertEquals(mean, buffer.getMean(), 1e-6);
+        assertEquals(sqSum / 64, buffer.getVariance(), 1e-4);
+    }
+
+    @Test
+    public void capacityBoundsWindow() throws Exception {
+        AccelerometerRingBuffer buffer = new AccelerometerRingBuffer(100, 10000 * MS);
+        assertEquals(128, buffer.capacity());
+
+        for(int i = 0; i < 1000; ++i){
+            buffer.add(i * MS, 0, 0, i);
+        }
+        assertEquals(128, buffer.size());
+        assertEquals(1000, buffer.getSampleCount());
+        assertEquals(999, buffer.getZ(0), 0);
+        assertEquals(872, buffer.getZ(127), 0);
+    }
+
+    @Test
+    public void jerkOfLinearRamp() throws Exception {
+        AccelerometerRingBuffer buffer = new AccelerometerRingBuffer(64, 1000 * MS);
+        for(int i = 0; i < 200; ++i){
+            buffer.add(i * 10 * MS, 0, 0, 10 + i * 0.05f); //5 m/s^3
+        }
+        assertEquals(5, buffer.getJerk(), 0.01);
+    }
+
+    @Test
+    public void detector_restingVersusMoving() throws Exception {
+        Random random = new Random(3);
+        AccelerationDetector detector = new AccelerationDetector();
+        long time = 0;
+        for(int i = 0; i < 200; ++i){
+            time += 5 * MS;
+            detector.update(time, 0.02f * (float) random.nextGaussian(), 0, 9.81f);
+        }
+        assertFalse(detector.isAccelerating());
+
+        for(int i = 0; i < 200; ++i){
+            time += 5 * MS;
+            detector.update(time, 1.5f * (float) random.nextGaussian(), 0, 9.81f);
+        }
+        assertTrue(detector.isAccelerating());
+    }
+}
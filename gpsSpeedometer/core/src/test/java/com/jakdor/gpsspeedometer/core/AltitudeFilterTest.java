@@ -0,0 +1,123 @@
+package com.jakdor.gpsspeedometer.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Barometer and gps altitude fusion, slope distance in TripCalculator
+ */
+public class AltitudeFilterTest {
+
+    private static final long SECOND = 1000000000L;
+    private static final int PRESSURE_RATE = 25; // Hz
+
+    private static float pressure(double altitude, double drift, Random random){
+        return (float) (AltitudeFilter.STANDARD_PRESSURE * Math.pow(1 - altitude / 44330.0, 5.255)
+                + drift + random.nextGaussian() * 0.02);
+    }
+
+    @Test
+    public void pressureToAltitude_standardAtmosphere(){
+        assertEquals(0, AltitudeFilter.pressureToAltitude(AltitudeFilter.STANDARD_PRESSURE), 1e-9);
+        assertEquals(110.9, AltitudeFilter.pressureToAltitude(1000), 0.1);
+        assertEquals(5, AltitudeFilter.slopeDistance(3, 4), 1e-12);
+    }
+
+    @Test
+    public void fused_followsHillDespiteBarometerDriftAndGpsNoise(){
+        Random random = new Random(3);
+        AltitudeFilter filter = new AltitudeFilter();
+        double previousTrue = 0;
+        double previousFused = Double.NaN;
+        double maxStepError = 0;
+
+        assertTrue(Double.isNaN(filter.onGpsAltitude(0, 100, 4)));
+
+        for(int second = 0; second <= 600; ++second){
+            double truth = 100 + 40 * Math.sin(second / 60.0);
+            double drift = -0.5 * second / 600.0; // weather, about 4 m of barometric altitude
+            for(int i = 0; i < PRESSURE_RATE; ++i){
+                double t = second + i / (double) PRESSURE_RATE - 1;
+                filter.onPressure((long) (t * SECOND) + SECOND, pressure(100 + 40 * Math.sin(t / 60.0), drift, random));
+            }
+            double fused = filter.onGpsAltitude(second * SECOND + SECOND,
+                    truth + random.nextGaussian() * 6, 4);
+
+            if(second >= 300){
+                assertEquals(truth, fused, 2.0);
+                maxStepError = Math.max(maxStepError, Math.abs((fused - previousFused) - (truth - previousTrue)));
+            }
+            previousTrue = truth;
+            previousFused = fused;
+        }
+        assertTrue("vertical step error " + maxStepError, maxStepError < 0.5);
+        assertTrue(filter.getOffsetAccuracy() < 2);
+    }
+
+    @Test
+    public void gpsAltitudeMissing_keepsOffset(){
+        AltitudeFilter filter = new AltitudeFilter();
+        filter.onPressure(0, 1000);
+        double first = filter.onGpsAltitude(SECOND, 150, 4);
+        assertEquals(150, first, 1e-6);
+        filter.onPressure(2 * SECOND, 1000);
+        assertEquals(150, filter.onGpsAltitude(3 * SECOND, 0, 4), 1e-6);
+    }
+
+    @Test
+    public void barometerStale_noFusedAltitude(){
+        AltitudeFilter filter = new AltitudeFilter();
+        filter.onPressure(0, 1000);
+        assertFalse(Double.isNaN(filter.onGpsAltitude(SECOND, 150, 4)));
+        assertTrue(Double.isNaN(filter.onGpsAltitude(10 * SECOND, 150, 4)));
+    }
+
+    /**
+     * 15% grade up then down at 10 m/s horizontal, 1 Hz fixes with noisy gps altitude
+     */
+    private static double drive(TripCalculator tripCalculator, boolean barometer){
+        Random random = new Random(5);
+        double metersPerDegree = Geodesy.metersPerDegreeLatitude(51.1);
+        double slope = 0;
+        double altitude = 200;
+        for(int second = 0; second <= 200; ++second){
+            double previousAltitude = altitude;
+            altitude = 200 + (second <= 100 ? 1.5 * second : 150 - 1.5 * (second - 100));
+            if(second > 0){
+                slope += AltitudeFilter.slopeDistance(10, altitude - previousAltitude);
+            }
+            if(barometer){
+                for(int i = 0; i < PRESSURE_RATE; ++i){
+                    double t = second - 1 + i / (double) PRESSURE_RATE;
+                    double sampleAltitude = previousAltitude + (altitude - previousAltitude) * i / PRESSURE_RATE;
+                    tripCalculator.onPressure((long) (t * SECOND) + SECOND, pressure(sampleAltitude, 0, random));
+                }
+            }
+            tripCalculator.onFix(new Fix(second * SECOND + SECOND, 0, 51.1 + second * 10 / metersPerDegree, 17.03,
+                    altitude + random.nextGaussian() * 6, 4, 10, 0.5f));
+        }
+        return slope;
+    }
+
+    @Test
+    public void tripCalculator_slopeDistance(){
+        TripCalculator tripCalculator = new TripCalculator();
+        double slope = drive(tripCalculator, true);
+
+        assertFalse(Double.isNaN(tripCalculator.getAltitude()));
+        assertEquals(slope, tripCalculator.getDistanceSum(false), slope * 0.002);
+        assertEquals(150, tripCalculator.getStatistics().getTotal().getElevationGain(), SegmentStatistics.ELEVATION_HYSTERESIS * 3);
+    }
+
+    @Test
+    public void tripCalculator_withoutBarometerHorizontal(){
+        TripCalculator tripCalculator = new TripCalculator();
+        drive(tripCalculator, false);
+
+        assertTrue(Double.isNaN(tripCalculator.getAltitude()));
+        assertEquals(2000, tripCalculator.getDistanceSum(false), 2000 * 0.002);
+    }
+}
@@ -0,0 +1,184 @@
+package com.jakdor.gpsspeedometer.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * CompactTrackRecorder / CompactTrackReader round trip, recovery, size and replay tests
+ */
+public class CompactTrackTest {
+
+    private static final long START = 1500000000000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Fix fix(int i){
+        return new Fix(i * 1000000000L, START + i * 1000L,
+                51.1 + i * 1e-5, 17.03 - i * 1e-5, 120 + i * 0.1, 4.5f);
+    }
+
+    private static void write(File file, int from, int to) throws Exception {
+        CompactTrackRecorder recorder = CompactTrackRecorder.open(file, START, 0);
+        for(int i = from; i < to; ++i){
+            recorder.append(fix(i), i * 0.25f);
+        }
+        recorder.close();
+    }
+
+    @Test
+    public void roundTrip_quantizedValuesAndSeek() throws Exception {
+        File file = folder.newFile("trip.trk");
+        write(file, 0, 1000);
+
+        TrackCursor cursor = Tracks.open(file);
+        assertTrue(cursor instanceof CompactTrackReader);
+        assertEquals(1000, cursor.getRecordCount());
+        assertEquals(START, cursor.getStartTime());
+        assertEquals(0, cursor.getTolerance(), 0);
+        for(int i = 0; i < 1000; ++i){
+            assertTrue(cursor.next());
+            Fix expected = fix(i);
+            assertEquals(expected.getTime(), cursor.getTime());
+            assertEquals(expected.getLatitude(), cursor.getLatitude(), 1e-7);
+            assertEquals(expected.getLongitude(), cursor.getLongitude(), 1e-7);
+            assertEquals(expected.getAltitude(), cursor.getAltitude(), 0.05);
+            assertEquals(4.5f, cursor.getAccuracy(), 0.05);
+            assertEquals(i * 0.25f, cursor.getSpeed(), 0.005);
+        }
+        assertFalse(cursor.next());
+
+        cursor.seek(700);
+        assertTrue(cursor.next());
+        assertEquals(700, cursor.getIndex());
+        assertEquals(fix(700).getTime(), cursor.getTime());
+        assertTrue(cursor.next());
+        assertEquals(fix(701).getTime(), cursor.getTime());
+        cursor.close();
+    }
+
+    @Test
+    public void reopen_appendsAfterPartialBlock() throws Exception {
+        File file = folder.newFile("trip.trk");
+        write(file, 0, 100); //second block partial
+        write(file, 100, 150);
+
+        TrackCursor cursor = Tracks.open(file);
+        assertEquals(150, cursor.getRecordCount());
+        for(int i = 0; i < 150; ++i){
+            assertTrue(cursor.next());
+            assertEquals(fix(i).getTime(), cursor.getTime());
+        }
+        cursor.close();
+    }
+
+    @Test
+    public void tornTail_droppedOnOpen() throws Exception {
+        File file = folder.newFile("trip.trk");
+        write(file, 0, 200);
+
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.setLength(file.length() - 3);
+        randomAccessFile.close();
+
+        CompactTrackReader reader = new CompactTrackReader(file);
+        assertEquals(181, reader.getRecordCount()); //blocks closed by sync every 60 fixes, last (19 records) torn
+        reader.close();
+
+        CompactTrackRecorder recorder = CompactTrackRecorder.open(file, START, 0);
+        assertEquals(181, recorder.getRecordCount());
+        assertEquals(1, recorder.getDroppedBlockCount());
+        recorder.append(fix(181), 0);
+        recorder.close();
+        assertEquals(182, new CompactTrackReader(file).getRecordCount());
+    }
+
+    @Test
+    public void syncedBlock_neverRewritten() throws Exception {
+        File file = folder.newFile("trip.trk");
+        CompactTrackRecorder recorder = CompactTrackRecorder.open(file, START, 0);
+        for(int i = 0; i <= 60; ++i){ //synced at SYNC_INTERVAL
+            recorder.append(fix(i), 0);
+        }
+        byte[] synced = Files.readAllBytes(file.toPath());
+        for(int i = 61; i < 90; ++i){ //open block flushed in place
+            recorder.append(fix(i), 0);
+        }
+
+        byte[] written = Files.readAllBytes(file.toPath());
+        assertArrayEquals(synced, Arrays.copyOf(written, synced.length));
+
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw"); //torn rewrite of open block
+        randomAccessFile.setLength(written.length - 3);
+        randomAccessFile.close();
+        CompactTrackReader reader = new CompactTrackReader(file);
+        assertEquals(61, reader.getRecordCount());
+        reader.close();
+        recorder.close();
+    }
+
+    @Test
+    public void corruptedBlock_skipped() throws Exception {
+        File file = folder.newFile("trip.trk");
+        write(file, 0, 200);
+
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.seek(16 + 10);
+        randomAccessFile.write(0x55);
+        randomAccessFile.close();
+
+        CompactTrackReader reader = new CompactTrackReader(file);
+        assertEquals(139, reader.getRecordCount()); //first block, fixes 0-60, skipped
+        assertEquals(1, reader.getCorruptBlockCount());
+        assertTrue(reader.next());
+        assertEquals(fix(61).getTime(), reader.getTime());
+    }
+
+    @Test
+    public void cityDrive_tenTimesSmaller() throws Exception {
+        List<Fix> drive = TrackSimplifierTest.drive(3600, 2);
+        File raw = folder.newFile("raw.trk");
+        TrackRecorder recorder = TrackRecorder.open(raw, START);
+        for(Fix fix : drive){
+            recorder.append(fix, 10);
+        }
+        recorder.close();
+
+        File compact = new File(folder.getRoot(), "compact.trk");
+        long stored = Tracks.compact(raw, compact, TrackSimplifier.DEFAULT_TOLERANCE);
+        assertTrue("ratio " + raw.length() / compact.length(), raw.length() > compact.length() * 10);
+
+        CompactTrackReader reader = new CompactTrackReader(compact);
+        assertEquals(stored, reader.getRecordCount());
+        assertEquals(TrackSimplifier.DEFAULT_TOLERANCE, reader.getTolerance(), 0);
+        reader.close();
+    }
+
+    @Test
+    public void simplifiedReplay_resampledToFixRate() throws Exception {
+        List<Fix> drive = TrackSimplifierTest.drive(1800, 3);
+        File raw = folder.newFile("raw.trk");
+        TrackRecorder recorder = TrackRecorder.open(raw, START);
+        for(Fix fix : drive){
+            recorder.append(fix, 10);
+        }
+        recorder.close();
+        File compact = new File(folder.getRoot(), "compact.trk");
+        Tracks.compact(raw, compact, TrackSimplifier.DEFAULT_TOLERANCE);
+
+        ReplayResult rawResult = new ReplayEngine(ReplayEngine.Mode.AS_FAST_AS_POSSIBLE).run(new TrackReplaySource(raw), new TripCalculator());
+        ReplayResult compactResult = new ReplayEngine(ReplayEngine.Mode.AS_FAST_AS_POSSIBLE).run(new TrackReplaySource(compact), new TripCalculator());
+
+        assertEquals(rawResult.getFixCount(), compactResult.getFixCount());
+        assertEquals(rawResult.getDistance(), compactResult.getDistance(), rawResult.getDistance() * 0.02);
+    }
+}
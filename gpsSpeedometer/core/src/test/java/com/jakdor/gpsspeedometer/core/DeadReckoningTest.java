@@ -0,0 +1,228 @@
+package com.jakdor.gpsspeedometer.core;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Dead reckoning through gps outage on synthetic sensor log: car with phone in tilted, rotated mount
+ * drives, turns and changes speed inside 70 s tunnel
+ */
+public class DeadReckoningTest {
+
+    private static final long SECOND = 1000000000L;
+    private static final int RATE = 50; // Hz, accelerometer, gyroscope and magnetometer
+    private static final int DURATION = 200; // s
+    private static final int TUNNEL_START = 90;
+    private static final int TUNNEL_END = 160;
+    private static final double LATITUDE = 51.1;
+    private static final double LONGITUDE = 17.03;
+
+    private final double[] trueSpeed = new double[DURATION + 1]; // at every full second
+    private double trueDistance;
+
+    /**
+     * Vehicle longitudinal acceleration m/s^2
+     */
+    private static double acceleration(double t){
+        if(t < 10) return 0;
+        if(t < 25) return 1.2;
+        if(t < 60) return 0.6 * Math.sin(2 * Math.PI * (t - 25) / 12);
+        if(t < 90) return 0;
+        if(t < 100) return -0.4;
+        if(t < 130) return 0;
+        if(t < 140) return 0.5;
+        return 0.3 * Math.sin(2 * Math.PI * (t - 140) / 15);
+    }
+
+    /**
+     * Vehicle yaw rate, rad/s counter clockwise
+     */
+    private static double yawRate(double t){
+        if(t >= 60 && t < 80) return -Math.PI / 2 / 20; // right turn
+        if(t >= 100 && t < 130) return Math.PI / 4 / 30; // left curve in tunnel
+        return 0;
+    }
+
+    /**
+     * Recorded log, fixes missing inside tunnel if requested
+     */
+    private String driveCsv(boolean tunnel){
+        Random random = new Random(7);
+        StringBuilder csv = new StringBuilder("# tunnel drive\n");
+
+        //phone mount: vehicle (forward, left, up) to phone axes
+        double[][] mount = multiply(rotationX(Math.toRadians(-25)), rotationZ(Math.toRadians(40)));
+        double[] accelerometerBias = {0.04, -0.03, 0.02};
+
+        double speed = 0;
+        double heading = 0; // clockwise from north
+        double north = 0;
+        double east = 0;
+        trueDistance = 0;
+        double dt = 1.0 / RATE;
+        double[] vehicle = new double[3];
+        double[] phone = new double[3];
+
+        for(int i = 0; i <= DURATION * RATE; ++i){
+            double t = i * dt;
+            long nanos = i * SECOND / RATE;
+            double a = acceleration(t);
+            double r = yawRate(t);
+
+            vehicle[0] = a;
+            vehicle[1] = speed * r;
+            vehicle[2] = TripCalculator.GRAVITY_EARTH;
+            rotate(mount, vehicle, phone);
+            csv.append(String.format(Locale.ENGLISH, "acc,%d,%.4f,%.4f,%.4f\n", nanos,
+                    phone[0] + accelerometerBias[0] + random.nextGaussian() * 0.15,
+                    phone[1] + accelerometerBias[1] + random.nextGaussian() * 0.15,
+                    phone[2] + accelerometerBias[2] + random.nextGaussian() * 0.15));
+
+            vehicle[0] = 0;
+            vehicle[1] = 0;
+            vehicle[2] = r;
+            rotate(mount, vehicle, phone);
+            csv.append(String.format(Locale.ENGLISH, "gyro,%d,%.5f,%.5f,%.5f\n", nanos,
+                    phone[0] + random.nextGaussian() * 0.002, phone[1] + random.nextGaussian() * 0.002,
+                    phone[2] + random.nextGaussian() * 0.002));
+
+            vehicle[0] = 20 * Math.cos(heading);
+            vehicle[1] = 20 * Math.sin(heading);
+            vehicle[2] = -40;
+            rotate(mount, vehicle, phone);
+            csv.append(String.format(Locale.ENGLISH, "mag,%d,%.3f,%.3f,%.3f\n", nanos,
+                    phone[0] + random.nextGaussian() * 0.5, phone[1] + random.nextGaussian() * 0.5,
+                    phone[2] + random.nextGaussian() * 0.5));
+
+            if(i % RATE == 0){
+                int second = i / RATE;
+                trueSpeed[second] = speed;
+                boolean covered = tunnel && second > TUNNEL_START && second < TUNNEL_END;
+                if(!covered){
+                    double latitude = LATITUDE + (north + random.nextGaussian() * 0.5)
+                            / Geodesy.metersPerDegreeLatitude(LATITUDE);
+                    double longitude = LONGITUDE + (east + random.nextGaussian() * 0.5)
+                            / Geodesy.metersPerDegreeLongitude(LATITUDE);
+                    csv.append(String.format(Locale.ENGLISH, "fix,%d,%d,%.8f,%.8f,%.1f,%.1f,%.2f,%.1f\n",
+                            nanos, 1500000000000L + second * 1000L, latitude, longitude, 120.0, 3.0,
+                            Math.max(0, speed + random.nextGaussian() * 0.2), 0.5));
+                }
+            }
+
+            double step = speed * dt;
+            trueDistance += step;
+            north += step * Math.cos(heading);
+            east += step * Math.sin(heading);
+            speed = Math.max(0, speed + a * dt);
+            heading -= r * dt;
+        }
+        return csv.toString();
+    }
+
+    private static void replay(String csv, TripCalculator tripCalculator, long probeNanos, TripSnapshot[] probe)
+            throws Exception {
+        CsvReplaySource source = new CsvReplaySource(new StringReader(csv));
+        ReplayEvent event = new ReplayEvent();
+        while (source.next(event)){
+            if(probe != null && probe[0] == null && event.getTimestampNanos() >= probeNanos){
+                probe[0] = tripCalculator.getSnapshot();
+            }
+            switch (event.getType()){
+                case ReplayEvent.FIX:
+                    tripCalculator.onFix(event.getFix());
+                    break;
+                case ReplayEvent.ACCELEROMETER:
+                    tripCalculator.onAccelerometer(event.getTimestampNanos(), event.getX(), event.getY(), event.getZ());
+                    break;
+                case ReplayEvent.GYROSCOPE:
+                    tripCalculator.onGyroscope(event.getTimestampNanos(), event.getX(), event.getY(), event.getZ());
+                    break;
+                case ReplayEvent.MAGNETOMETER:
+                    tripCalculator.onMagnetometer(event.getTimestampNanos(), event.getX(), event.getY(), event.getZ());
+                    break;
+            }
+        }
+        source.close();
+    }
+
+    @Test
+    public void outage_speedTrackedAndDistanceReconciled() throws Exception {
+        TripCalculator reference = new TripCalculator();
+        replay(driveCsv(false), reference, 0, null);
+
+        TripCalculator tripCalculator = new TripCalculator();
+        TripSnapshot[] probe = new TripSnapshot[1];
+        replay(driveCsv(true), tripCalculator, 125 * SECOND, probe);
+
+        assertTrue(tripCalculator.getDeadReckoning().isForwardLearned());
+        assertTrue(probe[0].isDeadReckoning());
+        assertEquals(trueSpeed[125], probe[0].getSpeed(), 2.5);
+        assertTrue(probe[0].getDistanceSum() > reference.getDistanceSum(false) * 0.5);
+
+        assertFalse(tripCalculator.getSnapshot().isDeadReckoning());
+        assertEquals(reference.getDistanceSum(false), tripCalculator.getDistanceSum(false), trueDistance * 0.02);
+        assertEquals(trueDistance, tripCalculator.getDistanceSum(false), trueDistance * 0.03);
+        assertEquals(reference.getTimerNanos(), tripCalculator.getTimerNanos(), 2 * SECOND);
+    }
+
+    @Test
+    public void disabled_gapRestartLosesOutage() throws Exception {
+        TripCalculator tripCalculator = new TripCalculator();
+        tripCalculator.setDeadReckoningEnabled(false);
+        replay(driveCsv(true), tripCalculator, 125 * SECOND, null);
+
+        double tunnel = 0;
+        for(int i = TUNNEL_START; i < TUNNEL_END; ++i){
+            tunnel += (trueSpeed[i] + trueSpeed[i + 1]) / 2;
+        }
+        assertEquals(trueDistance - tunnel, tripCalculator.getDistanceSum(false), trueDistance * 0.03);
+        assertFalse(tripCalculator.getSnapshot().isDeadReckoning());
+    }
+
+    @Test
+    public void stopped_noDeadReckoning(){
+        TripCalculator tripCalculator = new TripCalculator();
+        tripCalculator.onFix(new Fix(SECOND, 0, LATITUDE, LONGITUDE, 0, 3, 0, 0.5f));
+        tripCalculator.onFix(new Fix(2 * SECOND, 0, LATITUDE, LONGITUDE, 0, 3, 0, 0.5f));
+        for(int i = 0; i < 10 * RATE; ++i){
+            tripCalculator.onAccelerometer(2 * SECOND + i * SECOND / RATE, 0, 0, 9.81f);
+        }
+        assertFalse(tripCalculator.getDeadReckoning().isActive());
+        assertFalse(tripCalculator.getSnapshot().isDeadReckoning());
+    }
+
+    private static double[][] rotationX(double angle){
+        double c = Math.cos(angle);
+        double s = Math.sin(angle);
+        return new double[][]{{1, 0, 0}, {0, c, -s}, {0, s, c}};
+    }
+
+    private static double[][] rotationZ(double angle){
+        double c = Math.cos(angle);
+        double s = Math.sin(angle);
+        return new double[][]{{c, -s, 0}, {s, c, 0}, {0, 0, 1}};
+    }
+
+    private static double[][] multiply(double[][] a, double[][] b){
+        double[][] result = new double[3][3];
+        for(int i = 0; i < 3; ++i){
+            for(int j = 0; j < 3; ++j){
+                for(int k = 0; k < 3; ++k){
+                    result[i][j] += a[i][k] * b[k][j];
+                }
+            }
+        }
+        return result;
+    }
+
+    private static void rotate(double[][] matrix, double[] vector, double[] result){
+        for(int i = 0; i < 3; ++i){
+            result[i] = matrix[i][0] * vector[0] + matrix[i][1] * vector[1] + matrix[i][2] * vector[2];
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.jakdor.gpsspeedometer.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Fix gating: outlier rejection, jitter, time gaps and axis aligned movement
+ */
+public class DefaultFixGateTest {
+
+    private static final long SECOND = 1000000000L;
+    private static final double LATITUDE_METER = 1 / Geodesy.distance(51.1, 17.03, 52.1, 17.03);
+    private static final double LONGITUDE_METER = 1 / Geodesy.distance(51.1, 17.03, 51.1, 18.03);
+
+    private static Fix fix(int second, double north, double east, float accuracy){
+        return new Fix(second * SECOND, second * 1000L, 51.1 + north * LATITUDE_METER,
+                17.03 + east * LONGITUDE_METER, 120, accuracy);
+    }
+
+    @Test
+    public void dueNorthAndDueEast_countDistance() throws Exception {
+        TripCalculator north = new TripCalculator();
+        TripCalculator east = new TripCalculator();
+        for(int i = 0; i < 30; ++i){
+            north.onFix(fix(i, i * 10, 0, 4));
+            east.onFix(fix(i, 0, i * 10, 4));
+        }
+
+        assertEquals(290, north.getDistanceSum(false), 0.5);
+        assertEquals(290, east.getDistanceSum(false), 0.5);
+        assertEquals(10, east.getSpeed(), 0.5);
+    }
+
+    @Test
+    public void multipathJump_rejected() throws Exception {
+        TripCalculator tripCalculator = new TripCalculator();
+        for(int i = 0; i < 30; ++i){
+            double offset = i == 15 ? 150 : 0; // single reflected fix
+            tripCalculator.onFix(fix(i, i * 10 + offset, 0, 5));
+        }
+
+        DefaultFixGate gate = (DefaultFixGate) tripCalculator.getFixGate();
+        assertEquals(1, gate.getCount(DefaultFixGate.Reason.ACCELERATION));
+        assertEquals(1, tripCalculator.getRejectedFixCount());
+        assertEquals(290, tripCalculator.getDistanceSum(false), 0.5);
+    }
+
+    @Test
+    public void poorAccuracyAndSatellites_rejected() throws Exception {
+        DefaultFixGate gate = new DefaultFixGate();
+        assertEquals(FixGate.Verdict.REJECT, gate.check(fix(0, 0, 0, 80), null, 0));
+        assertEquals(FixGate.Verdict.REJECT, gate.check(new Fix(0, 0, 51.1, 17.03, 120, 5, Float.NaN, 0, 3), null, 0));
+        assertEquals(FixGate.Verdict.RESTART, gate.check(new Fix(0, 0, 51.1, 17.03, 120, 5, Float.NaN, 0, 7), null, 0));
+
+        assertEquals(1, gate.getCount(DefaultFixGate.Reason.ACCURACY));
+        assertEquals(1, gate.getCount(DefaultFixGate.Reason.SATELLITES));
+    }
+
+    @Test
+    public void staleAndGap() throws Exception {
+        DefaultFixGate gate = new DefaultFixGate();
+        Fix first = fix(10, 0, 0, 5);
+        assertEquals(FixGate.Verdict.REJECT, gate.check(fix(10, 10, 0, 5), first, 10));
+        assertEquals(FixGate.Verdict.RESTART, gate.check(fix(60, 500, 0, 5), first, 500));
+
+        assertEquals(1, gate.getCount(DefaultFixGate.Reason.STALE));
+        assertEquals(1, gate.getCount(DefaultFixGate.Reason.TIME_GAP));
+    }
+
+    @Test
+    public void standingStill_noDistance() throws Exception {
+        TripCalculator tripCalculator = new TripCalculator();
+        Random random = new Random(3);
+        for(int i = 0; i < 300; ++i){
+            tripCalculator.onFix(fix(i, random.nextGaussian() * 0.5, random.nextGaussian() * 0.5, 6));
+        }
+
+        assertEquals(0, tripCalculator.getDistanceSum(false), 1.0);
+        assertEquals(0, tripCalculator.getSpeed(), 1e-9);
+    }
+
+    @Test
+    public void dopplerMovement_notJitter() throws Exception {
+        DefaultFixGate gate = new DefaultFixGate();
+        Fix first = fix(0, 0, 0, 10);
+        Fix slow = new Fix(SECOND, 1000, 51.1 + 1.2 * LATITUDE_METER, 17.03, 120, 10, 1.2f, 0.2f, 8);
+        assertEquals(FixGate.Verdict.ACCEPT, gate.check(slow, first, 1.2));
+    }
+}
@@ -0,0 +1,108 @@
+package com.jakdor.gpsspeedometer.core;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Duty cycle scheduler: state switching, wake-up, and policy simulation over drive-stop-drive trip
+ */
+public class DutyCycleSchedulerTest {
+
+    private static final long SECOND = 1000000000L;
+
+    private static TripSnapshot moving(double speed){
+        return new TripSnapshot(null, speed, 0, 0, false, false);
+    }
+
+    @Test
+    public void upgradeImmediate_downgradeAfterDwell() throws Exception {
+        DutyCycleScheduler scheduler = new DutyCycleScheduler();
+        final int[] changes = new int[1];
+        scheduler.setListener(new DutyCycleScheduler.Listener() {
+            @Override
+            public void onPolicyChanged(MotionState state, PowerPolicy policy) {
+                ++changes[0];
+            }
+        });
+
+        scheduler.onFix(0, moving(1.2));
+        assertEquals(MotionState.DRIVING, scheduler.getState());
+        for(int i = 1; i <= 15; ++i){
+            scheduler.onFix(i * SECOND, moving(1.2));
+        }
+        assertEquals(MotionState.WALKING, scheduler.getState());
+        assertEquals(3000, scheduler.getPolicy().getGpsInterval());
+
+        scheduler.onFix(16 * SECOND, moving(12));
+        assertEquals(MotionState.DRIVING, scheduler.getState());
+        assertEquals(PowerPolicy.SENSOR_DELAY_FULL, scheduler.getPolicy().getSensorDelay());
+        assertEquals(2, changes[0]);
+    }
+
+    @Test
+    public void defaults_keepDeliveringFixesAtStandstill() throws Exception {
+        for(PowerPolicy policy : PowerPolicy.defaults()){
+            assertEquals(0, policy.getGpsMinDistance(), 0);
+        }
+    }
+
+    @Test
+    public void accelerometerWakesFromStationary() throws Exception {
+        DutyCycleScheduler scheduler = new DutyCycleScheduler();
+        TripSnapshot stopped = new TripSnapshot(null, 0, 0, 0, false, true);
+        for(int i = 0; i <= 15; ++i){
+            scheduler.onFix(i * SECOND, stopped);
+        }
+        assertEquals(MotionState.STATIONARY, scheduler.getState());
+
+        scheduler.onAccelerometer(false);
+        assertEquals(MotionState.STATIONARY, scheduler.getState());
+        scheduler.onAccelerometer(true);
+        assertEquals(MotionState.DRIVING, scheduler.getState());
+    }
+
+    /**
+     * 90s drive at 15 m/s, 180s parked, 90s drive; 1Hz fixes, 50Hz accelerometer
+     */
+    private static String driveStopDrive(){
+        Random random = new Random(5);
+        StringBuilder csv = new StringBuilder();
+        double latitudeMeter = 1 / Geodesy.distance(51.1, 17.03, 52.1, 17.03);
+        double position = 0;
+        for(int i = 0; i < 360; ++i){
+            boolean parked = i >= 90 && i < 270;
+            for(int j = 0; j < 50; ++j){
+                double noise = parked ? 0.02 : 0.6;
+                csv.append(String.format(Locale.ENGLISH, "acc,%d,%f,%f,%f\n", i * SECOND + j * SECOND / 50,
+                        random.nextGaussian() * noise, random.nextGaussian() * noise, 9.81));
+            }
+            position += parked ? 0 : 15;
+            double north = position + random.nextGaussian() * 0.3;
+            csv.append(String.format(Locale.ENGLISH, "fix,%d,%d,%.8f,%.8f,%.1f,%.1f\n", (i + 1) * SECOND,
+                    1500000000000L + i * 1000L, 51.1 + north * latitudeMeter, 17.03, 120.0, 5.0));
+        }
+        return csv.toString();
+    }
+
+    @Test
+    public void simulator_savesFixesAndSamplesOnStops() throws Exception {
+        String trip = driveStopDrive();
+        PowerPolicySimulator simulator = new PowerPolicySimulator();
+        PowerPolicySimulator.Result baseline = simulator.run(new CsvReplaySource(new StringReader(trip)), false);
+        PowerPolicySimulator.Result adaptive = simulator.run(new CsvReplaySource(new StringReader(trip)), true);
+
+        assertEquals(360, baseline.getFixCount());
+        assertEquals(18000, baseline.getSensorEventCount());
+        assertTrue("fixes " + adaptive.getFixCount(), adaptive.getFixCount() < baseline.getFixCount() * 0.7);
+        assertTrue("samples " + adaptive.getSensorEventCount(),
+                adaptive.getSensorEventCount() < baseline.getSensorEventCount() * 0.7);
+        assertTrue(adaptive.getEstimatedCpuNanos() < baseline.getEstimatedCpuNanos());
+        assertTrue(adaptive.getStateNanos(MotionState.STATIONARY) > 120 * SECOND);
+        assertEquals(baseline.getDistance(), adaptive.getDistance(), baseline.getDistance() * 0.03);
+    }
+}
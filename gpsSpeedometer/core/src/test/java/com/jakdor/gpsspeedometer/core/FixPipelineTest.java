@@ -0,0 +1,95 @@
+package com.jakdor.gpsspeedometer.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * FixPipeline delivery tests
+ */
+public class FixPipelineTest {
+
+    private static Fix fix(long nanos){
+        return new Fix(nanos, 0, 51.1, 17.03, 120, 5);
+    }
+
+    @Test
+    public void deliversEveryFixOnceInOrder() throws Exception {
+        final List<Long> received = new ArrayList<>();
+        final CountDownLatch latch = new CountDownLatch(100);
+        FixPipeline fixPipeline = new FixPipeline(new FixListener() {
+            @Override
+            public void onFix(Fix fix) {
+                received.add(fix.getElapsedRealtimeNanos());
+                latch.countDown();
+            }
+        }, 128);
+        fixPipeline.start();
+
+        for(long i = 0; i < 100; ++i){
+            fixPipeline.onFix(fix(i));
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        fixPipeline.stop();
+        for(int i = 0; i < 100; ++i){
+            assertEquals(i, (long) received.get(i));
+        }
+        assertEquals(0, fixPipeline.getDroppedCount());
+    }
+
+    @Test
+    public void fullQueueDropsOldestWithoutBlocking() throws Exception {
+        final List<Long> received = new ArrayList<>();
+        final CountDownLatch latch = new CountDownLatch(4);
+        FixPipeline fixPipeline = new FixPipeline(new FixListener() {
+            @Override
+            public void onFix(Fix fix) {
+                received.add(fix.getElapsedRealtimeNanos());
+                latch.countDown();
+            }
+        }, 4);
+
+        for(long i = 0; i < 10; ++i){ //consumer not started yet
+            fixPipeline.onFix(fix(i));
+        }
+        fixPipeline.start();
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        fixPipeline.stop();
+        assertEquals(6, fixPipeline.getDroppedCount());
+        assertEquals(6L, (long) received.get(0));
+        assertEquals(9L, (long) received.get(3));
+    }
+
+    @Test
+    public void stopWaitsForFixInProgressWithoutInterrupt() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final boolean[] finished = new boolean[2]; // finished, interrupted
+        FixPipeline fixPipeline = new FixPipeline(new FixListener() {
+            @Override
+            public void onFix(Fix fix) {
+                started.countDown();
+                try {
+                    Thread.sleep(200);
+                }
+                catch (InterruptedException e){
+                    finished[1] = true;
+                }
+                finished[0] = true;
+            }
+        });
+        fixPipeline.start();
+        fixPipeline.onFix(fix(1));
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        fixPipeline.stop();
+        assertTrue(finished[0]);
+        assertFalse(finished[1]);
+    }
+}
@@ -0,0 +1,56 @@
+package com.jakdor.gpsspeedometer.core;
+
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Fixed point HUD formatting against String.format
+ */
+public class FixedPointFormatTest {
+
+    private static String format(double value, int decimals){
+        char[] buffer = new char[32];
+        int length = FixedPointFormat.format(value, decimals, buffer, 0);
+        return new String(buffer, 0, length);
+    }
+
+    @Test
+    public void format_matchesStringFormat() throws Exception {
+        Random random = new Random(11);
+        for(int i = 0; i < 10000; ++i){
+            double value = Math.round(random.nextDouble() * 3000000) / 1000.0 + 0.0001; //away from ties
+            for(int decimals = 0; decimals <= 3; ++decimals){
+                assertEquals(String.format(Locale.ENGLISH, "%." + decimals + "f", value), format(value, decimals));
+            }
+        }
+    }
+
+    @Test
+    public void format_edgeCases() throws Exception {
+        assertEquals("0", format(0, 0));
+        assertEquals("0.0", format(-0.01, 1));
+        assertEquals("-1.5", format(-1.5, 1));
+        assertEquals("100", format(99.5, 0));
+        assertEquals("--", format(Double.NaN, 0));
+        assertEquals("--.--", format(Double.POSITIVE_INFINITY, 2));
+    }
+
+    @Test
+    public void formatDuration() throws Exception {
+        char[] buffer = new char[16];
+        assertEquals("0:00:00", new String(buffer, 0, FixedPointFormat.formatDuration(0, buffer, 0)));
+        assertEquals("1:01:09", new String(buffer, 0, FixedPointFormat.formatDuration(3669, buffer, 0)));
+        assertEquals("27:46:40", new String(buffer, 0, FixedPointFormat.formatDuration(100000, buffer, 0)));
+    }
+
+    @Test
+    public void format_atOffset() throws Exception {
+        char[] buffer = "km: ______".toCharArray();
+        int length = FixedPointFormat.format(12.345, 2, buffer, 4);
+        assertEquals("km: 12.35", new String(buffer, 0, 4 + length));
+    }
+}
@@ -0,0 +1,69 @@
+package com.jakdor.gpsspeedometer.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Geodesy accuracy contract tests, run on plain JVM
+ */
+public class GeodesyTest {
+
+    @Test
+    public void vincenty_matchesReferenceGeodesic() throws Exception {
+        // Flinders Peak -> Buninyong, reference value from Vincenty's paper (GRS-80 ~ WGS-84)
+        double distance = Geodesy.distanceVincenty(-37.95103342, 144.42486789, -37.65282114, 143.92649554);
+        assertEquals(54972.271, distance, 0.01);
+    }
+
+    @Test
+    public void distance_coincidentPoints_isZero() throws Exception {
+        assertEquals(0, Geodesy.distance(51.1, 17.03, 51.1, 17.03), 0);
+        assertEquals(0, Geodesy.distanceVincenty(51.1, 17.03, 51.1, 17.03), 0);
+    }
+
+    @Test
+    public void distance_dueNorthAndDueEastHops() throws Exception {
+        double north = Geodesy.distance(51.1, 17.03, 51.10001, 17.03);
+        double east = Geodesy.distance(51.1, 17.03, 51.1, 17.03001);
+        assertEquals(Geodesy.distanceVincenty(51.1, 17.03, 51.10001, 17.03), north, 1e-4);
+        assertEquals(Geodesy.distanceVincenty(51.1, 17.03, 51.1, 17.03001), east, 1e-4);
+    }
+
+    @Test
+    public void distance_crossingAntimeridian() throws Exception {
+        double distance = Geodesy.distance(0, 179.9999, 0, -179.9999);
+        assertEquals(Geodesy.distanceVincenty(0, 179.9999, 0, 179.9999 + 0.0002), distance, 1e-3);
+        assertTrue(distance < 30);
+    }
+
+    @Test
+    public void distance_fastPathWithinContract() throws Exception {
+        Random random = new Random(42);
+        for(int i = 0; i < 100000; ++i){
+            double lat = (random.nextDouble() * 2 - 1) * 80;
+            double lon = (random.nextDouble() * 2 - 1) * 180;
+            double lat2 = lat + (random.nextDouble() * 2 - 1) * 0.03;
+            double lon2 = lon + (random.nextDouble() * 2 - 1) * 0.03;
+
+            double reference = Geodesy.distanceVincenty(lat, lon, lat2, lon2);
+            double output = Geodesy.distance(lat, lon, lat2, lon2);
+            assertEquals(reference, output, reference * Geodesy.FAST_PATH_MAX_RELATIVE_ERROR + 1e-6);
+        }
+    }
+
+    @Test
+    public void distance_longSpanUsesVincenty() throws Exception {
+        double reference = Geodesy.distanceVincenty(51.1, 17.03, 52.23, 21.01);
+        assertEquals(reference, Geodesy.distance(51.1, 17.03, 52.23, 21.01), 0);
+    }
+
+    @Test
+    public void distance_antipodalFallsBackToHaversine() throws Exception {
+        double output = Geodesy.distance(0, 0, 0.5, 179.7);
+        assertFalse(Double.isNaN(output));
+        assertEquals(Geodesy.distanceHaversine(0, 0, 0.5, 179.7), output, 0.01 * output);
+    }
+}
@@ -0,0 +1,199 @@
+package com.jakdor.gpsspeedometer.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * RoadGraph OSM loading / lookup and MapMatcher snapping tests on generated street grid
+ */
+public class MapMatcherTest {
+
+    private static final double LATITUDE = 51.1;
+    private static final double LONGITUDE = 17.03;
+    private static final int SIZE = 11; // streets each way
+    private static final double BLOCK = 100; // m
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final double LATITUDE_METER = 1 / Geodesy.metersPerDegreeLatitude(LATITUDE);
+    private static final double LONGITUDE_METER = 1 / Geodesy.metersPerDegreeLongitude(LATITUDE);
+
+    /**
+     * Manhattan grid of residential streets plus ways that aren't roads:
+     * building outline, road under construction, and detached street 5 km north
+     */
+    static String gridOsm(){
+        StringBuilder osm = new StringBuilder("<?xml version='1.0' encoding='UTF-8'?>\n<osm version=\"0.6\">\n");
+        for(int row = 0; row < SIZE; ++row){
+            for(int column = 0; column < SIZE; ++column){
+                node(osm, row * SIZE + column + 1, row * BLOCK, column * BLOCK);
+            }
+        }
+        node(osm, 1000, 5000, 0);
+        node(osm, 1001, 5000, 200);
+
+        int way = 1;
+        for(int i = 0; i < SIZE; ++i){
+            osm.append("<way id=\"").append(way++).append("\">");
+            for(int j = 0; j < SIZE; ++j){
+                osm.append("<nd ref=\"").append(i * SIZE + j + 1).append("\"/>");
+            }
+            osm.append("<tag k=\"highway\" v=\"residential\"/></way>\n");
+            osm.append("<way id=\"").append(way++).append("\">");
+            for(int j = 0; j < SIZE; ++j){
+                osm.append("<nd ref=\"").append(j * SIZE + i + 1).append("\"/>");
+            }
+            osm.append("<tag k=\"highway\" v=\"residential\"/></way>\n");
+        }
+        osm.append("<way id=\"100\"><nd ref=\"1\"/><nd ref=\"13\"/><tag k=\"building\" v=\"yes\"/></way>\n");
+        osm.append("<way id=\"101\"><nd ref=\"1\"/><nd ref=\"13\"/><tag k=\"highway\" v=\"construction\"/></way>\n");
+        osm.append("<way id=\"102\"><nd ref=\"1000\"/><nd ref=\"1001\"/><nd ref=\"999999\"/>")
+                .append("<tag k=\"highway\" v=\"service\"/></way>\n");
+        return osm.append("</osm>\n").toString();
+    }
+
+    private static void node(StringBuilder osm, long id, double north, double east){
+        osm.append("<node id=\"").append(id).append("\" lat=\"").append(LATITUDE + north * LATITUDE_METER)
+                .append("\" lon=\"").append(LONGITUDE + east * LONGITUDE_METER).append("\"/>\n");
+    }
+
+    private static RoadGraph grid() throws Exception {
+        return RoadGraph.loadOsm(new StringReader(gridOsm()));
+    }
+
+    private static Fix fix(int second, double north, double east, float accuracy){
+        return new Fix(second * 1000000000L, 1500000000000L + second * 1000L,
+                LATITUDE + north * LATITUDE_METER, LONGITUDE + east * LONGITUDE_METER, 120, accuracy);
+    }
+
+    @Test
+    public void load_highwaysOnly() throws Exception {
+        File file = folder.newFile("grid.osm");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        writer.write(gridOsm());
+        writer.close();
+
+        RoadGraph graph = RoadGraph.loadOsm(file);
+        assertEquals(SIZE * SIZE + 2, graph.getNodeCount());
+        assertEquals(2 * SIZE * (SIZE - 1) + 1, graph.getSegmentCount());
+        for(int s = 0; s < graph.getSegmentCount(); ++s){
+            double length = graph.getSegmentLength(s);
+            assertTrue(Math.abs(length - BLOCK) < 0.5 || Math.abs(length - 200) < 0.5);
+        }
+    }
+
+    @Test
+    public void findSegments_nearestFirstWithinRadius() throws Exception {
+        RoadGraph graph = grid();
+        int[] segments = new int[4];
+        double[] distances = new double[4];
+        double x = graph.toX(LONGITUDE + 30 * LONGITUDE_METER);
+        double y = graph.toY(LATITUDE + 210 * LATITUDE_METER);
+
+        int count = graph.findSegments(x, y, 45, segments, distances, 4);
+        assertEquals(3, count); // street at 200 m north, avenue at 0 m east both sides of crossing
+        assertEquals(10, distances[0], 0.1);
+        assertEquals(30, distances[1], 0.1);
+        assertEquals(Math.hypot(30, 10), distances[2], 0.1);
+        assertEquals(30, graph.projectOffset(segments[0], x, y), 0.1);
+
+        assertEquals(1, graph.findSegments(x, y, 45, segments, distances, 1));
+        assertEquals(10, distances[0], 0.1);
+        assertEquals(0, graph.findSegments(graph.toX(LONGITUDE + 2500 * LONGITUDE_METER), y, 45,
+                segments, distances, 4));
+    }
+
+    @Test
+    public void lateralMultipath_snappedDistanceAlongRoad() throws Exception {
+        RoadGraph graph = grid();
+        Random random = new Random(7);
+        TripCalculator raw = new TripCalculator();
+        TripCalculator snapped = new TripCalculator();
+        snapped.setMapMatcher(new MapMatcher(graph));
+
+        //east along street at 300 m north, 10 m/s, multipath pushes fixes up to 15 m off the street
+        double truth = 0;
+        for(int i = 0; i <= 90; ++i){
+            double offset = random.nextGaussian() * 6;
+            Fix fix = fix(i, 300 + offset, 50 + i * 10, 8);
+            raw.onFix(fix);
+            snapped.onFix(fix);
+            truth = i * 10;
+        }
+
+        assertEquals(truth, snapped.getDistanceSum(false), truth * 0.01);
+        assertTrue(raw.getDistanceSum(false) > truth * 1.1);
+        assertEquals(10, snapped.getSpeed(), 0.5);
+        assertEquals(0, snapped.getMapMatcher().getBreakCount());
+    }
+
+    @Test
+    public void turns_followConnectedStreets() throws Exception {
+        MapMatcher matcher = new MapMatcher(grid());
+        TripCalculator tripCalculator = new TripCalculator();
+        tripCalculator.setMapMatcher(matcher);
+        Random random = new Random(3);
+
+        //east on street 200 m north, left turn north on avenue 500 m east, 8 m/s
+        int second = 0;
+        for(double east = 100; east <= 500; east += 8, ++second){
+            tripCalculator.onFix(fix(second, 200 + random.nextGaussian() * 4, east, 6));
+        }
+        for(double north = 208; north <= 700; north += 8, ++second){
+            tripCalculator.onFix(fix(second, north, 500 + random.nextGaussian() * 4, 6));
+        }
+
+        assertEquals(400 + 500, tripCalculator.getDistanceSum(false), 900 * 0.02);
+        assertEquals(500, (matcher.getMatchedLongitude() - LONGITUDE) / LONGITUDE_METER, 0.5);
+        assertEquals(0, matcher.getBreakCount());
+    }
+
+    @Test
+    public void unreachableRoad_breaksLatticeAndFallsBackToStraightDistance() throws Exception {
+        MapMatcher matcher = new MapMatcher(grid());
+        assertTrue(matcher.match(fix(0, 0, 50, 5)));
+        matcher.markReference();
+        assertFalse(matcher.match(fix(1, 2500, 50, 5))); // nothing in reach, skipped
+        assertEquals(1, matcher.getSkippedCount());
+        assertTrue(matcher.match(fix(2, 5000, 100, 5))); // detached street, no route
+        assertEquals(1, matcher.getBreakCount());
+        assertTrue(Double.isNaN(matcher.getReferenceDistance()));
+        assertEquals(0, matcher.getPathDistance(), 0);
+
+        matcher.markReference();
+        assertTrue(matcher.match(fix(3, 5000, 110, 5)));
+        assertEquals(10, matcher.getReferenceDistance(), 0.1);
+    }
+
+    @Test
+    public void matchedPath_boundedWindowOnRoad() throws Exception {
+        MapMatcher matcher = new MapMatcher(grid());
+        Random random = new Random(5);
+        assertTrue(matcher.match(fix(0, 400, 20, 5)));
+        matcher.markReference();
+        for(int i = 1; i <= MapMatcher.WINDOW * 2; ++i){
+            assertTrue(matcher.match(fix(i, 400 + random.nextGaussian() * 4, 20 + i * 5, 5)));
+        }
+        assertEquals(MapMatcher.WINDOW * 10, matcher.getReferenceDistance(), 1);
+
+        double[] latitudes = new double[MapMatcher.WINDOW * 2];
+        double[] longitudes = new double[MapMatcher.WINDOW * 2];
+        assertEquals(MapMatcher.WINDOW, matcher.getMatchedPath(latitudes, longitudes));
+        for(int i = 0; i < MapMatcher.WINDOW; ++i){
+            int fix = MapMatcher.WINDOW + 1 + i;
+            assertEquals(400, (latitudes[i] - LATITUDE) / LATITUDE_METER, 0.01);
+            assertEquals(20 + fix * 5, (longitudes[i] - LONGITUDE) / LONGITUDE_METER, 0.5);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.jakdor.gpsspeedometer.core;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+/**
+ * Metrics registry, lock-free counters and LatencyHistogram bucket precision / percentiles
+ */
+public class MetricsTest {
+
+    @Test
+    public void histogram_bucketsContiguousWithRelativePrecision() throws Exception {
+        int previous = -1;
+        for(long value = 0; value < 1000000; value += 1 + value / 100){
+            int index = LatencyHistogram.index(value);
+            assertTrue(index >= previous);
+            assertTrue(LatencyHistogram.highestEquivalent(index) >= value);
+            assertTrue(LatencyHistogram.highestEquivalent(index) - value <= Math.max(1, value / 16));
+            if(index > 0){
+                assertTrue(LatencyHistogram.highestEquivalent(index - 1) < value);
+            }
+            previous = index;
+        }
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.highestEquivalent(LatencyHistogram.index(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void histogram_percentiles() throws Exception {
+        Metrics metrics = new Metrics();
+        metrics.setEnabled(true);
+        LatencyHistogram histogram = metrics.histogram("latency");
+        for(long value = 1; value <= 10000; ++value){
+            histogram.record(value * 1000);
+        }
+
+        assertEquals(10000, histogram.getCount());
+        assertEquals(10000000, histogram.getMax());
+        assertEquals(5000500, histogram.getMean(), 1);
+        assertEquals(5000000, histogram.getValueAtPercentile(50), 5000000 / 16);
+        assertEquals(9900000, histogram.getValueAtPercentile(99), 9900000 / 16);
+        assertEquals(10000000, histogram.getValueAtPercentile(100));
+        assertSame(histogram, metrics.histogram("latency"));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+    }
+
+    @Test
+    public void disabled_recordsNothing() throws Exception {
+        Metrics metrics = new Metrics();
+        MetricCounter counter = metrics.counter("events");
+        LatencyHistogram histogram = metrics.histogram("latency");
+
+        counter.increment();
+        histogram.record(100);
+        long start = metrics.startTime();
+        assertEquals(0, start);
+        histogram.recordSince(start);
+        assertEquals(0, counter.get());
+        assertEquals(0, histogram.getCount());
+
+        metrics.setEnabled(true);
+        counter.add(2);
+        histogram.recordSince(metrics.startTime());
+        assertEquals(2, counter.get());
+        assertEquals(1, histogram.getCount());
+    }
+
+    @Test
+    public void concurrentRecording_noLostUpdates() throws Exception {
+        final Metrics metrics = new Metrics();
+        metrics.setEnabled(true);
+        final MetricCounter counter = metrics.counter("events");
+        final LatencyHistogram histogram = metrics.histogram("latency");
+
+        Thread[] threads = new Thread[4];
+        for(int t = 0; t < threads.length; ++t){
+            final int offset = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for(int i = 0; i < 100000; ++i){
+                        counter.increment();
+                        histogram.record(offset * 100000 + i);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for(Thread thread : threads){
+            thread.join();
+        }
+
+        assertEquals(400000, counter.get());
+        assertEquals(400000, histogram.getCount());
+        assertEquals(399999, histogram.getMax());
+    }
+
+    @Test
+    public void snapshot_listsAllMetrics() throws Exception {
+        Metrics metrics = new Metrics();
+        metrics.setEnabled(true);
+        metrics.counter(Metrics.SENSOR_EVENTS).add(50);
+        metrics.histogram(Metrics.STAGE_TRIP).record(85000);
+        metrics.gauge(Metrics.TIME_TO_FIRST_FIX, new Metrics.Gauge() {
+            @Override
+            public long get() {
+                return 12345;
+            }
+        });
+        assertEquals(12345, metrics.getGauge(Metrics.TIME_TO_FIRST_FIX));
+        assertEquals(-1, metrics.getGauge(Metrics.GC_COUNT));
+
+        StringWriter writer = new StringWriter();
+        metrics.writeSnapshot(writer);
+        String snapshot = writer.toString();
+        assertTrue(snapshot.startsWith("# metrics"));
+        assertTrue(snapshot.contains("counter sensor.events 50 "));
+        assertTrue(snapshot.contains("gauge gps.ttff.ms 12345\n"));
+        assertTrue(snapshot.contains("histogram stage.trip count 1 mean 85.0 "));
+
+        metrics.gauge(Metrics.TIME_TO_FIRST_FIX, null);
+        assertEquals(-1, metrics.getGauge(Metrics.TIME_TO_FIRST_FIX));
+    }
+}
@@ -0,0 +1,155 @@
+package com.jakdor.gpsspeedometer.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Local HTTP telemetry receiver for tests: accepts batch POSTs on loopback, decodes and keeps their records,
+ * drops duplicate sequences; can answer 503 to simulate backend outage or 400 to refuse batches.
+ * One request per connection
+ */
+class MockTelemetryServer implements Runnable {
+
+    private final ServerSocket serverSocket;
+    private final Thread thread;
+    private final List<long[]> records = new ArrayList<>();
+    private final List<Long> sequences = new ArrayList<>();
+    private volatile boolean failing = false;
+    private int rejectCount = 0;
+    private int requestCount = 0;
+    private long bodyBytes = 0;
+
+    MockTelemetryServer() throws IOException {
+        serverSocket = new ServerSocket(0, 16, InetAddress.getByName("127.0.0.1"));
+        thread = new Thread(this, "MockTelemetryServer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    URL getUrl() throws IOException {
+        return new URL("http", "127.0.0.1", serverSocket.getLocalPort(), "/telemetry?vehicle=test");
+    }
+
+    void setFailing(boolean failing){
+        this.failing = failing;
+    }
+
+    /**
+     * Next count requests are answered 400, their batches discarded
+     */
+    synchronized void rejectNext(int count){
+        rejectCount = count;
+    }
+
+    /**
+     * Received records in arrival order, TelemetryBatch.FIELDS values each
+     */
+    synchronized List<long[]> getRecords(){
+        return new ArrayList<>(records);
+    }
+
+    synchronized List<Long> getSequences(){
+        return new ArrayList<>(sequences);
+    }
+
+    synchronized int getRequestCount(){
+        return requestCount;
+    }
+
+    synchronized long getBodyBytes(){
+        return bodyBytes;
+    }
+
+    void close() throws IOException {
+        serverSocket.close();
+    }
+
+    @Override
+    public void run() {
+        while (!serverSocket.isClosed()){
+            try {
+                Socket socket = serverSocket.accept();
+                try {
+                    handle(socket);
+                }
+                finally {
+                    socket.close();
+                }
+            }
+            catch (IOException ignored){
+            }
+        }
+    }
+
+    private void handle(Socket socket) throws IOException {
+        InputStream input = socket.getInputStream();
+        int contentLength = 0;
+        String line;
+        while (!(line = readLine(input)).isEmpty()){
+            int colon = line.indexOf(':');
+            if(colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Content-Length")){
+                contentLength = Integer.parseInt(line.substring(colon + 1).trim());
+            }
+        }
+        byte[] body = new byte[contentLength];
+        int read = 0;
+        while (read < contentLength){
+            int count = input.read(body, read, contentLength - read);
+            if(count < 0){
+                throw new IOException("Request body truncated");
+            }
+            read += count;
+        }
+
+        int status = 200;
+        synchronized (this){
+            ++requestCount;
+            if(failing){
+                status = 503;
+            }
+            else if(rejectCount > 0){
+                --rejectCount;
+                status = 400;
+            }
+            else {
+                long[] decoded = new long[TelemetryBatch.MAX_RECORDS * TelemetryBatch.FIELDS];
+                int count = TelemetryBatch.decode(body, 0, body.length, decoded);
+                long sequence = TelemetryBatch.getSequence(body, 0);
+                if(!sequences.contains(sequence)){
+                    sequences.add(sequence);
+                    bodyBytes += body.length;
+                    for(int i = 0; i < count; ++i){
+                        long[] record = new long[TelemetryBatch.FIELDS];
+                        System.arraycopy(decoded, i * TelemetryBatch.FIELDS, record, 0, TelemetryBatch.FIELDS);
+                        records.add(record);
+                    }
+                }
+            }
+        }
+
+        OutputStream output = socket.getOutputStream();
+        String reason = status == 200 ? " OK" : status == 400 ? " Bad Request" : " Service Unavailable";
+        output.write(("HTTP/1.1 " + status + reason
+                + "\r\nContent-Length: 0\r\nConnection: close\r\n\r\n").getBytes("US-ASCII"));
+        output.flush();
+    }
+
+    private static String readLine(InputStream input) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = input.read()) >= 0 && b != '\n'){
+            if(b != '\r'){
+                line.write(b);
+            }
+        }
+        return line.toString("US-ASCII");
+    }
+}
@@ -0,0 +1,199 @@
+package com.jakdor.gpsspeedometer.core;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * NMEA parser tests: field decoding, checksum, streaming across buffers, replay
+ */
+public class NmeaParserTest {
+
+    private static final String GGA = "$GPGGA,123519,4807.038,N,01131.000,E,1,08,0.9,545.4,M,46.9,M,,*47";
+    private static final String RMC = "$GPRMC,123519,A,4807.038,N,01131.000,E,022.4,084.4,230394,003.1,W*6A";
+
+    private static class Recorder implements NmeaListener {
+        long timeOfDay = -1, date = -1;
+        double latitude, longitude, altitude;
+        int quality, satellites, fixType, satellitesUsed, satellitesInView, maxSnr;
+        float hdop, speed, course, vtgSpeed, pdop;
+        boolean valid;
+        int gga, rmc, vtg, gsa, gsv;
+
+        @Override
+        public void onGga(long timeOfDay, double latitude, double longitude, int quality, int satellites,
+                          float hdop, double altitude) {
+            ++gga;
+            this.timeOfDay = timeOfDay;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.quality = quality;
+            this.satellites = satellites;
+            this.hdop = hdop;
+            this.altitude = altitude;
+        }
+
+        @Override
+        public void onRmc(long timeOfDay, boolean valid, double latitude, double longitude, float speed,
+                          float course, long date) {
+            ++rmc;
+            this.timeOfDay = timeOfDay;
+            this.valid = valid;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.speed = speed;
+            this.course = course;
+            this.date = date;
+        }
+
+        @Override
+        public void onVtg(float course, float speed) {
+            ++vtg;
+            this.vtgSpeed = speed;
+        }
+
+        @Override
+        public void onGsa(int fixType, int satellitesUsed, float pdop, float hdop, float vdop) {
+            ++gsa;
+            this.fixType = fixType;
+            this.satellitesUsed = satellitesUsed;
+            this.pdop = pdop;
+        }
+
+        @Override
+        public void onGsv(int satellitesInView, int maxSnr) {
+            ++gsv;
+            this.satellitesInView = satellitesInView;
+            this.maxSnr = maxSnr;
+        }
+    }
+
+    private static String withChecksum(String body){
+        int checksum = 0;
+        for(int i = 0; i < body.length(); ++i){
+            checksum ^= body.charAt(i);
+        }
+        return String.format(Locale.ENGLISH, "$%s*%02X", body, checksum);
+    }
+
+    @Test
+    public void gga_fields() throws Exception {
+        Recorder recorder = new Recorder();
+        assertTrue(new NmeaParser(recorder).parse(GGA));
+
+        assertEquals((12 * 3600 + 35 * 60 + 19) * 1000L, recorder.timeOfDay);
+        assertEquals(48 + 7.038 / 60, recorder.latitude, 1e-9);
+        assertEquals(11 + 31.0 / 60, recorder.longitude, 1e-9);
+        assertEquals(1, recorder.quality);
+        assertEquals(8, recorder.satellites);
+        assertEquals(0.9f, recorder.hdop, 1e-6);
+        assertEquals(545.4, recorder.altitude, 1e-9);
+    }
+
+    @Test
+    public void rmc_dopplerSpeedAndDate() throws Exception {
+        Recorder recorder = new Recorder();
+        assertTrue(new NmeaParser(recorder).parse(RMC + "\r\n"));
+
+        assertTrue(recorder.valid);
+        assertEquals(22.4 * 0.514444, recorder.speed, 1e-4);
+        assertEquals(84.4f, recorder.course, 1e-4);
+        assertEquals(8847, recorder.date); // 1994-03-23
+    }
+
+    @Test
+    public void southWestAndOtherTalkers() throws Exception {
+        Recorder recorder = new Recorder();
+        NmeaParser parser = new NmeaParser(recorder);
+        assertTrue(parser.parse(withChecksum("GNRMC,000001.50,V,3352.1234,S,15112.5000,W,,,010120,,")));
+
+        assertFalse(recorder.valid);
+        assertEquals(1500, recorder.timeOfDay);
+        assertEquals(-(33 + 52.1234 / 60), recorder.latitude, 1e-9);
+        assertEquals(-(151 + 12.5 / 60), recorder.longitude, 1e-9);
+        assertTrue(Float.isNaN(recorder.speed));
+        assertEquals(18262, recorder.date); // 2020-01-01
+    }
+
+    @Test
+    public void vtgGsaGsv() throws Exception {
+        Recorder recorder = new Recorder();
+        NmeaParser parser = new NmeaParser(recorder);
+        assertTrue(parser.parse(withChecksum("GPVTG,054.7,T,034.4,M,005.5,N,010.2,K")));
+        assertTrue(parser.parse(withChecksum("GPGSA,A,3,04,05,,09,12,,,24,,,,,2.5,1.3,2.1")));
+        assertTrue(parser.parse(withChecksum("GPGSV,2,1,08,01,40,083,46,02,17,308,41,12,07,344,39,14,22,228,45")));
+        assertEquals(0, recorder.gsv); // incomplete group
+        assertTrue(parser.parse(withChecksum("GPGSV,2,2,08,15,11,020,,18,61,241,48,22,50,170,,24,12,000,30")));
+
+        assertEquals(10.2f / 3.6f, recorder.vtgSpeed, 1e-5);
+        assertEquals(3, recorder.fixType);
+        assertEquals(5, recorder.satellitesUsed);
+        assertEquals(2.5f, recorder.pdop, 1e-6);
+        assertEquals(1, recorder.gsv);
+        assertEquals(8, recorder.satellitesInView);
+        assertEquals(48, recorder.maxSnr);
+    }
+
+    @Test
+    public void badChecksum_rejected() throws Exception {
+        Recorder recorder = new Recorder();
+        NmeaParser parser = new NmeaParser(recorder);
+        assertFalse(parser.parse(GGA.replace("545.4", "545.5")));
+        assertFalse(parser.parse("$GP"));
+        assertFalse(parser.parse(withChecksum("PGRME,15.0,M,45.0,M,25.0,M")));
+
+        assertEquals(0, recorder.gga);
+        assertEquals(1, parser.getChecksumErrorCount());
+        assertEquals(1, parser.getMalformedCount());
+        assertEquals(1, parser.getSentenceCount());
+    }
+
+    @Test
+    public void feed_sentencesSplitAcrossBuffers() throws Exception {
+        Recorder recorder = new Recorder();
+        NmeaParser parser = new NmeaParser(recorder);
+        byte[] stream = ("garbage\r\n" + GGA + "\r\n" + RMC + "\r\n").getBytes(Charset.forName("US-ASCII"));
+
+        for(int i = 0; i < stream.length; i += 7){
+            parser.feed(ByteBuffer.wrap(stream, i, Math.min(7, stream.length - i)));
+        }
+
+        assertEquals(1, recorder.gga);
+        assertEquals(1, recorder.rmc);
+        assertEquals(0, parser.getChecksumErrorCount());
+    }
+
+    @Test
+    public void replay_mergesEpochsIntoFixes() throws Exception {
+        StringBuilder log = new StringBuilder();
+        for(int i = 0; i < 60; ++i){
+            String time = String.format(Locale.ENGLISH, "2359%02d", i);
+            String latitude = String.format(Locale.ENGLISH, "5106.%04d", i * 54); // ~10 m per fix
+            log.append(withChecksum("GPGGA," + time + "," + latitude + ",N,01701.800,E,1,09,1.0,120.0,M,,M,,")).append("\r\n");
+            log.append(withChecksum("GPRMC," + time + ",A," + latitude + ",N,01701.800,E,19.4,0.0,311299,,")).append("\r\n");
+        }
+        NmeaReplaySource source = new NmeaReplaySource(Channels.newChannel(
+                new ByteArrayInputStream(log.toString().getBytes(Charset.forName("US-ASCII")))));
+
+        ReplayEvent event = new ReplayEvent();
+        assertTrue(source.next(event));
+        Fix first = event.getFix();
+        assertEquals(946684740000L, first.getTime()); // 1999-12-31 23:59:00
+        assertEquals(120.0, first.getAltitude(), 1e-9);
+        assertEquals(GpxReplaySource.UERE, first.getAccuracy(), 1e-6);
+        source.close();
+
+        source = new NmeaReplaySource(Channels.newChannel(
+                new ByteArrayInputStream(log.toString().getBytes(Charset.forName("US-ASCII")))));
+        ReplayResult result = new ReplayEngine(ReplayEngine.Mode.AS_FAST_AS_POSSIBLE)
+                .run(source, new TripCalculator());
+        assertEquals(60, result.getFixCount());
+        assertEquals(59 * 1000000000L, result.getTrackNanos());
+    }
+}
@@ -0,0 +1,154 @@
+package com.jakdor.gpsspeedometer.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Performance timer against synthetic runs: 10 Hz fixes, 100 Hz accelerometer, constant acceleration
+ */
+public class PerformanceTimerTest {
+
+    private static final long SECOND = 1000000000L;
+    private static final long FIX_INTERVAL = SECOND / 10;
+    private static final long SAMPLE_INTERVAL = SECOND / 100;
+    private static final double LATITUDE = 51.1;
+    private static final double LONGITUDE = 17.03;
+    private static final double ACCELERATION = 3.0; // m/s^2
+    private static final long LAUNCH = 3 * SECOND + 37000000L; // between fixes
+    private static final long TOLERANCE = 20000000L; // ns
+
+    private static double speedAt(long time){
+        return time < LAUNCH ? 0 : ACCELERATION * (time - LAUNCH) / 1e9;
+    }
+
+    private static double distanceAt(long time){
+        double t = time < LAUNCH ? 0 : (time - LAUNCH) / 1e9;
+        return ACCELERATION * t * t / 2;
+    }
+
+    private static Fix straightFix(long time, boolean doppler){
+        double latitude = LATITUDE + distanceAt(time) / Geodesy.metersPerDegreeLatitude(LATITUDE);
+        if(doppler){
+            return new Fix(time, time / 1000000, latitude, LONGITUDE, 120, 3, (float) speedAt(time), 0.2f);
+        }
+        return new Fix(time, time / 1000000, latitude, LONGITUDE, 120, 3);
+    }
+
+    /**
+     * Standstill then launch north at ACCELERATION until 20 s, fixes and accelerometer samples in time order
+     */
+    private static PerformanceTimer run(boolean accelerometer, boolean doppler){
+        PerformanceTimer timer = new PerformanceTimer();
+        long sample = 3000000L;
+        for(long time = 0; time <= 20 * SECOND; time += FIX_INTERVAL){
+            for(; accelerometer && sample <= time; sample += SAMPLE_INTERVAL){
+                float forward = sample < LAUNCH ? 0 : (float) ACCELERATION;
+                float noise = (sample / SAMPLE_INTERVAL % 2 == 0 ? 0.05f : -0.05f);
+                timer.onAccelerometer(sample, noise, forward, 9.81f);
+            }
+            timer.onFix(straightFix(time, doppler), speedAt(time));
+        }
+        return timer;
+    }
+
+    private static void assertTime(double expectedSeconds, long actual){
+        assertTrue(actual != PerformanceResult.NONE);
+        assertEquals(0, actual % PerformanceResult.RESOLUTION);
+        assertEquals(expectedSeconds * 1e9, actual, TOLERANCE);
+    }
+
+    @Test
+    public void launchDetected_targetsWithin10ms(){
+        PerformanceResult result = run(true, true).getResult();
+
+        assertTrue(result.isLaunchDetected());
+        assertEquals(PerformanceTimer.State.RUNNING, result.getState());
+        assertTime(PerformanceTimer.KMH_60 / ACCELERATION, result.getSpeedTime(0));
+        assertTime(PerformanceTimer.KMH_100 / ACCELERATION, result.getSpeedTime(1));
+        double quarterMile = Math.sqrt(2 * PerformanceTimer.QUARTER_MILE / ACCELERATION);
+        assertTime(quarterMile, result.getDistanceTime(0));
+        assertEquals(ACCELERATION * quarterMile, result.getTrapSpeed(0), 0.05);
+    }
+
+    @Test
+    public void noAccelerometer_launchExtrapolatedFromFixes(){
+        PerformanceResult result = run(false, false).getResult();
+
+        assertFalse(result.isLaunchDetected());
+        assertTime(PerformanceTimer.KMH_100 / ACCELERATION, result.getSpeedTime(1));
+        assertTime(Math.sqrt(2 * PerformanceTimer.QUARTER_MILE / ACCELERATION), result.getDistanceTime(0));
+    }
+
+    @Test
+    public void notArmed_noRun(){
+        PerformanceTimer timer = new PerformanceTimer();
+        for(long time = 0; time <= 5 * SECOND; time += FIX_INTERVAL){ //already moving
+            timer.onFix(new Fix(time, time / 1000000, LATITUDE + time / 1e9 * 10 / 111000, LONGITUDE, 120, 3,
+                    10f, 0.2f), 10);
+        }
+        assertEquals(PerformanceTimer.State.WAITING, timer.getResult().getState());
+        assertEquals(PerformanceResult.NONE, timer.getResult().getSpeedTime(0));
+    }
+
+    /**
+     * Circle of 100 m radius at 20 m/s, position angle from east counter-clockwise
+     */
+    private static Fix circleFix(long time){
+        double angle = 20 * time / 1e9 / 100;
+        double east = 100 * Math.cos(angle);
+        double north = 100 * Math.sin(angle);
+        return new Fix(time, time / 1000000,
+                LATITUDE + north / Geodesy.metersPerDegreeLatitude(LATITUDE),
+                LONGITUDE + east / Geodesy.metersPerDegreeLongitude(LATITUDE), 120, 3, 20f, 0.2f);
+    }
+
+    private static double circleLatitude(double radius, double angle){
+        return LATITUDE + radius * Math.sin(angle) / Geodesy.metersPerDegreeLatitude(LATITUDE);
+    }
+
+    private static double circleLongitude(double radius, double angle){
+        return LONGITUDE + radius * Math.cos(angle) / Geodesy.metersPerDegreeLongitude(LATITUDE);
+    }
+
+    @Test
+    public void gates_lapAndSplitTimes(){
+        PerformanceTimer timer = new PerformanceTimer();
+        double start = 0.5;
+        timer.addGate(circleLatitude(90, start), circleLongitude(90, start),
+                circleLatitude(110, start), circleLongitude(110, start));
+        timer.addGate(circleLatitude(90, start + Math.PI), circleLongitude(90, start + Math.PI),
+                circleLatitude(110, start + Math.PI), circleLongitude(110, start + Math.PI));
+
+        double lap = 2 * Math.PI * 100 / 20;
+        for(long time = 0; time <= (long) (2.75 * lap * SECOND); time += FIX_INTERVAL){ //past split of lap 3
+            timer.onFix(circleFix(time), 20);
+        }
+
+        PerformanceResult result = timer.getResult();
+        assertEquals(2, result.getLapCount());
+        assertTime(lap, result.getLap(0));
+        assertTime(lap, result.getLap(1));
+        assertTime(lap, result.getBestLap());
+        assertEquals(2, result.getGateCount());
+        assertEquals(PerformanceResult.NONE, result.getSplit(0));
+        assertTime(lap / 2, result.getSplit(1));
+    }
+
+    @Test
+    public void requestGate_placedAcrossPath(){
+        PerformanceTimer timer = new PerformanceTimer();
+        double lap = 2 * Math.PI * 100 / 20;
+        for(long time = 0; time <= (long) (2.5 * lap * SECOND); time += FIX_INTERVAL){
+            if(time == 2 * SECOND){
+                timer.requestGate();
+            }
+            timer.onFix(circleFix(time), 20);
+        }
+
+        PerformanceResult result = timer.getResult();
+        assertEquals(1, result.getGateCount());
+        assertEquals(2, result.getLapCount());
+        assertTime(lap, result.getLap(1));
+    }
+}
@@ -0,0 +1,131 @@
+package com.jakdor.gpsspeedometer.core;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Headless replay tests: csv and gpx sources through TripCalculator
+ */
+public class ReplayEngineTest {
+
+    private static final long SECOND = 1000000000L;
+
+    /**
+     * Straight line north-east at 10 m/s, 1Hz fixes, 50Hz accelerometer
+     */
+    private static String straightLineCsv(int fixes){
+        Random random = new Random(1);
+        StringBuilder csv = new StringBuilder("# straight line, 10 m/s\n");
+        double step = 10 / Math.sqrt(2);
+        double latitudeStep = step / Geodesy.distance(51.1, 17.03, 52.1, 17.03);
+        double longitudeStep = step / Geodesy.distance(51.1, 17.03, 51.1, 18.03);
+        for(int i = 0; i < fixes; ++i){
+            for(int j = 0; j < 50; ++j){
+                csv.append(String.format(Locale.ENGLISH, "acc,%d,%f,%f,%f\n", i * SECOND + j * SECOND / 50,
+                        random.nextGaussian() * 0.5, random.nextGaussian() * 0.5, 9.81));
+            }
+            csv.append(String.format(Locale.ENGLISH, "fix,%d,%d,%.8f,%.8f,%.1f,%.1f\n", (i + 1) * SECOND,
+                    1500000000000L + i * 1000L, 51.1 + i * latitudeStep, 17.03 + i * longitudeStep, 120.0, 4.0));
+        }
+        return csv.toString();
+    }
+
+    @Test
+    public void csvReplay_straightLine() throws Exception {
+        ReplayResult result = new ReplayEngine(ReplayEngine.Mode.AS_FAST_AS_POSSIBLE)
+                .run(new CsvReplaySource(new StringReader(straightLineCsv(120))), new TripCalculator());
+
+        assertEquals(120, result.getFixCount());
+        assertEquals(6000, result.getSensorEventCount());
+        assertEquals(1190, result.getDistance(), 1190 * 0.01);
+        assertEquals(119 * SECOND, result.getTimerNanos());
+        assertEquals(10, result.getMaxSpeed(), 0.2);
+        assertTrue(result.getFixesPerSecond() > 0);
+    }
+
+    @Test
+    public void realTime_pacesByRecordedTimestamps() throws Exception {
+        ReplayResult result = new ReplayEngine(ReplayEngine.Mode.REAL_TIME, 20)
+                .run(new CsvReplaySource(new StringReader(straightLineCsv(10))), new TripCalculator());
+
+        assertEquals(10 * SECOND, result.getTrackNanos());
+        assertTrue(result.getWallNanos() >= result.getTrackNanos() / 20);
+    }
+
+    @Test
+    public void gpxReplay_readsTrackPoints() throws Exception {
+        String gpx = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<gpx version=\"1.1\" creator=\"test\" xmlns=\"http://www.topografix.com/GPX/1/1\">\n"
+                + "<metadata><time>2017-09-12T00:00:00Z</time></metadata>\n"
+                + "<trk><name>A &amp; B</name><trkseg>\n"
+                + "<trkpt lat=\"51.1\" lon=\"17.03\"><ele>120.5</ele><time>2017-09-12T10:15:30Z</time>"
+                + "<hdop>0.8</hdop></trkpt>\n"
+                + "<!-- comment <trkpt lat=\"0\" lon=\"0\"/> -->\n"
+                + "<trkpt lat='51.1001' lon='17.03'><time>2017-09-12T10:15:31.500Z</time></trkpt>\n"
+                + "<trkpt lat=\"51.1002\" lon=\"17.03\"/>\n"
+                + "</trkseg></trk></gpx>";
+
+        GpxReplaySource source = new GpxReplaySource(new StringReader(gpx));
+        ReplayEvent event = new ReplayEvent();
+
+        assertTrue(source.next(event));
+        Fix fix = event.getFix();
+        assertEquals(51.1, fix.getLatitude(), 0);
+        assertEquals(120.5, fix.getAltitude(), 0);
+        assertEquals(4.0, fix.getAccuracy(), 1e-6);
+        assertEquals(IsoTime.parse("2017-09-12T10:15:30Z"), fix.getTime());
+        assertEquals(0, fix.getElapsedRealtimeNanos());
+
+        assertTrue(source.next(event));
+        assertEquals(1500 * 1000000L, event.getFix().getElapsedRealtimeNanos());
+
+        assertTrue(source.next(event));
+        assertEquals(51.1002, event.getFix().getLatitude(), 0);
+        assertEquals(2500 * 1000000L, event.getFix().getElapsedRealtimeNanos());
+
+        assertFalse(source.next(event));
+        source.close();
+    }
+
+    @Test
+    public void gpxReplay_stopWithoutAccelerometer() throws Exception {
+        double latitudeStep = 10 / Geodesy.distance(51.1, 17.03, 52.1, 17.03);
+        StringBuilder gpx = new StringBuilder("<gpx version=\"1.1\"><trk><trkseg>\n");
+        for(int second = 0; second <= 70; ++second){ //drive 30 s at 10 m/s, stop 10 s, drive 30 s
+            int steps = Math.min(second, 30) + Math.max(0, second - 40);
+            gpx.append(String.format(Locale.ENGLISH, "<trkpt lat=\"%.8f\" lon=\"17.03\"><ele>120</ele>"
+                    + "<time>2017-09-12T10:%02d:%02dZ</time></trkpt>\n",
+                    51.1 + steps * latitudeStep, 15 + second / 60, second % 60));
+        }
+        gpx.append("</trkseg></trk></gpx>");
+
+        TripCalculator tripCalculator = new TripCalculator();
+        ReplayResult result = new ReplayEngine(ReplayEngine.Mode.AS_FAST_AS_POSSIBLE)
+                .run(new GpxReplaySource(new StringReader(gpx.toString())), tripCalculator);
+
+        assertEquals(71, result.getFixCount());
+        //first fix after stop only confirms movement (TripCalculator.STOP_RELEASE_FIXES)
+        assertEquals(590, result.getDistance(), 590 * 0.01);
+        assertEquals(59 * SECOND, result.getTimerNanos());
+    }
+
+    @Test
+    public void isoTime_roundTrip() throws Exception {
+        assertEquals(1505211330250L, IsoTime.parse("2017-09-12T10:15:30.250Z"));
+        assertEquals(1505211330000L, IsoTime.parse("2017-09-12T12:15:30+02:00"));
+        assertEquals(0, IsoTime.parse("1970-01-01T00:00:00Z"));
+
+        StringBuilder output = new StringBuilder();
+        IsoTime.format(1505211330250L, output);
+        assertEquals("2017-09-12T10:15:30.250Z", output.toString());
+
+        output.setLength(0);
+        IsoTime.format(951782400000L, output); //leap day
+        assertEquals("2000-02-29T00:00:00.000Z", output.toString());
+    }
+}
@@ -0,0 +1,115 @@
+package com.jakdor.gpsspeedometer.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * SpeedKalmanFilter replay tests against bucket averaging (SpeedAverager)
+ * on synthetic 1Hz trace: 30s stop, 3m/s^2 launch to 20m/s, cruise
+ */
+public class SpeedKalmanFilterTest {
+
+    private static final long SECOND = 1000000000L;
+    private static final int DURATION = 120;
+    private static final int ACC_RATE = 50;
+    private static final double ACCURACY = 5;
+
+    private static double truth(double t){
+        if(t < 30){
+            return 0;
+        }
+        return Math.min(20, (t - 30) * 3);
+    }
+
+    /**
+     * @return {transition mean abs error, cruise jitter std} for kalman (0,1) and averager (2,3)
+     */
+    private static double[] replay(long seed){
+        Random random = new Random(seed);
+        SpeedKalmanFilter filter = new SpeedKalmanFilter();
+        SpeedAverager averager = new SpeedAverager();
+
+        double kalmanTransition = 0, averagerTransition = 0;
+        double kalmanSum = 0, kalmanSqSum = 0, averagerSum = 0, averagerSqSum = 0;
+        int cruiseCount = 0;
+
+        for(int second = 1; second <= DURATION; ++second){
+            for(int i = 1; i <= ACC_RATE; ++i){
+                double t = second - 1 + (double) i / ACC_RATE;
+                double acceleration = truth(t) - truth(t - 1.0 / ACC_RATE) > 0 ? 3 : 0;
+                filter.predict((long) (t * SECOND),
+                        SpeedKalmanFilter.processNoise(acceleration + random.nextGaussian() * 0.3));
+            }
+
+            double measured = truth(second) + random.nextGaussian()
+                    * Math.sqrt(SpeedKalmanFilter.positionSpeedVariance(ACCURACY, 1));
+            filter.correct(second * SECOND, measured,
+                    SpeedKalmanFilter.positionSpeedVariance(ACCURACY, 1));
+            double kalman = filter.getSpeed();
+            double averaged = averager.add(Math.max(0, measured));
+
+            if(second >= 30 && second < 45){
+                kalmanTransition += Math.abs(kalman - truth(second));
+                averagerTransition += Math.abs(averaged - truth(second));
+            }
+            if(second >= 60){
+                kalmanSum += kalman;
+                kalmanSqSum += kalman * kalman;
+                averagerSum += averaged;
+                averagerSqSum += averaged * averaged;
+                ++cruiseCount;
+            }
+        }
+
+        double kalmanMean = kalmanSum / cruiseCount, averagerMean = averagerSum / cruiseCount;
+        return new double[]{
+                kalmanTransition / 15,
+                Math.sqrt(kalmanSqSum / cruiseCount - kalmanMean * kalmanMean),
+                averagerTransition / 15,
+                Math.sqrt(averagerSqSum / cruiseCount - averagerMean * averagerMean)};
+    }
+
+    @Test
+    public void replay_lowerLagAndJitterThanBucketAveraging() throws Exception {
+        double[] total = new double[4];
+        for(long seed = 0; seed < 50; ++seed){
+            double[] result = replay(seed);
+            for(int i = 0; i < total.length; ++i){
+                total[i] += result[i];
+            }
+        }
+        assertTrue("transition error " + total[0] + " vs " + total[2], total[0] < total[2] * 0.75);
+        assertTrue("cruise jitter " + total[1] + " vs " + total[3], total[1] < total[3] * 0.85);
+    }
+
+    @Test
+    public void correct_convergesToConstantSpeed() throws Exception {
+        SpeedKalmanFilter filter = new SpeedKalmanFilter();
+        for(int second = 0; second < 30; ++second){
+            filter.correct(second * SECOND, 15, 1);
+        }
+        assertEquals(15, filter.getSpeed(), 0.01);
+        assertEquals(0, filter.getAcceleration(), 0.01);
+    }
+
+    @Test
+    public void predict_extrapolatesAcceleration() throws Exception {
+        SpeedKalmanFilter filter = new SpeedKalmanFilter();
+        for(int second = 0; second <= 10; ++second){
+            filter.correct(second * SECOND, 2 * second, 0.1);
+        }
+        filter.predict(11 * SECOND, SpeedKalmanFilter.DEFAULT_PROCESS_NOISE);
+        assertEquals(22, filter.getSpeed(), 0.5);
+    }
+
+    @Test
+    public void correct_neverReportsNegativeSpeed() throws Exception {
+        SpeedKalmanFilter filter = new SpeedKalmanFilter();
+        filter.correct(0, 0, 1);
+        filter.correct(SECOND, -3, 1);
+        assertTrue(filter.getSpeed() >= 0);
+    }
+}
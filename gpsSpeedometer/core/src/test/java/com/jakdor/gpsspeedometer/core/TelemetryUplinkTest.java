@@ -0,0 +1,233 @@
+package com.jakdor.gpsspeedometer.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Telemetry ring, batch encoding, disk spool and uplink against local mock HTTP server
+ */
+public class TelemetryUplinkTest {
+
+    private static final long SECOND = 1000000000L;
+    private static final long START = 1500000000000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockTelemetryServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockTelemetryServer();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+    }
+
+    /**
+     * Driving north-east at about 15 m/s, one fix per second
+     */
+    private static Fix fix(int second){
+        return new Fix(second * SECOND, START + second * 1000L, 51.1 + second * 0.0001, 17.03 + second * 0.00015,
+                120 + second * 0.1, 4);
+    }
+
+    private static void assertRecord(int second, long[] record){
+        assertEquals(START + second * 1000L, record[CompactTrackFormat.TIME]);
+        assertEquals(TrackFormat.toScaled(51.1 + second * 0.0001), record[CompactTrackFormat.LATITUDE]);
+        assertEquals(TrackFormat.toScaled(17.03 + second * 0.00015), record[CompactTrackFormat.LONGITUDE]);
+        assertEquals(Math.round((120 + second * 0.1) * 10), record[CompactTrackFormat.ALTITUDE]);
+        assertEquals(40, record[CompactTrackFormat.ACCURACY]);
+        assertEquals(1500 + second, record[CompactTrackFormat.SPEED]);
+    }
+
+    private static double speed(int second){
+        return 15 + second / 100.0;
+    }
+
+    @Test
+    public void batch_roundTripInBytesPerFix() throws Exception {
+        TelemetryRing ring = new TelemetryRing(64);
+        TelemetryBatch batch = new TelemetryBatch();
+        batch.reset(42);
+        for(int second = 0; second < 60; ++second){
+            assertTrue(ring.offer(fix(second), speed(second)));
+        }
+        assertEquals(60, ring.drainTo(batch, 100));
+        assertEquals(0, ring.size());
+        batch.encode();
+        assertTrue("bytes per fix " + batch.getLength() / 60.0, batch.getLength() < 60 * 4);
+
+        long[] records = new long[TelemetryBatch.MAX_RECORDS * TelemetryBatch.FIELDS];
+        assertEquals(60, TelemetryBatch.decode(batch.getData(), 0, batch.getLength(), records));
+        assertEquals(42, TelemetryBatch.getSequence(batch.getData(), 0));
+        long[] record = new long[TelemetryBatch.FIELDS];
+        for(int second = 0; second < 60; ++second){
+            System.arraycopy(records, second * TelemetryBatch.FIELDS, record, 0, TelemetryBatch.FIELDS);
+            assertRecord(second, record);
+        }
+        batch.close();
+    }
+
+    @Test
+    public void ring_fullRejectsNewest(){
+        TelemetryRing ring = new TelemetryRing(5);
+        assertEquals(8, ring.capacity());
+        for(int second = 0; second < 10; ++second){
+            assertEquals(second < 8, ring.offer(fix(second), speed(second)));
+        }
+        assertEquals(2, ring.getDroppedCount());
+
+        TelemetryBatch batch = new TelemetryBatch();
+        batch.reset(0);
+        assertEquals(3, ring.drainTo(batch, 3));
+        assertTrue(ring.offer(fix(10), speed(10)));
+        assertEquals(6, ring.size());
+        batch.close();
+    }
+
+    @Test
+    public void uplink_deliversEveryFixInOrder() throws Exception {
+        TelemetryUplink uplink = new TelemetryUplink(new HttpTelemetryTransport(server.getUrl()), folder.getRoot());
+        for(int second = 0; second < 100; ++second){
+            uplink.onFix(fix(second), speed(second));
+            uplink.process(second * SECOND);
+        }
+        uplink.process(110 * SECOND);
+
+        List<long[]> records = server.getRecords();
+        assertEquals(100, records.size());
+        for(int second = 0; second < 100; ++second){
+            assertRecord(second, records.get(second));
+        }
+        assertEquals(TelemetryUplink.MIN_BATCH, uplink.getBatchSize());
+        assertEquals(100, uplink.getSentFixes());
+        assertTrue("bytes per fix " + server.getBodyBytes() / 100.0, server.getBodyBytes() < 100 * 20);
+        assertEquals(0, uplink.getSpooled());
+    }
+
+    @Test
+    public void uplink_outageSpillsToDiskAndCatchesUp() throws Exception {
+        TelemetryUplink uplink = new TelemetryUplink(new HttpTelemetryTransport(server.getUrl()), folder.getRoot());
+        int maxBatch = 0;
+        for(int second = 0; second < 300; ++second){
+            server.setFailing(second >= 60 && second < 240);
+            uplink.onFix(fix(second), speed(second));
+            uplink.process(second * SECOND);
+            maxBatch = Math.max(maxBatch, uplink.getBatchSize());
+        }
+        uplink.process(400 * SECOND);
+
+        assertTrue(uplink.getFailedCount() > 0);
+        assertTrue(uplink.getSpilledBatches() > 0);
+        assertTrue("batch size " + maxBatch, maxBatch >= 64);
+        assertEquals(0, uplink.getSpooled());
+        assertEquals(0, folder.getRoot().list().length);
+
+        List<long[]> records = server.getRecords();
+        assertEquals(300, records.size());
+        for(int second = 0; second < 300; ++second){
+            assertRecord(second, records.get(second));
+        }
+        assertTrue(server.getRequestCount() < 300 / TelemetryUplink.MIN_BATCH);
+    }
+
+    @Test
+    public void uplink_refusedBatchDroppedNotBlockingSpool() throws Exception {
+        TelemetryUplink uplink = new TelemetryUplink(new HttpTelemetryTransport(server.getUrl()), folder.getRoot());
+        for(int second = 0; second < 120; ++second){
+            server.setFailing(second < 60);
+            if(second == 60){
+                server.rejectNext(1); //oldest spooled batch, seconds 0-3
+            }
+            uplink.onFix(fix(second), speed(second));
+            uplink.process(second * SECOND);
+        }
+        uplink.process(200 * SECOND);
+
+        assertEquals(1, uplink.getRejectedBatches());
+        assertEquals(0, uplink.getSpooled());
+        assertEquals(0, folder.getRoot().list().length);
+        List<long[]> records = server.getRecords();
+        assertEquals(120 - TelemetryUplink.MIN_BATCH, records.size());
+        for(int second = TelemetryUplink.MIN_BATCH; second < 120; ++second){
+            assertRecord(second, records.get(second - TelemetryUplink.MIN_BATCH));
+        }
+    }
+
+    @Test
+    public void stop_spoolsQueuedFixesForNextRun() throws Exception {
+        File spoolDir = new File(folder.getRoot(), "telemetry");
+        server.setFailing(true);
+        TelemetryUplink uplink = new TelemetryUplink(new HttpTelemetryTransport(server.getUrl()), spoolDir);
+        uplink.start();
+        for(int second = 0; second < 3; ++second){
+            uplink.onFix(fix(second), speed(second));
+        }
+        uplink.stop();
+        uplink.join(5000);
+
+        server.setFailing(false);
+        TelemetryUplink next = new TelemetryUplink(new HttpTelemetryTransport(server.getUrl()), spoolDir);
+        next.process(0);
+        List<long[]> records = server.getRecords();
+        assertEquals(3, records.size());
+        for(int second = 0; second < 3; ++second){
+            assertRecord(second, records.get(second));
+        }
+        assertEquals(0, spoolDir.list().length);
+    }
+
+    @Test
+    public void restart_newUplinkWaitsForOldSpill() throws Exception {
+        File spoolDir = new File(folder.getRoot(), "telemetry");
+        server.setFailing(true);
+        TelemetryUplink uplink = new TelemetryUplink(new HttpTelemetryTransport(server.getUrl()), spoolDir);
+        uplink.start();
+        for(int second = 0; second < 3; ++second){
+            uplink.onFix(fix(second), speed(second));
+        }
+        uplink.stop();
+
+        server.setFailing(false);
+        TelemetryUplink next = new TelemetryUplink(new HttpTelemetryTransport(server.getUrl()), spoolDir);
+        next.start(uplink); //spool listed only after old thread spilled
+        for(int i = 0; i < 100 && server.getRecords().size() < 3; ++i){
+            Thread.sleep(50);
+        }
+        next.stop();
+        next.join(5000);
+
+        assertEquals(3, server.getRecords().size());
+        assertEquals(0, spoolDir.list().length);
+    }
+
+    @Test
+    public void spool_limitDropsOldest() throws Exception {
+        TelemetrySpool spool = new TelemetrySpool(folder.getRoot(), 250);
+        byte[] data = new byte[100];
+        for(int i = 0; i < 4; ++i){
+            data[0] = (byte) i;
+            spool.put(i, data, 0, data.length);
+        }
+        assertEquals(2, spool.size());
+        assertEquals(2, spool.getDroppedCount());
+        assertEquals(2, spool.read(spool.peek())[0]);
+
+        TelemetrySpool reopened = new TelemetrySpool(folder.getRoot(), 250);
+        assertEquals(2, reopened.size());
+        assertEquals(200, reopened.getBytes());
+        reopened.remove(reopened.peek());
+        assertEquals(3, reopened.read(reopened.peek())[0]);
+    }
+}
@@ -0,0 +1,261 @@
+package com.jakdor.gpsspeedometer.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * TrackExporter / TrackImporter round trip, zip batch and streaming tests
+ */
+public class TrackExportTest {
+
+    private static final long START = 1500000000000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Full resolution compact track of given fixes, recorded speed 10 m/s
+     */
+    private static File record(File file, List<Fix> fixes) throws Exception {
+        CompactTrackRecorder recorder = CompactTrackRecorder.open(file, fixes.get(0).getTime(), 0);
+        for(Fix fix : fixes){
+            recorder.append(fix, 10);
+        }
+        recorder.close();
+        return file;
+    }
+
+    private static String export(File track, ExportFormat format) throws Exception {
+        StringWriter writer = new StringWriter();
+        TrackCursor cursor = Tracks.open(track);
+        assertEquals(cursor.getRecordCount(), new TrackExporter(format).export(cursor, "trip <1>", writer));
+        cursor.close();
+        return writer.toString();
+    }
+
+    private static void assertReplays(List<Fix> expected, ReplaySource source, float accuracy, boolean speed)
+            throws Exception {
+        ReplayEvent event = new ReplayEvent();
+        for(Fix fix : expected){
+            assertTrue(source.next(event));
+            Fix replayed = event.getFix();
+            assertEquals(fix.getTime(), replayed.getTime());
+            assertEquals(fix.getTime() - expected.get(0).getTime(), replayed.getElapsedRealtimeNanos() / 1000000L);
+            assertEquals(fix.getLatitude(), replayed.getLatitude(), 2e-7);
+            assertEquals(fix.getLongitude(), replayed.getLongitude(), 2e-7);
+            assertEquals(fix.getAltitude(), replayed.getAltitude(), 0.1);
+            assertEquals(accuracy, replayed.getAccuracy(), 0.1);
+            if(speed){
+                assertEquals(10, replayed.getSpeed(), 0.01);
+            }
+        }
+        assertFalse(source.next(event));
+        source.close();
+    }
+
+    @Test
+    public void gpx_roundTrip() throws Exception {
+        List<Fix> fixes = TrackSimplifierTest.drive(300, 1);
+        String gpx = export(record(folder.newFile("trip.trk"), fixes), ExportFormat.GPX);
+
+        assertTrue(gpx.startsWith("<?xml"));
+        assertTrue(gpx.contains("<gpx version=\"1.1\""));
+        assertTrue(gpx.contains("<name>trip &lt;1&gt;</name>"));
+        assertReplays(fixes, new GpxReplaySource(new StringReader(gpx)), 4, false);
+    }
+
+    @Test
+    public void kml_roundTrip() throws Exception {
+        List<Fix> fixes = TrackSimplifierTest.drive(300, 2);
+        String kml = export(record(folder.newFile("trip.trk"), fixes), ExportFormat.KML);
+
+        assertTrue(kml.contains("<gx:Track>"));
+        assertTrue(kml.indexOf("<when>") < kml.indexOf("<gx:coord>"));
+        assertReplays(fixes, new KmlReplaySource(new StringReader(kml)), 0, false);
+    }
+
+    @Test
+    public void csv_roundTripWithSpeed() throws Exception {
+        List<Fix> fixes = TrackSimplifierTest.drive(300, 3);
+        String csv = export(record(folder.newFile("trip.trk"), fixes), ExportFormat.CSV);
+
+        assertTrue(csv.startsWith("#"));
+        assertReplays(fixes, new CsvReplaySource(new StringReader(csv)), 4, true);
+    }
+
+    @Test
+    public void kml_lineStringWithoutTimes() throws Exception {
+        String kml = "<kml><Placemark><LineString><coordinates>\n"
+                + "17.03,51.1,120 17.0301,51.1001,121\n17.0302,51.1002\n"
+                + "</coordinates></LineString></Placemark></kml>";
+        KmlReplaySource source = new KmlReplaySource(new StringReader(kml));
+        ReplayEvent event = new ReplayEvent();
+
+        assertTrue(source.next(event));
+        assertEquals(51.1, event.getFix().getLatitude(), 1e-9);
+        assertEquals(17.03, event.getFix().getLongitude(), 1e-9);
+        assertEquals(120, event.getFix().getAltitude(), 1e-9);
+        assertTrue(source.next(event));
+        assertEquals(1000000000L, event.getFix().getElapsedRealtimeNanos());
+        assertTrue(source.next(event));
+        assertEquals(51.1002, event.getFix().getLatitude(), 1e-9);
+        assertEquals(0, event.getFix().getAltitude(), 1e-9);
+        assertFalse(source.next(event));
+        source.close();
+    }
+
+    @Test
+    public void zip_exportImportRoundTrip() throws Exception {
+        File tracksDir = folder.newFolder("tracks");
+        TripIndex tripIndex = TripIndex.open(new File(tracksDir, TripIndex.FILE_NAME));
+        long[] startTimes = new long[3];
+        double[] distances = new double[3];
+        for(int i = 0; i < 3; ++i){
+            List<Fix> fixes = TrackSimplifierTest.drive(600, 10 + i);
+            startTimes[i] = START + i * 3600000L;
+            TripCalculator tripCalculator = new TripCalculator();
+            CompactTrackRecorder recorder = CompactTrackRecorder.open(
+                    TripIndex.getTrackFile(tracksDir, startTimes[i]), startTimes[i], 0);
+            for(Fix fix : fixes){
+                Fix shifted = new Fix(fix.getElapsedRealtimeNanos(), fix.getTime() - START + startTimes[i],
+                        fix.getLatitude(), fix.getLongitude(), fix.getAltitude(), fix.getAccuracy());
+                tripCalculator.onFix(shifted);
+                recorder.append(shifted, (float) tripCalculator.getSpeed());
+            }
+            recorder.close();
+            distances[i] = tripCalculator.getStatistics().getTotal().getDistance();
+        }
+
+        for(ExportFormat format : ExportFormat.values()) {
+            TrackExporter exporter = new TrackExporter(format);
+            ByteArrayOutputStream archive = new ByteArrayOutputStream();
+            assertEquals(3, exporter.exportZip(tracksDir, startTimes, archive));
+
+            ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(archive.toByteArray()));
+            ZipEntry entry = zip.getNextEntry();
+            assertEquals("trip-2017-07-14T02-40-00" + format.getExtension(), entry.getName());
+            zip.close();
+
+            File importDir = folder.newFolder("import-" + format.name());
+            TripIndex importIndex = TripIndex.open(new File(importDir, TripIndex.FILE_NAME));
+            TrackImporter importer = new TrackImporter(importDir, importIndex);
+            assertEquals(3, importer.importStream(new ByteArrayInputStream(archive.toByteArray())));
+            assertEquals(3, importIndex.size());
+            for(int i = 0; i < 3; ++i){
+                int entryIndex = importIndex.indexOf(startTimes[i]);
+                assertTrue(entryIndex >= 0);
+                assertEquals(format.name(), distances[i], importIndex.getDistance(entryIndex), distances[i] * 0.01);
+                assertTrue(TripIndex.getTrackFile(importDir, startTimes[i]).isFile());
+            }
+
+            assertEquals(0, importer.importStream(new ByteArrayInputStream(archive.toByteArray())));
+            assertEquals(3, importer.getDuplicateCount());
+            assertEquals(3, importIndex.size());
+        }
+    }
+
+    @Test
+    public void import_singleFileDetectedByContent() throws Exception {
+        File tracksDir = folder.newFolder("tracks");
+        TripIndex tripIndex = TripIndex.open(new File(tracksDir, TripIndex.FILE_NAME));
+        TrackImporter importer = new TrackImporter(tracksDir, tripIndex);
+
+        String csv = export(record(folder.newFile("trip.trk"), TrackSimplifierTest.drive(120, 4)), ExportFormat.CSV);
+        byte[] bom = {(byte) 0xef, (byte) 0xbb, (byte) 0xbf};
+        ByteArrayOutputStream input = new ByteArrayOutputStream();
+        input.write(bom);
+        input.write(csv.getBytes("UTF-8"));
+
+        assertEquals(1, importer.importStream(new ByteArrayInputStream(input.toByteArray())));
+        assertEquals(START, tripIndex.getStartTime(0));
+        assertTrue(tripIndex.getDistance(0) > 0);
+    }
+
+    @Test
+    public void import_sensorRecordsDispatchedByType() throws Exception {
+        File tracksDir = folder.newFolder("tracks");
+        TripIndex tripIndex = TripIndex.open(new File(tracksDir, TripIndex.FILE_NAME));
+        double latitudeStep = 10 / Geodesy.distance(51.1, 17.03, 52.1, 17.03);
+        StringBuilder csv = new StringBuilder();
+        for(int second = 0; second <= 70; ++second){ //drive 30 s at 10 m/s, stop 10 s, drive 30 s
+            long nanos = second * 1000000000L;
+            int steps = Math.min(second, 30) + Math.max(0, second - 40);
+            csv.append(String.format(Locale.ENGLISH, "gyro,%d,0.01,0.02,0.03\nmag,%d,20,-5,-40\nbaro,%d,1013.25\n"
+                    + "fix,%d,%d,%.8f,17.03,120,4\n", nanos, nanos, nanos, nanos, START + second * 1000L,
+                    51.1 + steps * latitudeStep));
+        }
+
+        TrackImporter importer = new TrackImporter(tracksDir, tripIndex);
+        assertEquals(1, importer.importStream(new ByteArrayInputStream(csv.toString().getBytes("UTF-8"))));
+        //first fix after stop only confirms movement (TripCalculator.STOP_RELEASE_FIXES)
+        assertEquals(590, tripIndex.getDistance(0), 590 * 0.01);
+        assertEquals(59000, tripIndex.getMovingTime(0), 1000);
+    }
+
+    @Test
+    public void import_failureLeavesNoTrack() throws Exception {
+        File tracksDir = folder.newFolder("tracks");
+        TripIndex tripIndex = TripIndex.open(new File(tracksDir, TripIndex.FILE_NAME));
+        String csv = "fix,0," + START + ",51.1,17.03,120,4\nfix,1000000000,oops,51.1,17.03,120,4\n";
+        try {
+            new TrackImporter(tracksDir, tripIndex).importStream(new ByteArrayInputStream(csv.getBytes("UTF-8")));
+            fail();
+        }
+        catch (java.io.IOException expected){
+        }
+        assertFalse(TripIndex.getTrackFile(tracksDir, START).exists());
+        assertEquals(0, tripIndex.size());
+    }
+
+    @Test
+    public void export_streamsThroughFixedBuffer() throws Exception {
+        File file = folder.newFile("long.trk");
+        CompactTrackRecorder recorder = CompactTrackRecorder.open(file, START, 0);
+        for(int i = 0; i < 100000; ++i){
+            recorder.append(new Fix(i * 1000000000L, START + i * 1000L,
+                    51.1 + i * 1e-6, 17.03, 120, 4), 1);
+        }
+        recorder.close();
+
+        final long[] written = new long[2]; // chars, largest single write
+        Writer writer = new Writer() {
+            @Override
+            public void write(char[] buffer, int offset, int length) {
+                written[0] += length;
+                written[1] = Math.max(written[1], length);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        for(ExportFormat format : ExportFormat.values()){
+            written[0] = 0;
+            written[1] = 0;
+            TrackCursor cursor = Tracks.open(file);
+            assertEquals(100000, new TrackExporter(format).export(cursor, "long", writer));
+            cursor.close();
+            assertTrue(format.name(), written[0] > 100000 * 40);
+            assertTrue(format.name(), written[1] <= TrackExporter.BUFFER_SIZE);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.jakdor.gpsspeedometer.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+/**
+ * TrackRecorder / TrackReader round trip and crash recovery tests
+ */
+public class TrackRecorderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Fix fix(int i){
+        return new Fix(i * 1000000000L, 1500000000000L + i * 1000L,
+                51.1 + i * 1e-5, 17.03 - i * 1e-5, 120 + i * 0.1, 4.5f);
+    }
+
+    private static void write(File file, int from, int to) throws Exception {
+        TrackRecorder recorder = TrackRecorder.open(file, 1500000000000L);
+        for(int i = from; i < to; ++i){
+            recorder.append(fix(i), i * 0.5f);
+        }
+        recorder.close();
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        File file = folder.newFile("trip.trk");
+        write(file, 0, 1000);
+
+        TrackReader reader = new TrackReader(file);
+        assertEquals(1000, reader.getRecordCount());
+        assertEquals(1500000000000L, reader.getStartTime());
+        for(int i = 0; i < 1000; ++i){
+            assertTrue(reader.next());
+            Fix expected = fix(i);
+            assertEquals(expected.getTime(), reader.getTime());
+            assertEquals(expected.getLatitude(), reader.getLatitude(), 1e-7);
+            assertEquals(expected.getLongitude(), reader.getLongitude(), 1e-7);
+            assertEquals(expected.getAltitude(), reader.getAltitude(), 1e-3);
+            assertEquals(4.5f, reader.getAccuracy(), 0);
+            assertEquals(i * 0.5f, reader.getSpeed(), 0);
+        }
+        assertFalse(reader.next());
+
+        reader.seek(500);
+        assertTrue(reader.next());
+        assertEquals(500, reader.getIndex());
+        assertEquals(fix(500).getTime(), reader.getTime());
+        reader.close();
+    }
+
+    @Test
+    public void reopen_dropsTornAndCorruptedTail() throws Exception {
+        File file = folder.newFile("trip.trk");
+        write(file, 0, 100);
+
+        RandomAccessFile raw = new RandomAccessFile(file, "rw");
+        raw.seek(raw.length() - 10); //corrupt last record
+        raw.write(new byte[]{1, 2, 3});
+        raw.seek(raw.length());
+        raw.write(new byte[]{9, 9, 9, 9, 9}); //torn partial record
+        raw.close();
+
+        TrackRecorder recorder = TrackRecorder.open(file, 0);
+        assertEquals(99, recorder.getRecordCount());
+        assertEquals(2, recorder.getDroppedRecordCount());
+        recorder.append(fix(99), 0);
+        recorder.close();
+
+        TrackReader reader = new TrackReader(file);
+        assertEquals(100, reader.getRecordCount());
+        int count = 0;
+        while (reader.next()){
+            assertEquals(fix(count).getTime(), reader.getTime());
+            ++count;
+        }
+        assertEquals(100, count);
+        assertEquals(0, reader.getCorruptRecordCount());
+        reader.close();
+    }
+
+    @Test
+    public void unflushedBatchIsNotVisible() throws Exception {
+        File file = folder.newFile("trip.trk");
+        TrackRecorder recorder = TrackRecorder.open(file, 0);
+        for(int i = 0; i < TrackRecorder.BATCH_RECORDS + 3; ++i){
+            recorder.append(new Fix(0, 1000 + i, 51, 17, 0, 1), 0); //1ms apart, flushed by size only
+        }
+        TrackReader reader = new TrackReader(file);
+        assertEquals(TrackRecorder.BATCH_RECORDS, reader.getRecordCount());
+        reader.close();
+
+        recorder.close();
+        reader = new TrackReader(file);
+        assertEquals(TrackRecorder.BATCH_RECORDS + 3, reader.getRecordCount());
+        reader.close();
+    }
+}
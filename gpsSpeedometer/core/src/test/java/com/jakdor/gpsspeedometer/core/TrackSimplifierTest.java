@@ -0,0 +1,131 @@
+package com.jakdor.gpsspeedometer.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * TrackSimplifier error bound and reduction tests
+ */
+public class TrackSimplifierTest {
+
+    private static final long SECOND = 1000000000L;
+
+    /**
+     * Collects stored fixes
+     */
+    private static class ListSink implements TrackSink {
+        final List<Fix> fixes = new ArrayList<>();
+        boolean closed = false;
+
+        @Override
+        public void append(Fix fix, float speed) {
+            fixes.add(fix);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    /**
+     * 1Hz city drive: straight blocks with 90 degree turns, slowing down for every turn, 0.5m gps noise
+     */
+    static List<Fix> drive(int seconds, long seed){
+        Random random = new Random(seed);
+        double latitudeMeter = 1 / Geodesy.metersPerDegreeLatitude(51.1);
+        double longitudeMeter = 1 / Geodesy.metersPerDegreeLongitude(51.1);
+        List<Fix> fixes = new ArrayList<>();
+        double north = 0, east = 0, heading = 0, blockLeft = 400;
+        for(int i = 0; i < seconds; ++i){
+            double speed = Math.min(14, 3 + blockLeft / 20);
+            north += Math.cos(heading) * speed;
+            east += Math.sin(heading) * speed;
+            blockLeft -= speed;
+            if(blockLeft <= 0){
+                heading += random.nextBoolean() ? Math.PI / 2 : -Math.PI / 2;
+                blockLeft = 200 + random.nextInt(800);
+            }
+            fixes.add(new Fix(i * SECOND, 1500000000000L + i * 1000L,
+                    51.1 + (north + random.nextGaussian() * 0.5) * latitudeMeter,
+                    17.03 + (east + random.nextGaussian() * 0.5) * longitudeMeter,
+                    120 + random.nextGaussian(), 4));
+        }
+        return fixes;
+    }
+
+    /**
+     * Synchronized euclidean distance of fix to stored track interpolated at its time
+     */
+    private static double maxError(List<Fix> input, List<Fix> stored){
+        double max = 0;
+        int segment = 0;
+        for(Fix fix : input){
+            while (segment < stored.size() - 2
+                    && stored.get(segment + 1).getElapsedRealtimeNanos() < fix.getElapsedRealtimeNanos()){
+                ++segment;
+            }
+            Fix a = stored.get(segment);
+            Fix b = stored.get(segment + 1);
+            double ratio = (double) (fix.getElapsedRealtimeNanos() - a.getElapsedRealtimeNanos())
+                    / (b.getElapsedRealtimeNanos() - a.getElapsedRealtimeNanos());
+            double latitude = a.getLatitude() + (b.getLatitude() - a.getLatitude()) * ratio;
+            double longitude = a.getLongitude() + (b.getLongitude() - a.getLongitude()) * ratio;
+            max = Math.max(max, Geodesy.distanceLocal(fix.getLatitude(), fix.getLongitude(), latitude, longitude));
+        }
+        return max;
+    }
+
+    @Test
+    public void cityDrive_errorBoundedAndReduced() throws Exception {
+        List<Fix> input = drive(3600, 1);
+        ListSink sink = new ListSink();
+        TrackSimplifier simplifier = new TrackSimplifier(sink);
+        for(Fix fix : input){
+            simplifier.append(fix, 10);
+        }
+        simplifier.close();
+
+        assertTrue(sink.closed);
+        assertSame(input.get(0), sink.fixes.get(0));
+        assertSame(input.get(input.size() - 1), sink.fixes.get(sink.fixes.size() - 1));
+        assertEquals(sink.fixes.size(), simplifier.getOutputCount());
+        assertEquals(3600, simplifier.getInputCount());
+        assertTrue("stored " + sink.fixes.size(), sink.fixes.size() * 8 < input.size()); //1Hz, MAX_HOLD bound
+        for(int i = 1; i < sink.fixes.size(); ++i){
+            assertTrue(sink.fixes.get(i).getTime() - sink.fixes.get(i - 1).getTime() <= TrackSimplifier.MAX_HOLD);
+        }
+        assertTrue(maxError(input, sink.fixes) <= TrackSimplifier.DEFAULT_TOLERANCE + 0.01);
+    }
+
+    @Test
+    public void stationary_boundedHold() throws Exception {
+        ListSink sink = new ListSink();
+        TrackSimplifier simplifier = new TrackSimplifier(sink);
+        for(int i = 0; i < 1000; ++i){
+            simplifier.append(new Fix(i * SECOND, i * 1000L, 51.1, 17.03, 120, 4), 0);
+        }
+        simplifier.close();
+
+        long hold = TrackSimplifier.MAX_HOLD / 1000; //fixes
+        assertEquals(1 + (999 + hold - 1) / hold, sink.fixes.size());
+    }
+
+    @Test
+    public void altitudeChange_kept() throws Exception {
+        ListSink sink = new ListSink();
+        TrackSimplifier simplifier = new TrackSimplifier(sink);
+        for(int i = 0; i < 60; ++i){
+            double altitude = i < 30 ? 100 : 150; //straight line, step in altitude
+            simplifier.append(new Fix(i * SECOND, i * 1000L, 51.1 + i * 1e-4, 17.03, altitude, 4), 10);
+        }
+        simplifier.close();
+
+        assertTrue(sink.fixes.size() >= 3);
+    }
+}
@@ -0,0 +1,239 @@
+package com.jakdor.gpsspeedometer.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Speed source selection: doppler vs position derived speed
+ */
+public class TripCalculatorTest {
+
+    private static final long SECOND = 1000000000L;
+    private static final double LATITUDE_METER = 1 / Geodesy.distance(51.1, 17.03, 52.1, 17.03);
+    private static final double LONGITUDE_METER = 1 / Geodesy.distance(51.1, 17.03, 51.1, 18.03);
+
+    /**
+     * Drives north-east with speed step from 10 to 20 m/s at fix 30,
+     * 3m position noise, doppler speed with 0.2 m/s noise, 50Hz accelerometer sees the step;
+     * returns speed right after step
+     */
+    private static double speedAfterStep(SpeedSource source, boolean reportSpeed){
+        TripCalculator tripCalculator = new TripCalculator();
+        tripCalculator.setSpeedSource(source);
+        Random random = new Random(7);
+
+        double position = 0;
+        for(int i = 0; i <= 31; ++i){
+            double speed = i <= 30 ? 10 : 20;
+            position += i == 0 ? 0 : speed;
+            double north = position / Math.sqrt(2) + random.nextGaussian() * 3;
+            double east = position / Math.sqrt(2) + random.nextGaussian() * 3;
+            for(int j = 0; j < 50 && i > 0; ++j){
+                float forward = i == 31 ? 10 : 0;
+                tripCalculator.onAccelerometer((i - 1) * SECOND + j * SECOND / 50, forward,
+                        (float) (random.nextGaussian() * 0.3), 9.81f);
+            }
+            float doppler = reportSpeed ? (float) (speed + random.nextGaussian() * 0.2) : Float.NaN;
+            tripCalculator.onFix(new Fix(i * SECOND, 1500000000000L + i * 1000L,
+                    51.1 + north * LATITUDE_METER, 17.03 + east * LONGITUDE_METER, 120, 5, doppler, 0.3f));
+        }
+        return tripCalculator.getSpeed();
+    }
+
+    @Test
+    public void doppler_tracksStepWithinOneFix() throws Exception {
+        assertEquals(20, speedAfterStep(SpeedSource.DOPPLER, true), 1.0);
+        assertEquals(20, speedAfterStep(SpeedSource.AUTO, true), 1.0);
+    }
+
+    @Test
+    public void position_lagsBehindDoppler() throws Exception {
+        double doppler = Math.abs(20 - speedAfterStep(SpeedSource.DOPPLER, true));
+        double position = Math.abs(20 - speedAfterStep(SpeedSource.POSITION, true));
+        assertTrue("doppler " + doppler + " position " + position, doppler < position);
+    }
+
+    @Test
+    public void auto_fallsBackToPositionWithoutDoppler() throws Exception {
+        TripCalculator tripCalculator = new TripCalculator();
+        tripCalculator.onFix(new Fix(0, 0, 51.1, 17.03, 120, 5));
+        tripCalculator.onFix(new Fix(SECOND, 1000, 51.1 + 5 * LATITUDE_METER, 17.03 + 5 * LONGITUDE_METER, 120, 5));
+        assertEquals(SpeedSource.POSITION, tripCalculator.getActiveSpeedSource());
+
+        tripCalculator.onFix(new Fix(2 * SECOND, 2000, 51.1 + 10 * LATITUDE_METER, 17.03 + 10 * LONGITUDE_METER,
+                120, 5, 7.07f, 0.2f));
+        assertEquals(SpeedSource.DOPPLER, tripCalculator.getActiveSpeedSource());
+    }
+
+    @Test
+    public void auto_prefersPositionWhenDopplerIsWorse() throws Exception {
+        TripCalculator tripCalculator = new TripCalculator();
+        tripCalculator.onFix(new Fix(0, 0, 51.1, 17.03, 120, 2));
+        tripCalculator.onFix(new Fix(10 * SECOND, 10000, 51.1 + 50 * LATITUDE_METER, 17.03 + 50 * LONGITUDE_METER,
+                120, 2, 7f, 3f));
+        assertEquals(SpeedSource.POSITION, tripCalculator.getActiveSpeedSource());
+    }
+
+    @Test
+    public void position_usesRealFixSpacing() throws Exception {
+        TripCalculator tripCalculator = new TripCalculator();
+        tripCalculator.setSpeedSource(SpeedSource.POSITION);
+        for(int i = 0; i < 20; ++i){
+            double position = i * 20 / Math.sqrt(2); // 20 m every 2 s
+            tripCalculator.onFix(new Fix(i * 2 * SECOND, i * 2000L, 51.1 + position * LATITUDE_METER,
+                    17.03 + position * LONGITUDE_METER, 120, 3));
+        }
+        assertEquals(10, tripCalculator.getSpeed(), 0.1);
+    }
+
+    /**
+     * Doppler source, no accelerometer: 15 m/s, step down to 10 m/s at fix 20, stop at fix 30
+     */
+    @Test
+    public void doppler_stepAndStopWithinOneFix() throws Exception {
+        TripCalculator tripCalculator = new TripCalculator();
+        tripCalculator.setSpeedSource(SpeedSource.DOPPLER);
+        double position = 0;
+        for(int i = 0; i <= 30; ++i){
+            double speed = i < 20 ? 15 : i < 30 ? 10 : 0;
+            position += i == 0 ? 0 : speed;
+            tripCalculator.onFix(new Fix(i * SECOND, i * 1000L, 51.1 + position / Math.sqrt(2) * LATITUDE_METER,
+                    17.03 + position / Math.sqrt(2) * LONGITUDE_METER, 120, 3, (float) speed, 0.3f));
+            if(i == 20){
+                assertEquals(10, tripCalculator.getSpeed(), 0.5);
+            }
+        }
+        assertEquals(0, tripCalculator.getSpeed(), 0);
+        assertEquals(0, tripCalculator.getSnapshot().getSpeed(), 0);
+    }
+
+    /**
+     * 10 m/s north-east for 9 s, 7 s standstill, then 10 m/s again for 5 s;
+     * 50Hz accelerometer sees the pull-away
+     */
+    @Test
+    public void stopThenGo_standstillNotTimed() throws Exception {
+        TripCalculator tripCalculator = new TripCalculator();
+        tripCalculator.setSpeedSource(SpeedSource.POSITION);
+        double position = 0;
+        for(int i = 0; i <= 21; ++i){
+            boolean moving = i <= 9 || i >= 17;
+            position += i > 0 && moving ? 10 / Math.sqrt(2) : 0;
+            for(int j = 0; j < 50 && i > 0; ++j){
+                float forward = i == 17 ? 3 : 0;
+                tripCalculator.onAccelerometer((i - 1) * SECOND + j * SECOND / 50, forward, 0, 9.81f);
+            }
+            tripCalculator.onFix(new Fix(i * SECOND, i * 1000L, 51.1 + position * LATITUDE_METER,
+                    17.03 + position * LONGITUDE_METER, 120, 3));
+            if(i == 16){
+                assertEquals(0, tripCalculator.getSpeed(), 0);
+            }
+            if(i == 17){
+                assertEquals(10, tripCalculator.getSpeed(), 1.0);
+            }
+        }
+        assertEquals(14 * SECOND, tripCalculator.getTimerNanos());
+        assertEquals(10, tripCalculator.getSpeed(), 0.5);
+    }
+
+    @Test
+    public void duplicateTimestampAfterStationary_rejectedAsStale() throws Exception {
+        TripCalculator tripCalculator = new TripCalculator();
+        tripCalculator.setSpeedSource(SpeedSource.POSITION);
+        double[] positions = {0, 10, 20, 30, 40, 50, 50, 60, 60};
+        long[] seconds = {0, 1, 2, 3, 4, 5, 6, 6, 7}; //moving fix with stationary fix timestamp
+        long timer = 0;
+        for(int i = 0; i < positions.length; ++i){
+            double position = positions[i] / Math.sqrt(2);
+            tripCalculator.onFix(new Fix(seconds[i] * SECOND, seconds[i] * 1000L, 51.1 + position * LATITUDE_METER,
+                    17.03 + position * LONGITUDE_METER, 120, 3));
+
+            assertFalse(Double.isNaN(tripCalculator.getSpeed()) || Double.isInfinite(tripCalculator.getSpeed()));
+            assertTrue(tripCalculator.getTimerNanos() >= timer);
+            timer = tripCalculator.getTimerNanos();
+        }
+        assertEquals(1, tripCalculator.getRejectedFixCount());
+        assertEquals(6 * SECOND, tripCalculator.getTimerNanos());
+        assertEquals(10, tripCalculator.getSpeed(), 1.0);
+    }
+
+    @Test
+    public void snapshot_publishedAfterEveryFix() throws Exception {
+        TripCalculator tripCalculator = new TripCalculator();
+        assertSame(TripSnapshot.EMPTY, tripCalculator.getSnapshot());
+
+        for(int i = 0; i < 10; ++i){
+            double position = i * 10 / Math.sqrt(2);
+            tripCalculator.onFix(new Fix(i * SECOND, i * 1000L, 51.1 + position * LATITUDE_METER,
+                    17.03 + position * LONGITUDE_METER, 120, 3));
+
+            TripSnapshot snapshot = tripCalculator.getSnapshot();
+            assertEquals(tripCalculator.getSpeed(), snapshot.getSpeed(), 0);
+            assertEquals(tripCalculator.getSpeed(true), snapshot.getSpeed(true), 0);
+            assertEquals(tripCalculator.getDistanceSum(false), snapshot.getDistanceSum(), 0);
+            assertEquals(tripCalculator.getTimerNanos(), snapshot.getTimerNanos());
+        }
+        assertEquals(90, tripCalculator.getSnapshot().getDistanceSum(), 0.5);
+    }
+
+    @Test
+    public void snapshot_consistentUnderConcurrentInput() throws Exception {
+        final int fixes = 3000;
+        final Fix[] track = new Fix[fixes];
+        final double[] expected = new double[fixes];
+        TripCalculator reference = new TripCalculator();
+        for(int i = 0; i < fixes; ++i){
+            double position = i * 10 / Math.sqrt(2);
+            track[i] = new Fix(i * SECOND, i * 1000L, 51.1 + position * LATITUDE_METER,
+                    17.03 + position * LONGITUDE_METER, 120, 3);
+            reference.onFix(track[i]);
+            expected[i] = reference.getSnapshot().getDistanceSum();
+        }
+
+        final TripCalculator tripCalculator = new TripCalculator();
+        final boolean[] done = new boolean[1];
+        final String[] failure = new String[1];
+        Thread sensor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Random random = new Random(1);
+                for(long i = 0; i < fixes * 50L; ++i){
+                    tripCalculator.onAccelerometer(i * SECOND / 50, (float) random.nextGaussian(),
+                            (float) random.nextGaussian(), 9.81f);
+                }
+            }
+        });
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!done[0]){
+                    TripSnapshot snapshot = tripCalculator.getSnapshot();
+                    Fix fix = snapshot.getFix();
+                    if(fix == null){
+                        continue;
+                    }
+                    int index = (int) (fix.getElapsedRealtimeNanos() / SECOND);
+                    if(snapshot.getDistanceSum() != expected[index]){
+                        failure[0] = "distance " + snapshot.getDistanceSum() + " for fix " + index;
+                    }
+                }
+            }
+        });
+        sensor.start();
+        reader.start();
+
+        for(Fix fix : track){
+            tripCalculator.onFix(fix);
+        }
+        done[0] = true;
+        sensor.join();
+        reader.join();
+
+        assertNull(failure[0]);
+        assertSame(track[fixes - 1], tripCalculator.getSnapshot().getFix());
+        assertEquals(expected[fixes - 1], tripCalculator.getSnapshot().getDistanceSum(), 0);
+    }
+}
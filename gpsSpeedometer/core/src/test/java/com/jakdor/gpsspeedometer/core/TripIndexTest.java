@@ -0,0 +1,179 @@
+package com.jakdor.gpsspeedometer.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+/**
+ * TripIndex persistence, ordering, queries and track recovery tests
+ */
+public class TripIndexTest {
+
+    private static final long DAY = 24 * 3600 * 1000L;
+    private static final long START = 1500000000000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static TripSummary summary(int day, double latitude, double distance){
+        long startTime = START + day * DAY;
+        return new TripSummary(startTime, startTime + 3600000, 3600, distance, 3000000, 30, 12, 8,
+                latitude, 17.0, latitude + 0.1, 17.1);
+    }
+
+    @Test
+    public void putAndReopen_keepsEntriesSorted() throws Exception {
+        File file = new File(folder.getRoot(), "trips.idx");
+        TripIndex index = TripIndex.open(file);
+        assertEquals(0, index.size());
+
+        index.put(summary(1, 51.1, 1000));
+        index.put(summary(3, 51.1, 3000));
+        index.put(summary(2, 51.1, 2000)); //recovered out of order
+        index.put(summary(3, 51.1, 3500)); //replaced
+
+        TripIndex reopened = TripIndex.open(file);
+        assertEquals(3, reopened.size());
+        assertEquals(3 * 64 + 16, file.length());
+        for(int i = 0; i < 3; ++i){
+            assertEquals(START + (i + 1) * DAY, reopened.getStartTime(i));
+        }
+        assertEquals(3500, reopened.getDistance(2), 0);
+
+        TripSummary summary = reopened.get(0);
+        assertEquals(START + DAY + 3600000, summary.getEndTime());
+        assertEquals(3600, summary.getRecordCount());
+        assertEquals(3000000, summary.getMovingTime());
+        assertEquals(30, summary.getMaxSpeed(), 1e-6);
+        assertEquals(12, summary.getElevationGain(), 1e-6);
+        assertEquals(8, summary.getElevationLoss(), 1e-6);
+        assertEquals(51.2, summary.getMaxLatitude(), 1e-7);
+        assertEquals(17.0, summary.getMinLongitude(), 1e-7);
+    }
+
+    @Test
+    public void put_reloadsAfterOtherInstanceWrite() throws Exception {
+        File file = new File(folder.getRoot(), "trips.idx");
+        TripIndex recovery = TripIndex.open(file);
+        TripIndex recorder = TripIndex.open(file);
+
+        recorder.put(summary(5, 51.1, 1000));
+        recovery.put(summary(1, 51.1, 1000));
+        recovery.put(summary(2, 51.1, 1000));
+
+        assertEquals(3, recovery.size());
+        assertEquals(3, TripIndex.open(file).size());
+    }
+
+    @Test
+    public void query_filtersByTimeBoundsAndDistance() throws Exception {
+        TripIndex index = TripIndex.open(new File(folder.getRoot(), "trips.idx"));
+        for(int day = 0; day < 100; ++day){
+            index.put(summary(day, day % 2 == 0 ? 51.1 : 52.5, day * 100));
+        }
+
+        int[] all = index.query(new TripFilter());
+        assertEquals(100, all.length);
+        assertEquals(99, all[0]); //newest first
+
+        TripFilter filter = new TripFilter();
+        filter.setTimeRange(START + 10 * DAY, START + 20 * DAY);
+        assertEquals(10, index.query(filter).length);
+
+        filter.setBounds(51.15, 17.05, 51.16, 17.06); //inside even days boxes
+        assertEquals(5, index.query(filter).length);
+
+        filter.setMinDistance(1500);
+        int[] result = index.query(filter);
+        assertEquals(2, result.length); //days 16, 18
+        assertEquals(START + 18 * DAY, index.getStartTime(result[0]));
+    }
+
+    @Test
+    public void corruptedEntry_droppedAndRewritten() throws Exception {
+        File file = new File(folder.getRoot(), "trips.idx");
+        TripIndex index = TripIndex.open(file);
+        for(int day = 0; day < 3; ++day){
+            index.put(summary(day, 51.1, 1000));
+        }
+
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.seek(16 + 64 + 20);
+        randomAccessFile.write(0x7f);
+        randomAccessFile.setLength(file.length() + 10); //torn tail
+        randomAccessFile.close();
+
+        TripIndex reopened = TripIndex.open(file);
+        assertEquals(2, reopened.size());
+        assertEquals(2, reopened.getDroppedEntryCount());
+
+        reopened.put(summary(5, 51.1, 1000));
+        assertEquals(3 * 64 + 16, file.length());
+        assertEquals(3, TripIndex.open(file).size());
+    }
+
+    @Test
+    public void truncatedIndex_loadsEmptyAndRebuildsFromTracks() throws Exception {
+        File tracksDir = folder.newFolder("tracks");
+        File file = new File(tracksDir, "trips.idx");
+        long startTime = START;
+        TrackRecorder recorder = TrackRecorder.open(TripIndex.getTrackFile(tracksDir, startTime), startTime);
+        recorder.append(new Fix(0, startTime, 51.1, 17.03, 120, 4), 0);
+        recorder.append(new Fix(1000000000L, startTime + 1000, 51.1001, 17.03, 120, 4), 10);
+        recorder.close();
+        TripIndex.open(file).put(summary(0, 51.1, 1000));
+
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.setLength(7); //killed during rewrite
+        randomAccessFile.close();
+
+        TripIndex index = TripIndex.open(file);
+        assertTrue(index.isUnreadable());
+        assertEquals(0, index.size());
+        assertEquals(1, index.indexMissing(tracksDir, Long.MIN_VALUE));
+        assertFalse(index.isUnreadable());
+
+        TripIndex reopened = TripIndex.open(file);
+        assertFalse(reopened.isUnreadable());
+        assertEquals(1, reopened.size());
+        assertEquals(startTime, reopened.getStartTime(0));
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void indexMissing_scansTrackFiles() throws Exception {
+        File tracksDir = folder.newFolder("tracks");
+        double latitudeMeter = 1 / Geodesy.distance(51.1, 17.03, 52.1, 17.03);
+        for(int trip = 0; trip < 3; ++trip){
+            long startTime = START + trip * DAY;
+            TrackRecorder recorder = TrackRecorder.open(TripIndex.getTrackFile(tracksDir, startTime), startTime);
+            for(int i = 0; i <= 100; ++i){
+                Fix fix = new Fix(i * 1000000000L, startTime + i * 1000L,
+                        51.1 + i * 10 * latitudeMeter, 17.03, 120 + i * 0.5, 4);
+                recorder.append(fix, i < 50 ? 10 : 0);
+            }
+            recorder.close();
+        }
+        assertTrue(new File(tracksDir, "notes.txt").createNewFile());
+
+        TripIndex index = TripIndex.open(new File(tracksDir, "trips.idx"));
+        assertEquals(2, index.indexMissing(tracksDir, START + 2 * DAY)); //last one still recording
+        assertEquals(0, index.indexMissing(tracksDir, START + 2 * DAY));
+        assertEquals(2, index.size());
+
+        TripSummary summary = index.get(1);
+        assertEquals(START + DAY, summary.getStartTime());
+        assertEquals(START + DAY + 100000, summary.getEndTime());
+        assertEquals(101, summary.getRecordCount());
+        assertEquals(490, summary.getDistance(), 0.5); //speed 0 records aren't moving
+        assertEquals(49000, summary.getMovingTime());
+        assertEquals(50, summary.getElevationGain(), 1e-3);
+        assertEquals(51.1, summary.getMinLatitude(), 1e-7);
+        assertEquals(51.1 + 1000 * latitudeMeter, summary.getMaxLatitude(), 1e-6);
+    }
+}
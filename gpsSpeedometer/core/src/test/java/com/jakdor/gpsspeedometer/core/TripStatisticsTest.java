@@ -0,0 +1,164 @@
+package com.jakdor.gpsspeedometer.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * TripStatistics incremental aggregates tests
+ */
+public class TripStatisticsTest {
+
+    private static final long SECOND = 1000000000L;
+
+    @Test
+    public void movingAndStoppedTime_aggregates() {
+        TripStatistics statistics = new TripStatistics();
+        statistics.onGap(0);
+        for(int i = 1; i <= 10; ++i){
+            statistics.onMoving(i * SECOND, 10, 10, 0);
+        }
+        for(int i = 11; i <= 20; ++i){
+            statistics.onStopped(i * SECOND);
+        }
+        statistics.onMoving(21 * SECOND, 20, 20, 0);
+
+        SegmentStatistics total = statistics.getTotal();
+        assertEquals(0, total.getStartNanos());
+        assertEquals(21 * SECOND, total.getEndNanos());
+        assertEquals(120, total.getDistance(), 1e-9);
+        assertEquals(11 * SECOND, total.getMovingNanos());
+        assertEquals(10 * SECOND, total.getStoppedNanos());
+        assertEquals(20, total.getMaxSpeed(), 1e-9);
+        assertEquals(120 / 21.0, total.getAverageSpeed(), 1e-9);
+        assertEquals(120 / 11.0, total.getMovingSpeed(), 1e-9);
+    }
+
+    @Test
+    public void gap_notAccounted() {
+        TripStatistics statistics = new TripStatistics();
+        statistics.onGap(0);
+        statistics.onMoving(SECOND, 10, 10, 0);
+        statistics.onGap(60 * SECOND);
+        statistics.onMoving(61 * SECOND, 10, 10, 0);
+
+        assertEquals(2 * SECOND, statistics.getTotal().getElapsedNanos());
+    }
+
+    @Test
+    public void histogram_bucketsTimeBySpeed() {
+        TripStatistics statistics = new TripStatistics(5, 4);
+        statistics.onGap(0);
+        statistics.onMoving(SECOND, 1, 1, 0);
+        statistics.onMoving(3 * SECOND, 14, 7, 0);
+        statistics.onMoving(4 * SECOND, 100, 100, 0);
+        statistics.onStopped(5 * SECOND);
+
+        SpeedHistogram histogram = statistics.getTotal().getHistogram();
+        assertEquals(2 * SECOND, histogram.getNanos(0));
+        assertEquals(2 * SECOND, histogram.getNanos(1));
+        assertEquals(0, histogram.getNanos(2));
+        assertEquals(SECOND, histogram.getNanos(3)); //open ended
+        assertEquals(0.4, histogram.getFraction(1), 1e-9);
+        assertEquals(10, histogram.getLowerBound(2), 1e-9);
+    }
+
+    @Test
+    public void elevation_hysteresisFiltersNoise() {
+        SegmentStatistics segment = new SegmentStatistics(new SpeedHistogram());
+        double[] altitudes = {100, 102, 98, 101, 99, 110, 108, 112, 100, 0, 95};
+        for(double altitude : altitudes){
+            segment.addAltitude(altitude);
+        }
+
+        assertEquals(10, segment.getElevationGain(), 1e-9); //100 -> 110, 112 within step
+        assertEquals(15, segment.getElevationLoss(), 1e-9); //110 -> 95, unknown 0 skipped
+    }
+
+    @Test
+    public void stop_splitsSegments_mergeRestoresWhole() {
+        TripStatistics statistics = new TripStatistics();
+        statistics.onGap(0);
+        long time = 0;
+        double altitude = 100;
+        for(int part = 0; part < 3; ++part){
+            for(int i = 0; i < 20; ++i){
+                time += SECOND;
+                altitude += 2;
+                statistics.onMoving(time, 10 + part, 10 + part, altitude);
+            }
+            for(int i = 0; i < 5; ++i){
+                time += SECOND;
+                statistics.onStopped(time);
+            }
+            statistics.onStop();
+            statistics.onStop(); //no moving time, no empty segment
+        }
+
+        assertEquals(4, statistics.getSegments().size());
+        assertEquals(20 * 11, statistics.getSegments().get(1).getDistance(), 1e-9);
+        assertEquals(12, statistics.getSegments().get(2).getMaxSpeed(), 1e-9);
+
+        statistics.mergeSegments(0);
+        statistics.mergeSegments(0);
+        statistics.mergeSegments(0);
+        assertEquals(1, statistics.getSegments().size());
+
+        SegmentStatistics total = statistics.getTotal();
+        SegmentStatistics merged = statistics.getSegment();
+        assertEquals(total.getStartNanos(), merged.getStartNanos());
+        assertEquals(total.getEndNanos(), merged.getEndNanos());
+        assertEquals(total.getDistance(), merged.getDistance(), 1e-9);
+        assertEquals(total.getMovingNanos(), merged.getMovingNanos());
+        assertEquals(total.getStoppedNanos(), merged.getStoppedNanos());
+        assertEquals(total.getElevationGain(), merged.getElevationGain(), 1e-9);
+        for(int i = 0; i < total.getHistogram().getBucketCount(); ++i){
+            assertEquals(total.getHistogram().getNanos(i), merged.getHistogram().getNanos(i));
+        }
+    }
+
+    @Test
+    public void lap_closesLapAndSegment() {
+        TripStatistics statistics = new TripStatistics();
+        statistics.onGap(0);
+        statistics.onMoving(SECOND, 10, 10, 0);
+        SegmentStatistics closed = statistics.lap();
+        statistics.onMoving(2 * SECOND, 20, 20, 0);
+
+        assertEquals(1, statistics.getLaps().size());
+        assertSame(closed, statistics.getLaps().get(0));
+        assertEquals(10, closed.getDistance(), 1e-9);
+        assertEquals(20, statistics.getLap().getDistance(), 1e-9);
+        assertEquals(2, statistics.getSegments().size());
+        assertEquals(30, statistics.getTotal().getDistance(), 1e-9);
+    }
+
+    @Test
+    public void tripCalculator_splitsOnDetectedStop() {
+        TripCalculator tripCalculator = new TripCalculator();
+        double latitudeMeter = 1 / Geodesy.distance(51.1, 17.03, 52.1, 17.03);
+        long time = 0;
+        double position = 0;
+        for(int part = 0; part < 2; ++part){
+            for(int i = 0; i < 30; ++i){
+                time += SECOND;
+                position += 10;
+                tripCalculator.onFix(new Fix(time, time / 1000000, 51.1 + position * latitudeMeter, 17.03, 120, 3));
+            }
+            for(int i = 0; i < 10; ++i){
+                time += SECOND;
+                tripCalculator.onFix(new Fix(time, time / 1000000, 51.1 + position * latitudeMeter, 17.03, 120, 3));
+            }
+            for(int i = 0; i < 50; ++i){ //stop lock released
+                tripCalculator.onAccelerometer(time + i * SECOND / 50, 0, i % 2 == 0 ? 3 : -3, 9.81f);
+            }
+        }
+
+        TripStatistics statistics = tripCalculator.getStatistics();
+        assertEquals(3, statistics.getSegments().size());
+        assertEquals(tripCalculator.getDistanceSum(false), statistics.getTotal().getDistance(), 1e-6);
+        assertEquals(59 * SECOND, statistics.getTotal().getMovingNanos()); //first fix starts trip
+        assertEquals(20 * SECOND, statistics.getTotal().getStoppedNanos());
+        assertEquals(29 * SECOND, statistics.getSegments().get(0).getMovingNanos());
+    }
+}
@@ -0,0 +1,186 @@
+package com.jakdor.gpsspeedometer.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+/**
+ * WarmStart persistence and provisional restore in TripCalculator
+ */
+public class WarmStartTest {
+
+    private static final long SECOND = 1000000000L;
+    private static final long NOW = 1500000000000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static TripSnapshot trip(){
+        Fix fix = new Fix(5 * SECOND, NOW - 60000, 51.1, 17.03, 120, 4);
+        return new TripSnapshot(fix, 12.5, 3456.7, 600 * SECOND, false, false);
+    }
+
+    @Test
+    public void writeAndRead_roundTrip() throws Exception {
+        File file = new File(folder.getRoot(), WarmStart.FILE_NAME);
+        assertNull(WarmStart.read(file));
+
+        new WarmStart(NOW, trip()).write(file);
+        assertEquals(WarmStart.SIZE, file.length());
+
+        WarmStart warmStart = WarmStart.read(file);
+        assertEquals(NOW, warmStart.getSavedTime());
+        assertEquals(12.5, warmStart.getSpeed(), 1e-6);
+        assertEquals(3456.7, warmStart.getDistanceSum(), 1e-9);
+        assertEquals(600 * SECOND, warmStart.getTimerNanos());
+        Fix fix = warmStart.getFix();
+        assertEquals(NOW - 60000, fix.getTime());
+        assertEquals(51.1, fix.getLatitude(), 0);
+        assertEquals(17.03, fix.getLongitude(), 0);
+        assertEquals(120, fix.getAltitude(), 1e-6);
+        assertEquals(4, fix.getAccuracy(), 1e-6);
+
+        assertFalse(warmStart.isFinished());
+        assertEquals(0, warmStart.getTrackStartTime());
+        assertTrue(warmStart.canResume(NOW + WarmStart.MAX_RESUME_AGE));
+        assertFalse(warmStart.canResume(NOW + WarmStart.MAX_RESUME_AGE + 1));
+
+        new WarmStart(NOW, trip(), NOW - 600000, false).write(file);
+        assertEquals(NOW - 600000, WarmStart.read(file).getTrackStartTime());
+
+        new WarmStart(NOW, TripSnapshot.EMPTY).write(file);
+        assertNull(WarmStart.read(file).getFix());
+    }
+
+    @Test(expected = IOException.class)
+    public void read_corruptedRejected() throws Exception {
+        File file = new File(folder.getRoot(), WarmStart.FILE_NAME);
+        new WarmStart(NOW, trip()).write(file);
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.seek(30);
+        randomAccessFile.write(0x55);
+        randomAccessFile.close();
+        WarmStart.read(file);
+    }
+
+    @Test
+    public void restore_provisionalUntilFirstAcceptedFix(){
+        TripCalculator tripCalculator = new TripCalculator();
+        tripCalculator.restore(new WarmStart(NOW - 10000, trip()), NOW, 100 * SECOND);
+
+        TripSnapshot restored = tripCalculator.getSnapshot();
+        assertTrue(restored.isProvisional());
+        assertEquals(12.5, restored.getSpeed(), 1e-6);
+        assertEquals(3456.7, restored.getDistanceSum(), 1e-9);
+        assertEquals(600, restored.getTimer());
+        assertEquals(40 * SECOND, restored.getFix().getElapsedRealtimeNanos()); // fix 60 s old
+        assertEquals(51.1, restored.getFix().getLatitude(), 0);
+
+        tripCalculator.onFix(new Fix(101 * SECOND, NOW + 1000, 51.1, 17.03, 120, 200)); //rejected, accuracy
+        assertTrue(tripCalculator.getSnapshot().isProvisional());
+
+        double metersPerDegree = Geodesy.metersPerDegreeLatitude(51.1);
+        for(int second = 0; second <= 10; ++second){
+            tripCalculator.onFix(new Fix((102 + second) * SECOND, NOW + (2 + second) * 1000L,
+                    51.1 + second * 10 / metersPerDegree, 17.03, 120, 4, 10, 0.5f));
+            assertFalse(tripCalculator.getSnapshot().isProvisional());
+        }
+        assertEquals(3456.7 + 100, tripCalculator.getDistanceSum(false), 1);
+        assertTrue(tripCalculator.getTimerNanos() > 600 * SECOND);
+    }
+
+    @Test
+    public void restore_oldStateKeepsOnlyPosition(){
+        TripCalculator tripCalculator = new TripCalculator();
+        tripCalculator.restore(new WarmStart(NOW - WarmStart.MAX_RESUME_AGE - 1, trip()), NOW, 100 * SECOND);
+
+        TripSnapshot restored = tripCalculator.getSnapshot();
+        assertTrue(restored.isProvisional());
+        assertEquals(0, restored.getSpeed(), 0);
+        assertEquals(0, restored.getDistanceSum(), 0);
+        assertEquals(0, restored.getTimerNanos());
+        assertEquals(51.1, restored.getFix().getLatitude(), 0);
+
+        tripCalculator = new TripCalculator();
+        tripCalculator.restore(new WarmStart(NOW - WarmStart.MAX_SPEED_AGE - 1, trip()), NOW, 100 * SECOND);
+        assertEquals(0, tripCalculator.getSnapshot().getSpeed(), 0);
+        assertEquals(3456.7, tripCalculator.getSnapshot().getDistanceSum(), 1e-9);
+    }
+
+    @Test
+    public void restore_finishedTripKeepsOnlyPosition() throws Exception {
+        File file = new File(folder.getRoot(), WarmStart.FILE_NAME);
+        new WarmStart(NOW - 10000, trip(), NOW - 600000, true).write(file);
+        WarmStart warmStart = WarmStart.read(file);
+        assertTrue(warmStart.isFinished());
+        assertFalse(warmStart.canResume(NOW));
+
+        TripCalculator tripCalculator = new TripCalculator();
+        tripCalculator.restore(warmStart, NOW, 100 * SECOND);
+        TripSnapshot restored = tripCalculator.getSnapshot();
+        assertTrue(restored.isProvisional());
+        assertEquals(0, restored.getSpeed(), 0);
+        assertEquals(0, restored.getDistanceSum(), 0);
+        assertEquals(0, restored.getTimerNanos());
+        assertEquals(51.1, restored.getFix().getLatitude(), 0);
+    }
+
+    /**
+     * Drives north at 10 m/s, 1 Hz, recording accepted fixes
+     */
+    private static void drive(TripCalculator tripCalculator, TrackSink recorder, long elapsedNanos, long time,
+                              double latitude, int seconds) throws IOException {
+        double metersPerDegree = Geodesy.metersPerDegreeLatitude(latitude);
+        for(int second = 0; second < seconds; ++second){
+            Fix fix = new Fix(elapsedNanos + second * SECOND, time + second * 1000L,
+                    latitude + second * 10 / metersPerDegree, 17.03, 120, 4, 10, 0.5f);
+            tripCalculator.onFix(fix);
+            if(tripCalculator.getSnapshot().getFix() == fix){
+                recorder.append(fix, (float) tripCalculator.getSpeed());
+            }
+        }
+    }
+
+    @Test
+    public void resume_interruptedTripIndexedOnce() throws Exception {
+        File tracksDir = folder.newFolder("tracks");
+        File file = new File(folder.getRoot(), WarmStart.FILE_NAME);
+        long trackStart = NOW - 60000;
+        File track = TripIndex.getTrackFile(tracksDir, trackStart);
+
+        TripCalculator tripCalculator = new TripCalculator();
+        CompactTrackRecorder recorder = CompactTrackRecorder.open(track, trackStart, 0);
+        drive(tripCalculator, recorder, 10 * SECOND, trackStart, 51.1, 60);
+        recorder.flush();
+        recorder.close(); //process died after last flush
+        Fix last = tripCalculator.getSnapshot().getFix();
+        new WarmStart(NOW, tripCalculator.getSnapshot(), trackStart, false).write(file);
+
+        WarmStart warmStart = WarmStart.read(file);
+        assertTrue(warmStart.canResume(NOW + 5000));
+        tripCalculator = new TripCalculator();
+        tripCalculator.restore(warmStart, NOW + 5000, 100 * SECOND);
+        recorder = CompactTrackRecorder.open(TripIndex.getTrackFile(tracksDir, warmStart.getTrackStartTime()),
+                NOW + 5000, 0);
+        TripIndex index = TripIndex.open(new File(tracksDir, TripIndex.FILE_NAME));
+        assertEquals(0, index.indexMissing(tracksDir, warmStart.getTrackStartTime()));
+
+        drive(tripCalculator, recorder, 101 * SECOND, NOW + 6000, last.getLatitude(), 60);
+        recorder.close();
+        index.put(TripSummary.scan(track, null));
+
+        assertEquals(1, index.size());
+        assertEquals(trackStart, index.getStartTime(0));
+        assertEquals(NOW + 65000, index.getEndTime(0));
+        assertEquals(120, index.getRecordCount(0));
+        assertEquals(tripCalculator.getDistanceSum(false), index.getDistance(0), 1); //history matches HUD
+        assertEquals(tripCalculator.getTimerNanos() / 1000000, index.getMovingTime(0), 1000);
+        assertEquals(1, TripIndex.open(new File(tracksDir, TripIndex.FILE_NAME)).size());
+    }
+}
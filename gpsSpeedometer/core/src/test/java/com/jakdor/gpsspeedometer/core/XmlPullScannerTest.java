@@ -0,0 +1,51 @@
+package com.jakdor.gpsspeedometer.core;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+/**
+ * XmlPullScanner entity decoding, malformed entities fail as IOException with their position
+ */
+public class XmlPullScannerTest {
+
+    private static String text(String xml) throws IOException {
+        XmlPullScanner scanner = new XmlPullScanner(new StringReader(xml));
+        assertEquals(XmlPullScanner.START_TAG, scanner.next());
+        assertEquals(XmlPullScanner.TEXT, scanner.next());
+        return scanner.getText();
+    }
+
+    private static void assertMalformed(String xml, String position){
+        try {
+            text(xml);
+            fail("accepted " + xml);
+        }
+        catch (IOException e){
+            assertTrue(e.getMessage(), e.getMessage().contains("at char " + position));
+        }
+    }
+
+    @Test
+    public void entities_decoded() throws Exception {
+        assertEquals("a&b <c> \"d\" 'e' éé 🚗",
+                text("<name>a&amp;b &lt;c&gt; &quot;d&quot; &apos;e&apos; &#xe9;&#233; &#x1F697;</name>"));
+
+        XmlPullScanner scanner = new XmlPullScanner(new StringReader("<trk name=\"R&#x26;D\"/>"));
+        assertEquals(XmlPullScanner.START_TAG, scanner.next());
+        assertEquals("R&D", scanner.getAttribute("name"));
+    }
+
+    @Test
+    public void malformedEntities_failWithPosition(){
+        assertMalformed("<name>&#xe9 &amp;</name>", "6");
+        assertMalformed("<name>ok &#xzz;</name>", "9");
+        assertMalformed("<name>&#99999999999;</name>", "6");
+        assertMalformed("<name>&#x110000;</name>", "6");
+        assertMalformed("<name>&amp</name>", "6");
+        assertMalformed("<trk name=\"&#;\"/>", "11");
+    }
+}